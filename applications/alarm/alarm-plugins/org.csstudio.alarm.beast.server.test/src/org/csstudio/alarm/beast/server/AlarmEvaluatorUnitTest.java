@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.alarm.beast.server;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/** JUnit test of the AlarmEvaluator
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class AlarmEvaluatorUnitTest
+{
+    @Test
+    public void testShards() throws Exception
+    {
+        final AlarmEvaluator evaluator = new AlarmEvaluator(4);
+        assertThat(evaluator.getShardCount(), equalTo(4));
+
+        // Same PV always in the same shard, PVs spread over all shards
+        final Set<Integer> used = new HashSet<>();
+        for (int i=0; i<100; ++i)
+        {
+            final int shard = evaluator.getShard("PV" + i);
+            assertTrue(shard >= 0  &&  shard < 4);
+            assertThat(evaluator.getShard("PV" + i), equalTo(shard));
+            used.add(shard);
+        }
+        assertThat(used.size(), equalTo(4));
+
+        // At least one thread
+        assertThat(new AlarmEvaluator(0).getShardCount(), equalTo(1));
+        evaluator.shutdown(1);
+    }
+
+    @Test(timeout=10000)
+    public void testOrder() throws Exception
+    {
+        final AlarmEvaluator evaluator = new AlarmEvaluator(4);
+        final int pvs = 20, updates = 1000;
+        final List<List<Integer>> received = new ArrayList<>();
+        for (int p=0; p<pvs; ++p)
+            received.add(new ArrayList<>());
+        final CountDownLatch done = new CountDownLatch(pvs * updates);
+
+        for (int i=0; i<updates; ++i)
+            for (int p=0; p<pvs; ++p)
+            {
+                final List<Integer> values = received.get(p);
+                final int value = i;
+                evaluator.execute("PV" + p, () ->
+                {
+                    // Only accessed by the one thread of the PV's shard
+                    values.add(value);
+                    done.countDown();
+                });
+            }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        // Each PV received all updates in order
+        for (int p=0; p<pvs; ++p)
+        {
+            final List<Integer> values = received.get(p);
+            assertThat(values.size(), equalTo(updates));
+            for (int i=0; i<updates; ++i)
+                assertThat(values.get(i), equalTo(i));
+        }
+        evaluator.shutdown(1);
+    }
+
+    @Test
+    public void testUpdateAfterShutdown() throws Exception
+    {
+        final AlarmEvaluator evaluator = new AlarmEvaluator(2);
+        evaluator.shutdown(1);
+        // Late update is ignored, not thrown back at the caller
+        evaluator.execute("PV1", () -> { throw new IllegalStateException("Evaluated after shutdown"); });
+        assertThat(evaluator.getQueueSize(), equalTo(0));
+    }
+}
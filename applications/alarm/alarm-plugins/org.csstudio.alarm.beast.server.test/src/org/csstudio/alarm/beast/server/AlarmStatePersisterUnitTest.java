@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.alarm.beast.server;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.csstudio.alarm.beast.SeverityLevel;
+import org.csstudio.alarm.beast.server.AlarmServer.Update;
+import org.junit.Test;
+
+/** JUnit test of the AlarmStatePersister
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class AlarmStatePersisterUnitTest
+{
+    /** Store that remembers what was written */
+    private static class TestStore implements AlarmStatePersister.Store
+    {
+        final List<Update> states = new ArrayList<>();
+        final List<Update> globals = new ArrayList<>();
+        boolean failed = false;
+
+        @Override
+        public synchronized void persistStates(final Update[] updates)
+        {
+            for (Update update : updates)
+                states.add(update);
+            notifyAll();
+        }
+
+        @Override
+        public synchronized void persistGlobals(final Update[] updates)
+        {
+            for (Update update : updates)
+                globals.add(update);
+            notifyAll();
+        }
+
+        synchronized void waitForStates(final int count) throws Exception
+        {
+            while (states.size() < count)
+                wait();
+        }
+    }
+
+    private static AlarmPV createPV(final String name) throws Exception
+    {
+        return new AlarmPV(null, null, 1, name, name, true, true, false, 0, 0, 0, null,
+                SeverityLevel.OK, "", SeverityLevel.OK, "", "", Instant.now());
+    }
+
+    private static Update createUpdate(final AlarmPV pv, final String value)
+    {
+        return new Update(pv, SeverityLevel.MAJOR, "HIGH", SeverityLevel.MAJOR, "HIGH", value, Instant.now());
+    }
+
+    @Test(timeout=10000)
+    public void testCoalescing() throws Exception
+    {
+        final TestStore store = new TestStore();
+        final AlarmStatePersister persister = new AlarmStatePersister(store, 1000, 0.5);
+        final AlarmPV pv1 = createPV("pv1"), pv2 = createPV("pv2");
+        persister.queueStates(new Update[]
+        {
+            createUpdate(pv1, "1"),
+            createUpdate(pv2, "1"),
+            createUpdate(pv1, "2"),
+        });
+        persister.queueStates(new Update[] { createUpdate(pv1, "3") });
+        persister.queueGlobals(new Update[] { createUpdate(pv2, "1") });
+
+        // Only the latest update of each PV is written, global updates are separate
+        store.waitForStates(2);
+        synchronized (store)
+        {
+            assertThat(store.states.size(), equalTo(2));
+            assertThat(store.states.get(0).pv, equalTo(pv1));
+            assertThat(store.states.get(0).value, equalTo("3"));
+            assertThat(store.states.get(1).pv, equalTo(pv2));
+        }
+        persister.shutdown(5);
+        assertThat(store.globals.size(), equalTo(1));
+        assertThat(persister.getCoalescedCount(), equalTo(2L));
+        assertThat(persister.getPersistedCount(), equalTo(3L));
+        assertThat(persister.getQueueSize(), equalTo(0));
+    }
+
+    @Test(timeout=10000)
+    public void testBatchSize() throws Exception
+    {
+        // With a long delay, a full batch is still written right away
+        final TestStore store = new TestStore();
+        final AlarmStatePersister persister = new AlarmStatePersister(store, 10, 60.0);
+        final Update[] updates = new Update[10];
+        for (int i=0; i<updates.length; ++i)
+            updates[i] = createUpdate(createPV("pv" + i), "1");
+        persister.queueStates(updates);
+        store.waitForStates(10);
+        persister.shutdown(5);
+    }
+
+    @Test(timeout=10000)
+    public void testShutdown() throws Exception
+    {
+        // Pending updates are written on shutdown
+        final TestStore store = new TestStore();
+        final AlarmStatePersister persister = new AlarmStatePersister(store, 1000, 60.0);
+        persister.queueStates(new Update[] { createUpdate(createPV("pv1"), "1") });
+        assertThat(persister.getQueueSize(), equalTo(1));
+        persister.shutdown(5);
+        assertThat(store.states.size(), equalTo(1));
+    }
+
+    @Test(timeout=30000)
+    public void testConcurrentQueueing() throws Exception
+    {
+        // Updates queued while the persister drains its queue are not lost
+        final TestStore store = new TestStore();
+        final AlarmStatePersister persister = new AlarmStatePersister(store, 10, 0.0);
+        final int threads = 4, pvs = 500;
+        final List<Thread> senders = new ArrayList<>();
+        for (int t=0; t<threads; ++t)
+        {
+            final int thread = t;
+            senders.add(new Thread(() ->
+            {
+                try
+                {
+                    for (int i=0; i<pvs; ++i)
+                    {
+                        final AlarmPV pv = createPV("pv" + thread + "_" + i);
+                        persister.queueStates(new Update[] { createUpdate(pv, "1") });
+                        persister.queueGlobals(new Update[] { createUpdate(pv, "1") });
+                    }
+                }
+                catch (Exception ex)
+                {
+                    ex.printStackTrace();
+                }
+            }));
+        }
+        for (Thread sender : senders)
+            sender.start();
+        for (Thread sender : senders)
+            sender.join();
+        store.waitForStates(threads * pvs);
+        persister.shutdown(5);
+
+        final Set<String> names = new HashSet<>();
+        for (Update update : store.states)
+            names.add(update.pv.getName());
+        assertThat(names.size(), equalTo(threads * pvs));
+        assertThat(store.globals.size(), equalTo(threads * pvs));
+        assertThat(persister.getPersistedCount(), equalTo(2L * threads * pvs));
+    }
+
+    @Test(timeout=10000)
+    public void testRetry() throws Exception
+    {
+        // Store that fails the first write
+        final TestStore store = new TestStore()
+        {
+            @Override
+            public synchronized void persistStates(final Update[] updates)
+            {
+                if (! failed)
+                {
+                    failed = true;
+                    notifyAll();
+                    throw new IllegalStateException("Test error");
+                }
+                super.persistStates(updates);
+            }
+        };
+        final AlarmStatePersister persister = new AlarmStatePersister(store, 1000, 0.1);
+        final AlarmPV pv1 = createPV("pv1"), pv2 = createPV("pv2");
+        persister.queueStates(new Update[] { createUpdate(pv1, "1"), createUpdate(pv2, "1") });
+        synchronized (store)
+        {
+            while (! store.failed)
+                store.wait();
+        }
+        // Retry happens after a second, so this replaces the failed update of pv2
+        persister.queueStates(new Update[] { createUpdate(pv2, "2") });
+
+        // Failed updates are written again, unless replaced by newer update
+        store.waitForStates(2);
+        persister.shutdown(5);
+        assertThat(store.states.size(), equalTo(2));
+        assertThat(store.states.get(0).pv, equalTo(pv1));
+        assertThat(store.states.get(0).value, equalTo("1"));
+        assertThat(store.states.get(1).pv, equalTo(pv2));
+        assertThat(store.states.get(1).value, equalTo("2"));
+    }
+}
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.alarm.beast.server;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/** Evaluates the alarm logic of PVs on several threads
+ *
+ *  <p>PVs are partitioned by the hash of their name into 'shards'.
+ *  Each shard has one thread, so all updates of a PV
+ *  are handled by the same thread in the order received,
+ *  while PVs in different shards are handled concurrently.
+ *
+ *  <p>Control system libraries invoke PV callbacks on their own threads.
+ *  By handing the received data to the evaluator, those threads
+ *  are not blocked by the alarm logic.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class AlarmEvaluator
+{
+    final private ThreadPoolExecutor shards[];
+
+    /** @param threads Number of threads, i.e. shards */
+    public AlarmEvaluator(final int threads)
+    {
+        shards = new ThreadPoolExecutor[Math.max(1, threads)];
+        for (int i=0; i<shards.length; ++i)
+        {
+            final String name = "AlarmEvaluator" + (i+1);
+            shards[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(), runnable ->
+                    {
+                        final Thread thread = new Thread(runnable, name);
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+    }
+
+    /** @return Number of shards */
+    public int getShardCount()
+    {
+        return shards.length;
+    }
+
+    /** @param pv_name PV name
+     *  @return Shard that handles the PV, 0 .. getShardCount()-1
+     */
+    public int getShard(final String pv_name)
+    {
+        return Math.floorMod(pv_name.hashCode(), shards.length);
+    }
+
+    /** Evaluate alarm logic of a PV
+     *  @param pv_name PV name, determines the shard
+     *  @param evaluation Code that accesses the PV's alarm logic
+     */
+    public void execute(final String pv_name, final Runnable evaluation)
+    {
+        try
+        {
+            shards[getShard(pv_name)].execute(() ->
+            {
+                try
+                {
+                    evaluation.run();
+                }
+                catch (Throwable ex)
+                {
+                    Activator.getLogger().log(Level.SEVERE, "Alarm evaluation error for " + pv_name, ex);
+                }
+            });
+        }
+        catch (RejectedExecutionException ex)
+        {   // PV updates can still arrive on the control system thread after shutdown
+            Activator.getLogger().log(Level.FINE, "Ignoring alarm evaluation for " + pv_name + " after shutdown");
+        }
+    }
+
+    /** @return Number of queued evaluations, summed over all shards */
+    public int getQueueSize()
+    {
+        int size = 0;
+        for (ThreadPoolExecutor shard : shards)
+            size += shard.getQueue().size();
+        return size;
+    }
+
+    /** Stop the evaluation threads after handling queued evaluations
+     *  @param seconds Time to wait for queued evaluations
+     */
+    public void shutdown(final long seconds)
+    {
+        for (ThreadPoolExecutor shard : shards)
+            shard.shutdown();
+        try
+        {
+            final long end = System.currentTimeMillis() + seconds*1000;
+            for (ThreadPoolExecutor shard : shards)
+                shard.awaitTermination(Math.max(0, end - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException ex)
+        {
+            // Ignore, shutting down anyway
+        }
+    }
+}
@@ -198,7 +198,23 @@ public class AlarmPV extends TreeItem implements AlarmLogicListener, FilterListe
         final boolean new_enable_state = value > 0.0;
         Activator.getLogger().log(Level.FINE, "{0} filter changed to {1}",
                 new Object[] { getName(), new_enable_state });
-        logic.setEnabled(new_enable_state);
+        evaluate(() -> logic.setEnabled(new_enable_state));
+    }
+
+    /** Evaluate alarm logic
+     *
+     *  <p>Hands the evaluation to the server's evaluation thread for this PV,
+     *  so that the control system library's callback thread is not blocked.
+     *  Without server (JUnit tests), evaluates right away.
+     *
+     *  @param evaluation Code that accesses the alarm logic
+     */
+    private void evaluate(final Runnable evaluation)
+    {
+        if (server == null)
+            evaluation.run();
+        else
+            server.evaluate(getName(), evaluation);
     }
 
     /** Invoked by <code>connection_timer</code> when PV fails to connect
@@ -208,7 +224,7 @@ public class AlarmPV extends TreeItem implements AlarmLogicListener, FilterListe
     {
         final AlarmState received = new AlarmState(SeverityLevel.UNDEFINED,
             Messages.AlarmMessageNotConnected, "", Instant.now());
-        logic.computeNewState(received);
+        evaluate(() -> logic.computeNewState(received));
     }
 
     /** @see PVListener */
@@ -224,7 +240,7 @@ public class AlarmPV extends TreeItem implements AlarmLogicListener, FilterListe
     {
         final AlarmState received = new AlarmState(SeverityLevel.UNDEFINED,
                 Messages.AlarmMessageDisconnected, "", Instant.now());
-        logic.computeNewState(received);
+        evaluate(() -> logic.computeNewState(received));
     }
 
     /** @see PVListener */
@@ -237,7 +253,7 @@ public class AlarmPV extends TreeItem implements AlarmLogicListener, FilterListe
         final AlarmState received = new AlarmState(new_severity, new_message,
                 VTypeHelper.toString(value),
                 VTypeHelper.getTimestamp(value));
-        logic.computeNewState(received);
+        evaluate(() -> logic.computeNewState(received));
     }
 
     /** AlarmLogicListener: {@inheritDoc} */
@@ -12,11 +12,12 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Timestamp;
 import java.time.Instant;
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 
+import org.csstudio.alarm.beast.AlarmTreeRow;
 import org.csstudio.alarm.beast.SQL;
 import org.csstudio.alarm.beast.SeverityLevel;
 import org.csstudio.alarm.beast.TimestampHelper;
@@ -25,6 +26,11 @@ import org.csstudio.alarm.beast.server.AlarmServer.Update;
 import org.csstudio.platform.utility.rdb.RDBUtil;
 
 /** Alarm RDB Handler
+ *
+ *  <p>Methods that use the RDB connection are synchronized
+ *  because state updates are written on the {@link AlarmStatePersister} thread
+ *  while the configuration is read on the work queue thread.
+ *
  *  @author Kay Kasemir
  *  @author Lana Abadie - Disable autocommit as needed.
  *  @author Jaka Bobnar - RDB batching
@@ -84,7 +90,7 @@ public class AlarmRDB
      *  @return Root element of the alarm tree hierarchy
      *  @throws Exception on error
      */
-    public TreeItem readConfiguration() throws Exception
+    public synchronized TreeItem readConfiguration() throws Exception
     {
         final Connection conn = rdb.getConnection();
         // Disabling the auto-reconnect is about 15% faster, and we don't
@@ -111,17 +117,9 @@ public class AlarmRDB
             statement.close();
         }
 
-        // Fetch children
-        final PreparedStatement sel_items_by_parent =
-            conn.prepareStatement(sql.sel_items_by_parent);
-        try
-        {
-            readChildren(root, sel_items_by_parent);
-        }
-        finally
-        {
-            sel_items_by_parent.close();
-        }
+        // Fetch children with one query per tree level, then assemble the tree in memory
+        final Map<Integer, List<AlarmTreeRow>> rows = AlarmTreeRow.readByParent(rdb, sql, root.getID());
+        createChildren(root, rows);
 
         // In transactional mode (Connection.setAutoCommit(false)),
         // even SELECTs needed a commit() to end the transaction.
@@ -143,115 +141,66 @@ public class AlarmRDB
         return root;
     }
 
-    /** Read alarm tree hierarchy
+    /** Create alarm tree hierarchy
      *  @param parent Parent entry
-     *  @param sel_items_by_parent Prepared statement for fetching child elements
+     *  @param rows Rows of all alarm tree items, by parent ID
      *  @throws Exception on error
      */
-    private void readChildren(final TreeItem parent, final PreparedStatement sel_items_by_parent) throws Exception
+    private void createChildren(final TreeItem parent, final Map<Integer, List<AlarmTreeRow>> rows) throws Exception
     {
-        final List<TreeItem> recurse_items = new ArrayList<TreeItem>();
-
-        sel_items_by_parent.setInt(1, parent.getID());
-        final ResultSet result = sel_items_by_parent.executeQuery();
-        try
+        final List<AlarmTreeRow> children = rows.get(parent.getID());
+        if (children == null)
+            return;
+        final int global_delay = AlarmServerPreferences.getGlobalAlarmDelay();
+        for (AlarmTreeRow row : children)
         {
-            while (result.next())
+            // Ignoring config. time
+            if (! row.is_pv)
             {
-                final int id = result.getInt(1);
-                if (result.wasNull())
-                    throw new Exception("NULL component ID");
-                final String name = result.getString(17);
-                if (result.wasNull())
-                    throw new Exception("NULL component Name");
-                // Ignoring config. time from result.getTimestamp(2)
-
-                // Check PV's ID. If null, this is a component, not PV
-                final int pv_id = result.getInt(3);
-                if (result.wasNull())
-                {
-                    final TreeItem child = new TreeItem(parent, name, id);
-                    recurse_items.add(child);
-                }
-                else
-                {   // Handle PV
-                    if (id != pv_id)
-                        throw new Exception("Internal RDB error: Item '" + name + "' as ID " + id + " but also PV ID " + pv_id);
-                    // Easy results
-                    String description = result.getString(4);
-                    // Description should not be empty
-                    if (result.wasNull() || description == null || description.length() <= 0)
-                        description = name;
-                    // Default to most features turned 'on'
-                    boolean enabled = result.getBoolean(5);
-                    if (result.wasNull())
-                        enabled = true;
-                    boolean annunciate = result.getBoolean(6);
-                    if (result.wasNull())
-                        annunciate = true;
-                    boolean latch = result.getBoolean(7);
-                    if (result.wasNull())
-                        latch = true;
-                    // 0/null/empty disables these features
-                    final int min_alarm_delay = result.getInt(8);
-                    final int count = result.getInt(9);
-                    final String filter = result.getString(10);
-
-                    // Decode current severity/status IDs, handling NULL as "Ok"
-                    int severity_id = result.getInt(11);
-                    final SeverityLevel current_severity = result.wasNull()
-                        ? SeverityLevel.OK
-                        : severity_mapping.getSeverityLevel(severity_id);
-
-                    int status_id = result.getInt(12);
-                    final String current_status = result.wasNull()
-                        ? ""
-                        : message_mapping.findMessageById(status_id);
-
-                    // Alarm severity/status
-                    severity_id = result.getInt(13);
-                    final SeverityLevel severity = result.wasNull()
-                        ? SeverityLevel.OK
-                        : severity_mapping.getSeverityLevel(severity_id);
-
-                    status_id = result.getInt(14);
-                    final String status = result.wasNull()
-                        ? ""
-                        : message_mapping.findMessageById(status_id);
-
-                    // Alarm value, time
-                    final String value = result.getString(15);
-
-                    final Timestamp time = result.getTimestamp(16);
-                    final Instant timestamp = result.wasNull()
-                        ? Instant.now()
-                        : TimestampHelper.toEPICSTime(time);
-
-                    final int global_delay = AlarmServerPreferences.getGlobalAlarmDelay();
-
-                    new AlarmPV(server, parent, id, name, description,
-                            enabled, latch, annunciate, min_alarm_delay, count, global_delay, filter,
-                            current_severity, current_status, severity, status, value, timestamp);
-                }
+                createChildren(new TreeItem(parent, row.name, row.id), rows);
+                continue;
             }
+            // Description should not be empty
+            final String description = (row.description == null || row.description.length() <= 0)
+                ? row.name
+                : row.description;
+            // Default to most features turned 'on'
+            final boolean enabled = row.enabled == null ? true : row.enabled;
+            final boolean annunciate = row.annunciate == null ? true : row.annunciate;
+            final boolean latch = row.latch == null ? true : row.latch;
+
+            // Decode current severity/status IDs, handling NULL as "Ok"
+            final SeverityLevel current_severity = row.current_severity_id == null
+                ? SeverityLevel.OK
+                : severity_mapping.getSeverityLevel(row.current_severity_id);
+            final String current_status = row.current_status_id == null
+                ? ""
+                : message_mapping.findMessageById(row.current_status_id);
+
+            // Alarm severity/status
+            final SeverityLevel severity = row.severity_id == null
+                ? SeverityLevel.OK
+                : severity_mapping.getSeverityLevel(row.severity_id);
+            final String status = row.status_id == null
+                ? ""
+                : message_mapping.findMessageById(row.status_id);
+
+            final Instant timestamp = row.time == null
+                ? Instant.now()
+                : TimestampHelper.toEPICSTime(row.time);
+
+            // 0/null/empty disables delay, count, filter
+            new AlarmPV(server, parent, row.id, row.name, description,
+                    enabled, latch, annunciate, row.delay, row.count, global_delay, row.filter,
+                    current_severity, current_status, severity, status, row.value, timestamp);
         }
-        finally
-        {
-            result.close();
-        }
-
-        // Recurse to children
-        // Cannot do that inside the above while() because that would reuse
-        // the statement of the current ResultSet
-        for (TreeItem child : recurse_items)
-            readChildren(child, sel_items_by_parent);
     }
 
     /** Read configuration for PV, update it from RDB
      *  @param pv AlarmPV to update
      *  @throws Exception on error
      */
-    public void readConfigurationUpdate(final AlarmPV pv) throws Exception
+    public synchronized void readConfigurationUpdate(final AlarmPV pv) throws Exception
     {
         final PreparedStatement statement =
             rdb.getConnection().prepareStatement(sql.sel_pv_by_id);
@@ -367,7 +316,7 @@ public class AlarmRDB
      *
      *  @throws Exception
      */
-    public void persistAllStates(final Update[] updates, final int batchSize) throws Exception
+    public synchronized void persistAllStates(final Update[] updates, final int batchSize) throws Exception
     {
         final Connection actual_connection = rdb.getConnection();
         actual_connection.setAutoCommit(false);
@@ -431,7 +380,7 @@ public class AlarmRDB
      *
      *  @throws Exception
      */
-    public void persistGlobalUpdates(final Update[] updates, final int batchSize) throws Exception
+    public synchronized void persistGlobalUpdates(final Update[] updates, final int batchSize) throws Exception
     {
         final Connection actual_connection = rdb.getConnection();
         actual_connection.setAutoCommit(false);
@@ -494,7 +443,7 @@ public class AlarmRDB
      *  @param enabled Enabled or not?
      *  @throws Exception on error
      */
-    public void writeEnablementUpdate(final AlarmPV pv, final boolean enabled) throws Exception
+    public synchronized void writeEnablementUpdate(final AlarmPV pv, final boolean enabled) throws Exception
     {
         final Connection actual_connection = rdb.getConnection();
 
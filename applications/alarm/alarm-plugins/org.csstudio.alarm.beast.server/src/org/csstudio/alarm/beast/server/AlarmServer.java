@@ -36,6 +36,12 @@ import org.eclipse.osgi.util.NLS;
  *  <p>
  *  Ignores the hierarchy which (some) of the clients may use to
  *  display the alarm state of PVs.
+ *  <p>
+ *  The alarm logic of the PVs is evaluated by an {@link AlarmEvaluator},
+ *  which partitions the PVs over several threads.
+ *  The configuration is kept in an immutable snapshot
+ *  that is replaced as a whole when the configuration is re-read,
+ *  so PV lookup from those threads does not need to lock the server.
  *
  *  @author Kay Kasemir, Xihui Chen
  *  @author Jaka Bobnar - RDB batching
@@ -43,8 +49,9 @@ import org.eclipse.osgi.util.NLS;
 @SuppressWarnings("nls")
 public class AlarmServer implements Runnable
 {
-    /** BatchUpdater takes care of periodic updates of alarm states into the RDB and
-     *  to the JMS. This allows for the updates to queue up to sizable number.
+    /** BatchUpdater takes care of periodic updates of alarm states to the JMS
+     *  and hands them to the {@link AlarmStatePersister} for the RDB.
+     *  This allows for the updates to queue up to sizable number.
      *  Then they are sent in batches, which allows for better performance.
      */
     private class BatchUpdater extends Thread
@@ -115,16 +122,6 @@ public class AlarmServer implements Runnable
     /** A list holding all the global updates, which have not yet been send to the JMS queue */
     private List<Update> queuedGlobalUpdates = new ArrayList<Update>();
 
-    /** Updates to be persisted in the RDB, mapping the 'latest' by PV.
-     *  While queuedUpdates contains all recent updates, the map only
-     *  retains the most recent update for each PV
-     *  because we only need to store the latest updates of the same PV.
-     */
-    private Map<String,Update> queuedRDBUpdates = new HashMap<String,Update>();
-
-    /** Global updates to be persisted in the RDB, mapping the 'latest' by PV */
-    private Map<String,Update> queuedRDBGlobalUpdates = new HashMap<String,Update>();
-
     /** Name of alarm tree root element */
     final String root_name;
 
@@ -134,26 +131,49 @@ public class AlarmServer implements Runnable
     /** RDB for configuration/state */
     final private AlarmRDB rdb;
 
+    /** Writes alarm state updates to the RDB */
+    final private AlarmStatePersister persister;
+
     /** Messenger to communicate with clients */
     final private ServerCommunicator messenger;
 
     /** {@link NagTimer} or <code>null</code> if not used */
     private volatile NagTimer nag_timer;
 
-    /** Hierarchical alarm configuration
-     *  <p><b>NOTE: Access to tree, PV list and map must synchronize on 'this'</b>
+    /** Snapshot of the alarm configuration
+     *
+     *  <p>The structure, i.e. which PVs are in the tree, list and map,
+     *  does not change after construction.
+     *  A new configuration replaces the complete snapshot,
+     *  so readers can iterate without locking.
+     *  The settings of an individual AlarmPV, however, are updated in place
+     *  when {@link AlarmServer#updateConfig(String)} reads its configuration.
      */
-    private TreeItem alarm_tree;
+    private static class Configuration
+    {
+        /** Hierarchical alarm configuration */
+        final TreeItem alarm_tree;
 
-    /** All the PVs in the alarm_tree, sorted by name
-     *  <p><b>NOTE: Access to tree, PV list and map must synchronize on 'this'</b>
-     */
-    private AlarmPV pv_list[] = new AlarmPV[0];
+        /** All the PVs in the alarm_tree, sorted by name */
+        final AlarmPV pv_list[];
 
-    /** All the PVs in the model, mapping PV name (not path name!) to AlarmPV
-     *  <p><b>NOTE: Access to tree, PV list and map must synchronize on 'this'</b>
-     */
-    private Map<String, AlarmPV> pv_map = new HashMap<String, AlarmPV>();
+        /** All the PVs in the model, mapping PV name (not path name!) to AlarmPV */
+        final Map<String, AlarmPV> pv_map;
+
+        Configuration(final TreeItem alarm_tree, final AlarmPV pv_list[],
+                      final Map<String, AlarmPV> pv_map)
+        {
+            this.alarm_tree = alarm_tree;
+            this.pv_list = pv_list;
+            this.pv_map = pv_map;
+        }
+    }
+
+    /** Current alarm configuration, <code>null</code> until read */
+    private volatile Configuration config = null;
+
+    /** Evaluates the alarm logic of the PVs */
+    final private AlarmEvaluator evaluator;
 
     /** Indicator for communication errors */
     private volatile boolean had_RDB_error = false;
@@ -177,11 +197,47 @@ public class AlarmServer implements Runnable
         this.work_queue = work_queue;
         this.updatePeriod = (long)(Preferences.getBatchUpdatePeriod()*1000);
         this.batchSize = Preferences.getBatchSize();
+        evaluator = new AlarmEvaluator(AlarmServerPreferences.getEvaluationThreads());
         rdb = new AlarmRDB(this, Preferences.getRDB_Url(),
                 Preferences.getRDB_User(),
                 Preferences.getRDB_Password(),
                 Preferences.getRDB_Schema(),
                 root_name);
+        persister = new AlarmStatePersister(new AlarmStatePersister.Store()
+        {
+            // On error, the persister queues the updates again.
+            // Recovery is thus only scheduled once the RDB holds
+            // all the updates of the failed batch.
+            @Override
+            public void persistStates(final Update[] updates) throws Exception
+            {
+                try
+                {
+                    rdb.persistAllStates(updates, batchSize);
+                }
+                catch (Exception e)
+                {
+                    had_RDB_error = true;
+                    throw e;
+                }
+                scheduleRDBRecovery();
+            }
+
+            @Override
+            public void persistGlobals(final Update[] updates) throws Exception
+            {
+                try
+                {
+                    rdb.persistGlobalUpdates(updates, batchSize);
+                }
+                catch (Exception e)
+                {
+                    had_RDB_error = true;
+                    throw e;
+                }
+                scheduleRDBRecovery();
+            }
+        }, batchSize, AlarmServerPreferences.getPersistMaxDelay());
         messenger = new ServerCommunicator(this, work_queue, root_name);
         readConfiguration();
     }
@@ -208,15 +264,13 @@ public class AlarmServer implements Runnable
         // Entering maintenance mode: Ack' all INVALID alarms
         if (maintenance_mode)
         {
-            synchronized (this)
-            {
-                for (AlarmPV pv : pv_list)
+            for (AlarmPV pv : config.pv_list)
+                evaluate(pv.getName(), () ->
                 {
                     final AlarmLogic logic = pv.getAlarmLogic();
                     if (logic.getAlarmState().getSeverity() == SeverityLevel.INVALID)
                         logic.acknowledge(true);
-                }
-            }
+                });
         }
     }
 
@@ -224,12 +278,15 @@ public class AlarmServer implements Runnable
     public void dump(final PrintStream out)
     {
         out.println("== Alarm Server PV Snapshot ==");
-        synchronized (this)
-        {
-            alarm_tree.dump(out);
-        }
+        config.alarm_tree.dump(out);
 
         out.println("Work queue size: " + work_queue.size());
+        out.println("Evaluation threads: " + evaluator.getShardCount() +
+                    ", queue size: " + evaluator.getQueueSize());
+        out.println("RDB updates: " + persister.getPersistedCount() +
+                    " written, " + persister.getCoalescedCount() + " coalesced, queue size: " +
+                    persister.getQueueSize() + ", last commit: " + persister.getLastCommitMillis() +
+                    " ms, max commit: " + persister.getMaxCommitMillis() + " ms");
 
         // Log memory usage in MB
         final double free = Runtime.getRuntime().freeMemory() / (1024.0*1024.0);
@@ -244,12 +301,7 @@ public class AlarmServer implements Runnable
     /** @return list of all PVs known to the server */
     public AlarmPV[] getPVs()
     {
-        final AlarmPV pvs[];
-        synchronized (this)
-        {
-            pvs = pv_list.clone();
-        }
-        return pvs;
+        return config.pv_list.clone();
     }
 
     /** Locate alarm tree item by path
@@ -260,10 +312,7 @@ public class AlarmServer implements Runnable
     {
         if (path == null  ||  path.isEmpty())
             path = getRootName();
-        synchronized (this)
-        {
-            return alarm_tree.getItemByPath(path);
-        }
+        return config.alarm_tree.getItemByPath(path);
     }
 
     /** Release all resources */
@@ -300,13 +349,9 @@ public class AlarmServer implements Runnable
                 public int getActiveAlarmCount()
                 {
                     int active = 0;
-                    // Sync on access to pv_list
-                    synchronized (AlarmServer.this)
-                    {
-                        for (AlarmPV pv : pv_list)
-                            if (pv.getAlarmLogic().getAlarmState().getSeverity().isActive())
-                                ++active;
-                    }
+                    for (AlarmPV pv : config.pv_list)
+                        if (pv.getAlarmLogic().getAlarmState().getSeverity().isActive())
+                            ++active;
                     return active;
                 }
 
@@ -334,20 +379,16 @@ public class AlarmServer implements Runnable
     private void startPVs()
     {
         final long delay = Preferences.getPVStartDelay();
-        // Must not sync while calling PV, because Channel Access updates
+        // Must not hold a lock while calling PV, because Channel Access updates
         // might arrive while we're trying to start/stop channels,
-        // and those updates will try to lock the Alarm Server,
-        // which then results in a deadlock:
-        // a) We lock AlarmServer, then try to call CA,
+        // which results in a deadlock if those updates need the same lock:
+        // a) We take a lock, then try to call CA,
         //     which takes internal JNI locks
         // b) CA takes internal locks, calls PV update callback, which
-        //    then tries to lock the AlarmServer when locating the PV by name
-        final AlarmPV pvs[];
-        synchronized (this)
-        {
-            pvs = pv_list.clone();
-        }
-        for (AlarmPV pv : pvs)
+        //    then tries to take our lock.
+        // The configuration snapshot is immutable, so it can be used without a lock,
+        // and PV updates are handed to the evaluator threads.
+        for (AlarmPV pv : config.pv_list)
         {
             try
             {
@@ -373,6 +414,8 @@ public class AlarmServer implements Runnable
         }
         messenger.sendAnnunciation("Alarm server exiting");
         stopPVs();
+        // Handle evaluations that are still queued
+        evaluator.shutdown(10);
         messenger.stop();
         if (batchExecutor != null)
             batchExecutor.terminate();
@@ -386,18 +429,18 @@ public class AlarmServer implements Runnable
             Activator.getLogger().log(Level.SEVERE, "Error committing state update batches.",e);
             had_RDB_error = true;
         }
+        // Write what's still queued for the RDB
+        persister.shutdown(10);
     }
 
     /** Stop PVs */
     private void stopPVs()
     {
-        // See deadlock comment in start()
-        final AlarmPV pvs[];
-        synchronized (this)
-        {
-            pvs = pv_list.clone();
-        }
-        for (AlarmPV pv : pvs)
+        // See deadlock comment in startPVs()
+        final Configuration safe_config = config;
+        if (safe_config == null)
+            return;
+        for (AlarmPV pv : safe_config.pv_list)
             pv.stop();
     }
 
@@ -408,32 +451,30 @@ public class AlarmServer implements Runnable
     {
         // Read alarm hierarchy
         final BenchmarkTimer timer = new BenchmarkTimer();
-        final int pv_count;
-        synchronized (this)
+        final TreeItem alarm_tree = rdb.readConfiguration();
+
+        // Determine PVs
+        final ArrayList<AlarmPV> tmp_pv_array = new ArrayList<AlarmPV>();
+        findPVs(alarm_tree, tmp_pv_array);
+        // Turn into plain array
+        final AlarmPV pv_list[] = tmp_pv_array.toArray(new AlarmPV[tmp_pv_array.size()]);
+        tmp_pv_array.clear();
+        // Sort PVs by name
+        Arrays.sort(pv_list, new Comparator<AlarmPV>()
         {
-            alarm_tree = rdb.readConfiguration();
-
-            // Determine PVs
-            final ArrayList<AlarmPV> tmp_pv_array = new ArrayList<AlarmPV>();
-            findPVs(alarm_tree, tmp_pv_array);
-            // Turn into plain array
-            pv_list = tmp_pv_array.toArray(new AlarmPV[tmp_pv_array.size()]);
-            tmp_pv_array.clear();
-            // Sort PVs by name
-            Arrays.sort(pv_list, new Comparator<AlarmPV>()
+            @Override
+            public int compare(final AlarmPV pv1, final AlarmPV pv2)
             {
-                @Override
-                public int compare(final AlarmPV pv1, final AlarmPV pv2)
-                {
-                    return pv1.getName().compareTo(pv2.getName());
-                }
-            });
-            // Create hash
-            pv_map = new HashMap<String, AlarmPV>();
-            for (AlarmPV pv : pv_list)
-                pv_map.put(pv.getName(), pv);
-            pv_count = pv_list.length;
-        }
+                return pv1.getName().compareTo(pv2.getName());
+            }
+        });
+        // Create hash
+        final Map<String, AlarmPV> pv_map = new HashMap<String, AlarmPV>(pv_list.length * 4 / 3 + 1);
+        for (AlarmPV pv : pv_list)
+            pv_map.put(pv.getName(), pv);
+        final int pv_count = pv_list.length;
+        // Publish the complete configuration
+        config = new Configuration(alarm_tree, pv_list, pv_map);
         timer.stop();
         // LDAP results: Read 12614 PVs in 2.69 seconds, 4689.0 PVs/sec
         System.out.format("Read %d PVs in %.2f seconds: %.1f PVs/sec\n",
@@ -507,7 +548,20 @@ public class AlarmServer implements Runnable
         resetNagTimer();
         final AlarmPV pv = findPV(pv_name);
         if (pv != null)
-            pv.getAlarmLogic().acknowledge(acknowledge);
+            evaluate(pv_name, () -> pv.getAlarmLogic().acknowledge(acknowledge));
+    }
+
+    /** Evaluate alarm logic of a PV.
+     *
+     *  <p>All evaluations for the same PV are performed
+     *  on the same thread in the order of submission.
+     *
+     *  @param pv_name PV name
+     *  @param evaluation Code that accesses the alarm logic of the PV
+     */
+    void evaluate(final String pv_name, final Runnable evaluation)
+    {
+        evaluator.execute(pv_name, evaluation);
     }
 
     /** Locate alarm PV by name
@@ -516,10 +570,7 @@ public class AlarmServer implements Runnable
      */
     private AlarmPV findPV(final String pv_name)
     {
-        synchronized (this)
-        {
-            return pv_map.get(pv_name);
-        }
+        return config.pv_map.get(pv_name);
     }
 
     /** Update JMS clients and RDB
@@ -538,13 +589,10 @@ public class AlarmServer implements Runnable
             final String message,
             final String value, final Instant timestamp)
     {
-        synchronized(queuedRDBUpdates)
+        final Update u = new Update(pv, current_severity,
+                current_message, severity, message, value, timestamp);
+        synchronized (queuedUpdates)
         {
-            final Update u = new Update(pv, current_severity,
-                    current_message, severity, message, value, timestamp);
-            // We are only interested in the latest update of a particular PV
-            // the rest don't need to be persisted
-            queuedRDBUpdates.put(pv.getName(), u);
             queuedUpdates.add(u);
         }
     }
@@ -561,13 +609,10 @@ public class AlarmServer implements Runnable
             final String message,
             final String value, final Instant timestamp)
     {
-        synchronized (queuedRDBGlobalUpdates)
+        final Update u = new Update(pv, severity,
+                message, severity, message, value, timestamp);
+        synchronized (queuedGlobalUpdates)
         {
-            final Update u = new Update(pv, severity,
-                    message, severity, message, value, timestamp);
-            // We are only interested in the latest update of a particular PV
-            // the rest don't need to be persisted
-            queuedRDBGlobalUpdates.put(pv.getName(), u);
             queuedGlobalUpdates.add(u);
         }
     }
@@ -630,68 +675,52 @@ public class AlarmServer implements Runnable
         messenger.sendReloadMessage();
     }
 
-    /** Send all queue updates to RDB as well as JMS */
-    private void sendQueuedUpdates()
+    /** Recover from RDB errors on the work queue thread
+     *  once the RDB accepted updates again
+     */
+    private void scheduleRDBRecovery()
     {
-        // Create thread-save copy
-        Update[] updates = null;
-        Update[] rdbUpdates = null;
-        synchronized (queuedRDBUpdates)
-        {
-            rdbUpdates = queuedRDBUpdates.values().toArray(new Update[queuedRDBUpdates.size()]);
-            queuedRDBUpdates.clear();
-            updates = queuedUpdates.toArray(new Update[queuedUpdates.size()]);
-            queuedUpdates.clear();
-        }
-
-        if (rdbUpdates.length > 0)
+        if (! had_RDB_error)
+            return;
+        work_queue.execute(() ->
         {
             try
             {
-                rdb.persistAllStates(rdbUpdates, batchSize);
                 recoverFromRDBErrors();
             }
             catch (Exception e)
             {
-                Activator.getLogger().log(Level.SEVERE, "Error committing state update batches.", e);
+                Activator.getLogger().log(Level.SEVERE, "Error recovering from RDB errors.", e);
                 had_RDB_error = true;
             }
-        }
+        });
+    }
 
-        for (Update u : updates)
+    /** Send all queued updates to JMS, and queue them for the RDB */
+    private void sendQueuedUpdates()
+    {
+        // Create thread-save copy
+        final Update[] updates;
+        synchronized (queuedUpdates)
         {
-            messenger.sendStateUpdate(u.pv, u.currentSeverity, u.currentMessage,
-                u.alarmSeverity, u.alarmMessage, u.value, u.timestamp);
+            updates = queuedUpdates.toArray(new Update[queuedUpdates.size()]);
+            queuedUpdates.clear();
         }
+        messenger.sendStateUpdates(updates);
+        // Persister only keeps the latest update of each PV
+        persister.queueStates(updates);
 
-        Update[] rdbGlobals = null;
-        Update[] globals = null;
-        synchronized(queuedRDBGlobalUpdates)
+        final Update[] globals;
+        synchronized (queuedGlobalUpdates)
         {
-            rdbGlobals = queuedRDBGlobalUpdates.values().toArray(new Update[queuedRDBGlobalUpdates.size()]);
-            queuedRDBGlobalUpdates.clear();
             globals = queuedGlobalUpdates.toArray(new Update[queuedGlobalUpdates.size()]);
             queuedGlobalUpdates.clear();
         }
-
-        if (rdbGlobals.length > 0)
-        {
-            try
-            {
-                rdb.persistGlobalUpdates(rdbGlobals,batchSize);
-                recoverFromRDBErrors();
-            }
-            catch (Exception e)
-            {
-                Activator.getLogger().log(Level.SEVERE,"Error committing global update batches.",e);
-                had_RDB_error = true;
-            }
-        }
-
         for (Update u : globals)
         {
             messenger.sendGlobalUpdate(u.pv, u.alarmSeverity, u.alarmMessage, u.value, u.timestamp);
         }
+        persister.queueGlobals(globals);
     }
 
     /** Runnable entry point used by BatchUpdater */
@@ -24,6 +24,8 @@ public class AlarmServerPreferences
 {
     final public static String GLOBAL_ALARM_DELAY = "global_alarm_delay";
     final public static String NAG_PERIOD = "nag_period";
+    final public static String EVALUATION_THREADS = "evaluation_threads";
+    final public static String PERSIST_MAX_DELAY = "persist_max_delay";
 
     /** @return Period for repeated 'There are .. active alarms' annunciations [seconds]
      *  @throws Exception on error in period specification
@@ -45,4 +47,22 @@ public class AlarmServerPreferences
             return 0;
         return service.getInt(Activator.ID, GLOBAL_ALARM_DELAY, 0, null);
     }
+
+    /** @return Number of threads for evaluating the alarm logic of PVs */
+    public static int getEvaluationThreads()
+    {
+        final IPreferencesService service = Platform.getPreferencesService();
+        if (service == null)
+            return 4;
+        return service.getInt(Activator.ID, EVALUATION_THREADS, 4, null);
+    }
+
+    /** @return Maximum time that an alarm state update waits before written to the RDB [seconds] */
+    public static double getPersistMaxDelay()
+    {
+        final IPreferencesService service = Platform.getPreferencesService();
+        if (service == null)
+            return 1.0;
+        return service.getDouble(Activator.ID, PERSIST_MAX_DELAY, 1.0, null);
+    }
 }
@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.alarm.beast.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import org.csstudio.alarm.beast.server.AlarmServer.Update;
+
+/** Persists alarm state updates in the RDB on a dedicated thread
+ *
+ *  <p>Pending updates are kept by PV name, and a newer update of a PV
+ *  replaces the one still waiting to be written.
+ *  The queue is thus bounded by the number of PVs,
+ *  even when the RDB is slow or unavailable for a while.
+ *
+ *  <p>Pending updates are written once there are 'batch_size' of them,
+ *  or once the oldest one has waited for 'max_delay'.
+ *  When a write fails, its updates are queued again unless there is
+ *  already a newer update for the same PV, and the write is retried
+ *  after 'max_delay', but at most once per second.
+ *  Since JMS updates are sent independently,
+ *  a slow RDB does not delay the alarm clients.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class AlarmStatePersister
+{
+    /** Writes updates to the RDB */
+    interface Store
+    {
+        /** @param updates State updates to write
+         *  @throws Exception on error
+         */
+        public void persistStates(Update[] updates) throws Exception;
+
+        /** @param updates Global updates to write
+         *  @throws Exception on error
+         */
+        public void persistGlobals(Update[] updates) throws Exception;
+    }
+
+    final private Store store;
+
+    /** Number of pending updates that triggers a write */
+    final private int batch_size;
+
+    /** Maximum time that an update waits before written [ms] */
+    final private long max_delay;
+
+    final private Thread thread;
+
+    /** Pending state updates by PV name. SYNC on this */
+    final private Map<String, Update> states = new LinkedHashMap<>();
+
+    /** Pending global updates by PV name. SYNC on this */
+    final private Map<String, Update> globals = new LinkedHashMap<>();
+
+    /** Minimum delay between retries of a failed write [ms] */
+    final private static long RETRY_DELAY = 1000;
+
+    /** Time when pending updates need to be written [ms]. SYNC on this */
+    private long due = 0;
+
+    /** Is the last write being retried, so 'batch_size' must not trigger a write? SYNC on this */
+    private boolean retrying = false;
+
+    /** Should the thread keep running? SYNC on this */
+    private boolean running = true;
+
+    /** Metrics. SYNC on this */
+    private long persisted = 0, coalesced = 0, last_commit = 0, max_commit = 0;
+
+    /** Initialize and start the thread
+     *  @param store Store that performs the actual RDB writes
+     *  @param batch_size Number of pending updates that triggers a write
+     *  @param max_delay Maximum time that an update waits before written [seconds]
+     */
+    public AlarmStatePersister(final Store store, final int batch_size, final double max_delay)
+    {
+        this.store = store;
+        this.batch_size = Math.max(1, batch_size);
+        this.max_delay = Math.max(0, Math.round(max_delay * 1000));
+        thread = new Thread(this::run, "AlarmStatePersister");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** @param updates State updates to persist */
+    public void queueStates(final Update[] updates)
+    {
+        queue(false, updates);
+    }
+
+    /** @param updates Global updates to persist */
+    public void queueGlobals(final Update[] updates)
+    {
+        queue(true, updates);
+    }
+
+    /** @param global Queue global updates, or state updates?
+     *  @param updates Updates to add
+     */
+    private synchronized void queue(final boolean global, final Update[] updates)
+    {
+        if (updates.length <= 0)
+            return;
+        if (states.isEmpty()  &&  globals.isEmpty())
+            due = System.currentTimeMillis() + max_delay;
+        final Map<String, Update> pending = global ? globals : states;
+        for (Update update : updates)
+            if (pending.put(update.pv.getName(), update) != null)
+                ++coalesced;
+        notifyAll();
+    }
+
+    /** Queue updates of a failed write again
+     *
+     *  <p>Updates that have meanwhile been replaced by a newer
+     *  update of the same PV are dropped.
+     *  The write is retried once 'max_delay' expires.
+     *
+     *  @param global Global updates, or state updates?
+     *  @param updates Updates that could not be written
+     */
+    private synchronized void requeue(final boolean global, final Update[] updates)
+    {
+        final Map<String, Update> pending = global ? globals : states;
+        // Failed updates are older than pending ones, so keep them in front
+        final Map<String, Update> merged = new LinkedHashMap<>();
+        for (Update update : updates)
+            merged.put(update.pv.getName(), update);
+        for (Update update : pending.values())
+            if (merged.put(update.pv.getName(), update) != null)
+                ++coalesced;
+        pending.clear();
+        pending.putAll(merged);
+        due = System.currentTimeMillis() + Math.max(max_delay, RETRY_DELAY);
+        retrying = true;
+    }
+
+    /** @return Number of pending updates */
+    public synchronized int getQueueSize()
+    {
+        return states.size() + globals.size();
+    }
+
+    /** @return Number of updates that have been written */
+    public synchronized long getPersistedCount()
+    {
+        return persisted;
+    }
+
+    /** @return Number of updates that were replaced by a newer update of the same PV before written */
+    public synchronized long getCoalescedCount()
+    {
+        return coalesced;
+    }
+
+    /** @return Duration of the last write [ms] */
+    public synchronized long getLastCommitMillis()
+    {
+        return last_commit;
+    }
+
+    /** @return Longest duration of a write [ms] */
+    public synchronized long getMaxCommitMillis()
+    {
+        return max_commit;
+    }
+
+    /** Stop the thread after writing pending updates
+     *  @param seconds Time to wait for pending updates to be written
+     */
+    public void shutdown(final long seconds)
+    {
+        synchronized (this)
+        {
+            running = false;
+            notifyAll();
+        }
+        try
+        {
+            thread.join(TimeUnit.SECONDS.toMillis(seconds));
+        }
+        catch (InterruptedException ex)
+        {
+            // Ignore, shutting down anyway
+        }
+    }
+
+    /** Thread runnable */
+    private void run()
+    {
+        while (true)
+        {
+            final Update[] state_batch, global_batch;
+            synchronized (this)
+            {
+                try
+                {
+                    while (running  &&  getQueueSize() <= 0)
+                        wait();
+                    // Wait for a full batch or until the oldest update is due
+                    long remaining = due - System.currentTimeMillis();
+                    while (running  &&  (retrying  ||  getQueueSize() < batch_size)  &&  remaining > 0)
+                    {
+                        wait(remaining);
+                        remaining = due - System.currentTimeMillis();
+                    }
+                }
+                catch (InterruptedException ex)
+                {
+                    running = false;
+                }
+                if (getQueueSize() <= 0)
+                {
+                    if (running)
+                        continue;
+                    return;
+                }
+                state_batch = states.values().toArray(new Update[states.size()]);
+                global_batch = globals.values().toArray(new Update[globals.size()]);
+                states.clear();
+                globals.clear();
+                retrying = false;
+            }
+
+            final long start = System.nanoTime();
+            int written = 0;
+            if (state_batch.length > 0)
+                written += persist(false, state_batch);
+            if (global_batch.length > 0)
+                written += persist(true, global_batch);
+            final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            synchronized (this)
+            {
+                persisted += written;
+                last_commit = millis;
+                max_commit = Math.max(max_commit, millis);
+            }
+        }
+    }
+
+    /** Write a batch, re-queue it on error
+     *  @param global Global updates, or state updates?
+     *  @param batch Updates to write
+     *  @return Number of updates written
+     */
+    private int persist(final boolean global, final Update[] batch)
+    {
+        try
+        {
+            if (global)
+                store.persistGlobals(batch);
+            else
+                store.persistStates(batch);
+            return batch.length;
+        }
+        catch (Throwable ex)
+        {
+            synchronized (this)
+            {
+                // When shutting down, don't keep retrying
+                if (! running)
+                {
+                    Activator.getLogger().log(Level.SEVERE,
+                        "Error persisting " + batch.length + " alarm updates on shutdown", ex);
+                    return 0;
+                }
+                Activator.getLogger().log(Level.WARNING,
+                    "Error persisting " + batch.length + " alarm updates, will retry", ex);
+                requeue(global, batch);
+            }
+            return 0;
+        }
+    }
+}
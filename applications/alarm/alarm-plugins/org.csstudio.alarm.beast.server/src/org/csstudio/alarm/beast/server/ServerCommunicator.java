@@ -9,20 +9,25 @@ package org.csstudio.alarm.beast.server;
 
 import java.net.InetAddress;
 import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.logging.Level;
 
+import javax.jms.BytesMessage;
 import javax.jms.MapMessage;
 import javax.jms.Message;
 import javax.jms.MessageConsumer;
 import javax.jms.MessageListener;
 import javax.jms.MessageProducer;
 
+import org.csstudio.alarm.beast.JMSAlarmBatch;
 import org.csstudio.alarm.beast.JMSAlarmMessage;
 import org.csstudio.alarm.beast.JMSCommunicationWorkQueueThread;
 import org.csstudio.alarm.beast.Preferences;
 import org.csstudio.alarm.beast.SeverityLevel;
 import org.csstudio.alarm.beast.TimeoutTimer;
 import org.csstudio.alarm.beast.WorkQueue;
+import org.csstudio.alarm.beast.server.AlarmServer.Update;
 import org.csstudio.logging.JMSLogMessage;
 
 /** Communicates alarm system updates between server and clients.
@@ -35,6 +40,9 @@ public class ServerCommunicator extends JMSCommunicationWorkQueueThread
     /** TYPE identifier used for talk messages */
     private static final String TYPE_TALK = "talk";
 
+    /** Maximum number of updates in one batch message */
+    private static final int MAX_BATCH_UPDATES = 10000;
+
     /** Server for which we communicate */
     final private AlarmServer server;
 
@@ -53,6 +61,9 @@ public class ServerCommunicator extends JMSCommunicationWorkQueueThread
     /** User for messages. Updated with authenticated user */
     final private String user = System.getProperty("user.name"); //$NON-NLS-1$
 
+    /** Messages used to send state updates */
+    final private JMSAlarmBatch.Mode update_mode = Preferences.getJMS_UpdateMessages();
+
     // Note on synchronization:
     //
     // Access to the producer is within the JMSCommunicationThread
@@ -62,6 +73,9 @@ public class ServerCommunicator extends JMSCommunicationWorkQueueThread
     /** Producer for sending to the 'server' topic */
     private MessageProducer server_producer;
 
+    /** Producer for sending to the 'server batch' topic, <code>null</code> when not used */
+    private MessageProducer batch_producer;
+
     /** Producer for sending to the 'talk' topic */
     private MessageProducer talk_producer;
 
@@ -120,6 +134,8 @@ public class ServerCommunicator extends JMSCommunicationWorkQueueThread
         }
 
         server_producer = createProducer(Preferences.getJMS_AlarmServerTopic(root_name));
+        if (update_mode != JMSAlarmBatch.Mode.MAP)
+            batch_producer = createProducer(Preferences.getJMS_AlarmServerBatchTopic(root_name));
         talk_producer = createProducer(Preferences.getJMS_TalkTopic(root_name));
         global_producer = createProducer(Preferences.getJMS_GlobalServerTopic());
         client_consumer = createConsumer(Preferences.getJMS_AlarmClientTopic(root_name));
@@ -146,6 +162,11 @@ public class ServerCommunicator extends JMSCommunicationWorkQueueThread
         global_producer = null;
         talk_producer.close();
         talk_producer = null;
+        if (batch_producer != null)
+        {
+            batch_producer.close();
+            batch_producer = null;
+        }
         server_producer.close();
         server_producer = null;
     }
@@ -253,6 +274,78 @@ public class ServerCommunicator extends JMSCommunicationWorkQueueThread
         idle_timer.reset();
     }
 
+    /** Notify clients of new alarm states.
+     *
+     *  <p>Depending on the preferences, sends one message per update
+     *  and/or batch messages that only contain the latest update of each PV.
+     *
+     *  @param updates Updates, oldest first
+     */
+    protected void sendStateUpdates(final Update[] updates)
+    {
+        if (updates.length <= 0)
+            return;
+        if (update_mode != JMSAlarmBatch.Mode.BATCH)
+            for (Update u : updates)
+                sendStateUpdate(u.pv, u.currentSeverity, u.currentMessage,
+                                u.alarmSeverity, u.alarmMessage, u.value, u.timestamp);
+        if (update_mode != JMSAlarmBatch.Mode.MAP)
+            sendStateBatch(updates);
+    }
+
+    /** Notify clients of new alarm states in batch messages
+     *  @param updates Updates, oldest first
+     */
+    private void sendStateBatch(final Update[] updates)
+    {
+        // Only the latest update of each PV
+        final Map<String, Update> latest = new LinkedHashMap<>(updates.length * 4 / 3 + 1);
+        for (Update u : updates)
+            latest.put(u.pv.getName(), u);
+        execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    final boolean maintenance = AlarmLogic.getMaintenanceMode();
+                    JMSAlarmBatch.Writer batch = new JMSAlarmBatch.Writer(maintenance);
+                    for (Update u : latest.values())
+                    {
+                        batch.add(u.pv.getName(), u.currentSeverity, u.currentMessage,
+                                  u.alarmSeverity, u.alarmMessage, u.value, u.timestamp);
+                        if (batch.size() >= MAX_BATCH_UPDATES)
+                        {
+                            sendBatch(batch);
+                            batch = new JMSAlarmBatch.Writer(maintenance);
+                        }
+                    }
+                    if (batch.size() > 0)
+                        sendBatch(batch);
+                }
+                catch (Exception ex)
+                {
+                    Activator.getLogger().log(Level.WARNING, "Cannot send state update batch", ex);
+                }
+            }
+        });
+        idle_timer.reset();
+    }
+
+    /** @param batch Batch to send
+     *  @throws Exception on error
+     */
+    private void sendBatch(final JMSAlarmBatch.Writer batch) throws Exception
+    {
+        final BytesMessage message = createBytesMessage();
+        message.setStringProperty(JMSLogMessage.TYPE, JMSAlarmMessage.TYPE_ALARM);
+        message.setStringProperty(JMSAlarmMessage.CONFIG, server.getRootName());
+        message.setStringProperty(JMSLogMessage.TEXT, JMSAlarmMessage.TEXT_STATE_BATCH);
+        message.writeBytes(batch.toByteArray());
+        batch_producer.send(message);
+    }
+
     /** Notify clients of new alarm state.
      *  @param pv PV that changes alarm state
      *  @param current_severity Current severity of the PV
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.alarm.beast;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/** JUnit test of the {@link JMSAlarmBatch}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class JMSAlarmBatchUnitTest
+{
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        final Instant start = Instant.ofEpochSecond(1466000000L, 123456789);
+        final JMSAlarmBatch.Writer writer = new JMSAlarmBatch.Writer(true);
+        for (int i=0; i<1000; ++i)
+            writer.add("PV" + (i % 100),
+                       SeverityLevel.MAJOR, "HIHI_ALARM",
+                       SeverityLevel.MAJOR_ACK, "HIHI_ALARM",
+                       i % 10 == 0 ? null : Integer.toString(i),
+                       // Time stamps are not always increasing
+                       start.plusMillis(i % 2 == 0 ? i : -i));
+        assertEquals(1000, writer.size());
+        final byte[] data = writer.toByteArray();
+        System.out.println("1000 updates in " + data.length + " bytes");
+
+        final List<String> names = new ArrayList<>();
+        final List<String> values = new ArrayList<>();
+        final List<Instant> times = new ArrayList<>();
+        final boolean maintenance = JMSAlarmBatch.read(data,
+            (name, current_severity, current_message, severity, message, value, timestamp) ->
+            {
+                assertEquals(SeverityLevel.MAJOR, current_severity);
+                assertEquals("HIHI_ALARM", current_message);
+                assertEquals(SeverityLevel.MAJOR_ACK, severity);
+                assertEquals("HIHI_ALARM", message);
+                names.add(name);
+                values.add(value);
+                times.add(timestamp);
+            });
+        assertTrue(maintenance);
+        assertEquals(1000, names.size());
+        for (int i=0; i<1000; ++i)
+        {
+            assertEquals("PV" + (i % 100), names.get(i));
+            if (i % 10 == 0)
+                assertNull(values.get(i));
+            else
+                assertEquals(Integer.toString(i), values.get(i));
+            assertEquals(start.plusMillis(i % 2 == 0 ? i : -i), times.get(i));
+        }
+    }
+
+    @Test
+    public void testEmpty() throws Exception
+    {
+        final byte[] data = new JMSAlarmBatch.Writer(false).toByteArray();
+        final List<String> names = new ArrayList<>();
+        assertFalse(JMSAlarmBatch.read(data,
+            (name, current_severity, current_message, severity, message, value, timestamp) -> names.add(name)));
+        assertEquals(0, names.size());
+    }
+
+    @Test(expected=Exception.class)
+    public void testTruncated() throws Exception
+    {
+        final JMSAlarmBatch.Writer writer = new JMSAlarmBatch.Writer(false);
+        writer.add("PV", SeverityLevel.OK, "", SeverityLevel.OK, "", "1", Instant.now());
+        final byte[] data = writer.toByteArray();
+        JMSAlarmBatch.read(Arrays.copyOf(data, data.length - 2),
+            (name, current_severity, current_message, severity, message, value, timestamp) -> {});
+    }
+}
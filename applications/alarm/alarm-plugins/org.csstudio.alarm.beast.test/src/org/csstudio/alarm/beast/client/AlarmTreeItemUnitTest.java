@@ -117,4 +117,74 @@ public class AlarmTreeItemUnitTest
         System.out.println("Total tree element count: " + tree.getElementCount());
         assertEquals(11, tree.getElementCount());
     }
+
+    @Test
+    public void testSeverityCounts() throws Exception
+    {
+        // Root
+        //    Area
+        //       One: PV1, PV2
+        //       Two: PV3
+        final AlarmTreeRoot tree = new AlarmTreeRoot("Root", 0);
+        final AlarmTreeItem area = new AlarmTreeItem(tree, "Area", 0);
+        final AlarmTreeItem one = new AlarmTreeItem(area, "One", 0);
+        final AlarmTreeItem two = new AlarmTreeItem(area, "Two", 0);
+        final AlarmTreePV pv1 = new AlarmTreePV(one, "PV1", 0);
+        final AlarmTreePV pv2 = new AlarmTreePV(one, "PV2", 0);
+        final AlarmTreePV pv3 = new AlarmTreePV(two, "PV3", 0);
+
+        assertEquals(SeverityLevel.OK, tree.getSeverity());
+        assertEquals(0, tree.getSeverityCount(SeverityLevel.MAJOR));
+
+        pv1.setAlarmState(SeverityLevel.MINOR, "Low", SeverityLevel.MINOR, "Low", "1", Instant.now());
+        pv2.setAlarmState(SeverityLevel.MAJOR, "LoLo", SeverityLevel.MAJOR, "LoLo", "0", Instant.now());
+        pv3.setAlarmState(SeverityLevel.MAJOR, "HiHi", SeverityLevel.MAJOR, "HiHi", "9", Instant.now());
+        assertEquals(1, tree.getSeverityCount(SeverityLevel.MINOR));
+        assertEquals(2, tree.getSeverityCount(SeverityLevel.MAJOR));
+        assertEquals(2, area.getCurrentSeverityCount(SeverityLevel.MAJOR));
+        assertEquals(1, one.getSeverityCount(SeverityLevel.MAJOR));
+        assertEquals(0, one.getSeverityCount(SeverityLevel.OK));
+        assertEquals(1, pv3.getSeverityCount(SeverityLevel.MAJOR));
+        assertEquals(SeverityLevel.MAJOR, tree.getSeverity());
+        assertEquals(2, area.getAlarmChildCount());
+        assertEquals(2, one.getAlarmChildCount());
+        // Message remains from the first item that reached MAJOR
+        assertEquals("LoLo", tree.getMessage());
+
+        // Acknowledged: MAJOR from PV3 is now the highest
+        pv2.setAlarmState(SeverityLevel.MAJOR, "LoLo", SeverityLevel.MAJOR_ACK, "LoLo", "0", Instant.now());
+        assertEquals(1, tree.getSeverityCount(SeverityLevel.MAJOR));
+        assertEquals(1, tree.getSeverityCount(SeverityLevel.MAJOR_ACK));
+        assertEquals(SeverityLevel.MAJOR, tree.getSeverity());
+        assertEquals("HiHi", tree.getMessage());
+        // Active MINOR is 'higher' than acknowledged MAJOR
+        assertEquals(SeverityLevel.MINOR, one.getSeverity());
+        assertEquals("Low", one.getMessage());
+
+        // Clear
+        pv3.setAlarmState(SeverityLevel.OK, "OK", SeverityLevel.OK, "OK", "5", Instant.now());
+        assertEquals(0, tree.getSeverityCount(SeverityLevel.MAJOR));
+        assertEquals(SeverityLevel.MINOR, tree.getSeverity());
+        assertEquals("Low", tree.getMessage());
+        assertEquals(SeverityLevel.MAJOR, tree.getCurrentSeverity());
+        assertEquals(1, area.getAlarmChildCount());
+        assertEquals(SeverityLevel.OK, two.getSeverity());
+
+        // Disabling a PV re-computes the counts
+        pv2.setEnabled(false);
+        one.maximizeSeverity();
+        assertEquals(0, tree.getSeverityCount(SeverityLevel.MAJOR_ACK));
+        assertEquals(SeverityLevel.MINOR, tree.getCurrentSeverity());
+        assertEquals(1, tree.getDisabledChildCount());
+        // Update of disabled PV does not affect counts
+        pv2.setAlarmState(SeverityLevel.INVALID, "Disconnected", SeverityLevel.INVALID, "Disconnected", "", Instant.now());
+        assertEquals(0, tree.getSeverityCount(SeverityLevel.INVALID));
+        assertEquals(SeverityLevel.MINOR, tree.getSeverity());
+
+        // Removing a PV re-computes the counts
+        pv1.detachFromParent();
+        assertEquals(0, tree.getSeverityCount(SeverityLevel.MINOR));
+        assertEquals(SeverityLevel.OK, tree.getSeverity());
+        assertEquals(0, area.getAlarmChildCount());
+    }
 }
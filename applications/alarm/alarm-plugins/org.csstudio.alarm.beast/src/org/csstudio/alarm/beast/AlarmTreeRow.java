@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.alarm.beast;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.csstudio.platform.utility.rdb.RDBUtil;
+
+/** One row of the alarm tree as read from RDB: Component or PV.
+ *
+ *  <p>Decouples reading the RDB from creating the alarm tree,
+ *  which allows fetching the alarm tree with one query per tree level
+ *  and then assembling it in memory.
+ *  Values that are NULL in the RDB are <code>null</code>.
+ *
+ *  <p>The rows are read from the RDB on each start.
+ *  Caching them in a local snapshot would require a configuration
+ *  version in the ALARM_TREE schema, updated by every configuration
+ *  change, to detect a stale snapshot. That is not implemented.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class AlarmTreeRow
+{
+    /** Number of rows to fetch per network round trip */
+    final private static int FETCH_SIZE = 1000;
+
+    final public int id;
+    final public String name;
+    final public Timestamp config_time;
+    /** <code>true</code> for PV, <code>false</code> for component. Remaining fields only apply to PVs. */
+    final public boolean is_pv;
+    final public String description;
+    final public Boolean enabled;
+    final public Boolean annunciate;
+    final public Boolean latch;
+    final public int delay;
+    final public int count;
+    final public String filter;
+    final public Integer current_severity_id;
+    final public Integer current_status_id;
+    final public Integer severity_id;
+    final public Integer status_id;
+    final public String value;
+    final public Timestamp time;
+
+    /** Initialize from result of {@link SQL#sel_items_by_parent} or similar
+     *  @param result ResultSet positioned on a row
+     *  @param name Name of the item
+     *  @throws Exception on error
+     */
+    public AlarmTreeRow(final ResultSet result, final String name) throws Exception
+    {
+        id = result.getInt(1);
+        if (result.wasNull())
+            throw new Exception("NULL component ID");
+        if (name == null)
+            throw new Exception("NULL component Name");
+        this.name = name;
+        config_time = result.getTimestamp(2);
+        // Check PV's ID. If null, this is a component, not PV
+        final int pv_id = result.getInt(3);
+        is_pv = !result.wasNull();
+        if (is_pv  &&  pv_id != id)
+            throw new Exception("Internal RDB error: Item '" + name + "' as ID " + id + " but also PV ID " + pv_id);
+        description = result.getString(4);
+        enabled = getBoolean(result, 5);
+        annunciate = getBoolean(result, 6);
+        latch = getBoolean(result, 7);
+        delay = result.getInt(8);
+        count = result.getInt(9);
+        filter = result.getString(10);
+        current_severity_id = getInteger(result, 11);
+        current_status_id = getInteger(result, 12);
+        severity_id = getInteger(result, 13);
+        status_id = getInteger(result, 14);
+        value = result.getString(15);
+        time = result.getTimestamp(16);
+    }
+
+    private static Boolean getBoolean(final ResultSet result, final int column) throws SQLException
+    {
+        final boolean value = result.getBoolean(column);
+        return result.wasNull() ? null : value;
+    }
+
+    private static Integer getInteger(final ResultSet result, final int column) throws SQLException
+    {
+        final int value = result.getInt(column);
+        return result.wasNull() ? null : value;
+    }
+
+    /** Read all components and PVs of a configuration
+     *
+     *  <p>Reads the tree level by level, with one query per level
+     *  (and per {@link SQL#MAX_IDS} components on that level).
+     *  The alarm tree can then be assembled
+     *  by starting at its root and recursively looking up the child rows.
+     *
+     *  @param rdb RDB
+     *  @param sql SQL statements
+     *  @param root_id ID of the configuration root
+     *  @return Map of parent ID to child rows, sorted by ID within each parent
+     *  @throws Exception on error
+     */
+    public static Map<Integer, List<AlarmTreeRow>> readByParent(final RDBUtil rdb, final SQL sql,
+                                                               final int root_id) throws Exception
+    {
+        final Map<Integer, List<AlarmTreeRow>> rows = new HashMap<>();
+        List<Integer> parents = Arrays.asList(root_id);
+        while (! parents.isEmpty())
+        {
+            final List<Integer> children = new ArrayList<>();
+            for (int start=0; start<parents.size(); start += SQL.MAX_IDS)
+            {
+                final List<Integer> ids = parents.subList(start, Math.min(parents.size(), start + SQL.MAX_IDS));
+                final PreparedStatement statement =
+                    rdb.getConnection().prepareStatement(SQL.withIDs(sql.sel_items_by_parents, ids.size()));
+                try
+                {
+                    statement.setFetchSize(FETCH_SIZE);
+                    for (int i=0; i<ids.size(); ++i)
+                        statement.setInt(i+1, ids.get(i));
+                    final ResultSet result = statement.executeQuery();
+                    while (result.next())
+                    {
+                        final AlarmTreeRow row = new AlarmTreeRow(result, result.getString(17));
+                        final int parent_id = result.getInt(18);
+                        List<AlarmTreeRow> siblings = rows.get(parent_id);
+                        if (siblings == null)
+                        {
+                            siblings = new ArrayList<>();
+                            rows.put(parent_id, siblings);
+                        }
+                        siblings.add(row);
+                        // Only components have child items
+                        if (! row.is_pv)
+                            children.add(row.id);
+                    }
+                    result.close();
+                }
+                finally
+                {
+                    statement.close();
+                }
+            }
+            parents = children;
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,301 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.alarm.beast;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Binary encoding of many alarm state updates in one JMS message.
+ *
+ *  <p>Instead of one JMS MapMessage per PV state change,
+ *  the alarm server can send the updates of one batch period
+ *  as a single BytesMessage on the
+ *  {@link Preferences#getJMS_AlarmServerBatchTopic(String)}.
+ *
+ *  <p>Each string (PV name, messages, value) is stored once per batch
+ *  and then referenced by its index.
+ *  Time stamps are stored as the difference to the previous update.
+ *
+ *  <p>Format, where 'varint' is an unsigned LEB128 number
+ *  and 'zigzag' a signed number mapped onto a varint:
+ *  <pre>
+ *  byte    VERSION
+ *  byte    flags, bit 0 set for maintenance mode
+ *  varint  N, number of strings
+ *  N times: varint length, UTF-8 bytes
+ *  varint  M, number of updates
+ *  long    epoch seconds of base time
+ *  varint  nanoseconds of base time
+ *  M times:
+ *     varint name index (1..N; 0 for null)
+ *     byte   current severity ordinal
+ *     varint current message index
+ *     byte   alarm severity ordinal
+ *     varint alarm message index
+ *     varint value index
+ *     zigzag nanoseconds since time of previous update (or base time)
+ *  </pre>
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class JMSAlarmBatch
+{
+    /** Version of the encoding */
+    final public static byte VERSION = 1;
+
+    /** Which messages the alarm server sends for state updates */
+    public enum Mode
+    {
+        /** One MapMessage per update, understood by all clients */
+        MAP,
+        /** Batched updates on the batch topic, only for clients that opted in */
+        BATCH,
+        /** Both, allowing for a transition from older to newer clients */
+        BOTH
+    }
+
+    /** Receives the updates of a batch */
+    public interface Handler
+    {
+        /** @param name PV name
+         *  @param current_severity Current severity of the PV
+         *  @param current_message Current message of the PV
+         *  @param severity Alarm severity
+         *  @param message Alarm message
+         *  @param value Value that triggered update, may be <code>null</code>
+         *  @param timestamp Time stamp for alarm severity/status
+         */
+        public void update(String name,
+                SeverityLevel current_severity, String current_message,
+                SeverityLevel severity, String message,
+                String value, Instant timestamp);
+    }
+
+    /** Assembles a batch */
+    public static class Writer
+    {
+        private final boolean maintenance;
+        private final Map<String, Integer> string_index = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+        private final ByteArrayOutputStream updates = new ByteArrayOutputStream();
+        private int count = 0;
+        private Instant base = null;
+        private long last_nanos = 0;
+
+        /** @param maintenance Is the server in maintenance mode? */
+        public Writer(final boolean maintenance)
+        {
+            this.maintenance = maintenance;
+        }
+
+        /** @return Number of updates in batch */
+        public int size()
+        {
+            return count;
+        }
+
+        /** Add an update
+         *  @param name PV name
+         *  @param current_severity Current severity of the PV
+         *  @param current_message Current message of the PV
+         *  @param severity Alarm severity
+         *  @param message Alarm message
+         *  @param value Value that triggered update, may be <code>null</code>
+         *  @param timestamp Time stamp for alarm severity/status
+         */
+        public void add(final String name,
+                final SeverityLevel current_severity, final String current_message,
+                final SeverityLevel severity, final String message,
+                final String value, final Instant timestamp)
+        {
+            if (base == null)
+                base = timestamp;
+            writeVarLong(updates, intern(name));
+            updates.write(current_severity.ordinal());
+            writeVarLong(updates, intern(current_message));
+            updates.write(severity.ordinal());
+            writeVarLong(updates, intern(message));
+            writeVarLong(updates, intern(value));
+            final long nanos = nanosSinceBase(base, timestamp);
+            writeZigZag(updates, nanos - last_nanos);
+            last_nanos = nanos;
+            ++count;
+        }
+
+        /** @param text String, may be <code>null</code>
+         *  @return Index of string, 0 for <code>null</code>
+         */
+        private int intern(final String text)
+        {
+            if (text == null)
+                return 0;
+            Integer index = string_index.get(text);
+            if (index == null)
+            {
+                strings.add(text);
+                index = strings.size();
+                string_index.put(text, index);
+            }
+            return index;
+        }
+
+        /** @return Encoded batch */
+        public byte[] toByteArray()
+        {
+            final ByteArrayOutputStream buf = new ByteArrayOutputStream(updates.size() + 32*strings.size() + 32);
+            buf.write(VERSION);
+            buf.write(maintenance ? 1 : 0);
+            writeVarLong(buf, strings.size());
+            for (String text : strings)
+            {
+                final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                writeVarLong(buf, bytes.length);
+                buf.write(bytes, 0, bytes.length);
+            }
+            writeVarLong(buf, count);
+            final Instant safe_base = base == null ? Instant.EPOCH : base;
+            final long seconds = safe_base.getEpochSecond();
+            for (int shift=56; shift>=0; shift-=8)
+                buf.write((int) (seconds >>> shift));
+            writeVarLong(buf, safe_base.getNano());
+            final byte[] body = updates.toByteArray();
+            buf.write(body, 0, body.length);
+            return buf.toByteArray();
+        }
+    }
+
+    /** Decode a batch
+     *  @param data Encoded batch
+     *  @param handler Handler that is invoked for each update
+     *  @return <code>true</code> if the server was in maintenance mode
+     *  @throws Exception on error in data
+     */
+    public static boolean read(final byte[] data, final Handler handler) throws Exception
+    {
+        final Reader in = new Reader(data);
+        final int version = in.readByte();
+        if (version != VERSION)
+            throw new Exception("Unknown alarm batch version " + version);
+        final boolean maintenance = (in.readByte() & 1) != 0;
+        final int N = (int) in.readVarLong();
+        final String[] strings = new String[N+1];
+        for (int i=1; i<=N; ++i)
+            strings[i] = in.readString((int) in.readVarLong());
+        final int M = (int) in.readVarLong();
+        final long seconds = in.readLong();
+        final Instant base = Instant.ofEpochSecond(seconds, in.readVarLong());
+        final SeverityLevel[] levels = SeverityLevel.values();
+        long nanos = 0;
+        for (int i=0; i<M; ++i)
+        {
+            final String name = strings[(int) in.readVarLong()];
+            final SeverityLevel current_severity = levels[in.readByte()];
+            final String current_message = strings[(int) in.readVarLong()];
+            final SeverityLevel severity = levels[in.readByte()];
+            final String message = strings[(int) in.readVarLong()];
+            final String value = strings[(int) in.readVarLong()];
+            nanos += in.readZigZag();
+            handler.update(name, current_severity, current_message,
+                           severity, message, value, base.plusNanos(nanos));
+        }
+        return maintenance;
+    }
+
+    /** @param base Base time
+     *  @param time Time
+     *  @return Nanoseconds from base to time
+     */
+    private static long nanosSinceBase(final Instant base, final Instant time)
+    {
+        return (time.getEpochSecond() - base.getEpochSecond()) * 1000000000L
+             + (time.getNano() - base.getNano());
+    }
+
+    /** @param buf Buffer
+     *  @param value Unsigned value to write as LEB128
+     */
+    private static void writeVarLong(final ByteArrayOutputStream buf, long value)
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            buf.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buf.write((int) value);
+    }
+
+    /** @param buf Buffer
+     *  @param value Signed value to write
+     */
+    private static void writeZigZag(final ByteArrayOutputStream buf, final long value)
+    {
+        writeVarLong(buf, (value << 1) ^ (value >> 63));
+    }
+
+    /** Reads from byte array */
+    private static class Reader
+    {
+        private final byte[] data;
+        private int pos = 0;
+
+        Reader(final byte[] data)
+        {
+            this.data = data;
+        }
+
+        int readByte() throws EOFException
+        {
+            if (pos >= data.length)
+                throw new EOFException("Alarm batch is truncated");
+            return data[pos++] & 0xFF;
+        }
+
+        long readLong() throws EOFException
+        {
+            long value = 0;
+            for (int i=0; i<8; ++i)
+                value = (value << 8) | readByte();
+            return value;
+        }
+
+        long readVarLong() throws EOFException
+        {
+            long value = 0;
+            for (int shift=0; shift<64; shift+=7)
+            {
+                final int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+            throw new EOFException("Invalid number in alarm batch");
+        }
+
+        long readZigZag() throws EOFException
+        {
+            final long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        String readString(final int length) throws EOFException
+        {
+            if (length < 0  ||  pos + length > data.length)
+                throw new EOFException("Alarm batch is truncated");
+            final String text = new String(data, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return text;
+        }
+    }
+}
@@ -65,6 +65,12 @@ public class JMSAlarmMessage
      */
     final public static String TEXT_STATE_MAINTENANCE = "STATE_MAINTENANCE";
 
+    /** Value for TEXT that indicates a batch of state changes.
+     *  Used as a property of the BytesMessage,
+     *  the message body is encoded as described in {@link JMSAlarmBatch}
+     */
+    final public static String TEXT_STATE_BATCH = "STATE_BATCH";
+
     /** Value for TEXT that indicates a configuration change.
      *  NAME will contain path to item that was added, removed,
      *  reconfigured, or null for an overall change.
@@ -40,6 +40,8 @@ public class Preferences
     final public static String JMS_USER = "jms_user";
     final public static String JMS_PASSWORD = "jms_password";
     final public static String JMS_IDLE_TIMEOUT = "jms_idle_timeout";
+    final public static String JMS_UPDATE_MESSAGES = "jms_update_messages";
+    final public static String JMS_RECEIVE_BATCH = "jms_receive_batch";
     final public static String PV_START_DELAY = "pv_start_delay";
     final public static String CONNECTION_GRACE_PERIOD = "connection_grace_period";
     final public static String COMMAND_DIRECTORY = "command_directory";
@@ -60,6 +62,7 @@ public class Preferences
     final private static String SERVER_SUFFIX = "_SERVER";
     final private static String CLIENT_SUFFIX = "_CLIENT";
     final private static String TALK_SUFFIX = "_TALK";
+    final private static String BATCH_SUFFIX = "_BATCH";
 
 
     /** @param setting Preference identifier
@@ -159,6 +162,15 @@ public class Preferences
         return config + SERVER_SUFFIX;
     }
 
+    /** @param config Alarm configuration name (root)
+     *  @return JMS topic used for batched alarm updates from server
+     *  @see JMSAlarmBatch
+     */
+    public static String getJMS_AlarmServerBatchTopic(final String config)
+    {
+        return config + SERVER_SUFFIX + BATCH_SUFFIX;
+    }
+
     /** @param config Alarm configuration name (root)
      *  @return JMS topic used for alarm messages form clients
      */
@@ -188,6 +200,30 @@ public class Preferences
         return service.getLong(Activator.ID, JMS_IDLE_TIMEOUT, 10, null);
     }
 
+    /** @return Messages used by the alarm server to send state updates */
+    public static JMSAlarmBatch.Mode getJMS_UpdateMessages()
+    {
+        final String mode = getString(JMS_UPDATE_MESSAGES, JMSAlarmBatch.Mode.MAP.name());
+        try
+        {
+            return JMSAlarmBatch.Mode.valueOf(mode.trim().toUpperCase());
+        }
+        catch (IllegalArgumentException ex)
+        {
+            Activator.getLogger().log(Level.WARNING, "Invalid " + JMS_UPDATE_MESSAGES + " '" + mode + "', using MAP");
+            return JMSAlarmBatch.Mode.MAP;
+        }
+    }
+
+    /** @return <code>true</code> if client should receive batched state updates */
+    public static boolean isJMS_ReceiveBatch()
+    {
+        final IPreferencesService service = Platform.getPreferencesService();
+        if (service == null)
+            return false;
+        return service.getBoolean(Activator.ID, JMS_RECEIVE_BATCH, false, null);
+    }
+
     /** @return Delay in ms between PV startups */
     public static long getPVStartDelay()
     {
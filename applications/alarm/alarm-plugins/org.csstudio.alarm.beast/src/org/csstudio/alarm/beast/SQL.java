@@ -18,6 +18,9 @@ import org.csstudio.platform.utility.rdb.RDBUtil.Dialect;
 @SuppressWarnings("nls")
 public class SQL
 {
+    /** Maximum number of IDs in one 'IN (...)' list. Oracle allows at most 1000 */
+    final public static int MAX_IDS = 1000;
+
     /** Schema prefix. Required for SNS Oracle. Set to "" for MySQL */
     final public String schema_prefix;
 
@@ -29,6 +32,11 @@ public class SQL
     final public String sel_commands_by_id;
     final public String sel_auto_actions_by_id;
     final public String sel_items_by_parent;
+    final public String sel_items_by_parents;
+    final public String sel_guidance_by_ids;
+    final public String sel_displays_by_ids;
+    final public String sel_commands_by_ids;
+    final public String sel_auto_actions_by_ids;
     final public String sel_item_by_parent_and_name;
     final public String sel_last_item_id;
     final public String insert_item;
@@ -119,6 +127,39 @@ public class SQL
             " LEFT JOIN " + schema_prefix + "PV p ON p.COMPONENT_ID = t.COMPONENT_ID" +
             " WHERE t.PARENT_CMPNT_ID=? ORDER BY t.COMPONENT_ID";
 
+        // Selects all components and PVs below a list of parents,
+        // to read the alarm tree with one query per tree level
+        // instead of one query per component.
+        // "%s" is replaced with the placeholders for the parent IDs, see withIDs().
+        // Columns 1..17 must match sel_items_by_parent.
+        sel_items_by_parents =
+            //        1               2
+            "SELECT t.COMPONENT_ID, t.CONFIG_TIME," +
+            //  3               4        5              6
+            " p.COMPONENT_ID, p.DESCR, p.ENABLED_IND, p.ANNUNCIATE_IND," +
+            //  7            8        9              10        11
+            " p.LATCH_IND, p.DELAY, p.DELAY_COUNT, p.FILTER, p.CUR_SEVERITY_ID," +
+            //  12               13             14           15          16
+            " p.CUR_STATUS_ID, p.SEVERITY_ID, p.STATUS_ID, p.PV_VALUE, p.ALARM_TIME," +
+            //  17      18
+            " t.NAME, t.PARENT_CMPNT_ID" +
+            " FROM " + schema_prefix + "ALARM_TREE t" +
+            " LEFT JOIN " + schema_prefix + "PV p ON p.COMPONENT_ID = t.COMPONENT_ID" +
+            " WHERE t.PARENT_CMPNT_ID IN (%s) ORDER BY t.COMPONENT_ID";
+        // GUI info of a list of items
+        sel_guidance_by_ids =
+            "select COMPONENT_ID, TITLE, DETAIL FROM " + schema_prefix + "GUIDANCE" +
+            " WHERE COMPONENT_ID IN (%s) ORDER BY COMPONENT_ID, GUIDANCE_ORDER";
+        sel_displays_by_ids =
+            "select COMPONENT_ID, TITLE, DETAIL FROM " + schema_prefix + "DISPLAY" +
+            " WHERE COMPONENT_ID IN (%s) ORDER BY COMPONENT_ID, DISPLAY_ORDER";
+        sel_commands_by_ids =
+            "select COMPONENT_ID, TITLE, DETAIL FROM " + schema_prefix + "COMMAND" +
+            " WHERE COMPONENT_ID IN (%s) ORDER BY COMPONENT_ID, COMMAND_ORDER";
+        sel_auto_actions_by_ids =
+            "select COMPONENT_ID, TITLE, DETAIL, DELAY FROM " + schema_prefix + "AUTOMATED_ACTION" +
+            " WHERE COMPONENT_ID IN (%s) ORDER BY COMPONENT_ID, AUTO_ACTION_ORDER";
+
         // Selects component or PV by parent ID and name. For PV, all the p.* columns are null.
         // Columns must match sel_items_by_parent except for the t.NAME that's not in here!
         sel_item_by_parent_and_name =
@@ -210,4 +251,16 @@ public class SQL
         insert_severity =
             "INSERT INTO " + schema_prefix + "SEVERITY(SEVERITY_ID, NAME) VALUES (?,?)";
     }
+
+    /** @param query Query with "%s" for a list of IDs, for example {@link #sel_guidance_by_ids}
+     *  @param count Number of IDs, at most {@link #MAX_IDS}
+     *  @return Query with <code>count</code> placeholders for the IDs
+     */
+    public static String withIDs(final String query, final int count)
+    {
+        final StringBuilder ids = new StringBuilder("?");
+        for (int i=1; i<count; ++i)
+            ids.append(",?");
+        return String.format(query, ids.toString());
+    }
 }
@@ -177,9 +177,20 @@ public class TreeItem implements Serializable
             parent = null;
         }
         p.removeChild(this);
+        p.childRemoved(this);
         return true;
     }
 
+    /** Invoked after a child item was detached.
+     *  Derived classes can override to update information
+     *  that they keep about their children.
+     *  @param child Item that was removed
+     */
+    protected void childRemoved(final TreeItem child)
+    {
+        // NOP
+    }
+
     /** Remove child
      *  @param child
      *  @throws Error if child not known
@@ -18,11 +18,13 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 import org.csstudio.alarm.beast.Activator;
 import org.csstudio.alarm.beast.AlarmTreePath;
+import org.csstudio.alarm.beast.AlarmTreeRow;
 import org.csstudio.alarm.beast.Messages;
 import org.csstudio.alarm.beast.SQL;
 import org.csstudio.alarm.beast.TimestampHelper;
@@ -73,7 +75,7 @@ public class AlarmConfiguration
     private HashMap<String, AlarmTreePV> pvs = new HashMap<String, AlarmTreePV>();
 
     /** Re-used statements */
-    private PreparedStatement sel_items_by_parent_statement, sel_pv_by_id_statement;
+    private PreparedStatement sel_pv_by_id_statement;
 
 
     /** Initialize
@@ -246,8 +248,13 @@ public class AlarmConfiguration
             }
             final int id = result.getInt(1);
             final AlarmTreeRoot root = createAlarmTreeRoot(id, root_name);
-            config_reader.readGuidanceDisplaysCommands(root);
-            readChildren(root, monitor, monitor_update_delay);
+            // Fetch items with one query per tree level, assemble tree in memory,
+            // then fetch GUI info for all items with one query per type
+            final Map<Integer, List<AlarmTreeRow>> rows = AlarmTreeRow.readByParent(rdb, sql, id);
+            final Map<Integer, AlarmTreeItem> items = new HashMap<Integer, AlarmTreeItem>();
+            items.put(id, root);
+            createChildren(root, rows, items, monitor, monitor_update_delay);
+            config_reader.readAllGuidanceDisplaysCommands(items);
             return root;
         }
         finally
@@ -257,60 +264,48 @@ public class AlarmConfiguration
         }
     }
 
-    /** Read configuration for child elements
+    /** Create child elements
      *  @param parent Parent node. Children get added to it.
+     *  @param rows Rows of all alarm tree items, by parent ID
+     *  @param items Map of ID to item, updated with the new child elements
      *  @param monitor Progress monitor
      *  @param monitor_update_delay Delay for updates to monitor
      *  @throws Exception on error
      */
-    private void readChildren(final AlarmTreeItem parent,
+    private void createChildren(final AlarmTreeItem parent,
+            final Map<Integer, List<AlarmTreeRow>> rows,
+            final Map<Integer, AlarmTreeItem> items,
             final IProgressMonitor monitor, final DelayCheck monitor_update_delay) throws Exception
     {
-        if (sel_items_by_parent_statement == null)
-            sel_items_by_parent_statement =
-                rdb.getConnection().prepareStatement(sql.sel_items_by_parent);
-        sel_items_by_parent_statement.setInt(1, parent.getID());
-        final ResultSet result = sel_items_by_parent_statement.executeQuery();
-
-        final List<AlarmTreeItem> recurse_items = new ArrayList<AlarmTreeItem>();
-        while (result.next()  &&  !monitor.isCanceled())
+        final List<AlarmTreeRow> children = rows.get(parent.getID());
+        if (children == null)
+            return;
+        for (AlarmTreeRow row : children)
         {
-            final int id = result.getInt(1);
-            final String name = result.getString(17);
-            final Timestamp config_time = result.getTimestamp(2);
+            if (monitor.isCanceled())
+                return;
             final AlarmTreeItem item;
-            // Check PV's ID. If null, this is a component, not PV
-            result.getInt(3);
-            if (result.wasNull())
-            {   // Component (area, system), not a PV
-                item = new AlarmTreeItem(parent, name, id);
-                recurse_items.add(item);
-            }
-            else
+            if (row.is_pv)
             {
-                final AlarmTreePV pv = new AlarmTreePV(parent, name, id);
-                pvs.put(name, pv);
+                final AlarmTreePV pv = new AlarmTreePV(parent, row.name, row.id);
+                pvs.put(row.name, pv);
                 // Periodically update progress monitor
                 if (monitor_update_delay.expired())
                 {
                     final int count = pvs.size();
                     monitor.subTask(NLS.bind(Messages.ReadConfigProgressFmt, count));
                 }
-                config_reader.configurePVfromResult(pv, result, severity_mapping, message_mapping);
+                config_reader.configurePVfromRow(pv, row, severity_mapping, message_mapping);
                 item = pv;
             }
-            if (config_time != null)
-                item.setConfigTime(TimestampHelper.toEPICSTime(config_time));
-            config_reader.readGuidanceDisplaysCommands(item);
-        }
-        result.close();
-
-        // Recurse to children
-        // Cannot do that inside the above while() because that would reuse
-        // the statement of the current ResultSet
-        for (AlarmTreeItem item : recurse_items)
-            readChildren(item, monitor, monitor_update_delay);
-        recurse_items.clear();
+            else // Component (area, system), not a PV
+                item = new AlarmTreeItem(parent, row.name, row.id);
+            if (row.config_time != null)
+                item.setConfigTime(TimestampHelper.toEPICSTime(row.config_time));
+            items.put(row.id, item);
+            if (! row.is_pv)
+                createChildren(item, rows, items, monitor, monitor_update_delay);
+        }
     }
 
     /** Add a component to the model and RDB
@@ -954,11 +949,6 @@ public class AlarmConfiguration
     {
         try
         {
-            if (sel_items_by_parent_statement != null)
-            {
-                sel_items_by_parent_statement.close();
-                sel_items_by_parent_statement = null;
-            }
             if (sel_pv_by_id_statement != null)
             {
                 sel_pv_by_id_statement.close();
@@ -13,11 +13,14 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 
 import org.csstudio.alarm.beast.Activator;
 import org.csstudio.alarm.beast.AlarmTreePath;
+import org.csstudio.alarm.beast.AlarmTreeRow;
 import org.csstudio.alarm.beast.SQL;
 import org.csstudio.alarm.beast.SeverityLevel;
 import org.csstudio.alarm.beast.TimestampHelper;
@@ -29,6 +32,9 @@ import org.csstudio.platform.utility.rdb.RDBUtil;
 @SuppressWarnings("nls")
 public class AlarmConfigurationReader
 {
+    /** Number of rows to fetch per network round trip when reading all items */
+    final private static int FETCH_SIZE = 1000;
+
     /** RDB Connection */
     final private RDBUtil rdb;
 
@@ -204,6 +210,129 @@ public class AlarmConfigurationReader
         return aaList.toArray(new AADataStructure[aaList.size()]);
     }
 
+    /** Handler for one row of a query result */
+    private interface RowHandler
+    {
+        /** @param result ResultSet positioned on a row
+         *  @throws Exception on error
+         */
+        public void handle(ResultSet result) throws Exception;
+    }
+
+    /** Execute query for a list of item IDs
+     *  @param query Query with "%s" for the list of IDs
+     *  @param ids Item IDs, queried in chunks of {@link SQL#MAX_IDS}
+     *  @param handler Called for each row of the result
+     *  @throws Exception on error
+     */
+    private void queryByIDs(final String query, final List<Integer> ids, final RowHandler handler) throws Exception
+    {
+        for (int start=0; start<ids.size(); start += SQL.MAX_IDS)
+        {
+            final List<Integer> chunk = ids.subList(start, Math.min(ids.size(), start + SQL.MAX_IDS));
+            final PreparedStatement statement =
+                rdb.getConnection().prepareStatement(SQL.withIDs(query, chunk.size()));
+            try
+            {
+                statement.setFetchSize(FETCH_SIZE);
+                for (int i=0; i<chunk.size(); ++i)
+                    statement.setInt(i+1, chunk.get(i));
+                final ResultSet result = statement.executeQuery();
+                while (result.next())
+                    handler.handle(result);
+                result.close();
+            }
+            finally
+            {
+                statement.close();
+            }
+        }
+    }
+
+    /** Read guidance, displays or commands of many items
+     *  @param query Query for list of IDs that returns ID, title, detail ordered by ID
+     *  @param ids Item IDs
+     *  @return Map of item ID to guidance, displays or commands
+     *  @throws Exception on error
+     */
+    private Map<Integer, List<GDCDataStructure>> readAllGDC(final String query, final List<Integer> ids) throws Exception
+    {
+        final Map<Integer, List<GDCDataStructure>> gdc = new HashMap<>();
+        queryByIDs(query, ids, result ->
+        {
+            final int id = result.getInt(1);
+            List<GDCDataStructure> list = gdc.get(id);
+            if (list == null)
+            {
+                list = new ArrayList<>();
+                gdc.put(id, list);
+            }
+            list.add(new GDCDataStructure(result.getString(2), result.getString(3)));
+        });
+        return gdc;
+    }
+
+    /** Read automated actions of many items
+     *  @param ids Item IDs
+     *  @return Map of item ID to automated actions
+     *  @throws Exception on error
+     */
+    private Map<Integer, List<AADataStructure>> readAllAutomatedActions(final List<Integer> ids) throws Exception
+    {
+        final Map<Integer, List<AADataStructure>> actions = new HashMap<>();
+        queryByIDs(sql.sel_auto_actions_by_ids, ids, result ->
+        {
+            final int id = result.getInt(1);
+            List<AADataStructure> list = actions.get(id);
+            if (list == null)
+            {
+                list = new ArrayList<>();
+                actions.put(id, list);
+            }
+            list.add(new AADataStructure(result.getString(2), result.getString(3), result.getInt(4)));
+        });
+        return actions;
+    }
+
+    /** Read GUI info (guidance, displays, commands, automated actions)
+     *  for many items.
+     *
+     *  <p>Uses one query per type of information (and per {@link SQL#MAX_IDS} items)
+     *  instead of one query per item and type as {@link #readGuidanceDisplaysCommands(AlarmTreeItem)}
+     *
+     *  @param items Items to update with GUI info, by ID
+     *  @throws Exception on error
+     */
+    public void readAllGuidanceDisplaysCommands(final Map<Integer, AlarmTreeItem> items) throws Exception
+    {
+        final List<Integer> ids = new ArrayList<>(items.keySet());
+        final Map<Integer, List<GDCDataStructure>> guidance = readAllGDC(sql.sel_guidance_by_ids, ids);
+        final Map<Integer, List<GDCDataStructure>> displays = readAllGDC(sql.sel_displays_by_ids, ids);
+        final Map<Integer, List<GDCDataStructure>> commands = readAllGDC(sql.sel_commands_by_ids, ids);
+        final Map<Integer, List<AADataStructure>> actions = readAllAutomatedActions(ids);
+        for (AlarmTreeItem item : items.values())
+        {
+            final Integer id = item.getID();
+            item.setGuidance(toArray(guidance.get(id)));
+            item.setDisplays(toArray(displays.get(id)));
+            item.setCommands(toArray(commands.get(id)));
+            final List<AADataStructure> aa = actions.get(id);
+            item.setAutomatedActions(aa == null
+                    ? new AADataStructure[0]
+                    : aa.toArray(new AADataStructure[aa.size()]));
+        }
+    }
+
+    /** @param list List of guidance, displays or commands, may be <code>null</code>
+     *  @return Array, never <code>null</code>
+     */
+    private static GDCDataStructure[] toArray(final List<GDCDataStructure> list)
+    {
+        if (list == null)
+            return new GDCDataStructure[0];
+        return list.toArray(new GDCDataStructure[list.size()]);
+    }
+
     /** Read GUI info (guidance, displays, commands)
      *  @param item Item to update with GUI info
      *  @throws Exception on error
@@ -340,43 +469,53 @@ public class AlarmConfigurationReader
             final ResultSet result, final SeverityReader severity_mapping,
             final MessageReader message_mapping) throws Exception
     {
-        pv.setDescription(result.getString(4));
-        pv.setEnabled(result.getBoolean(5));
-        pv.setAnnunciating(result.getBoolean(6));
-        pv.setLatching(result.getBoolean(7));
-        pv.setDelay(result.getInt(8));
-        pv.setCount(result.getInt(9));
-        pv.setFilter(result.getString(10));
+        configurePVfromRow(pv, new AlarmTreeRow(result, pv.getName()),
+                           severity_mapping, message_mapping);
+    }
+
+    /** Configure a PV from RDB row
+     *  @param pv PV to configure
+     *  @param row {@link AlarmTreeRow} with PV info
+     *  @param severity_mapping
+     *  @param message_mapping
+     *  @throws Exception on error
+     */
+    public void configurePVfromRow(final AlarmTreePV pv,
+            final AlarmTreeRow row, final SeverityReader severity_mapping,
+            final MessageReader message_mapping) throws Exception
+    {
+        pv.setDescription(row.description);
+        pv.setEnabled(Boolean.TRUE.equals(row.enabled));
+        pv.setAnnunciating(Boolean.TRUE.equals(row.annunciate));
+        pv.setLatching(Boolean.TRUE.equals(row.latch));
+        pv.setDelay(row.delay);
+        pv.setCount(row.count);
+        pv.setFilter(row.filter);
 
         // If there is severity/status info, use it.
         // Otherwise leave PV "OK" as it was initialized.
-        int severity_id = result.getInt(11);
-        final SeverityLevel current_severity = result.wasNull()
+        final SeverityLevel current_severity = row.current_severity_id == null
             ? SeverityLevel.OK
-            : severity_mapping.getSeverity(severity_id);
+            : severity_mapping.getSeverity(row.current_severity_id);
 
         // Current message was added later, so assume "" if not set
-        int status_id = result.getInt(12);
-        final String current_message = result.wasNull()
+        final String current_message = row.current_status_id == null
             ? ""
-            : message_mapping.getMessage(status_id);
+            : message_mapping.getMessage(row.current_status_id);
 
-        severity_id = result.getInt(13);
-        final SeverityLevel severity = result.wasNull()
+        final SeverityLevel severity = row.severity_id == null
             ? SeverityLevel.OK
-            : severity_mapping.getSeverity(severity_id);
+            : severity_mapping.getSeverity(row.severity_id);
 
-        status_id = result.getInt(14);
-        final String message =  result.wasNull()
+        final String message = row.status_id == null
             ? ""
-            : message_mapping.getMessage(status_id);
+            : message_mapping.getMessage(row.status_id);
 
-        final String value = result.getString(15); // OK to have null value
-        final Timestamp sql_time = result.getTimestamp(16);
-        if (!result.wasNull())
+        // OK to have null value
+        if (row.time != null)
         {
-            final Instant timestamp = TimestampHelper.toEPICSTime(sql_time);
-            pv.setAlarmState(current_severity, current_message, severity, message, value, timestamp);
+            final Instant timestamp = TimestampHelper.toEPICSTime(row.time);
+            pv.setAlarmState(current_severity, current_message, severity, message, row.value, timestamp);
         }
     }
 }
@@ -10,10 +10,12 @@ package org.csstudio.alarm.beast.client;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import org.csstudio.alarm.beast.Messages;
 import org.csstudio.alarm.beast.SeverityLevel;
@@ -31,6 +33,14 @@ import org.eclipse.osgi.util.NLS;
  *  <li>Many {@link AlarmTreeItem} entries to build the hierarchy
  *  <li>Finally {@link AlarmTreePV} entries as leaves
  *  </ul>
+ *  <p>
+ *  Each item that is not a leaf keeps the number of PVs in its
+ *  subtree for each severity level.
+ *  When a PV changes its alarm state, these counts are adjusted
+ *  along the parent chain, and the severity of each item is the highest
+ *  level with a non-zero count.
+ *  Siblings of the PV or of its parents are not inspected.
+ *
  *  @see AlarmTreeRoot
  *  @see AlarmTreeComponent
  *  @see AlarmTreePV
@@ -41,8 +51,32 @@ public class AlarmTreeItem extends TreeItem
 {
     private static final long serialVersionUID = -8597126519675742036L;
 
+    /** All severity levels, ordered by <code>ordinal()</code> */
+    final private static SeverityLevel[] LEVELS = SeverityLevel.values();
+
     private volatile int disabled_children = 0;
 
+    /** Number of PVs in this subtree by current severity, indexed by ordinal.
+     *  PVs that are OK are not counted.
+     *  <code>null</code> for leaf items.
+     */
+    final private transient AtomicIntegerArray current_counts;
+
+    /** Number of PVs in this subtree by alarm severity, indexed by ordinal.
+     *  PVs that are OK are not counted.
+     *  <code>null</code> for leaf items.
+     */
+    final private transient AtomicIntegerArray severity_counts;
+
+    /** Child item that provides the message of this item, <code>null</code> when OK */
+    private transient AlarmTreeItem message_child = null;
+
+    /** Current severity that a leaf item has added to the counts of its parents */
+    private transient SeverityLevel counted_current_severity = SeverityLevel.OK;
+
+    /** Alarm severity that a leaf item has added to the counts of its parents */
+    private transient SeverityLevel counted_severity = SeverityLevel.OK;
+
     /** Sub-tree elements of this item which are currently in alarm */
     final private transient List<AlarmTreeItem> alarm_children = new CopyOnWriteArrayList<>();
 
@@ -81,6 +115,16 @@ public class AlarmTreeItem extends TreeItem
     public AlarmTreeItem(final AlarmTreeItem parent, final String name, final int id)
     {
         super(parent, name, id);
+        if (this instanceof AlarmTreeLeaf)
+        {
+            current_counts = null;
+            severity_counts = null;
+        }
+        else
+        {
+            current_counts = new AtomicIntegerArray(LEVELS.length);
+            severity_counts = new AtomicIntegerArray(LEVELS.length);
+        }
     }
 
     /** @return Text (multi-line) that can be used as a tool-tip to
@@ -267,6 +311,32 @@ public class AlarmTreeItem extends TreeItem
         return message;
     }
 
+    /** @param level Current severity level
+     *  @return Number of PVs in this subtree that have the given current severity.
+     *          PVs that are OK are not counted, so the result for OK is always 0.
+     */
+    public int getCurrentSeverityCount(final SeverityLevel level)
+    {
+        if (level == SeverityLevel.OK)
+            return 0;
+        if (current_counts == null)
+            return getCurrentSeverity() == level ? 1 : 0;
+        return current_counts.get(level.ordinal());
+    }
+
+    /** @param level Alarm severity level
+     *  @return Number of PVs in this subtree that have the given alarm severity.
+     *          PVs that are OK are not counted, so the result for OK is always 0.
+     */
+    public int getSeverityCount(final SeverityLevel level)
+    {
+        if (level == SeverityLevel.OK)
+            return 0;
+        if (severity_counts == null)
+            return getSeverity() == level ? 1 : 0;
+        return severity_counts.get(level.ordinal());
+    }
+
     /** Update alarm state of this item, maximize alarm tree severities.
      *
      *  Ends up maximizing severity of parent chain,
@@ -291,9 +361,129 @@ public class AlarmTreeItem extends TreeItem
         this.severity = severity;
         this.message = message;
         final AlarmTreeItem parent = getParent();
+        if (parent == null)
+            return ChangeLevel.PV;
+        // Replace what this item has so far added to the parent counts
+        // with the severities that are now in effect, which considers
+        // for example if a PV is disabled
+        final SeverityLevel old_counted_current = counted_current_severity;
+        final SeverityLevel old_counted = counted_severity;
+        counted_current_severity = getCurrentSeverity();
+        counted_severity = getSeverity();
+        return parent.updateSeverity(this, old_counted,
+                                     old_counted_current, old_counted,
+                                     counted_current_severity, counted_severity)
+               ? ChangeLevel.PV_AND_PARENT : ChangeLevel.PV;
+    }
+
+    /** Update severity/status of this item after the alarm state of one PV
+     *  in its subtree changed.
+     *  Recursively updates parent items, so caller must have locked the root.
+     *
+     *  @param child Child item through which the PV update arrived
+     *  @param child_old_severity Previous severity of that child item
+     *  @param old_current Previous current severity of the PV
+     *  @param old_severity Previous alarm severity of the PV
+     *  @param new_current New current severity of the PV
+     *  @param new_severity New alarm severity of the PV
+     *  @return <code>true</code> if the severity of this item or any of its parents changed
+     */
+    private synchronized boolean updateSeverity(final AlarmTreeItem child,
+            final SeverityLevel child_old_severity,
+            final SeverityLevel old_current, final SeverityLevel old_severity,
+            final SeverityLevel new_current, final SeverityLevel new_severity)
+    {
+        updateCount(current_counts, old_current, new_current);
+        updateCount(severity_counts, old_severity, new_severity);
+
+        // Track children in alarm
+        final SeverityLevel child_severity = child.getSeverity();
+        if (child_old_severity == SeverityLevel.OK  &&  child_severity != SeverityLevel.OK)
+            alarm_children.add(child);
+        else if (child_old_severity != SeverityLevel.OK  &&  child_severity == SeverityLevel.OK)
+            alarm_children.remove(child);
+
+        final SeverityLevel new_item_current = getMaximum(current_counts);
+        final SeverityLevel new_item_severity = getMaximum(severity_counts);
+        // Message is taken from a child that has the highest severity.
+        // Keep using the same child as long as possible.
+        final String new_message;
+        if (new_item_severity == SeverityLevel.OK)
+        {
+            message_child = null;
+            new_message = SeverityLevel.OK.getDisplayName();
+        }
+        else
+        {
+            if (message_child == null  ||  message_child.getSeverity() != new_item_severity)
+                message_child = child_severity == new_item_severity
+                              ? child : findChild(new_item_severity);
+            new_message = message_child.getMessage();
+        }
+
+        final SeverityLevel item_old_severity = severity;
+        final boolean changed = new_item_current != current_severity  ||
+                                new_item_severity != severity  ||
+                                !new_message.equals(message);
+        if (changed)
+        {
+            current_severity = new_item_current;
+            severity = new_item_severity;
+            message = new_message;
+        }
+
+        // Percolate changes towards root
+        final AlarmTreeItem parent = getParent();
         if (parent != null)
-            return parent.maximizeSeverity() ? ChangeLevel.PV_AND_PARENT : ChangeLevel.PV;
-        return ChangeLevel.PV;
+            return parent.updateSeverity(this, item_old_severity,
+                                         old_current, old_severity,
+                                         new_current, new_severity) || changed;
+        return changed;
+    }
+
+    /** @param counts Counts by severity
+     *  @param old_level Level to decrement
+     *  @param new_level Level to increment
+     */
+    private static void updateCount(final AtomicIntegerArray counts,
+                                    final SeverityLevel old_level, final SeverityLevel new_level)
+    {
+        if (old_level == new_level)
+            return;
+        if (old_level != SeverityLevel.OK)
+            counts.decrementAndGet(old_level.ordinal());
+        if (new_level != SeverityLevel.OK)
+            counts.incrementAndGet(new_level.ordinal());
+    }
+
+    /** @param counts Counts by severity
+     *  @return Highest severity with non-zero count
+     */
+    private static SeverityLevel getMaximum(final AtomicIntegerArray counts)
+    {
+        for (int i=LEVELS.length-1; i>0; --i)
+            if (counts.get(i) > 0)
+                return LEVELS[i];
+        return SeverityLevel.OK;
+    }
+
+    /** @param level Severity level
+     *  @return First child item with that severity
+     */
+    private AlarmTreeItem findChild(final SeverityLevel level)
+    {
+        for (AlarmTreeItem child : alarm_children)
+            if (child.getSeverity() == level)
+                return child;
+        // Children in alarm should include it, but check all children
+        final int n = getChildCount();
+        for (int i=0; i<n; ++i)
+        {
+            final AlarmTreeItem child = getChild(i);
+            if (child.getSeverity() == level)
+                return child;
+        }
+        throw new IllegalStateException("No child with severity " + level + " in " + getPathName()); //$NON-NLS-1$ //$NON-NLS-2$
     }
 
     /** Acknowledge or un-acknowledge current alarms.
@@ -325,6 +515,11 @@ public class AlarmTreeItem extends TreeItem
     /** Set severity/status of this item by maximizing over its child
      *  severities.
      *  Recursively updates parent items, so caller must have locked the root.
+     *  <p>
+     *  Re-computes the counts by severity from all child items.
+     *  Meant for configuration changes, for example when a PV
+     *  was disabled.
+     *  Updates of a PV's alarm state only adjust the counts.
      *
      *  @return <code>true</code> if the severity of this item or any of its parents changed after
      *          this method is executed, or <code>false</code> if the severity remained the same
@@ -336,12 +531,29 @@ public class AlarmTreeItem extends TreeItem
         SeverityLevel new_current_severity = SeverityLevel.OK;
         SeverityLevel new_severity = SeverityLevel.OK;
         String new_message = SeverityLevel.OK.getDisplayName();
-        alarm_children.clear();
+        final int new_current_counts[] = new int[LEVELS.length];
+        final int new_severity_counts[] = new int[LEVELS.length];
+        final List<AlarmTreeItem> new_alarm_children = new ArrayList<>();
+        message_child = null;
         disabled_children = 0;
         final int n = getChildCount();
         for (int i=0; i<n; ++i)
         {
             final AlarmTreeItem child = getChild(i);
+            // Sum counts
+            if (child.severity_counts == null)
+            {   // Leaf adds its own severity
+                child.counted_current_severity = child.getCurrentSeverity();
+                child.counted_severity = child.getSeverity();
+                ++new_current_counts[child.counted_current_severity.ordinal()];
+                ++new_severity_counts[child.counted_severity.ordinal()];
+            }
+            else
+                for (int l=1; l<LEVELS.length; ++l)
+                {
+                    new_current_counts[l] += child.current_counts.get(l);
+                    new_severity_counts[l] += child.severity_counts.get(l);
+                }
             // Maximize 'current' severity
             if (child.getCurrentSeverity().ordinal() > new_current_severity.ordinal())
                 new_current_severity = child.getCurrentSeverity();
@@ -349,11 +561,12 @@ public class AlarmTreeItem extends TreeItem
             final SeverityLevel child_sevr = child.getSeverity();
             final int level = child_sevr.ordinal();
             if (level > 0)
-                alarm_children.add(child);
+                new_alarm_children.add(child);
             if (level > new_severity.ordinal())
             {
                 new_severity = child_sevr;
                 new_message = child.getMessage();
+                message_child = child;
             }
             if (child instanceof AlarmTreePV)
             {
@@ -363,6 +576,14 @@ public class AlarmTreeItem extends TreeItem
             else
                 disabled_children += child.getDisabledChildCount();
         }
+        // OK is not counted
+        for (int l=1; l<LEVELS.length; ++l)
+        {
+            current_counts.set(l, new_current_counts[l]);
+            severity_counts.set(l, new_severity_counts[l]);
+        }
+        alarm_children.clear();
+        alarm_children.addAll(new_alarm_children);
 
         if (new_current_severity != current_severity  ||
             new_severity != severity  ||
@@ -381,6 +602,18 @@ public class AlarmTreeItem extends TreeItem
         return changed;
     }
 
+    /** Re-compute severities after a child item was removed
+     *  {@inheritDoc}
+     */
+    @Override
+    protected void childRemoved(final TreeItem child)
+    {
+        synchronized (super.getRoot())
+        {
+            maximizeSeverity();
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     @SuppressWarnings("nls")
@@ -12,8 +12,11 @@ import java.sql.Date;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 
+import javax.jms.BytesMessage;
 import javax.jms.MapMessage;
 import javax.jms.Message;
 import javax.jms.MessageConsumer;
@@ -22,6 +25,7 @@ import javax.jms.MessageProducer;
 import javax.security.auth.Subject;
 
 import org.csstudio.alarm.beast.Activator;
+import org.csstudio.alarm.beast.JMSAlarmBatch;
 import org.csstudio.alarm.beast.JMSAlarmMessage;
 import org.csstudio.alarm.beast.JMSCommunicationWorkQueueThread;
 import org.csstudio.alarm.beast.Preferences;
@@ -39,6 +43,9 @@ import org.csstudio.security.SecuritySupport;
  *  <p>
  *  Then it is switched to "Dispatch" mode, first sending the queued
  *  events, and from then on directly dispatching received events.
+ *  <p>
+ *  When enabled in the preferences, it also receives batched state updates.
+ *  Once the first batch arrives, individual state update messages are ignored.
  *
  *  @author Kay Kasemir
  */
@@ -77,6 +84,30 @@ class AlarmClientCommunicator extends JMSCommunicationWorkQueueThread
         }
     }
 
+    /** Action to update the state of several PVs */
+    private class BatchUpdateAction implements Runnable
+    {
+        final private List<AlarmUpdateInfo> infos;
+
+        public BatchUpdateAction(final List<AlarmUpdateInfo> infos)
+        {
+            this.infos = infos;
+        }
+
+        @Override
+        public void run()
+        {
+            for (AlarmUpdateInfo info : infos)
+                model.updatePV(info);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Update " + infos.size() + " PVs";
+        }
+    }
+
     /** Action to enable/disable a PV */
     private class EnableAction implements Runnable
     {
@@ -132,6 +163,21 @@ class AlarmClientCommunicator extends JMSCommunicationWorkQueueThread
     /** JMS consumer for messages from server to client */
     private MessageConsumer server_consumer;
 
+    /** JMS consumer for batched updates from server to client, <code>null</code> when not used */
+    private MessageConsumer batch_consumer;
+
+    /** Time when the last batch was received [ms], 0 if none.
+     *  While batches are received, individual state updates are ignored.
+     *  @see #isReceivingBatches()
+     */
+    private volatile long last_batch = 0;
+
+    /** Time after which individual state updates are used again
+     *  when no more batches are received [ms].
+     *  Using the same period as the server timeout.
+     */
+    final private long batch_timeout = Preferences.getJMS_IdleTimeout() * 2000;
+
     /** Host for messages */
     final private String host = InetAddress.getLocalHost().getHostName();
 
@@ -155,6 +201,8 @@ class AlarmClientCommunicator extends JMSCommunicationWorkQueueThread
     protected void createProducersAndConsumers() throws Exception
     {
         final String configuration = model.getConfigurationName();
+        // Server might no longer send batches after re-connecting
+        last_batch = 0;
         // Write (if allowed) and also read the client topic
         if (model.isWriteAllowed())
             client_producer = createProducer(Preferences.getJMS_AlarmClientTopic(configuration));
@@ -179,6 +227,26 @@ class AlarmClientCommunicator extends JMSCommunicationWorkQueueThread
         };
         client_consumer.setMessageListener(message_listener);
         server_consumer.setMessageListener(message_listener);
+
+        // Batched state updates?
+        if (Preferences.isJMS_ReceiveBatch())
+        {
+            batch_consumer = createConsumer(Preferences.getJMS_AlarmServerBatchTopic(configuration));
+            batch_consumer.setMessageListener(new MessageListener()
+            {
+                @Override
+                public void onMessage(final Message message)
+                {
+                    if (message instanceof BytesMessage)
+                        handleBatchMessage((BytesMessage) message);
+                    else
+                        Activator.getLogger().log(Level.WARNING,
+                                "Message type {0} not handled", message.getClass().getName());
+                }
+            });
+        }
+        else
+            batch_consumer = null;
     }
 
     // JMSCommunicationThread
@@ -186,6 +254,11 @@ class AlarmClientCommunicator extends JMSCommunicationWorkQueueThread
     protected void closeProducersAndConsumers() throws Exception
     {
         timeout_timer.cancel();
+        if (batch_consumer != null)
+        {
+            batch_consumer.close();
+            batch_consumer = null;
+        }
         server_consumer.close();
         server_consumer = null;
         client_consumer.close();
@@ -371,13 +444,15 @@ class AlarmClientCommunicator extends JMSCommunicationWorkQueueThread
             {
                 // Received a state update from server, reset timeout
                 timeout_timer.reset();
-                action = new UpdateAction(AlarmUpdateInfo.fromMapMessage(message,date_format));
+                if (! isReceivingBatches())
+                    action = new UpdateAction(AlarmUpdateInfo.fromMapMessage(message,date_format));
                 model.updateServerState(false);
             }
             else if (JMSAlarmMessage.TEXT_STATE_MAINTENANCE.equals(text))
             {
                 timeout_timer.reset();
-                action = new UpdateAction(AlarmUpdateInfo.fromMapMessage(message,date_format));
+                if (! isReceivingBatches())
+                    action = new UpdateAction(AlarmUpdateInfo.fromMapMessage(message,date_format));
                 model.updateServerState(true);
             }
             // Idle messages in absence of 'real' traffic?
@@ -416,21 +491,61 @@ class AlarmClientCommunicator extends JMSCommunicationWorkQueueThread
 
             if (action == null)
                 return;
-            // Queue or dispatch?
-            synchronized (queue)
-            {
-                if (use_queue)
-                {
-                    queue.execute(action);
-                    return;
-                }
-            }
-            // else: Not using queue, and queue no longer locked
-            action.run();
+            dispatch(action);
         }
         catch (Throwable ex)
         {
             Activator.getLogger().log(Level.SEVERE, "Message handler error", ex);
         }
     }
+
+    /** @return <code>true</code> if a batch has been received recently,
+     *          so individual state updates are redundant
+     */
+    private boolean isReceivingBatches()
+    {
+        // When the server stopped sending batches, use individual updates again
+        final long last = last_batch;
+        return last > 0  &&  System.currentTimeMillis() - last < batch_timeout;
+    }
+
+    /** Invoked for received batch messages */
+    private void handleBatchMessage(final BytesMessage message)
+    {
+        try
+        {
+            final byte[] data = new byte[(int) message.getBodyLength()];
+            message.readBytes(data);
+            final List<AlarmUpdateInfo> infos = new ArrayList<>();
+            final boolean maintenance = JMSAlarmBatch.read(data,
+                (name, current_severity, current_message, severity, status, value, timestamp) ->
+                    infos.add(new AlarmUpdateInfo(name, current_severity, current_message,
+                                                  severity, status, value, timestamp)));
+            last_batch = System.currentTimeMillis();
+            timeout_timer.reset();
+            model.updateServerState(maintenance);
+            dispatch(new BatchUpdateAction(infos));
+        }
+        catch (Throwable ex)
+        {
+            Activator.getLogger().log(Level.SEVERE, "Batch message handler error", ex);
+        }
+    }
+
+    /** Queue or directly perform action
+     *  @param action Action to perform
+     */
+    private void dispatch(final Runnable action)
+    {
+        synchronized (queue)
+        {
+            if (use_queue)
+            {
+                queue.execute(action);
+                return;
+            }
+        }
+        // else: Not using queue, and queue no longer locked
+        action.run();
+    }
 }
@@ -79,22 +79,16 @@ public class BeastMessagePayload {
     }
 
     /**
-     * A helper function to recursively count the number of AlarmTreePVs under this AlarmTreeItem
+     * A helper function to count the number of AlarmTreePVs under this AlarmTreeItem
      * that have an active alarm.
      * @param item AlarmTreeItem for which to count PVs in alarm (can be an instance of AlarmTreePV)
      * @return Count of children AlarmTreePVs that are in an active alarm state
      */
     private int countAlarmPVs(AlarmTreeItem item) {
         int count = 0;
-        if (item instanceof AlarmTreePV) {
-            count = (item.getSeverity() != SeverityLevel.OK ? 1 : 0);
-        } else {
-            int children = item.getAlarmChildCount();
-            for (int i=0; i<children; i++) {
-                count += countAlarmPVs(item.getAlarmChild(i));
-            }
+        for (SeverityLevel level : SeverityLevel.values()) {
+            count += item.getSeverityCount(level);
         }
-
         return count;
     }
 
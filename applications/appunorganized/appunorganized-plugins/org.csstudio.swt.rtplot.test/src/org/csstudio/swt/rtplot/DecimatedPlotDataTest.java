@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.swt.rtplot;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.csstudio.swt.rtplot.data.ArrayPlotDataProvider;
+import org.csstudio.swt.rtplot.data.PlotDataItem;
+import org.csstudio.swt.rtplot.data.PlotDataProvider;
+import org.csstudio.swt.rtplot.data.SimpleDataItem;
+import org.csstudio.swt.rtplot.internal.DecimatedPlotData;
+import org.csstudio.swt.rtplot.internal.util.LinearScreenTransform;
+import org.junit.Test;
+
+/** JUnit test of the {@link DecimatedPlotData}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class DecimatedPlotDataTest
+{
+    /** @return Minimum and maximum value of data */
+    private double[] getRange(final PlotDataProvider<Double> data)
+    {
+        double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+        for (int i=0; i<data.size(); ++i)
+        {
+            min = Math.min(min, data.get(i).getValue());
+            max = Math.max(max, data.get(i).getValue());
+        }
+        return new double[] { min, max };
+    }
+
+    @Test
+    public void testDecimation()
+    {
+        // 100000 samples over 100 pixel columns
+        final ArrayPlotDataProvider<Double> data = new ArrayPlotDataProvider<>();
+        for (int i=0; i<100000; ++i)
+            data.add(new SimpleDataItem<Double>(i/1000.0, Math.sin(i/100.0) + (i == 55555 ? 10.0 : 0.0)));
+        final LinearScreenTransform x_transform = new LinearScreenTransform();
+        x_transform.config(0.0, 100.0, 0, 100);
+
+        final DecimatedPlotData<Double> decimated = new DecimatedPlotData<>();
+        assertTrue(decimated.update(data, x_transform, 100));
+        System.out.println("Decimated " + data.size() + " samples to " + decimated.size());
+        assertTrue(decimated.size() <= 100 * 7);
+
+        // Keeps first, last, and extremes
+        assertThat(decimated.get(0), equalTo(data.get(0)));
+        assertThat(decimated.get(decimated.size()-1), equalTo(data.get(data.size()-1)));
+        assertThat(getRange(decimated), equalTo(getRange(data)));
+
+        // Positions remain in order
+        for (int i=1; i<decimated.size(); ++i)
+            assertTrue(decimated.get(i-1).getPosition() < decimated.get(i).getPosition());
+    }
+
+    @Test
+    public void testAppend()
+    {
+        final ArrayPlotDataProvider<Double> data = new ArrayPlotDataProvider<>();
+        for (int i=0; i<1000; ++i)
+            data.add(new SimpleDataItem<Double>(i/100.0, i % 10));
+        final LinearScreenTransform x_transform = new LinearScreenTransform();
+        x_transform.config(0.0, 20.0, 0, 20);
+
+        final DecimatedPlotData<Double> decimated = new DecimatedPlotData<>();
+        assertTrue(decimated.update(data, x_transform, 20));
+        final int initial = decimated.size();
+
+        // Scroll axis and add samples, including one with a gap
+        for (int i=1000; i<1500; ++i)
+            data.add(new SimpleDataItem<Double>(i/100.0, i == 1234 ? Double.NaN : i % 10));
+        x_transform.config(5.0, 25.0, 0, 20);
+        assertTrue(decimated.update(data, x_transform, 20));
+        assertTrue(decimated.size() > initial);
+
+        // Same result as decimating all samples
+        final DecimatedPlotData<Double> all = new DecimatedPlotData<>();
+        assertTrue(all.update(data, x_transform, 20));
+        assertThat(decimated.size(), equalTo(all.size()));
+        for (int i=0; i<all.size(); ++i)
+            assertThat(decimated.get(i), equalTo(all.get(i)));
+        boolean gap = false;
+        for (int i=0; i<all.size(); ++i)
+            gap |= Double.isNaN(all.get(i).getValue());
+        assertTrue(gap);
+    }
+
+    @Test
+    public void testRingBuffer()
+    {
+        // Spikes in first column and second column
+        final List<PlotDataItem<Double>> items = new ArrayList<>();
+        final ArrayPlotDataProvider<Double> data = new ArrayPlotDataProvider<>(items);
+        for (int i=0; i<1000; ++i)
+            data.add(new SimpleDataItem<Double>(i/100.0, i == 10 ? 100.0 : (i == 150 ? -100.0 : i % 10)));
+        final LinearScreenTransform x_transform = new LinearScreenTransform();
+        x_transform.config(0.0, 20.0, 0, 20);
+
+        final DecimatedPlotData<Double> decimated = new DecimatedPlotData<>();
+        assertTrue(decimated.update(data, x_transform, 20));
+        assertThat(getRange(decimated), equalTo(new double[] { -100.0, 100.0 }));
+
+        // Ring buffer drops oldest samples as new ones are added,
+        // leaving part of the second column
+        for (int i=1000; i<1120; ++i)
+        {
+            items.remove(0);
+            data.add(new SimpleDataItem<Double>(i/100.0, i % 10));
+        }
+        assertTrue(decimated.update(data, x_transform, 20));
+
+        // Spike in first column is gone, remaining samples of second column are used
+        assertThat(getRange(decimated), equalTo(getRange(data)));
+        assertThat(getRange(decimated), equalTo(new double[] { -100.0, 9.0 }));
+        assertThat(decimated.get(0), equalTo(data.get(0)));
+        assertThat(decimated.get(decimated.size()-1), equalTo(data.get(data.size()-1)));
+        for (int i=1; i<decimated.size(); ++i)
+            assertTrue(decimated.get(i-1).getPosition() < decimated.get(i).getPosition());
+
+        // Following columns match the result of decimating the complete data.
+        // Both use columns that start at the original first sample
+        final List<PlotDataItem<Double>> all_items = new ArrayList<>(items);
+        all_items.add(0, new SimpleDataItem<Double>(0.0, 0.0));
+        final DecimatedPlotData<Double> all = new DecimatedPlotData<>();
+        assertTrue(all.update(new ArrayPlotDataProvider<>(all_items), x_transform, 20));
+        int a = 0;
+        while (all.get(a).getPosition() < 2.0)
+            ++a;
+        int d = 0;
+        while (decimated.get(d).getPosition() < 2.0)
+            ++d;
+        assertThat(decimated.size() - d, equalTo(all.size() - a));
+        for (; d<decimated.size(); ++d, ++a)
+            assertThat(decimated.get(d), equalTo(all.get(a)));
+    }
+}
@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.swt.rtplot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntSupplier;
+
+import org.csstudio.swt.rtplot.data.ArrayPlotDataProvider;
+import org.csstudio.swt.rtplot.data.PlotDataItem;
+import org.csstudio.swt.rtplot.data.PlotDataSearch;
+import org.csstudio.swt.rtplot.data.SimpleDataItem;
+import org.csstudio.swt.rtplot.data.ValueRange;
+import org.csstudio.swt.rtplot.internal.DecimatedPlotData;
+import org.csstudio.swt.rtplot.internal.ValueRangeIndex;
+import org.csstudio.swt.rtplot.internal.util.LinearScreenTransform;
+import org.junit.Test;
+
+/** Throughput benchmark of the plot's data paths
+ *
+ *  <p>Uses synthetic data and no display,
+ *  so it can run on a build machine.
+ *  Painting itself requires an SWT display,
+ *  so instead of the GC calls this measures
+ *  what the {@link org.csstudio.swt.rtplot.internal.TracePainter}
+ *  and autoscale do with the data:
+ *  Decimation to pixel columns, screen transformation,
+ *  value range lookup, and the search for visible samples.
+ *
+ *  <p>Not a unit test (name doesn't end in 'Test'),
+ *  run manually and compare the printed numbers.
+ *  <code>-Dbenchmark.max_size=10000000</code> includes 10^7 samples,
+ *  <code>-Dbenchmark.seconds=..</code> sets the run time per case.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class PlotBenchmark
+{
+    /** Largest number of samples */
+    final private static int MAX_SIZE = Integer.getInteger("benchmark.max_size", 1000000);
+
+    /** Seconds to run each case, and to warm up before that */
+    final private static double SECONDS = Double.parseDouble(System.getProperty("benchmark.seconds", "2"));
+
+    /** Pixel columns of the plot */
+    final private static int COLUMNS = 1000;
+
+    /** Results are accumulated here so that the JIT can't remove the code */
+    private static volatile long sink;
+
+    /** Run a benchmark case
+     *  @param title Title of the case
+     *  @param size Number of samples
+     *  @param operation Operation to benchmark, returns some result
+     */
+    private static void measure(final String title, final int size, final IntSupplier operation)
+    {
+        // Warm up
+        long result = 0;
+        long end = System.nanoTime() + (long) (SECONDS * 1e9);
+        while (System.nanoTime() < end)
+            result += operation.getAsInt();
+
+        // Measure
+        long runs = 0;
+        final long start = System.nanoTime();
+        end = start + (long) (SECONDS * 1e9);
+        long now;
+        do
+        {
+            result += operation.getAsInt();
+            ++runs;
+            now = System.nanoTime();
+        }
+        while (now < end);
+        sink += result;
+
+        final double ns = (now - start) / (double) runs;
+        System.out.format("%-30s %10d samples: %14.1f ops/sec, %8.2f ns/sample\n",
+                          title, size, 1e9 / ns, ns / size);
+    }
+
+    /** @param size Number of samples
+     *  @return Random walk with occasional gap, positions 0, 1, 2, ..
+     */
+    private static ArrayPlotDataProvider<Double> createData(final int size)
+    {
+        final Random random = new Random(42);
+        final List<PlotDataItem<Double>> samples = new ArrayList<>(size);
+        double value = 0;
+        for (int i=0; i<size; ++i)
+        {
+            value += random.nextGaussian();
+            samples.add(new SimpleDataItem<Double>((double) i, i % 100000 == 5000 ? Double.NaN : value));
+        }
+        return new ArrayPlotDataProvider<>(samples);
+    }
+
+    /** @param size Number of samples
+     *  @return Horizontal transform that shows all samples in COLUMNS pixels
+     */
+    private static LinearScreenTransform createTransform(final int size)
+    {
+        final LinearScreenTransform x_transform = new LinearScreenTransform();
+        x_transform.config(0.0, (double) size, 0, COLUMNS);
+        return x_transform;
+    }
+
+    /** Decimation of all samples to pixel columns, as done when a trace is painted */
+    @Test
+    public void benchmarkDecimation()
+    {
+        for (int size=1000; size<=MAX_SIZE; size *= 10)
+        {
+            final ArrayPlotDataProvider<Double> data = createData(size);
+            final LinearScreenTransform x_transform = createTransform(size);
+            measure("Decimation", size, () ->
+            {
+                final DecimatedPlotData<Double> decimated = new DecimatedPlotData<>();
+                decimated.update(data, x_transform, COLUMNS);
+                return decimated.size();
+            });
+        }
+    }
+
+    /** Transformation of every sample to screen coordinates,
+     *  the per-sample cost of a line without decimation
+     */
+    @Test
+    public void benchmarkTransform()
+    {
+        for (int size=1000; size<=MAX_SIZE; size *= 10)
+        {
+            final ArrayPlotDataProvider<Double> data = createData(size);
+            final LinearScreenTransform x_transform = createTransform(size);
+            final LinearScreenTransform y_transform = new LinearScreenTransform();
+            y_transform.config(-1000.0, 1000.0, 500, 0);
+            measure("Transform", size, () ->
+            {
+                int sum = 0;
+                final int N = data.size();
+                for (int i=0; i<N; ++i)
+                {
+                    final PlotDataItem<Double> item = data.get(i);
+                    sum += (int) x_transform.transform(item.getPosition());
+                    final double value = item.getValue();
+                    if (Double.isFinite(value))
+                        sum += (int) y_transform.transform(value);
+                }
+                return sum;
+            });
+        }
+    }
+
+    /** Value range of all samples, as done by autoscale */
+    @Test
+    public void benchmarkValueRange()
+    {
+        for (int size=1000; size<=MAX_SIZE; size *= 10)
+        {
+            final ArrayPlotDataProvider<Double> data = createData(size);
+            measure("Value range, initial", size, () ->
+            {
+                final ValueRange range = new ValueRangeIndex<Double>().update(data);
+                return range.getHigh().intValue();
+            });
+
+            // Add one sample and update, as done by autoscale for live data
+            final ValueRangeIndex<Double> index = new ValueRangeIndex<>();
+            final List<PlotDataItem<Double>> samples = new ArrayList<>();
+            for (int i=0; i<data.size(); ++i)
+                samples.add(data.get(i));
+            final ArrayPlotDataProvider<Double> growing = new ArrayPlotDataProvider<>(samples);
+            index.update(growing);
+            final Random random = new Random(42);
+            final int initial = size;
+            measure("Value range, append", size, () ->
+            {
+                // Occasionally return to the initial size, causing a rebuild,
+                // to limit memory usage
+                if (samples.size() >= 2 * initial)
+                    samples.subList(initial, samples.size()).clear();
+                samples.add(new SimpleDataItem<Double>((double) samples.size(), random.nextGaussian()));
+                return index.update(growing).getHigh().intValue();
+            });
+        }
+    }
+
+    /** Search for the first and last visible sample */
+    @Test
+    public void benchmarkSearch()
+    {
+        for (int size=1000; size<=MAX_SIZE; size *= 10)
+        {
+            final ArrayPlotDataProvider<Double> data = createData(size);
+            final PlotDataSearch<Double> search = new PlotDataSearch<>();
+            final Random random = new Random(42);
+            final int N = size;
+            measure("Search", size, () ->
+            {
+                final double start = random.nextDouble() * N;
+                return search.findSampleLessOrEqual(data, start) +
+                       search.findSampleGreaterOrEqual(data, start + N / 10);
+            });
+        }
+    }
+}
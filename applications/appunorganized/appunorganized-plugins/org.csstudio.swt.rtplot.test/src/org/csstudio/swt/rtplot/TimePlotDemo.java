@@ -57,6 +57,8 @@ public class TimePlotDemo
 
         plot.setUpdateThrottle(200, TimeUnit.MILLISECONDS);
         plot.setScrollStep(Duration.ofSeconds(30));
+        // Run with -Drtplot.tiled=true to try tiled rendering
+        plot.setTiledRendering(Boolean.getBoolean("rtplot.tiled"));
 
         plot.getXAxis().setGridVisible(true);
 
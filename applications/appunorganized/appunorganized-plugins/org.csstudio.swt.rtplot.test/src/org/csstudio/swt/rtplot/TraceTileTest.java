@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.swt.rtplot;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import org.csstudio.swt.rtplot.internal.TraceTile;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.RGB;
+import org.junit.Test;
+
+/** JUnit test of the {@link TraceTile} alpha channel
+ *  @author Kay Kasemir
+ */
+public class TraceTileTest
+{
+    /** @param pixels 0xRRGGBB values of a single row
+     *  @return Image data
+     */
+    private ImageData createRow(final int... pixels)
+    {
+        final ImageData data = new ImageData(pixels.length, 1, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
+        for (int x=0; x<pixels.length; ++x)
+            data.setPixel(x, 0, data.palette.getPixel(new RGB(pixels[x] >> 16 & 0xFF, pixels[x] >> 8 & 0xFF, pixels[x] & 0xFF)));
+        return data;
+    }
+
+    @Test
+    public void testAlpha()
+    {
+        // 0: Empty, 1: Opaque white line, i.e. in the usual background color,
+        // 2: Opaque red line, 3: Red line at 50%
+        final ImageData on_black = createRow(0x000000, 0xFFFFFF, 0xFF0000, 0x800000);
+        final ImageData on_white = createRow(0xFFFFFF, 0xFFFFFF, 0xFF0000, 0xFF7F7F);
+        final ImageData result = TraceTile.extractAlpha(on_black, on_white);
+
+        assertThat(result.getAlpha(0, 0), equalTo(0));
+
+        assertThat(result.getAlpha(1, 0), equalTo(255));
+        assertThat(result.palette.getRGB(result.getPixel(1, 0)), equalTo(new RGB(255, 255, 255)));
+
+        assertThat(result.getAlpha(2, 0), equalTo(255));
+        assertThat(result.palette.getRGB(result.getPixel(2, 0)), equalTo(new RGB(255, 0, 0)));
+
+        assertThat(result.getAlpha(3, 0), equalTo(128));
+        assertThat(result.palette.getRGB(result.getPixel(3, 0)), equalTo(new RGB(255, 0, 0)));
+    }
+
+    @Test
+    public void testIndexedPalette()
+    {
+        final PaletteData palette = new PaletteData(new RGB[] { new RGB(0, 0, 0), new RGB(255, 255, 255), new RGB(0, 0, 255) });
+        final ImageData on_black = new ImageData(2, 1, 8, palette);
+        final ImageData on_white = new ImageData(2, 1, 8, palette);
+        on_black.setPixels(0, 0, 2, new byte[] { 0, 2 }, 0);
+        on_white.setPixels(0, 0, 2, new byte[] { 1, 2 }, 0);
+        final ImageData result = TraceTile.extractAlpha(on_black, on_white);
+
+        assertThat(result.getAlpha(0, 0), equalTo(0));
+        assertThat(result.getAlpha(1, 0), equalTo(255));
+        assertThat(result.palette.getRGB(result.getPixel(1, 0)), equalTo(new RGB(0, 0, 255)));
+    }
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.swt.rtplot;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.csstudio.swt.rtplot.data.ArrayPlotDataProvider;
+import org.csstudio.swt.rtplot.data.PlotDataItem;
+import org.csstudio.swt.rtplot.data.PlotDataProvider;
+import org.csstudio.swt.rtplot.data.SimpleDataItem;
+import org.csstudio.swt.rtplot.data.ValueRange;
+import org.csstudio.swt.rtplot.internal.ValueRangeIndex;
+import org.junit.Test;
+
+/** JUnit test of the {@link ValueRangeIndex}
+ *  @author Kay Kasemir
+ */
+public class ValueRangeIndexTest
+{
+    /** @return Range of finite values, found by checking every sample */
+    private ValueRange scan(final PlotDataProvider<Double> data)
+    {
+        double low = Double.MAX_VALUE, high = -Double.MAX_VALUE;
+        for (int i=0; i<data.size(); ++i)
+        {
+            final double value = data.get(i).getValue();
+            if (! Double.isFinite(value))
+                continue;
+            low = Math.min(low, value);
+            high = Math.max(high, value);
+        }
+        return new ValueRange(low, high);
+    }
+
+    private void checkRange(final ValueRange range, final PlotDataProvider<Double> data)
+    {
+        final ValueRange expected = scan(data);
+        assertThat(range.getLow(), equalTo(expected.getLow()));
+        assertThat(range.getHigh(), equalTo(expected.getHigh()));
+    }
+
+    @Test
+    public void testAppend()
+    {
+        final Random random = new Random(42);
+        final ArrayPlotDataProvider<Double> data = new ArrayPlotDataProvider<>();
+        final ValueRangeIndex<Double> index = new ValueRangeIndex<>();
+        checkRange(index.update(data), data);
+
+        for (int i=0; i<10000; ++i)
+        {
+            data.add(new SimpleDataItem<Double>((double) i, i == 500 ? Double.NaN : random.nextGaussian() * i));
+            if (i % 7 == 0)
+                checkRange(index.update(data), data);
+        }
+        checkRange(index.update(data), data);
+    }
+
+    @Test
+    public void testRingBuffer()
+    {
+        final Random random = new Random(42);
+        final List<PlotDataItem<Double>> samples = new ArrayList<>();
+        final ArrayPlotDataProvider<Double> data = new ArrayPlotDataProvider<>(samples);
+        final ValueRangeIndex<Double> index = new ValueRangeIndex<>();
+
+        // Ring buffer with 1000 samples, dropping the oldest
+        // one or more samples as new ones are added
+        for (int i=0; i<20000; ++i)
+        {
+            samples.add(new SimpleDataItem<Double>((double) i, random.nextGaussian() * (i % 3000)));
+            while (samples.size() > 1000)
+                samples.remove(0);
+            if (i % 13 == 0)
+                checkRange(index.update(data), data);
+        }
+
+        // Arbitrary change
+        samples.clear();
+        samples.add(new SimpleDataItem<Double>(-1.0, 3.0));
+        checkRange(index.update(data), data);
+    }
+}
@@ -344,6 +344,14 @@ public class RTPlot<XTYPE extends Comparable<XTYPE>> extends Composite
         plot.setUpdateThrottle(dormant_time, unit);
     }
 
+    /** @param tiled Paint traces of each Y axis into separate tiles on a thread pool,
+     *               re-using tiles with unchanged traces?
+     */
+    public void setTiledRendering(final boolean tiled)
+    {
+        plot.setTiledRendering(tiled);
+    }
+
     /** Request a complete redraw of the plot */
     public void requestUpdate()
     {
@@ -36,6 +36,12 @@ import org.csstudio.swt.rtplot.Axis;
  *  might internally use a {@link ReadWriteLock} for its write access to the data,
  *  and only pass the 'read' component to the plotting library.
  *
+ *  <p>The plot library reads the position and values of samples
+ *  via <code>getPosition(index)</code>, <code>getValue(index)</code> etc.
+ *  By default, these use <code>get(index)</code>.
+ *  Implementations that keep their data in arrays of primitives
+ *  can override them to avoid creating a sample for each access.
+ *
  *  @param <XTYPE> Data type used for the horizontal {@link Axis}
  *
  *  @author Kay Kasemir
@@ -55,4 +61,44 @@ public interface PlotDataProvider<XTYPE extends Comparable<XTYPE>>
      *  @return The Sample of given index.
      */
     public PlotDataItem<XTYPE> get(int index);
+
+    /** @param index Sample index
+     *  @return Position of that sample
+     */
+    default public XTYPE getPosition(final int index)
+    {
+        return get(index).getPosition();
+    }
+
+    /** @param index Sample index
+     *  @return Value of that sample
+     */
+    default public double getValue(final int index)
+    {
+        return get(index).getValue();
+    }
+
+    /** @param index Sample index
+     *  @return Standard deviation of that sample, or {@link Double#NaN}
+     */
+    default public double getStdDev(final int index)
+    {
+        return get(index).getStdDev();
+    }
+
+    /** @param index Sample index
+     *  @return Minimum of that sample, or {@link Double#NaN}
+     */
+    default public double getMin(final int index)
+    {
+        return get(index).getMin();
+    }
+
+    /** @param index Sample index
+     *  @return Maximum of that sample, or {@link Double#NaN}
+     */
+    default public double getMax(final int index)
+    {
+        return get(index).getMax();
+    }
 }
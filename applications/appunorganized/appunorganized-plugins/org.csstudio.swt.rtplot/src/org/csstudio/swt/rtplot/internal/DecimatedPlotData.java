@@ -0,0 +1,351 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.swt.rtplot.internal;
+
+import java.util.concurrent.locks.Lock;
+
+import org.csstudio.swt.rtplot.data.PlotDataItem;
+import org.csstudio.swt.rtplot.data.PlotDataProvider;
+import org.csstudio.swt.rtplot.data.PlotDataSearch;
+import org.csstudio.swt.rtplot.internal.util.IntList;
+import org.csstudio.swt.rtplot.internal.util.ScreenTransform;
+
+/** Samples of a trace reduced to what's visible per pixel column
+ *
+ *  <p>For each pixel column, only the first and last sample
+ *  are kept, the samples with the lowest and highest value,
+ *  the samples with the lowest 'min' and highest 'max',
+ *  and the first sample with a NaN value to preserve gaps.
+ *  All other samples in the column would only add line segments
+ *  that are already covered by those samples.
+ *
+ *  <p>Columns are counted from the first sample,
+ *  so they remain valid while the horizontal axis scrolls
+ *  without changing its scale.
+ *  When samples are added to the end of the data,
+ *  only the last column is re-computed.
+ *  When samples are removed from the start of the data,
+ *  as in a full ring buffer, only the column of the
+ *  new first sample is re-computed.
+ *
+ *  <p>Caller must hold the data lock while calling <code>update</code>
+ *  and while accessing the decimated samples.
+ *
+ *  @param <XTYPE> Data type of horizontal axis
+ *  @author Kay Kasemir
+ */
+public class DecimatedPlotData<XTYPE extends Comparable<XTYPE>> implements PlotDataProvider<XTYPE>
+{
+    /** Only decimate when there are more samples than this per pixel column */
+    final private static int MIN_SAMPLES_PER_COLUMN = 4;
+
+    /** Maximum number of samples kept per column */
+    final private static int MAX_PER_COLUMN = 7;
+
+    /** Data that was decimated */
+    private PlotDataProvider<XTYPE> data = null;
+
+    /** Indices of samples in data to keep */
+    final private IntList indices = new IntList(2048);
+
+    /** Indices that are kept when samples are removed from the start */
+    final private IntList kept = new IntList(2048);
+
+    /** Search for previous last sample */
+    final private PlotDataSearch<XTYPE> search = new PlotDataSearch<>();
+
+    /** Position of first sample when all data was decimated, used as origin for columns */
+    private XTYPE anchor = null;
+
+    /** Position of first sample when last decimated */
+    private XTYPE first_position = null;
+
+    /** Number of samples in data when last decimated */
+    private int decimated_size = 0;
+
+    /** Position and value of last sample when last decimated */
+    private XTYPE last_position = null;
+    private double last_value;
+
+    /** Screen distance between anchor and last_position */
+    private double last_distance;
+
+    /** Start of the last column in <code>indices</code> */
+    private int last_column_start = 0;
+
+    /** Index of the first sample in data for the last column */
+    private int last_column_sample = 0;
+
+    /** Samples of the current column */
+    final private int[] column = new int[MAX_PER_COLUMN];
+
+    /** Update decimated samples
+     *  @param data Data of trace
+     *  @param x_transform Horizontal screen transformation
+     *  @param columns Number of pixel columns in plot
+     *  @return <code>true</code> if data was decimated,
+     *          <code>false</code> if there are so few samples that data should be used as is
+     */
+    public boolean update(final PlotDataProvider<XTYPE> data,
+                          final ScreenTransform<XTYPE> x_transform, final int columns)
+    {
+        final int N = data.size();
+        if (N <= MIN_SAMPLES_PER_COLUMN * Math.max(1, columns))
+        {
+            this.data = null;
+            anchor = null;
+            return false;
+        }
+
+        final int dropped = canAppend(data, x_transform, N);
+        if (dropped >= 0  &&  (dropped == 0  ||  removeHead(x_transform, dropped)))
+        {   // Re-compute last column, which may receive more samples
+            indices.truncate(last_column_start);
+            decimate(x_transform, last_column_sample, N);
+        }
+        else
+        {
+            this.data = data;
+            anchor = data.getPosition(0);
+            indices.clear();
+            decimate(x_transform, 0, N);
+        }
+
+        decimated_size = N;
+        first_position = data.getPosition(0);
+        last_position = data.getPosition(N-1);
+        last_value = data.getValue(N-1);
+        last_distance = x_transform.transform(last_position) - x_transform.transform(anchor);
+        return true;
+    }
+
+    /** @return Number of samples that were removed from the start of the data,
+     *          or -1 if the previous result cannot be extended
+     */
+    private int canAppend(final PlotDataProvider<XTYPE> data,
+                          final ScreenTransform<XTYPE> x_transform, final int N)
+    {
+        if (this.data != data  ||  anchor == null)
+            return -1;
+        // Locate previous last sample,
+        // which moved down if samples were removed from the start
+        final int last = search.findSampleLessOrEqual(data, last_position);
+        if (last < 0  ||  ! data.getPosition(last).equals(last_position)  ||
+            Double.compare(data.getValue(last), last_value) != 0)
+            return -1;
+        // Ambiguous if more samples have the same position
+        if (last+1 < N  &&  data.getPosition(last+1).equals(last_position))
+            return -1;
+        final int dropped = decimated_size-1 - last;
+        if (dropped < 0)
+            return -1;
+        // Same samples at start, or only removed samples?
+        final int cmp = data.getPosition(0).compareTo(first_position);
+        if (dropped == 0 ? cmp != 0 : cmp < 0)
+            return -1;
+        // Same horizontal scale?
+        final double distance = x_transform.transform(last_position) - x_transform.transform(anchor);
+        if (Math.abs(distance - last_distance) >= 0.01)
+            return -1;
+        return dropped;
+    }
+
+    /** Update indices after samples were removed from the start of the data
+     *
+     *  <p>Re-computes the column of the new first sample,
+     *  which may have lost samples.
+     *  Indices of the following columns are shifted.
+     *
+     *  @param x_transform Horizontal screen transformation
+     *  @param dropped Number of samples removed from the start
+     *  @return <code>true</code> on success,
+     *          <code>false</code> if all data needs to be decimated
+     */
+    private boolean removeHead(final ScreenTransform<XTYPE> x_transform, final int dropped)
+    {
+        // Find end of the first column
+        final double origin = x_transform.transform(anchor);
+        final int remaining = decimated_size - dropped;
+        final long head = getColumn(x_transform, origin, 0);
+        int end = 1;
+        while (end < remaining  &&  getColumn(x_transform, origin, end) == head)
+            ++end;
+        // First column must end before the last column, which is re-computed
+        if (end + dropped > last_column_sample)
+            return false;
+
+        // Keep indices of the following columns
+        int removed = 0;
+        while (indices.get(removed) < end + dropped)
+            ++removed;
+        kept.clear();
+        for (int i=removed; i<indices.size(); ++i)
+            kept.add(indices.get(i) - dropped);
+        final int column_start = last_column_start - removed;
+        final int column_sample = last_column_sample - dropped;
+
+        indices.clear();
+        decimate(x_transform, 0, end);
+        final int added = indices.size();
+        for (int i=0; i<kept.size(); ++i)
+            indices.add(kept.get(i));
+        last_column_start = column_start + added;
+        last_column_sample = column_sample;
+        return true;
+    }
+
+    /** @param x_transform Horizontal screen transformation
+     *  @param origin Screen position of anchor
+     *  @param i Sample index
+     *  @return Column of that sample
+     */
+    private long getColumn(final ScreenTransform<XTYPE> x_transform, final double origin, final int i)
+    {
+        return (long) Math.floor(x_transform.transform(data.getPosition(i)) - origin);
+    }
+
+    /** Add decimated samples to indices
+     *  @param x_transform Horizontal screen transformation
+     *  @param start Index of first sample to decimate, start of a column
+     *  @param end Index of last sample (exclusive)
+     */
+    private void decimate(final ScreenTransform<XTYPE> x_transform, final int start, final int end)
+    {
+        final double origin = x_transform.transform(anchor);
+        long current = Long.MIN_VALUE;
+        int first = -1, last = -1, low = -1, high = -1, lowest = -1, highest = -1, nan = -1;
+        double low_value = 0, high_value = 0, lowest_min = 0, highest_max = 0;
+        for (int i=start; i<end; ++i)
+        {
+            final long col = getColumn(x_transform, origin, i);
+            if (col != current)
+            {
+                if (first >= 0)
+                    addColumn(first, last, low, high, lowest, highest, nan);
+                current = col;
+                last_column_start = indices.size();
+                last_column_sample = i;
+                first = i;
+                low = high = lowest = highest = nan = -1;
+            }
+            last = i;
+
+            final double value = data.getValue(i);
+            if (Double.isNaN(value))
+            {
+                if (nan < 0)
+                    nan = i;
+                continue;
+            }
+            if (low < 0  ||  value < low_value)
+            {
+                low = i;
+                low_value = value;
+            }
+            if (high < 0  ||  value > high_value)
+            {
+                high = i;
+                high_value = value;
+            }
+            final double min = data.getMin(i);
+            if (! Double.isNaN(min)  &&  (lowest < 0  ||  min < lowest_min))
+            {
+                lowest = i;
+                lowest_min = min;
+            }
+            final double max = data.getMax(i);
+            if (! Double.isNaN(max)  &&  (highest < 0  ||  max > highest_max))
+            {
+                highest = i;
+                highest_max = max;
+            }
+        }
+        if (first >= 0)
+            addColumn(first, last, low, high, lowest, highest, nan);
+    }
+
+    /** Add samples of one column to indices, in order, without duplicates
+     *  @param samples Indices of samples to keep, -1 if not set
+     */
+    private void addColumn(final int... samples)
+    {
+        int n = 0;
+        for (int sample : samples)
+        {
+            if (sample < 0)
+                continue;
+            // Insertion sort, skipping duplicates
+            int pos = n;
+            while (pos > 0  &&  column[pos-1] > sample)
+                --pos;
+            if (pos > 0  &&  column[pos-1] == sample)
+                continue;
+            System.arraycopy(column, pos, column, pos+1, n-pos);
+            column[pos] = sample;
+            ++n;
+        }
+        for (int i=0; i<n; ++i)
+            indices.add(column[i]);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Lock getLock()
+    {
+        return data.getLock();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int size()
+    {
+        return indices.size();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public PlotDataItem<XTYPE> get(final int index)
+    {
+        return data.get(indices.get(index));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public XTYPE getPosition(final int index)
+    {
+        return data.getPosition(indices.get(index));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getValue(final int index)
+    {
+        return data.getValue(indices.get(index));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getStdDev(final int index)
+    {
+        return data.getStdDev(indices.get(index));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getMin(final int index)
+    {
+        return data.getMin(indices.get(index));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getMax(final int index)
+    {
+        return data.getMax(indices.get(index));
+    }
+}
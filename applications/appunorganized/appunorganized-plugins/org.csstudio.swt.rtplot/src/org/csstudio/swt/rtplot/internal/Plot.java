@@ -11,10 +11,17 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
@@ -32,6 +39,7 @@ import org.csstudio.swt.rtplot.internal.util.ScreenTransform;
 import org.csstudio.swt.rtplot.undo.ChangeAxisRanges;
 import org.csstudio.swt.rtplot.undo.UndoableActionManager;
 import org.csstudio.swt.rtplot.undo.UpdateAnnotationAction;
+import org.csstudio.swt.rtplot.util.NamedThreadFactory;
 import org.csstudio.swt.rtplot.util.UpdateThrottle;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.SWTException;
@@ -126,11 +134,21 @@ public class Plot<XTYPE extends Comparable<XTYPE>> extends Canvas implements Pai
     final private List<YAxisImpl<XTYPE>> y_axes = new CopyOnWriteArrayList<>();
     final private PlotPart plot_area;
     final private TracePainter<XTYPE> trace_painter = new TracePainter<XTYPE>();
+
+    /** Paint traces of each Y axis into a {@link TraceTile} on the tile_pool? */
+    private volatile boolean tiled_rendering = false;
+
+    /** Tiles for Y axes, only accessed by the thread that calls updateImageBuffer() */
+    final private Map<YAxisImpl<XTYPE>, TraceTile<XTYPE>> tiles = new HashMap<>();
     final private List<AnnotationImpl<XTYPE>> annotations = new CopyOnWriteArrayList<>();
     final private LegendPart<XTYPE> legend;
 
     final private PlotProcessor<XTYPE> plot_processor;
 
+    /** Pool for painting {@link TraceTile}s, shared by all plots */
+    final private static ExecutorService tile_pool =
+        Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new NamedThreadFactory("RTPlotTiles"));
+
     final private Runnable redraw_runnable = () ->
     {
         if (isDisposed())
@@ -445,6 +463,22 @@ public class Plot<XTYPE extends Comparable<XTYPE>> extends Canvas implements Pai
         update_throttle.setDormantTime(dormant_time, unit);
     }
 
+    /** Select tiled rendering
+     *
+     *  <p>When enabled, the traces of each Y axis are painted
+     *  into a separate {@link TraceTile} on a thread pool,
+     *  and tiles with unchanged traces are re-used.
+     *  This helps with many traces on several axes
+     *  where only few traces change between updates.
+     *
+     *  @param tiled Use tiled rendering?
+     */
+    public void setTiledRendering(final boolean tiled)
+    {
+        tiled_rendering = tiled;
+        requestUpdate();
+    }
+
     /** Request a complete redraw of the plot */
     final public void requestUpdate()
     {
@@ -661,9 +695,15 @@ public class Plot<XTYPE extends Comparable<XTYPE>> extends Canvas implements Pai
         gc.setClipping(plot_bounds);
         plot_area.paint(gc, media);
 
-        for (YAxisImpl<XTYPE> y_axis : y_axes)
-            for (Trace<XTYPE> trace : y_axis.getTraces())
-                trace_painter.paint(gc, media, plot_area.getBounds(), opacity, x_transform, y_axis, trace);
+        if (tiled_rendering)
+            paintTiles(gc, plot_bounds, x_transform);
+        else
+        {
+            disposeTiles();
+            for (YAxisImpl<XTYPE> y_axis : y_axes)
+                for (Trace<XTYPE> trace : y_axis.getTraces())
+                    trace_painter.paint(gc, media, plot_area.getBounds(), opacity, x_transform, y_axis, trace);
+        }
 
         // Annotations use label font
         gc.setFont(label_font);
@@ -684,6 +724,65 @@ public class Plot<XTYPE extends Comparable<XTYPE>> extends Canvas implements Pai
         }
     }
 
+    /** Update tiles in parallel, then draw them
+     *  @param gc GC of plot image
+     *  @param plot_bounds Plot area
+     *  @param x_transform Coordinate transform used by the x axis
+     */
+    private void paintTiles(final GC gc, final Rectangle plot_bounds, final ScreenTransform<XTYPE> x_transform)
+    {
+        final List<YAxisImpl<XTYPE>> axes = new ArrayList<>(y_axes);
+        // Remove tiles of axes that no longer exist
+        final Iterator<Map.Entry<YAxisImpl<XTYPE>, TraceTile<XTYPE>>> entries = tiles.entrySet().iterator();
+        while (entries.hasNext())
+        {
+            final Map.Entry<YAxisImpl<XTYPE>, TraceTile<XTYPE>> entry = entries.next();
+            if (! axes.contains(entry.getKey()))
+            {
+                entry.getValue().dispose();
+                entries.remove();
+            }
+        }
+
+        final int alpha = opacity;
+        final List<Future<Boolean>> updates = new ArrayList<>(axes.size());
+        for (YAxisImpl<XTYPE> y_axis : axes)
+        {
+            final TraceTile<XTYPE> tile = tiles.computeIfAbsent(y_axis, axis -> new TraceTile<>());
+            updates.add(tile_pool.submit(() -> tile.update(display, media, plot_bounds, alpha, x_transform.copy(), y_axis)));
+        }
+        int painted = 0;
+        for (Future<Boolean> update : updates)
+        {
+            try
+            {
+                if (update.get())
+                    ++painted;
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch (ExecutionException ex)
+            {
+                Activator.getLogger().log(Level.WARNING, "Cannot paint traces", ex.getCause());
+            }
+        }
+        Activator.getLogger().log(Level.FINER, "Painted {0} of {1} tiles", new Object[] { painted, axes.size() });
+
+        for (YAxisImpl<XTYPE> y_axis : axes)
+            tiles.get(y_axis).draw(gc, plot_bounds);
+    }
+
+    /** Release tiles */
+    private void disposeTiles()
+    {
+        for (TraceTile<XTYPE> tile : tiles.values())
+            tile.dispose();
+        tiles.clear();
+    }
+
     /** PaintListener: {@inheritDoc} */
     @Override
     public void paintControl(final PaintEvent e)
@@ -837,6 +936,7 @@ public class Plot<XTYPE extends Comparable<XTYPE>> extends Canvas implements Pai
             y_axis.dispose();
         x_axis.dispose();
         plot_area.dispose();
+        disposeTiles();
 
         final Image old_image = plot_image.orElse(null);
         plot_image = Optional.empty();
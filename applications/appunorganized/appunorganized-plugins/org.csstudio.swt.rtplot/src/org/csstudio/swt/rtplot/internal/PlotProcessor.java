@@ -10,6 +10,8 @@ package org.csstudio.swt.rtplot.internal;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -43,6 +45,9 @@ public class PlotProcessor<XTYPE extends Comparable<XTYPE>>
 
     final private Plot<XTYPE> plot;
 
+    /** Value range index for each trace's data */
+    final private Map<PlotDataProvider<XTYPE>, ValueRangeIndex<XTYPE>> value_ranges = new WeakHashMap<>();
+
     /** @param plot Plot on which this processor operates */
     public PlotProcessor(final Plot<XTYPE> plot)
     {
@@ -60,29 +65,20 @@ public class PlotProcessor<XTYPE extends Comparable<XTYPE>>
             @Override
             public ValueRange call() throws Exception
             {
-                double low = Double.MAX_VALUE;
-                double high = -Double.MAX_VALUE;
+                final ValueRangeIndex<XTYPE> index;
+                synchronized (value_ranges)
+                {
+                    index = value_ranges.computeIfAbsent(data, d -> new ValueRangeIndex<>());
+                }
                 data.getLock().lock();
                 try
                 {
-                    final int N = data.size();
-                    for (int i=0; i<N; ++i)
-                    {
-                        final PlotDataItem<XTYPE> item = data.get(i);
-                        final double value = item.getValue();
-                        if (! Double.isFinite(value))
-                            continue;
-                        if (value < low)
-                            low = value;
-                        if (value > high)
-                            high = value;
-                    }
+                    return index.update(data);
                 }
                 finally
                 {
                     data.getLock().unlock();
                 }
-                return new ValueRange(low, high);
             }
         });
     }
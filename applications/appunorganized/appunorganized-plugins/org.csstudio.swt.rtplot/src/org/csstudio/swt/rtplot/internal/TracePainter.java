@@ -7,12 +7,14 @@
  ******************************************************************************/
 package org.csstudio.swt.rtplot.internal;
 
+import java.util.Map;
+import java.util.WeakHashMap;
+
 import org.csstudio.swt.rtplot.Axis;
 import org.csstudio.swt.rtplot.PointType;
 import org.csstudio.swt.rtplot.SWTMediaPool;
 import org.csstudio.swt.rtplot.Trace;
 import org.csstudio.swt.rtplot.TraceType;
-import org.csstudio.swt.rtplot.data.PlotDataItem;
 import org.csstudio.swt.rtplot.data.PlotDataProvider;
 import org.csstudio.swt.rtplot.internal.util.IntList;
 import org.csstudio.swt.rtplot.internal.util.ScreenTransform;
@@ -48,6 +50,9 @@ public class TracePainter<XTYPE extends Comparable<XTYPE>>
     final private static int OUTSIDE = 1000;
     private int x_min, x_max, y_min, y_max;
 
+    /** Decimated data per trace, only accessed by the thread that calls paint() */
+    final private Map<Trace<XTYPE>, DecimatedPlotData<XTYPE>> decimated = new WeakHashMap<>();
+
     final private int clipX(final double x)
     {
         if (x < x_min)
@@ -104,10 +109,14 @@ public class TracePainter<XTYPE extends Comparable<XTYPE>>
         //
         // For now, main point is that this happens in non-UI thread,
         // so the slower the better to test UI responsiveness.
-        final PlotDataProvider<XTYPE> data = trace.getData();
-        data.getLock().lock();
+        final PlotDataProvider<XTYPE> all_data = trace.getData();
+        all_data.getLock().lock();
         try
         {
+            // Lines and areas only need the samples that are visible per pixel column
+            final DecimatedPlotData<XTYPE> decimation = decimated.computeIfAbsent(trace, t -> new DecimatedPlotData<>());
+            final PlotDataProvider<XTYPE> data = decimation.update(all_data, x_transform, bounds.width)
+                                               ? decimation : all_data;
             final TraceType type = trace.getType();
             switch (type)
             {
@@ -159,13 +168,14 @@ public class TracePainter<XTYPE extends Comparable<XTYPE>>
             case DIAMONDS:
             case XMARKS:
             case TRIANGLES:
-                drawPoints(gc, x_transform, y_axis, data, point_type, trace.getPointSize());
+                // Points inside a column can differ from its min/max, so use all samples
+                drawPoints(gc, x_transform, y_axis, all_data, point_type, trace.getPointSize());
                 break;
             }
         }
         finally
         {
-            data.getLock().unlock();
+            all_data.getLock().unlock();
         }
         gc.setLineWidth(old_width);
         gc.setBackground(old_bg);
@@ -189,9 +199,8 @@ public class TracePainter<XTYPE extends Comparable<XTYPE>>
         gc.setLineWidth(line_width);
         for (int i=0; i<N; ++i)
         {
-            final PlotDataItem<XTYPE> item = data.get(i);
-            final int x = clipX(Math.round(x_transform.transform(item.getPosition())));
-            final double value = item.getValue();
+            final int x = clipX(Math.round(x_transform.transform(data.getPosition(i))));
+            final double value = data.getValue(i);
             if (value_poly.size() > 0  && x != last_x)
             {   // Staircase from last 'y'..
                 value_poly.add(x);
@@ -233,9 +242,8 @@ public class TracePainter<XTYPE extends Comparable<XTYPE>>
         int last_x = -1, last_y = -1;
         for (int i=0; i<N; ++i)
         {
-            final PlotDataItem<XTYPE> item = data.get(i);
-            final int x = clipX(Math.round(x_transform.transform(item.getPosition())));
-            final double value = item.getValue();
+            final int x = clipX(Math.round(x_transform.transform(data.getPosition(i))));
+            final double value = data.getValue(i);
             if (Double.isNaN(value))
             {
                 flushPolyLine(gc, value_poly, line_width);
@@ -272,14 +280,13 @@ public class TracePainter<XTYPE extends Comparable<XTYPE>>
         final int N = data.size();
         for (int i = 0;  i < N;  ++i)
         {
-            final PlotDataItem<XTYPE> item = data.get(i);
-            double ymin = item.getMin();
-            double ymax = item.getMax();
+            double ymin = data.getMin(i);
+            double ymax = data.getMax(i);
             if (Double.isNaN(ymin)  ||  Double.isNaN(ymax))
                 flushPolyFill(gc, pos, min, max);
             else
             {
-                final int x1 = clipX(x_transform.transform(item.getPosition()));
+                final int x1 = clipX(x_transform.transform(data.getPosition(i)));
                 final int y1min = clipY(y_axis.getScreenCoord(ymin));
                 final int y1max = clipY(y_axis.getScreenCoord(ymax));
                 pos.add(x1);
@@ -306,9 +313,8 @@ public class TracePainter<XTYPE extends Comparable<XTYPE>>
         final int N = data.size();
         for (int i = 0;  i < N;  ++i)
         {
-            final PlotDataItem<XTYPE> item = data.get(i);
-            double ymin = item.getMin();
-            double ymax = item.getMax();
+            double ymin = data.getMin(i);
+            double ymax = data.getMax(i);
             if (Double.isNaN(ymin)  ||  Double.isNaN(ymax))
             {
                 flushPolyLine(gc, min, line_width);
@@ -316,7 +322,7 @@ public class TracePainter<XTYPE extends Comparable<XTYPE>>
             }
             else
             {
-                final int x1 = clipX(x_transform.transform(item.getPosition()));
+                final int x1 = clipX(x_transform.transform(data.getPosition(i)));
                 final int y1min = clipY(y_axis.getScreenCoord(ymin));
                 final int y1max = clipY(y_axis.getScreenCoord(ymax));
                 min.add(x1);   min.add(y1min);
@@ -343,9 +349,8 @@ public class TracePainter<XTYPE extends Comparable<XTYPE>>
         final int N = data.size();
         for (int i = 0;  i < N;  ++i)
         {
-            final PlotDataItem<XTYPE> item = data.get(i);
-            double value = item.getValue();
-            double dev = item.getStdDev();
+            double value = data.getValue(i);
+            double dev = data.getStdDev(i);
             if (Double.isNaN(value) ||  ! (dev > 0))
             {
                 flushPolyLine(gc, lower_poly, line_width);
@@ -353,7 +358,7 @@ public class TracePainter<XTYPE extends Comparable<XTYPE>>
             }
             else
             {
-                final int x = clipX(x_transform.transform(item.getPosition()));
+                final int x = clipX(x_transform.transform(data.getPosition(i)));
                 final int low_y = clipY(y_axis.getScreenCoord(value - dev));
                 final int upp_y = clipY(y_axis.getScreenCoord(value + dev));
                 lower_poly.add(x);  lower_poly.add(low_y);
@@ -394,9 +399,8 @@ public class TracePainter<XTYPE extends Comparable<XTYPE>>
         int last_x = -1, last_y = -1;
         for (int i=0; i<N; ++i)
         {
-            final PlotDataItem<XTYPE> item = data.get(i);
-            final int x = clipX(Math.round(x_transform.transform(item.getPosition())));
-            final double value = item.getValue();
+            final int x = clipX(Math.round(x_transform.transform(data.getPosition(i))));
+            final double value = data.getValue(i);
             if (!Double.isNaN(value))
             {
                 final int y = clipY(y_axis.getScreenCoord(value));
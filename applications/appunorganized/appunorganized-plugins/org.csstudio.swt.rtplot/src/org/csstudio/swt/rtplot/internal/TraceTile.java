@@ -0,0 +1,277 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.swt.rtplot.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.csstudio.swt.rtplot.SWTMediaPool;
+import org.csstudio.swt.rtplot.Trace;
+import org.csstudio.swt.rtplot.data.PlotDataItem;
+import org.csstudio.swt.rtplot.data.PlotDataProvider;
+import org.csstudio.swt.rtplot.internal.util.ScreenTransform;
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.RGB;
+import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.graphics.Transform;
+import org.eclipse.swt.widgets.Display;
+
+/** Off-screen image of the traces on one Y axis
+ *
+ *  <p>Used by the {@link Plot} for tiled rendering.
+ *  Each tile has its own {@link TracePainter},
+ *  so tiles for different axes can be painted concurrently.
+ *
+ *  <p>A tile is only painted again when something
+ *  that affects its traces has changed:
+ *  Plot bounds, background, axis ranges, trace settings,
+ *  or the size, first and last sample of a trace's data.
+ *  Like the {@link DecimatedPlotData}, this assumes that
+ *  samples in the middle of the data are not replaced
+ *  without also changing the size or end of the data.
+ *
+ *  <p>The tile has an alpha channel, so it can be drawn on top of the
+ *  plot's grid and on top of other tiles.
+ *  Since a GC cannot reliably paint into an image with alpha channel,
+ *  the traces are painted twice, on black and on white.
+ *  Pixels where both agree are opaque, pixels that show the background
+ *  are transparent, and partially covered pixels of anti-aliased lines or
+ *  semi-transparent areas receive the corresponding alpha value.
+ *
+ *  @param <XTYPE> Data type of horizontal axis
+ *  @author Kay Kasemir
+ */
+public class TraceTile<XTYPE extends Comparable<XTYPE>>
+{
+    final private static RGB BLACK = new RGB(0, 0, 0), WHITE = new RGB(255, 255, 255);
+
+    final private TracePainter<XTYPE> painter = new TracePainter<XTYPE>();
+
+    /** Everything that affected the current image */
+    private List<Object> signature = Collections.emptyList();
+
+    /** Image of the traces, <code>null</code> if there are none.
+     *  SYNC on tile to access.
+     */
+    private Image image = null;
+
+    /** Update the tile
+     *
+     *  <p>May be called from any thread, but not concurrently
+     *  for the same tile.
+     *
+     *  @param display Display
+     *  @param media {@link SWTMediaPool}
+     *  @param bounds Plot area
+     *  @param opacity Opacity (0 .. 100 %) of 'area'
+     *  @param x_transform Coordinate transform used by the x axis
+     *  @param y_axis Y axis with the traces to paint
+     *  @return <code>true</code> if tile was painted,
+     *          <code>false</code> if it was unchanged
+     */
+    public boolean update(final Display display, final SWTMediaPool media,
+                          final Rectangle bounds, final int opacity,
+                          final ScreenTransform<XTYPE> x_transform, final YAxisImpl<XTYPE> y_axis)
+    {
+        final List<Trace<XTYPE>> traces = new ArrayList<>();
+        for (Trace<XTYPE> trace : y_axis.getTraces())
+            traces.add(trace);
+        final List<Object> new_signature = createSignature(bounds, opacity, x_transform, y_axis, traces);
+        if (new_signature.equals(signature))
+            return false;
+        signature = new_signature;
+
+        Image new_image = null;
+        if (! traces.isEmpty()  &&  bounds.width > 0  &&  bounds.height > 0)
+        {
+            final ImageData on_black = paint(display, media, BLACK, bounds, opacity, x_transform, y_axis, traces);
+            final ImageData on_white = paint(display, media, WHITE, bounds, opacity, x_transform, y_axis, traces);
+            new_image = new Image(display, extractAlpha(on_black, on_white));
+        }
+
+        final Image old_image;
+        synchronized (this)
+        {
+            old_image = image;
+            image = new_image;
+        }
+        if (old_image != null)
+            old_image.dispose();
+        return true;
+    }
+
+    /** Paint traces onto a background
+     *  @return Image data of the traces
+     */
+    private ImageData paint(final Display display, final SWTMediaPool media, final RGB background,
+                            final Rectangle bounds, final int opacity,
+                            final ScreenTransform<XTYPE> x_transform, final YAxisImpl<XTYPE> y_axis,
+                            final List<Trace<XTYPE>> traces)
+    {
+        final Image buffer = new Image(display, bounds.width, bounds.height);
+        final GC gc = new GC(buffer);
+        gc.setBackground(media.get(background));
+        gc.fillRectangle(0, 0, bounds.width, bounds.height);
+
+        // Traces are painted in plot coordinates
+        gc.setAdvanced(true);
+        final Transform shift = new Transform(display);
+        shift.translate(-bounds.x, -bounds.y);
+        gc.setTransform(shift);
+        gc.setClipping(bounds);
+        for (Trace<XTYPE> trace : traces)
+            painter.paint(gc, media, bounds, opacity, x_transform, y_axis, trace);
+        gc.setTransform(null);
+        shift.dispose();
+        gc.dispose();
+
+        final ImageData data = buffer.getImageData();
+        buffer.dispose();
+        return data;
+    }
+
+    /** Determine color and alpha of each pixel from the same image painted on black and on white
+     *
+     *  <p>A pixel with alpha <code>a</code> and color <code>c</code> appears as
+     *  <code>a*c</code> on black and as <code>a*c + (1-a)*255</code> on white,
+     *  so <code>a = 1 - (white - black)/255</code> and <code>c = black/a</code>.
+     *
+     *  @param on_black Image painted on black background
+     *  @param on_white Same image painted on white background
+     *  @return Image data with alpha channel
+     */
+    public static ImageData extractAlpha(final ImageData on_black, final ImageData on_white)
+    {
+        final int width = on_black.width, height = on_black.height;
+        final ImageData result = new ImageData(width, height, 24, new PaletteData(0xFF0000, 0xFF00, 0xFF));
+        result.alphaData = new byte[width * height];
+        final int[] black = new int[width], white = new int[width], pixels = new int[width];
+        for (int y=0; y<height; ++y)
+        {
+            getRGBs(on_black, y, black);
+            getRGBs(on_white, y, white);
+            for (int x=0; x<width; ++x)
+            {
+                final int b = black[x], w = white[x];
+                // Use the most opaque channel, so colors that are dark in one channel keep their alpha
+                int alpha = 0;
+                for (int shift=0; shift<24; shift+=8)
+                    alpha = Math.max(alpha, 255 - (((w >> shift) & 0xFF) - ((b >> shift) & 0xFF)));
+                alpha = Math.min(255, alpha);
+                result.alphaData[y*width + x] = (byte) alpha;
+                if (alpha <= 0)
+                    pixels[x] = 0;
+                else
+                {
+                    int rgb = 0;
+                    for (int shift=0; shift<24; shift+=8)
+                        rgb |= Math.min(255, ((b >> shift) & 0xFF) * 255 / alpha) << shift;
+                    pixels[x] = rgb;
+                }
+            }
+            result.setPixels(0, y, width, pixels, 0);
+        }
+        return result;
+    }
+
+    /** @param data Image data
+     *  @param y Row
+     *  @param rgbs Will be set to 0xRRGGBB value of each pixel in the row
+     */
+    private static void getRGBs(final ImageData data, final int y, final int[] rgbs)
+    {
+        data.getPixels(0, y, rgbs.length, rgbs, 0);
+        final PaletteData palette = data.palette;
+        if (palette.isDirect)
+            for (int x=0; x<rgbs.length; ++x)
+                rgbs[x] = getComponent(rgbs[x], palette.redMask, palette.redShift) << 16 |
+                          getComponent(rgbs[x], palette.greenMask, palette.greenShift) << 8 |
+                          getComponent(rgbs[x], palette.blueMask, palette.blueShift);
+        else
+            for (int x=0; x<rgbs.length; ++x)
+            {
+                final RGB rgb = palette.colors[rgbs[x]];
+                rgbs[x] = rgb.red << 16 | rgb.green << 8 | rgb.blue;
+            }
+    }
+
+    /** @return Color component of a direct palette pixel, 0..255 */
+    private static int getComponent(final int pixel, final int mask, final int shift)
+    {
+        final int value = pixel & mask;
+        return shift < 0 ? value >>> -shift : value << shift;
+    }
+
+    /** @return Everything that affects the painted traces */
+    private List<Object> createSignature(final Rectangle bounds, final int opacity,
+                                         final ScreenTransform<XTYPE> x_transform, final YAxisImpl<XTYPE> y_axis,
+                                         final List<Trace<XTYPE>> traces)
+    {
+        final List<Object> result = new ArrayList<>();
+        result.add(bounds);
+        result.add(opacity);
+        result.add(x_transform.inverse(bounds.x));
+        result.add(x_transform.inverse(bounds.x + bounds.width));
+        result.add(y_axis.getValueRange());
+        result.add(y_axis.isLogarithmic());
+        for (Trace<XTYPE> trace : traces)
+        {
+            result.add(trace);
+            result.add(trace.getColor());
+            result.add(trace.getType());
+            result.add(trace.getWidth());
+            result.add(trace.getPointType());
+            result.add(trace.getPointSize());
+
+            final PlotDataProvider<XTYPE> data = trace.getData();
+            data.getLock().lock();
+            try
+            {
+                final int N = data.size();
+                result.add(N);
+                if (N > 0)
+                {
+                    result.add(data.get(0).getPosition());
+                    final PlotDataItem<XTYPE> last = data.get(N-1);
+                    result.add(last.getPosition());
+                    result.add(last.getValue());
+                    result.add(last.getMin());
+                    result.add(last.getMax());
+                }
+            }
+            finally
+            {
+                data.getLock().unlock();
+            }
+        }
+        return result;
+    }
+
+    /** Draw the tile
+     *  @param gc GC
+     *  @param bounds Plot area
+     */
+    public synchronized void draw(final GC gc, final Rectangle bounds)
+    {
+        if (image != null)
+            gc.drawImage(image, bounds.x, bounds.y);
+    }
+
+    /** Release resources */
+    public synchronized void dispose()
+    {
+        if (image != null)
+            image.dispose();
+        image = null;
+        signature = Collections.emptyList();
+    }
+}
@@ -0,0 +1,261 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.swt.rtplot.internal;
+
+import java.util.Arrays;
+
+import org.csstudio.swt.rtplot.data.PlotDataItem;
+import org.csstudio.swt.rtplot.data.PlotDataProvider;
+import org.csstudio.swt.rtplot.data.PlotDataSearch;
+import org.csstudio.swt.rtplot.data.ValueRange;
+
+/** Index of the value range of a trace's samples
+ *
+ *  <p>Samples are summarized in blocks of {@link #BLOCK_SIZE}.
+ *  The min/max of the blocks is kept in a segment tree
+ *  over a circular buffer of blocks.
+ *  The root of the tree holds the range of all samples,
+ *  and updating a block costs O(log n).
+ *
+ *  <p>When samples were added to the end of the data,
+ *  only those samples are indexed.
+ *  When in addition samples were removed from the start of the data,
+ *  as in a ring buffer, only the first block is re-computed.
+ *  Any other change to the data requires a complete re-scan.
+ *
+ *  <p>The index is meant to be used with one {@link PlotDataProvider}.
+ *  It does not keep a reference to the data.
+ *  Caller must hold the data lock while calling <code>update</code>.
+ *
+ *  @param <XTYPE> Data type of horizontal axis
+ *  @author Kay Kasemir
+ */
+public class ValueRangeIndex<XTYPE extends Comparable<XTYPE>>
+{
+    /** Number of samples summarized in one block */
+    final static int BLOCK_SIZE = 256;
+
+    /** Number of samples that have been indexed */
+    private int size = 0;
+
+    /** Data index of the first sample in block 'head', may be negative */
+    private int offset = 0;
+
+    /** Position of first sample */
+    private XTYPE first_position = null;
+
+    /** Position and value of last sample */
+    private XTYPE last_position = null;
+    private double last_value;
+
+    /** Segment tree of blocks.
+     *  Leaves at [capacity + i], the parent of node n is n/2.
+     */
+    private double[] mins = new double[0], maxs = new double[0];
+
+    /** Number of leaves in tree, power of 2 */
+    private int capacity = 0;
+
+    /** Leaf of the first block, number of blocks */
+    private int head = 0, count = 0;
+
+    /** Update index with current data
+     *  @param data Data of trace
+     *  @return Range of finite values. Low &gt; high if there are no finite values
+     */
+    public synchronized ValueRange update(final PlotDataProvider<XTYPE> data)
+    {
+        final int N = data.size();
+        if (N <= 0)
+            clear();
+        else if (size <= 0)
+            rebuild(data, N);
+        else
+        {
+            final XTYPE first = data.get(0).getPosition();
+            if (first.equals(first_position)  &&  N >= size  &&  isLastSample(data, size-1))
+                append(data, size, N);
+            else if (first.compareTo(first_position) > 0)
+            {   // Samples dropped from the start?
+                final int last = new PlotDataSearch<XTYPE>().findSampleLessOrEqual(data, last_position);
+                if (last >= 0  &&  last < size-1  &&  isLastSample(data, last))
+                {
+                    drop(data, size-1-last);
+                    first_position = first;
+                    append(data, size, N);
+                }
+                else
+                    rebuild(data, N);
+            }
+            else
+                rebuild(data, N);
+        }
+        return query();
+    }
+
+    /** @return <code>true</code> if sample matches the previous last sample */
+    private boolean isLastSample(final PlotDataProvider<XTYPE> data, final int index)
+    {
+        final PlotDataItem<XTYPE> item = data.get(index);
+        return item.getPosition().equals(last_position)  &&
+               Double.compare(item.getValue(), last_value) == 0;
+    }
+
+    /** Reset to empty index */
+    private void clear()
+    {
+        size = offset = head = count = 0;
+        first_position = last_position = null;
+        Arrays.fill(mins, Double.MAX_VALUE);
+        Arrays.fill(maxs, -Double.MAX_VALUE);
+    }
+
+    /** Re-index all samples */
+    private void rebuild(final PlotDataProvider<XTYPE> data, final int N)
+    {
+        clear();
+        first_position = data.get(0).getPosition();
+        append(data, 0, N);
+    }
+
+    /** Index samples
+     *  @param data Data
+     *  @param start Index of first new sample
+     *  @param end Index of last new sample (exclusive)
+     */
+    private void append(final PlotDataProvider<XTYPE> data, final int start, final int end)
+    {
+        int block = -1;
+        for (int i=start; i<end; ++i)
+        {
+            final int b = (i - offset) / BLOCK_SIZE;
+            if (b != block)
+            {
+                if (block >= 0)
+                    updatePath(leaf(block));
+                if (b >= count)
+                    addBlock();
+                block = b;
+            }
+            final double value = data.get(i).getValue();
+            if (! Double.isFinite(value))
+                continue;
+            final int leaf = leaf(b);
+            if (value < mins[leaf])
+                mins[leaf] = value;
+            if (value > maxs[leaf])
+                maxs[leaf] = value;
+        }
+        if (block >= 0)
+            updatePath(leaf(block));
+        size = end;
+        final PlotDataItem<XTYPE> last = data.get(end-1);
+        last_position = last.getPosition();
+        last_value = last.getValue();
+    }
+
+    /** Remove samples from start of index
+     *  @param data Data where samples have been removed
+     *  @param dropped Number of samples that were removed
+     */
+    private void drop(final PlotDataProvider<XTYPE> data, final int dropped)
+    {
+        size -= dropped;
+        offset -= dropped;
+        while (count > 0  &&  offset + BLOCK_SIZE <= 0)
+        {   // Remove complete block
+            final int leaf = leaf(0);
+            mins[leaf] = Double.MAX_VALUE;
+            maxs[leaf] = -Double.MAX_VALUE;
+            updatePath(leaf);
+            head = (head + 1) % capacity;
+            --count;
+            offset += BLOCK_SIZE;
+        }
+        if (count <= 0)
+            offset = 0;
+        if (count > 0  &&  offset < 0)
+        {   // Re-compute remaining part of first block
+            final int leaf = leaf(0);
+            mins[leaf] = Double.MAX_VALUE;
+            maxs[leaf] = -Double.MAX_VALUE;
+            final int end = Math.min(offset + BLOCK_SIZE, size);
+            for (int i=0; i<end; ++i)
+            {
+                final double value = data.get(i).getValue();
+                if (! Double.isFinite(value))
+                    continue;
+                if (value < mins[leaf])
+                    mins[leaf] = value;
+                if (value > maxs[leaf])
+                    maxs[leaf] = value;
+            }
+            updatePath(leaf);
+        }
+    }
+
+    /** @param block Block index
+     *  @return Tree node of that block's leaf
+     */
+    private int leaf(final int block)
+    {
+        return capacity + (head + block) % capacity;
+    }
+
+    /** Add empty block to end, growing the tree if necessary */
+    private void addBlock()
+    {
+        if (count >= capacity)
+        {   // Copy leaves in order into larger tree
+            final int new_capacity = Math.max(16, capacity * 2);
+            final double[] new_mins = new double[2*new_capacity], new_maxs = new double[2*new_capacity];
+            Arrays.fill(new_mins, Double.MAX_VALUE);
+            Arrays.fill(new_maxs, -Double.MAX_VALUE);
+            for (int i=0; i<count; ++i)
+            {
+                new_mins[new_capacity + i] = mins[leaf(i)];
+                new_maxs[new_capacity + i] = maxs[leaf(i)];
+            }
+            for (int n=new_capacity-1; n>0; --n)
+            {
+                new_mins[n] = Math.min(new_mins[2*n], new_mins[2*n+1]);
+                new_maxs[n] = Math.max(new_maxs[2*n], new_maxs[2*n+1]);
+            }
+            mins = new_mins;
+            maxs = new_maxs;
+            capacity = new_capacity;
+            head = 0;
+        }
+        final int leaf = leaf(count);
+        mins[leaf] = Double.MAX_VALUE;
+        maxs[leaf] = -Double.MAX_VALUE;
+        ++count;
+    }
+
+    /** @param node Tree node whose parents need to be updated */
+    private void updatePath(int node)
+    {
+        node /= 2;
+        while (node > 0)
+        {
+            mins[node] = Math.min(mins[2*node], mins[2*node+1]);
+            maxs[node] = Math.max(maxs[2*node], maxs[2*node+1]);
+            node /= 2;
+        }
+    }
+
+    /** @return Range of all blocks */
+    private ValueRange query()
+    {
+        if (count <= 0)
+            return new ValueRange(Double.MAX_VALUE, -Double.MAX_VALUE);
+        // Blocks outside of the circular range are empty,
+        // so the root covers everything
+        return new ValueRange(mins[1], maxs[1]);
+    }
+}
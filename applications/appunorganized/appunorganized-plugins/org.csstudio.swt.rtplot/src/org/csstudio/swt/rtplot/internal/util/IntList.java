@@ -58,6 +58,14 @@ public class IntList
         return data[index];
     }
 
+    /** @param size Number of elements to keep, 0 .. size() */
+    final public void truncate(final int size)
+    {
+        if (size < 0  ||  size > this.size)
+            throw new IndexOutOfBoundsException();
+        this.size = size;
+    }
+
     /** Clear array elements */
     final public void clear()
     {
@@ -271,4 +271,39 @@ public class FormulaUnitTest extends TestCase
         vars[0].setValue(4);
         assertEquals(1.0, f.eval(), epsilon);
     }
+
+    @Test
+    public void testArrays() throws Exception
+    {
+        final VariableNode v[] = new VariableNode[] { new VariableNode("a"), new VariableNode("b") };
+        final double a[] = { 1, -2, 3.5, 0, Double.NaN, 7 };
+        final double b[] = { 2, 2, -1, 0, 1, 0.5 };
+        final String formulas[] =
+        {
+            "a + b * 2 - a / b",
+            "(a ^ 2 >= b) | (a == b) & (a < 3)",
+            "!(a < b)",
+            "a > b ? sqrt(a) : atan2(a, b)",
+            "max(a, b, PI) + min(a, b, 1) + abs(a) + hypot(a, b)",
+            "a != b ? 1 : round(a)"
+        };
+        for (String expression : formulas)
+        {
+            final Formula f = new Formula(expression, v);
+            // Evaluate elements 1..4 as arrays
+            v[0].setValues(a);
+            v[1].setValues(b);
+            final double result[] = new double[4];
+            f.eval(1, 4, result);
+            v[0].setValues(null);
+            v[1].setValues(null);
+            // Compare with evaluation of each element
+            for (int i=0; i<result.length; ++i)
+            {
+                v[0].setValue(a[1+i]);
+                v[1].setValue(b[1+i]);
+                assertEquals(expression, f.eval(), result[i], 0.0);
+            }
+        }
+    }
 }
@@ -52,6 +52,10 @@ import org.csstudio.apputil.formula.node.SubNode;
  *  The formula string is parsed into a tree, so that subsequent
  *  evaluations, possibly with modified values for input variables,
  *  are reasonably fast.
+ *  To evaluate the formula for many input values,
+ *  set arrays of values for the variables and call
+ *  {@link #eval(int, int, double[])}, which handles
+ *  one operation at a time for all elements.
  *  <p>
  *  See FormulaDialog in org.csstudio.apputil.ui plugin.
  *  That plugin also contains a class diagram.
@@ -176,6 +180,13 @@ public class Formula implements Node
         return tree.eval();
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void eval(final int start, final int count, final double[] result)
+    {
+        tree.eval(start, count, result);
+    }
+
     /** {@inheritDoc} */
     @Override
     public boolean hasSubnode(final Node node)
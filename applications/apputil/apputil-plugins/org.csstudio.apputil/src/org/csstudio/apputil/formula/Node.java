@@ -18,6 +18,16 @@ public interface Node
      */
     public double eval();
 
+    /** Evaluate the node for several elements.
+     *  <p>
+     *  Variables provide one value per element,
+     *  see {@link VariableNode#setValues(double[])}.
+     *  @param start Index of first element in the variables' values
+     *  @param count Number of elements
+     *  @param result Receives value of element <code>start + i</code> in <code>result[i]</code>
+     */
+    public void eval(int start, int count, double[] result);
+
     /** Check if this node has given node as a subnode
      *  @return <code>true</code> if given node was found under this one.
      */
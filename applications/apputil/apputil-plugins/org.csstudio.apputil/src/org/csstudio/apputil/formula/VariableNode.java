@@ -7,6 +7,8 @@
  ******************************************************************************/
 package org.csstudio.apputil.formula;
 
+import java.util.Arrays;
+
 /** Named Variable.
  *  @author Kay Kasemir
  */
@@ -18,6 +20,9 @@ public class VariableNode implements Node
     /** Current value of the variable. */
     private double value;
 
+    /** Values for evaluating several elements, or <code>null</code> */
+    private double[] values = null;
+
     /** Create Variable with given name. */
     public VariableNode(final String name)
     {
@@ -44,6 +49,16 @@ public class VariableNode implements Node
         this.value = value;
     }
 
+    /** Set values for evaluating several elements
+     *  @param values Values of the variable, <b>not copied</b>,
+     *                or <code>null</code> to use the single value for all elements
+     *  @see Node#eval(int, int, double[])
+     */
+    public void setValues(final double[] values)
+    {
+        this.values = values;
+    }
+
     /** @return Returns the value. */
     public double getValue()
     {
@@ -56,6 +71,16 @@ public class VariableNode implements Node
         return value;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void eval(final int start, final int count, final double[] result)
+    {
+        if (values == null)
+            Arrays.fill(result, 0, count, value);
+        else
+            System.arraycopy(values, start, result, 0, count);
+    }
+
     /** {@inheritDoc} */
     @Override
     public boolean hasSubnode(final Node node)
@@ -23,6 +23,20 @@ abstract class AbstractBinaryNode implements Node
         this.right = right;
     }
 
+    /** Evaluate left and right node for several elements
+     *  @param start Index of first element
+     *  @param count Number of elements
+     *  @param result Receives values of left node
+     *  @return Values of right node
+     */
+    protected double[] evalOperands(final int start, final int count, final double[] result)
+    {
+        left.eval(start, count, result);
+        final double[] b = new double[count];
+        right.eval(start, count, b);
+        return b;
+    }
+
     /** {@inheritDoc} */
     @Override
     final public boolean hasSubnode(final Node node)
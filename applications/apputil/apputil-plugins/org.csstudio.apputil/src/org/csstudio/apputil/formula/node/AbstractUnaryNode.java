@@ -21,6 +21,27 @@ abstract class AbstractUnaryNode implements Node
         this.n = n;
     }
 
+    /** Evaluate the operation for one element
+     *  @param a Value of argument
+     *  @return Result
+     */
+    abstract protected double compute(double a);
+
+    @Override
+    public double eval()
+    {
+        return compute(n.eval());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void eval(final int start, final int count, final double[] result)
+    {
+        n.eval(start, count, result);
+        for (int i=0; i<count; ++i)
+            result[i] = compute(result[i]);
+    }
+
     /** {@inheritDoc} */
     @Override
     final public boolean hasSubnode(final Node node)
@@ -7,6 +7,8 @@
  ******************************************************************************/
 package org.csstudio.apputil.formula.node;
 
+import java.util.Arrays;
+
 import org.csstudio.apputil.formula.Node;
 
 /** One computational node.
@@ -27,6 +29,13 @@ public class ConstantNode implements Node
         return value;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void eval(final int start, final int count, final double[] result)
+    {
+        Arrays.fill(result, 0, count, value);
+    }
+
     /** {@inheritDoc} */
     @Override
     public boolean hasSubnode(final Node node)
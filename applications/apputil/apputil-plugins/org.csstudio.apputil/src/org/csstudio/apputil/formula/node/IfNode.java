@@ -31,6 +31,19 @@ public class IfNode implements Node
         return (cond.eval() != 0) ? yes.eval() : no.eval();
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void eval(final int start, final int count, final double[] result)
+    {
+        cond.eval(start, count, result);
+        final double[] y = new double[count];
+        yes.eval(start, count, y);
+        final double[] n = new double[count];
+        no.eval(start, count, n);
+        for (int i = 0; i < count; i++)
+            result[i] = (result[i] != 0) ? y[i] : n[i];
+    }
+
     /** {@inheritDoc} */
     @Override
     public boolean hasSubnode(final Node node)
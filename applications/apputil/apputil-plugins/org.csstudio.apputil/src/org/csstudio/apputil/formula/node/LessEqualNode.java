@@ -27,6 +27,15 @@ public class LessEqualNode extends AbstractBinaryNode
         return (a <= b) ? 1.0 : 0.0;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void eval(final int start, final int count, final double[] result)
+    {
+        final double[] b = evalOperands(start, count, result);
+        for (int i=0; i<count; ++i)
+            result[i] = (result[i] <= b[i]) ? 1.0 : 0.0;
+    }
+
     @SuppressWarnings("nls")
     @Override
     public String toString()
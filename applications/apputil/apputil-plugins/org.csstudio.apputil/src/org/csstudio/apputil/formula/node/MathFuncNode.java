@@ -7,7 +7,12 @@
  ******************************************************************************/
 package org.csstudio.apputil.formula.node;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.csstudio.apputil.formula.Node;
 
@@ -17,10 +22,16 @@ import org.csstudio.apputil.formula.Node;
  */
 public class MathFuncNode implements Node
 {
+    /** Name of the plugin logger */
+    final private static String LOGGER = "org.csstudio.apputil"; //$NON-NLS-1$
+
     final private String function;
     final private Node args[];
     final private Method method;
 
+    /** Handle for method with one or two arguments that returns double, otherwise <code>null</code> */
+    final private MethodHandle handle;
+
     /** Construct node for math function.
      *
      *  @param function One of the java.lang.Math.* method names
@@ -36,6 +47,10 @@ public class MathFuncNode implements Node
         for (int i = 0; i < args.length; i++)
             argcls[i] = double.class;
         method = Math.class.getDeclaredMethod(function, argcls);
+        if (method.getReturnType() == double.class  &&  args.length <= 2)
+            handle = MethodHandles.lookup().unreflect(method);
+        else
+            handle = null;
     }
 
     @Override
@@ -44,7 +59,7 @@ public class MathFuncNode implements Node
         final Object arglist[] = new Object[args.length];
         for (int i = 0; i < args.length; i++)
         {
-            arglist[i] = new Double(args[i].eval());
+            arglist[i] = Double.valueOf(args[i].eval());
         }
 
         try
@@ -53,13 +68,53 @@ public class MathFuncNode implements Node
             if (result instanceof Double)
                 return ((Double) result).doubleValue();
         }
-        catch (Exception e)
+        catch (Exception ex)
         {
-            e.printStackTrace();
+            Logger.getLogger(LOGGER).log(Level.WARNING, "Cannot evaluate " + this, ex); //$NON-NLS-1$
         }
         return 0.0;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void eval(final int start, final int count, final double[] result)
+    {
+        final double[][] values = new double[args.length][];
+        for (int a = 0; a < args.length; a++)
+        {
+            values[a] = a == 0 ? result : new double[count];
+            args[a].eval(start, count, values[a]);
+        }
+        try
+        {
+            if (handle != null  &&  args.length == 1)
+                for (int i = 0; i < count; i++)
+                    result[i] = (double) handle.invokeExact(result[i]);
+            else if (handle != null  &&  args.length == 2)
+            {
+                final double[] b = values[1];
+                for (int i = 0; i < count; i++)
+                    result[i] = (double) handle.invokeExact(result[i], b[i]);
+            }
+            else
+            {   // Same as eval(), one element at a time
+                final Object arglist[] = new Object[args.length];
+                for (int i = 0; i < count; i++)
+                {
+                    for (int a = 0; a < args.length; a++)
+                        arglist[a] = Double.valueOf(values[a][i]);
+                    final Object value = method.invoke(null, arglist);
+                    result[i] = (value instanceof Double) ? ((Double) value).doubleValue() : 0.0;
+                }
+            }
+        }
+        catch (Throwable ex)
+        {
+            Logger.getLogger(LOGGER).log(Level.WARNING, "Cannot evaluate " + this, ex); //$NON-NLS-1$
+            Arrays.fill(result, 0, count, 0.0);
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     public boolean hasSubnode(final Node node)
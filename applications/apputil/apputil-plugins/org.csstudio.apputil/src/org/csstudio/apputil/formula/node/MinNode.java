@@ -34,6 +34,21 @@ public class MinNode implements Node
         return result;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void eval(final int start, final int count, final double[] result)
+    {
+        args[0].eval(start, count, result);
+        final double[] v = new double[count];
+        for (int a = 1; a < args.length; a++)
+        {
+            args[a].eval(start, count, v);
+            for (int i = 0; i < count; i++)
+                if (v[i] < result[i])
+                    result[i] = v[i];
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     public boolean hasSubnode(final Node node)
@@ -25,6 +25,15 @@ public class OrNode extends AbstractBinaryNode
         return (left.eval() != 0.0   ||   right.eval() != 0.0) ? 1.0 : 0.0;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void eval(final int start, final int count, final double[] result)
+    {
+        final double[] b = evalOperands(start, count, result);
+        for (int i=0; i<count; ++i)
+            result[i] = (result[i] != 0.0   ||   b[i] != 0.0) ? 1.0 : 0.0;
+    }
+
     @SuppressWarnings("nls")
     @Override
     public String toString()
@@ -27,6 +27,15 @@ public class PwrNode extends AbstractBinaryNode
         return Math.pow(a, b);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void eval(final int start, final int count, final double[] result)
+    {
+        final double[] b = evalOperands(start, count, result);
+        for (int i=0; i<count; ++i)
+            result[i] = Math.pow(result[i], b[i]);
+    }
+
     @SuppressWarnings("nls")
     @Override
     public String toString()
@@ -20,9 +20,8 @@ public class RndNode extends AbstractUnaryNode
     }
 
     @Override
-    public double eval()
+    protected double compute(final double a)
     {
-        final double a = n.eval();
         return a*Math.random();
     }
 
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.model;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.csstudio.archive.vtype.ArchiveVNumber;
+import org.csstudio.archive.vtype.VTypeHelper;
+import org.diirt.vtype.AlarmSeverity;
+import org.diirt.vtype.VType;
+import org.junit.Test;
+
+/** JUnit test of the decimation in {@link ArchiveChannel}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class DecimationUnitTest
+{
+    /** Start time, well in the past */
+    final private static Instant start = Instant.now().minusSeconds(10);
+
+    private static VType newValue(final long millis, final AlarmSeverity severity, final double value)
+    {
+        return new ArchiveVNumber(start.plus(Duration.ofMillis(millis)), severity,
+                severity == AlarmSeverity.NONE ? "OK" : "HIGH", TestHelper.display, value);
+    }
+
+    @Test
+    public void testDecimation() throws Exception
+    {
+        final MonitoredArchiveChannel channel = new MonitoredArchiveChannel("test", Enablement.Passive, 100, null, 0.0);
+        final SampleBuffer buffer = channel.getSampleBuffer();
+        buffer.setDecimationNanos(TimeUnit.MINUTES.toNanos(1));
+
+        // First value is archived, following ones are held back
+        assertThat(channel.addSampleToBuffer(newValue(0, AlarmSeverity.NONE, 1.0)), equalTo(true));
+        assertThat(channel.addSampleToBuffer(newValue(100, AlarmSeverity.NONE, 2.0)), equalTo(false));
+        assertThat(channel.addSampleToBuffer(newValue(200, AlarmSeverity.NONE, 3.0)), equalTo(false));
+        assertThat(buffer.getQueueSize(), equalTo(1));
+        assertThat(buffer.getBufferStats().getDecimated(), equalTo(1L));
+
+        // Alarm change is archived right away, after the value held until then
+        assertThat(channel.addSampleToBuffer(newValue(300, AlarmSeverity.MAJOR, 4.0)), equalTo(true));
+        assertThat(buffer.getQueueSize(), equalTo(3));
+        assertThat(VTypeHelper.toDouble(buffer.remove()), equalTo(1.0));
+        assertThat(VTypeHelper.toDouble(buffer.remove()), equalTo(3.0));
+        assertThat(VTypeHelper.toDouble(buffer.remove()), equalTo(4.0));
+
+        // PV goes quiet after a skipped value
+        assertThat(channel.addSampleToBuffer(newValue(400, AlarmSeverity.MAJOR, 5.0)), equalTo(false));
+        // Decimation period has not passed
+        channel.releaseDecimatedValue();
+        assertThat(buffer.getQueueSize(), equalTo(0));
+        // Once it has passed, the last value is archived
+        buffer.setDecimationNanos(TimeUnit.SECONDS.toNanos(1));
+        channel.releaseDecimatedValue();
+        assertThat(buffer.getQueueSize(), equalTo(1));
+        assertThat(VTypeHelper.toDouble(buffer.remove()), equalTo(5.0));
+        channel.releaseDecimatedValue();
+        assertThat(buffer.getQueueSize(), equalTo(0));
+    }
+}
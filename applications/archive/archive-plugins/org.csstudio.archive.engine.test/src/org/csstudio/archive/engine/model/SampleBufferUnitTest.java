@@ -8,8 +8,18 @@
 package org.csstudio.archive.engine.model;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.time.Instant;
+
+import org.csstudio.archive.vtype.ArchiveVNumber;
+import org.csstudio.archive.vtype.ArchiveVString;
+import org.csstudio.archive.vtype.MetaDataHelper;
 import org.csstudio.archive.vtype.VTypeHelper;
+import org.diirt.vtype.AlarmSeverity;
+import org.diirt.vtype.VNumber;
+import org.diirt.vtype.VString;
 import org.diirt.vtype.VType;
 import org.junit.Test;
 
@@ -53,6 +63,38 @@ public class SampleBufferUnitTest
         assertEquals(1.0, VTypeHelper.toDouble(value), 0.01);
     }
 
+    /** Numeric samples kept in primitive arrays must come back unchanged */
+    @Test
+    public void testTypes()
+    {
+        final Instant now = Instant.now();
+        buffer.add(new ArchiveVNumber(now, AlarmSeverity.MINOR, "LOW", TestHelper.display, Integer.valueOf(42)));
+        buffer.add(new ArchiveVNumber(now.plusNanos(1), AlarmSeverity.MAJOR, "HIHI", TestHelper.display, 3.14));
+        buffer.add(new ArchiveVString(now.plusNanos(2), AlarmSeverity.NONE, "OK", "Text"));
+        assertEquals(3, buffer.getQueueSize());
+
+        VType value = buffer.remove();
+        assertTrue(((VNumber)value).getValue() instanceof Integer);
+        assertEquals(42, ((VNumber)value).getValue().intValue());
+        assertEquals(now, VTypeHelper.getTimestamp(value));
+        assertEquals(AlarmSeverity.MINOR, VTypeHelper.getSeverity(value));
+        assertEquals("LOW", VTypeHelper.getMessage(value));
+        assertTrue(MetaDataHelper.equals(TestHelper.display, value));
+
+        value = buffer.remove();
+        assertTrue(((VNumber)value).getValue() instanceof Double);
+        assertEquals(3.14, VTypeHelper.toDouble(value), 0.0);
+        assertEquals(now.plusNanos(1), VTypeHelper.getTimestamp(value));
+        assertEquals(AlarmSeverity.MAJOR, VTypeHelper.getSeverity(value));
+
+        value = buffer.remove();
+        assertTrue(value instanceof VString);
+        assertEquals("Text", ((VString)value).getValue());
+
+        assertNull(buffer.remove());
+        assertEquals(0, buffer.getQueueSize());
+    }
+
     final private static long TEST_RUNS = 1000L;
 
     class FillThread extends Thread
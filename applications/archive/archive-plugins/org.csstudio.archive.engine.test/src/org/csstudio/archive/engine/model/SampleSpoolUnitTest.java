@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.time.Instant;
+
+import org.csstudio.archive.vtype.ArchiveVString;
+import org.csstudio.archive.vtype.MetaDataHelper;
+import org.csstudio.archive.vtype.VTypeHelper;
+import org.diirt.vtype.AlarmSeverity;
+import org.diirt.vtype.VNumber;
+import org.diirt.vtype.VString;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** JUnit test of the {@link SampleSpool}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class SampleSpoolUnitTest
+{
+    private File directory;
+
+    @Before
+    public void setup() throws Exception
+    {
+        directory = Files.createTempDirectory("spool").toFile();
+    }
+
+    @After
+    public void cleanup()
+    {
+        for (File file : directory.listFiles())
+            file.delete();
+        directory.delete();
+    }
+
+    /** Samples come back in order, across several segments */
+    @Test
+    public void testAppendReplay() throws Exception
+    {
+        // Small segments to force several segment files
+        final SampleSpool spool = new SampleSpool(directory, 1024);
+        assertTrue(spool.isEmpty());
+        for (int i=0; i<100; ++i)
+            spool.append(i % 2 == 0 ? "even" : "odd", TestHelper.newValue(i));
+        spool.append("text", new ArchiveVString(Instant.now(), AlarmSeverity.MINOR, "Test", "Hello"));
+        System.out.println(spool);
+        assertTrue(spool.getSegmentCount() > 1);
+
+        for (int i=0; i<100; ++i)
+        {
+            SampleSpool.Sample sample = spool.next();
+            if (sample == null)
+            {   // End of segment, need to commit
+                spool.commit();
+                sample = spool.next();
+            }
+            assertEquals(i % 2 == 0 ? "even" : "odd", sample.getChannelName());
+            assertEquals(i, VTypeHelper.toDouble(sample.getValue()), 0.01);
+            assertTrue(MetaDataHelper.equals(TestHelper.display, (VNumber) sample.getValue()));
+        }
+        spool.commit();
+        final SampleSpool.Sample sample = spool.next();
+        assertEquals("text", sample.getChannelName());
+        assertEquals("Hello", ((VString) sample.getValue()).getValue());
+        assertEquals(AlarmSeverity.MINOR, VTypeHelper.getSeverity(sample.getValue()));
+        assertNull(spool.next());
+
+        // Once all is committed, segment files are removed
+        spool.commit();
+        assertTrue(spool.isEmpty());
+        assertEquals(0, directory.listFiles().length);
+        spool.close();
+    }
+
+    /** Samples read but not committed are read again */
+    @Test
+    public void testRollback() throws Exception
+    {
+        SampleSpool spool = new SampleSpool(directory, 64*1024);
+        for (int i=0; i<10; ++i)
+            spool.append("demo", TestHelper.newValue(i));
+
+        assertEquals(0.0, VTypeHelper.toDouble(spool.next().getValue()), 0.01);
+        spool.commit();
+        assertEquals(1.0, VTypeHelper.toDouble(spool.next().getValue()), 0.01);
+        spool.rollback();
+        assertEquals(1.0, VTypeHelper.toDouble(spool.next().getValue()), 0.01);
+        spool.close();
+
+        // Re-open: Continue after last commit
+        spool = new SampleSpool(directory, 64*1024);
+        assertTrue(! spool.isEmpty());
+        final SampleSpool.Sample sample = spool.next();
+        assertEquals("demo", sample.getChannelName());
+        assertEquals(1.0, VTypeHelper.toDouble(sample.getValue()), 0.01);
+        spool.close();
+    }
+
+    /** Truncated or corrupted segment files are skipped */
+    @Test
+    public void testCorruptedFiles() throws Exception
+    {
+        SampleSpool spool = new SampleSpool(directory, 64*1024);
+        for (int i=0; i<10; ++i)
+            spool.append("demo", TestHelper.newValue(i));
+        spool.close();
+
+        // Empty file, file shorter than header, header with invalid positions
+        Files.write(new File(directory, "spool_00000100.dat").toPath(), new byte[0]);
+        Files.write(new File(directory, "spool_00000101.dat").toPath(), new byte[] { 0x53, 0x50 });
+        final ByteBuffer header = ByteBuffer.allocate(64);
+        header.putInt(0x53504F4C).putInt(12).putInt(1000);
+        Files.write(new File(directory, "spool_00000102.dat").toPath(), header.array());
+
+        spool = new SampleSpool(directory, 64*1024);
+        for (int i=0; i<10; ++i)
+            assertEquals(i, VTypeHelper.toDouble(spool.next().getValue()), 0.01);
+        assertNull(spool.next());
+        spool.close();
+    }
+
+    /** Segments of a spool directory are moved behind those of another */
+    @Test
+    public void testMoveSegments() throws Exception
+    {
+        final File first = new File(directory, "writer1"), second = new File(directory, "writer2");
+        SampleSpool spool = new SampleSpool(first, 64*1024);
+        spool.append("a", TestHelper.newValue(1));
+        spool.close();
+        spool = new SampleSpool(second, 64*1024);
+        spool.append("b", TestHelper.newValue(2));
+        spool.close();
+
+        SampleSpool.moveSegments(second, first);
+        assertTrue(! second.exists());
+        spool = new SampleSpool(first, 64*1024);
+        assertEquals(2, spool.getSegmentCount());
+        assertEquals("a", spool.next().getChannelName());
+        assertNull(spool.next());
+        spool.commit();
+        assertEquals("b", spool.next().getChannelName());
+        spool.commit();
+        assertTrue(spool.isEmpty());
+        spool.close();
+        first.delete();
+    }
+}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/** JUnit test of the {@link WriteController}
+ *  @author Kay Kasemir
+ */
+public class WriteControllerUnitTest
+{
+    @Test
+    public void testPeriod()
+    {
+        final WriteController controller = new WriteController(30.0, 500);
+        assertEquals(30.0, controller.getPeriod(), 0.01);
+
+        // Buffers filling up: Write more often
+        controller.update(0.6, 0.3, 1.0, 0.1, false);
+        assertEquals(15.0, controller.getPeriod(), 0.01);
+        controller.update(0.6, 0.3, 1.0, 0.1, false);
+        assertEquals(7.5, controller.getPeriod(), 0.01);
+
+        // Buffers emptied: Return to configured period
+        for (int i=0; i<10; ++i)
+            controller.update(0.1, 0.05, 1.0, 0.1, false);
+        assertEquals(30.0, controller.getPeriod(), 0.01);
+    }
+
+    @Test
+    public void testBatchSize()
+    {
+        final WriteController controller = new WriteController(30.0, 500);
+        // Most time spent waiting for the database to complete batches
+        controller.update(0.1, 0.1, 1.0, 0.9, false);
+        assertEquals(1000, controller.getBatchSize());
+        for (int i=0; i<10; ++i)
+            controller.update(0.1, 0.1, 1.0, 0.9, false);
+        assertEquals(8000, controller.getBatchSize());
+
+        // Round trips no longer dominate
+        for (int i=0; i<10; ++i)
+            controller.update(0.1, 0.1, 1.0, 0.1, false);
+        assertEquals(500, controller.getBatchSize());
+    }
+
+    @Test
+    public void testBackpressure()
+    {
+        final WriteController controller = new WriteController(30.0, 500);
+        assertFalse(controller.isBackpressure());
+        assertEquals(0, controller.getDecimationNanos(100));
+
+        // Write errors: Ask channels to decimate
+        controller.update(0.3, 0.1, 0.0, 0.0, true);
+        assertTrue(controller.isBackpressure());
+        // 30 seconds for half of 100 samples
+        assertEquals(600000000L, controller.getDecimationNanos(100));
+
+        // Stays on until buffers are almost empty
+        controller.update(0.3, 0.1, 1.0, 0.1, false);
+        assertTrue(controller.isBackpressure());
+        controller.update(0.1, 0.1, 1.0, 0.1, false);
+        assertFalse(controller.isBackpressure());
+    }
+}
@@ -15,6 +15,8 @@ package org.csstudio.archive.engine;
 @SuppressWarnings("nls")
 public class Messages
 {
+    final public static String HTTP_AdaptiveWrite = "Adaptive Write";
+    final public static String HTTP_Backpressure = "Backpressure";
     final public static String HTTP_BatchSize = "Batch Size";
     final public static String HTTP_Channel = "Channel";
     final public static String HTTP_ChannelCount = "Channels";
@@ -25,6 +27,7 @@ public class Messages
     final public static String HTTP_Disabled = "Disabled";
     final public static String HTTP_Disconnected = "Disconnected";
     final public static String HTTP_DisconnectedTitle = "Disconnected Channels";
+    final public static String HTTP_Decimated = "Decimated";
     final public static String HTTP_Enabled = "Enabled";
     final public static String HTTP_Enablement = "Enablement";
     final public static String HTTP_EnablingChannel = "Enabling Channel";
@@ -38,6 +41,9 @@ public class Messages
     final public static String HTTP_LastWriteTime = "Last Written";
     final public static String HTTP_MainTitle = "Archive Engine";
     final public static String HTTP_Mechanism = "Mechanism";
+    final public static String HTTP_FillAvg = "Buffer Fill Avg.";
+    final public static String HTTP_FillMax = "Buffer Fill Max.";
+    final public static String HTTP_FlushShare = "Waiting for DB";
     final public static String HTTP_Never = "never";
     final public static String HTTP_QueueAvg = "Queue Avg.";
     final public static String HTTP_QueueLen = "Queue Len.";
@@ -45,6 +51,8 @@ public class Messages
     final public static String HTTP_QueueCapacity = "Capacity";
     final public static String HTTP_QueueOverruns = "Overruns";
     final public static String HTTP_ReceivedValues = "Received Values";
+    final public static String HTTP_Spool = "Spool";
+    final public static String HTTP_SpoolEmpty = "empty";
     final public static String HTTP_StartTime = "Start Time";
     final public static String HTTP_State = "State";
     final public static String HTTP_Status = "Status";
@@ -57,4 +65,6 @@ public class Messages
     final public static String HTTP_WriteError = "Write Error";
     final public static String HTTP_WritePeriod = "Write Period";
     final public static String HTTP_WriteState = "Write State";
+    final public static String HTTP_WriteThread = "Write Thread";
+    final public static String HTTP_WriteThreads = "Write Threads";
 }
@@ -49,6 +49,51 @@ public class Preferences
         return prefs.getInt(Activator.ID, "batch_size", batch_size, null);
     }
 
+    public static int getWriteThreads()
+    {
+        final IPreferencesService prefs = Platform.getPreferencesService();
+        final int write_threads = 1;
+        if (prefs == null)
+            return write_threads;
+        return Math.max(1, prefs.getInt(Activator.ID, "write_threads", write_threads, null));
+    }
+
+    public static boolean isAdaptiveWrite()
+    {
+        final IPreferencesService prefs = Platform.getPreferencesService();
+        final boolean adaptive_write = false;
+        if (prefs == null)
+            return adaptive_write;
+        return prefs.getBoolean(Activator.ID, "adaptive_write", adaptive_write, null);
+    }
+
+    public static String getSpoolDirectory()
+    {
+        final IPreferencesService prefs = Platform.getPreferencesService();
+        final String spool_directory = "";
+        if (prefs == null)
+            return spool_directory;
+        return prefs.getString(Activator.ID, "spool_directory", spool_directory, null).trim();
+    }
+
+    public static int getSpoolSegmentMB()
+    {
+        final IPreferencesService prefs = Platform.getPreferencesService();
+        final int spool_segment_mb = 64;
+        if (prefs == null)
+            return spool_segment_mb;
+        return Math.max(1, prefs.getInt(Activator.ID, "spool_segment_mb", spool_segment_mb, null));
+    }
+
+    public static double getSpoolReplayRate()
+    {
+        final IPreferencesService prefs = Platform.getPreferencesService();
+        final double spool_replay_rate = 5000.0;
+        if (prefs == null)
+            return spool_replay_rate;
+        return prefs.getDouble(Activator.ID, "spool_replay_rate", spool_replay_rate, null);
+    }
+
     public static double getBufferReserve()
     {
         final IPreferencesService prefs = Platform.getPreferencesService();
@@ -9,6 +9,7 @@ package org.csstudio.archive.engine.model;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Objects;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -107,6 +108,14 @@ abstract public class ArchiveChannel extends PVListenerAdapter
      */
     protected VType last_archived_value = null;
 
+    /** Most recent value skipped because of decimation, or <code>null</code>.
+     *  Archived once the decimation period has passed,
+     *  so the archive does not keep a stale value when the PV goes quiet.
+     *  <p>
+     *  SYNC: Lock on <code>this</code> for access.
+     */
+    private VType decimated_value = null;
+
     /** Buffer of received samples, periodically written */
     private final SampleBuffer buffer;
 
@@ -398,6 +407,8 @@ abstract public class ArchiveChannel extends PVListenerAdapter
     {
         synchronized (this)
         {
+            // Keep the last value before the info
+            archiveDecimatedValue();
             if (last_archived_value != null)
             {
                 final Instant last = VTypeHelper.getTimestamp(last_archived_value);
@@ -456,13 +467,91 @@ abstract public class ArchiveChannel extends PVListenerAdapter
             }
             // else ...
             last_archived_value = value;
+            decimated_value = null;
+            // Add while holding the lock, so that the sample buffer
+            // only sees one producer at a time, in time stamp order
+            buffer.add(value);
         }
-        buffer.add(value);
         if (SampleBuffer.isInErrorState())
             need_write_error_sample = true;
         return true;
     }
 
+    /** Add a sampled value to the buffer, unless the write thread
+     *  asked for decimation and the value follows the last archived
+     *  value too closely.
+     *  <p>
+     *  Changes in alarm severity or status are never skipped.
+     *  The most recent skipped value is held and archived
+     *  when the decimation period has passed.
+     *
+     *  @param value Value to archive
+     *  @return <code>false</code> if value was skipped or failed the checks
+     *          of {@link #addValueToBuffer(VType)},
+     *          <code>true</code> if value was added.
+     */
+    final protected boolean addSampleToBuffer(final VType value)
+    {
+        final long decimation = buffer.getDecimationNanos();
+        synchronized (this)
+        {
+            if (decimation > 0  &&  last_archived_value != null  &&
+                ! isAlarmChange(last_archived_value, value)  &&
+                Duration.between(VTypeHelper.getTimestamp(last_archived_value),
+                                 VTypeHelper.getTimestamp(value)).toNanos() < decimation)
+            {
+                if (decimated_value != null)
+                    buffer.getBufferStats().addDecimated();
+                decimated_value = value;
+                return false;
+            }
+            // Decimation period has passed, or alarm state changed:
+            // Archive the value held until now, then the new one
+            archiveDecimatedValue();
+            return addValueToBuffer(value);
+        }
+    }
+
+    /** Archive the value held back by decimation
+     *  once the decimation period has passed.
+     *  Called periodically by the write thread.
+     */
+    final void releaseDecimatedValue()
+    {
+        synchronized (this)
+        {
+            if (decimated_value == null)
+                return;
+            final long decimation = buffer.getDecimationNanos();
+            if (decimation > 0  &&  last_archived_value != null  &&
+                Duration.between(VTypeHelper.getTimestamp(last_archived_value), Instant.now()).toNanos() < decimation)
+                return;
+            archiveDecimatedValue();
+        }
+    }
+
+    /** Archive the value held back by decimation, if there is one.
+     *  Caller must hold lock on <code>this</code>.
+     */
+    private void archiveDecimatedValue()
+    {
+        final VType value = decimated_value;
+        if (value == null)
+            return;
+        decimated_value = null;
+        addValueToBuffer(value);
+    }
+
+    /** @param last Last archived value
+     *  @param value New value
+     *  @return <code>true</code> if alarm severity or status differ
+     */
+    private static boolean isAlarmChange(final VType last, final VType value)
+    {
+        return VTypeHelper.getSeverity(last) != VTypeHelper.getSeverity(value)  ||
+               ! Objects.equals(VTypeHelper.getMessage(last), VTypeHelper.getMessage(value));
+    }
+
     /** Determine if the channel is enabled.
      *  <p>
      *  Checks all groups to which the channel belongs.
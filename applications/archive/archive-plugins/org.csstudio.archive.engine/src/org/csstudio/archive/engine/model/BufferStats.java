@@ -20,6 +20,8 @@ public class BufferStats
 
     private int overruns = 0;
 
+    private long decimated = 0;
+
     /** @return Maximum queue size so far
      *  @see #reset()
      */
@@ -40,12 +42,19 @@ public class BufferStats
         return overruns;
     }
 
+    /** @return Number of samples skipped because of decimation. */
+    synchronized public final long getDecimated()
+    {
+        return decimated;
+    }
+
     /** Reset the statistics. */
     synchronized public void reset()
     {
         max_size = 0;
         average_size.reset();
         overruns = 0;
+        decimated = 0;
     }
 
     /** Update the buffer stats.
@@ -63,4 +72,10 @@ public class BufferStats
     {
         ++overruns;
     }
+
+    /** Add a sample that was skipped because of decimation. */
+    synchronized public void addDecimated()
+    {
+        ++decimated;
+    }
 }
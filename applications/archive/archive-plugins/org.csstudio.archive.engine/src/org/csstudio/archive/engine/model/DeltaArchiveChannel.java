@@ -66,7 +66,7 @@ public class DeltaArchiveChannel extends ArchiveChannel
         if (isEnabled()  &&  isBeyondDelta(value))
         {
             Activator.getLogger().log(Level.FINE, "Wrote sample for {0}: {1}", new Object[] { getName(), value });
-            addValueToBuffer(value);
+            addSampleToBuffer(value);
             return true;
         }
         return false;
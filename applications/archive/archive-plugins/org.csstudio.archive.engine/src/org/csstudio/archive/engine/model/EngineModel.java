@@ -7,6 +7,7 @@
  ******************************************************************************/
 package org.csstudio.archive.engine.model;
 
+import java.io.File;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -40,8 +41,10 @@ public class EngineModel
     /** Name of this model */
     private String name = "Archive Engine";  //$NON-NLS-1$
 
-    /** Thread that writes to the <code>archive</code> */
-    final private WriteThread writer;
+    /** Threads that write to the <code>archive</code>,
+     *  each handling a partition of the channels
+     */
+    final private WriteThread[] writers;
 
     /** All the channels.
      *  <p>
@@ -97,6 +100,15 @@ public class EngineModel
     /** Write batch size */
     final private static int batch_size = Preferences.getBatchSize();
 
+    /** Number of write threads */
+    final private static int write_threads = Preferences.getWriteThreads();
+
+    /** Adapt write period and batch size? */
+    final private static boolean adaptive_write = Preferences.isAdaptiveWrite();
+
+    /** Spool directory, empty if not using a spool */
+    final private static String spool_directory = Preferences.getSpoolDirectory();
+
     /** Buffer reserve (N times what's ideally needed) */
     final private static double buffer_reserve = Preferences.getBufferReserve();
 
@@ -104,9 +116,15 @@ public class EngineModel
     final private static long ignored_future = Preferences.getIgnoredFutureSecs();
 
     /** Construct model that writes to archive */
+    @SuppressWarnings("nls")
     public EngineModel()
     {
-        writer = new WriteThread();
+        writers = new WriteThread[write_threads];
+        if (write_threads == 1)
+            writers[0] = new WriteThread();
+        else
+            for (int i=0; i<write_threads; ++i)
+                writers[i] = new WriteThread("WriteThread " + (i+1));
     }
 
     /** @return Name (description) */
@@ -133,6 +151,29 @@ public class EngineModel
         return batch_size;
     }
 
+    /** @return <code>true</code> if write period and batch size adapt to load */
+    public boolean isAdaptiveWrite()
+    {
+        return adaptive_write;
+    }
+
+    /** @return Number of bytes waiting in the sample spools,
+     *          -1 when not using a spool
+     */
+    public long getSpoolBytes()
+    {
+        if (spool_directory.isEmpty())
+            return -1;
+        long bytes = 0;
+        for (WriteThread writer : writers)
+        {
+            final SampleSpool spool = writer.getSpool();
+            if (spool != null)
+                bytes += spool.getPendingBytes();
+        }
+        return bytes;
+    }
+
     /** @return Current model state */
     public State getState()
     {
@@ -277,7 +318,7 @@ public class EngineModel
             channels.add(channel);
             channel_by_name.put(channel.getName(), channel);
         }
-        writer.addChannel(channel);
+        getWriteThread(channel).addChannel(channel);
 
         // Connect new or old channel to group
         channel.addGroup(group);
@@ -287,11 +328,30 @@ public class EngineModel
     }
 
     /** Start processing all channels and writing to archive. */
+    @SuppressWarnings("nls")
     public void start() throws Exception
     {
         start_time = Instant.now();
         state = State.RUNNING;
-        writer.start(write_period, batch_size);
+        if (! spool_directory.isEmpty())
+        {
+            // Spools of write threads from a previous run with more threads
+            // are replayed by the remaining ones
+            final File[] dirs = new File(spool_directory).listFiles((dir, name) -> name.matches("writer[0-9]+"));
+            if (dirs != null)
+                for (File dir : dirs)
+                {
+                    final int number = Integer.parseInt(dir.getName().substring(6));
+                    if (number > writers.length)
+                        SampleSpool.moveSegments(dir, new File(spool_directory, "writer" + ((number-1) % writers.length + 1)));
+                }
+            for (int i=0; i<writers.length; ++i)
+                writers[i].setSpool(new SampleSpool(new File(spool_directory, "writer" + (i+1)),
+                                                    Preferences.getSpoolSegmentMB() * 1024 * 1024),
+                                    Preferences.getSpoolReplayRate());
+        }
+        for (WriteThread writer : writers)
+            writer.start(write_period, batch_size, adaptive_write);
         for (ArchiveGroup group : groups)
         {
             group.start();
@@ -304,22 +364,57 @@ public class EngineModel
         scan_thread.start();
     }
 
+    /** @return Number of write threads */
+    public int getWriteThreadCount()
+    {
+        return writers.length;
+    }
+
+    /** @param i Write thread index, 0 ... <code>getWriteThreadCount()-1</code>
+     *  @return Write thread
+     */
+    public WriteThread getWriteThread(final int i)
+    {
+        return writers[i];
+    }
+
+    /** @param channel Channel
+     *  @return Write thread that handles the channel's partition
+     */
+    private WriteThread getWriteThread(final ArchiveChannel channel)
+    {
+        return writers[Math.floorMod(channel.getName().hashCode(), writers.length)];
+    }
+
     /** @return Timestamp of end of last write run */
     public Instant getLastWriteTime()
     {
-        return writer.getLastWriteTime();
+        Instant last = null;
+        for (WriteThread writer : writers)
+        {
+            final Instant time = writer.getLastWriteTime();
+            if (time != null  &&  (last == null  ||  time.isAfter(last)))
+                last = time;
+        }
+        return last;
     }
 
-    /** @return Average number of values per write run */
+    /** @return Average number of values per write run, summed over all write threads */
     public double getWriteCount()
     {
-        return writer.getWriteCount();
+        double count = 0.0;
+        for (WriteThread writer : writers)
+            count += writer.getWriteCount();
+        return count;
     }
 
-    /** @return  Average duration of write run in seconds */
+    /** @return  Average duration of write run in seconds, longest of all write threads */
     public double getWriteDuration()
     {
-        return writer.getWriteDuration();
+        double duration = 0.0;
+        for (WriteThread writer : writers)
+            duration = Math.max(duration, writer.getWriteDuration());
+        return duration;
     }
 
     /** @see Scanner#getIdlePercentage() */
@@ -352,7 +447,8 @@ public class EngineModel
     /** Reset engine statistics */
     public void reset()
     {
-        writer.reset();
+        for (WriteThread writer : writers)
+            writer.reset();
         scanner.reset();
         synchronized (this)
         {
@@ -377,7 +473,24 @@ public class EngineModel
             group.stop();
         // Flush all values out
         Activator.getLogger().info("Stopping writer");
-        writer.shutdown();
+        // Shut down all writers, then report the first error
+        Exception error = null;
+        for (WriteThread writer : writers)
+        {
+            try
+            {
+                writer.shutdown();
+            }
+            catch (Exception ex)
+            {
+                if (error == null)
+                    error = ex;
+                else
+                    error.addSuppressed(ex);
+            }
+        }
+        if (error != null)
+            throw error;
         // Update state
         state = State.IDLE;
         start_time = null;
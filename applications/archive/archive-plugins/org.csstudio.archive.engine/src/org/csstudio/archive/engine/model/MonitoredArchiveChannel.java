@@ -51,7 +51,7 @@ public class MonitoredArchiveChannel extends ArchiveChannel
         if (isEnabled())
         {
             Activator.getLogger().log(Level.FINE, "Wrote sample for {0}: {1}", new Object[] { getName(), value });
-            addValueToBuffer(value);
+            addSampleToBuffer(value);
             return true;
         }
         return false;
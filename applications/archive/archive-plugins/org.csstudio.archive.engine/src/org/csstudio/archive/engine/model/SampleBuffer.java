@@ -7,34 +7,104 @@
  ******************************************************************************/
 package org.csstudio.archive.engine.model;
 
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
-import org.csstudio.apputil.ringbuffer.RingBuffer;
 import org.csstudio.archive.engine.ThrottledLogger;
+import org.csstudio.archive.vtype.ArchiveVNumber;
+import org.csstudio.archive.vtype.MetaDataHelper;
+import org.csstudio.archive.vtype.VTypeHelper;
+import org.diirt.vtype.AlarmSeverity;
+import org.diirt.vtype.Display;
+import org.diirt.vtype.VNumber;
 import org.diirt.vtype.VType;
+import org.diirt.vtype.ValueFactory;
 
 /** Buffer for the samples of one channel.
  *  <p>
  *  Assumes that one thread adds samples, while a different
  *  thread removes them.
  *  When the queue size is reached, older samples get dropped.
+ *  <p>
+ *  Lock-free ring buffer.
+ *  The producer only advances the <code>tail</code>,
+ *  the consumer advances the <code>head</code>.
+ *  On overrun, the producer also advances the <code>head</code>
+ *  to drop the oldest sample, so both use compare-and-set on the head.
+ *  A consumer that lost the race for a slot simply
+ *  discards what it read and tries the next slot.
+ *  <p>
+ *  Scalar numeric samples are kept as time, severity and value
+ *  in parallel primitive arrays, with references to the
+ *  (shared) status text and display meta data.
+ *  They are turned back into a {@link VType} when removed.
+ *  All other samples are kept as they are.
  *
  *  @author Kay Kasemir
  */
 public class SampleBuffer
 {
+    /** Slot holds complete VType in <code>objects</code> */
+    final private static byte OBJECT = 0;
+
+    /** Slot holds number of the given type, with display in <code>objects</code> */
+    final private static byte DOUBLE = 1, FLOAT = 2, LONG = 3, INTEGER = 4, SHORT = 5, BYTE = 6;
+
+    /** Cached values of alarm severities, indexed by ordinal */
+    final private static AlarmSeverity[] SEVERITIES = AlarmSeverity.values();
+
     /** Name of channel that writes to this buffer.
      *  (we keep only the name, not the full channel,
      *  to decouple stuff).
      */
     final private String channel_name;
 
-    /** The actual samples in a thread-save queue. */
-    final private RingBuffer<VType> samples;
+    /** Maximum number of samples */
+    final private int capacity;
+
+    /** Kind of sample in each slot: OBJECT, DOUBLE, ... */
+    final private byte[] kinds;
+
+    /** Epoch seconds of numeric samples */
+    final private long[] seconds;
+
+    /** Nanoseconds of numeric samples */
+    final private int[] nanos;
+
+    /** Severity ordinal of numeric samples */
+    final private byte[] severities;
+
+    /** Status text of numeric samples */
+    final private String[] stati;
+
+    /** Numeric value, raw double bits for DOUBLE and FLOAT */
+    final private long[] values;
+
+    /** Display of numeric samples, or VType of OBJECT samples */
+    final private Object[] objects;
+
+    /** Index of the oldest sample, i.e. next one to remove */
+    final private AtomicLong head = new AtomicLong();
+
+    /** Index of next slot to fill. Only changed by the producer. */
+    final private AtomicLong tail = new AtomicLong();
 
     /** Statistics */
     final private BufferStats stats = new BufferStats();
 
+    /** Copy of most recent display meta data, shared by numeric samples.
+     *  Only accessed by the producer.
+     */
+    private Display display = null;
+
+    /** Minimum spacing of samples in nanoseconds
+     *  requested by the write thread when the database falls behind,
+     *  or 0 to archive all samples.
+     */
+    private volatile long decimation_nanos = 0;
+
     /** Number of overruns when new string of overruns started, or <code>null</code> */
     private Integer start_of_overruns;
 
@@ -42,16 +112,24 @@ public class SampleBuffer
     final private static ThrottledLogger overrun_msg =
         new ThrottledLogger(Level.WARNING, "log_overrun"); //$NON-NLS-1$
 
-    /** Is the buffer in an error state because of RDB write errors?
+    /** Number of write threads in an error state because of RDB write errors.
+     *  Buffers are in error state while that count is above zero.
      *  Note that this is global for all buffers, not per instance!
      */
-    private static volatile boolean error = false;
+    final private static AtomicInteger errors = new AtomicInteger();
 
     /** Create sample buffer of given capacity */
     SampleBuffer(final String channel_name, final int capacity)
     {
         this.channel_name = channel_name;
-        samples = new RingBuffer<VType>(capacity);
+        this.capacity = capacity;
+        kinds = new byte[capacity];
+        seconds = new long[capacity];
+        nanos = new int[capacity];
+        severities = new byte[capacity];
+        stati = new String[capacity];
+        values = new long[capacity];
+        objects = new Object[capacity];
     }
 
     /** @return channel name of this buffer */
@@ -63,64 +141,224 @@ public class SampleBuffer
     /** @return Queue capacity, i.e. maximum queue size. */
     public int getCapacity()
     {
-        synchronized (samples)
-        {
-            return samples.getCapacity();
-        }
+        return capacity;
     }
 
     /** @return Current queue size, i.e. number of samples in the queue. */
     public int getQueueSize()
     {
-        synchronized (samples)
-        {
-            return samples.size();
-        }
+        // Read head first: Tail only grows, so size can't come out negative
+        final long h = head.get();
+        final long size = tail.get() - h;
+        if (size < 0)
+            return 0;
+        return (int) Math.min(size, capacity);
     }
 
     /** @return <code>true</code> if currently experiencing write errors */
     public static boolean isInErrorState()
     {
-        return error;
+        return errors.get() > 0;
     }
 
-    /** Set the error state. */
+    /** Update the error state when a write thread enters or leaves its error state.
+     *  @param error <code>true</code> when a write thread entered the error state,
+     *               <code>false</code> when it recovered
+     */
     static void setErrorState(final boolean error)
     {
-        SampleBuffer.error = error;
+        if (error)
+            errors.incrementAndGet();
+        else
+            errors.decrementAndGet();
     }
 
-    /** Add a sample to the queue, maybe dropping older samples */
+    /** Add a sample to the queue, maybe dropping older samples
+     *  <p>
+     *  Must only be called by one thread at a time.
+     */
     @SuppressWarnings("nls")
     void add(final VType value)
     {
-        synchronized (samples)
+        final long t = tail.get();
+        // When full, drop the oldest sample.
+        // Consumer may remove it at the same time,
+        // in which case there is no overrun after all.
+        boolean overrun = false;
+        long h = head.get();
+        while (t - h >= capacity)
+        {
+            if (head.compareAndSet(h, h+1))
+            {
+                overrun = true;
+                break;
+            }
+            h = head.get();
+        }
+        if (overrun)
+        {   // Note start of overruns
+            if (start_of_overruns == null)
+                start_of_overruns = Integer.valueOf(stats.getOverruns());
+            stats.addOverrun();
+        }
+        else if (start_of_overruns != null)
+        {   // Ending a string of overruns. Maybe log it.
+            final int overruns = stats.getOverruns() - start_of_overruns;
+            overrun_msg.log(channel_name + ": " + overruns + " overruns");
+            start_of_overruns = null;
+        }
+        store((int) (t % capacity), value);
+        // Publish the slot
+        tail.set(t+1);
+    }
+
+    /** @param slot Slot to fill
+     *  @param value Sample to place in slot
+     */
+    private void store(final int slot, final VType value)
+    {
+        if (value instanceof VNumber)
         {
-            if (samples.isFull())
-            {   // Note start of overruns, then drop older sample
-                if (start_of_overruns == null)
-                    start_of_overruns = Integer.valueOf(stats.getOverruns());
-                stats.addOverrun();
+            final Number number = ((VNumber) value).getValue();
+            final byte kind;
+            long bits = 0;
+            if (number instanceof Double)
+            {
+                kind = DOUBLE;
+                bits = Double.doubleToRawLongBits(number.doubleValue());
+            }
+            else if (number instanceof Float)
+            {
+                kind = FLOAT;
+                bits = Double.doubleToRawLongBits(number.doubleValue());
             }
-            else if (start_of_overruns != null)
-            {   // Ending a string of overruns. Maybe log it.
-                final int overruns = stats.getOverruns() - start_of_overruns;
-                overrun_msg.log(channel_name + ": " + overruns + " overruns");
-                start_of_overruns = null;
+            else if (number instanceof Long)
+            {
+                kind = LONG;
+                bits = number.longValue();
+            }
+            else if (number instanceof Integer)
+            {
+                kind = INTEGER;
+                bits = number.longValue();
+            }
+            else if (number instanceof Short)
+            {
+                kind = SHORT;
+                bits = number.longValue();
+            }
+            else if (number instanceof Byte)
+            {
+                kind = BYTE;
+                bits = number.longValue();
+            }
+            else
+                kind = OBJECT;
+            if (kind != OBJECT)
+            {
+                final Instant time = VTypeHelper.getTimestamp(value);
+                kinds[slot] = kind;
+                seconds[slot] = time.getEpochSecond();
+                nanos[slot] = time.getNano();
+                severities[slot] = (byte) VTypeHelper.getSeverity(value).ordinal();
+                stati[slot] = VTypeHelper.getMessage(value);
+                values[slot] = bits;
+                // Keep only a copy of the display, not the complete sample
+                objects[slot] = getDisplay((VNumber) value);
+                return;
             }
-            samples.add(value);
         }
+        kinds[slot] = OBJECT;
+        stati[slot] = null;
+        objects[slot] = value;
+    }
+
+    /** @param value Numeric sample
+     *  @return Shared copy of its display meta data
+     */
+    private Display getDisplay(final VNumber value)
+    {
+        if (! MetaDataHelper.equals(value, display))
+            display = ValueFactory.newDisplay(value.getLowerDisplayLimit(),
+                    value.getLowerAlarmLimit(), value.getLowerWarningLimit(),
+                    value.getUnits(), value.getFormat(),
+                    value.getUpperWarningLimit(), value.getUpperAlarmLimit(),
+                    value.getUpperDisplayLimit(),
+                    value.getLowerCtrlLimit(), value.getUpperCtrlLimit());
+        return display;
     }
 
     /** @return latest sample in queue or <code>null</code> if empty */
     VType remove()
     {
-        synchronized (samples)
+        while (true)
         {
-            return samples.remove();
+            final long h = head.get();
+            if (h >= tail.get())
+                return null;
+            final int slot = (int) (h % capacity);
+            // Read slot into locals.
+            // Producer might overwrite the slot while we read it,
+            // which is detected by the head having moved on.
+            final byte kind = kinds[slot];
+            final long secs = seconds[slot];
+            final int nano = nanos[slot];
+            final byte severity = severities[slot];
+            final String status = stati[slot];
+            final long bits = values[slot];
+            final Object object = objects[slot];
+            if (head.compareAndSet(h, h+1))
+                return decode(kind, secs, nano, severity, status, bits, object);
+            // else: Sample was dropped by an overrun, try next one
         }
     }
 
+    /** @return {@link VType} for consistent content of one slot */
+    private static VType decode(final byte kind, final long secs, final int nano,
+            final byte severity, final String status, final long bits, final Object object)
+    {
+        final Number number;
+        switch (kind)
+        {
+        case DOUBLE:
+            number = Double.valueOf(Double.longBitsToDouble(bits));
+            break;
+        case FLOAT:
+            number = Float.valueOf((float) Double.longBitsToDouble(bits));
+            break;
+        case LONG:
+            number = Long.valueOf(bits);
+            break;
+        case INTEGER:
+            number = Integer.valueOf((int) bits);
+            break;
+        case SHORT:
+            number = Short.valueOf((short) bits);
+            break;
+        case BYTE:
+            number = Byte.valueOf((byte) bits);
+            break;
+        default:
+            return (VType) object;
+        }
+        return new ArchiveVNumber(Instant.ofEpochSecond(secs, nano),
+                SEVERITIES[severity], status, (Display) object, number);
+    }
+
+    /** @param nanos Minimum spacing of samples in nanoseconds, 0 to archive all samples */
+    void setDecimationNanos(final long nanos)
+    {
+        decimation_nanos = nanos;
+    }
+
+    /** @return Minimum spacing of samples in nanoseconds that channel should use
+     *          to relieve the write thread, or 0 to archive all samples
+     */
+    public long getDecimationNanos()
+    {
+        return decimation_nanos;
+    }
+
     /** Update stats with current values */
     void updateStats()
     {
@@ -0,0 +1,676 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.NumberFormat;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+import org.csstudio.archive.engine.Activator;
+import org.csstudio.archive.vtype.ArchiveVEnum;
+import org.csstudio.archive.vtype.ArchiveVNumber;
+import org.csstudio.archive.vtype.ArchiveVNumberArray;
+import org.csstudio.archive.vtype.ArchiveVString;
+import org.csstudio.archive.vtype.MetaDataHelper;
+import org.csstudio.archive.vtype.VTypeHelper;
+import org.diirt.util.array.ListNumber;
+import org.diirt.util.text.NumberFormats;
+import org.diirt.vtype.AlarmSeverity;
+import org.diirt.vtype.Display;
+import org.diirt.vtype.VEnum;
+import org.diirt.vtype.VNumber;
+import org.diirt.vtype.VNumberArray;
+import org.diirt.vtype.VString;
+import org.diirt.vtype.VType;
+import org.diirt.vtype.ValueFactory;
+
+/** Write-ahead spool for samples that cannot be written to the archive.
+ *  <p>
+ *  Append-only, memory-mapped segment files in a directory.
+ *  Samples are appended to the newest segment,
+ *  and read back from the oldest segment in the order
+ *  in which they were appended.
+ *  Each segment starts with a header that holds the end of the
+ *  written data and the read position of the last {@link #commit()},
+ *  so a spool that is left over from a previous run of the engine
+ *  is picked up again.
+ *  <p>
+ *  Within a segment, channels are identified by a number,
+ *  defined by a 'name' record before the first sample of the channel.
+ *  Display meta data is written as a separate record
+ *  whenever it changes.
+ *  <p>
+ *  Not thread-safe, meant to be used by one {@link WriteThread}.
+ *  Only {@link #getPendingBytes()} may be called by other threads.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class SampleSpool
+{
+    /** Spooled sample */
+    public static class Sample
+    {
+        final private String channel_name;
+        final private VType value;
+
+        Sample(final String channel_name, final VType value)
+        {
+            this.channel_name = channel_name;
+            this.value = value;
+        }
+
+        /** @return Name of the channel */
+        public String getChannelName()
+        {
+            return channel_name;
+        }
+
+        /** @return Sample */
+        public VType getValue()
+        {
+            return value;
+        }
+    }
+
+    /** One segment file */
+    private static class Segment
+    {
+        final File file;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        /** Buffer for reading, with independent position */
+        final ByteBuffer reader;
+        int write_end;
+        int committed;
+
+        /** @param file Segment file
+         *  @param size Size of segment file
+         *  @param create Create new segment, or open existing one?
+         *  @throws IOException on error, including an existing file that is truncated or corrupted
+         */
+        Segment(final File file, final int size, final boolean create) throws IOException
+        {
+            this.file = file;
+            // An existing file might be truncated, for example after a crash
+            if (size < HEADER_SIZE)
+                throw new IOException("Spool file " + file + " has only " + size + " bytes");
+            final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try
+            {
+                channel = raf.getChannel();
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                if (create)
+                {
+                    buffer.putInt(0, MAGIC);
+                    buffer.putInt(WRITE_END_OFFSET, HEADER_SIZE);
+                    buffer.putInt(READ_POS_OFFSET, HEADER_SIZE);
+                }
+                else if (buffer.getInt(0) != MAGIC)
+                    throw new IOException("Invalid spool file " + file);
+                write_end = buffer.getInt(WRITE_END_OFFSET);
+                committed = buffer.getInt(READ_POS_OFFSET);
+                if (write_end < HEADER_SIZE  ||  write_end > size  ||
+                    committed < HEADER_SIZE  ||  committed > write_end)
+                    throw new IOException("Corrupted spool file " + file + ", data ends at " + write_end +
+                                          ", read position " + committed + ", size " + size);
+                reader = buffer.duplicate();
+                reader.position(committed);
+            }
+            catch (IOException ex)
+            {
+                raf.close();
+                throw ex;
+            }
+        }
+
+        int getSize()
+        {
+            return buffer.capacity();
+        }
+
+        void append(final ByteBuffer record)
+        {
+            buffer.position(write_end);
+            buffer.put(record);
+            write_end = buffer.position();
+            // Update header after the data
+            buffer.putInt(WRITE_END_OFFSET, write_end);
+        }
+
+        void commit()
+        {
+            committed = reader.position();
+            buffer.putInt(READ_POS_OFFSET, committed);
+        }
+
+        void close()
+        {
+            buffer.force();
+            try
+            {
+                channel.close();
+            }
+            catch (IOException ex)
+            {
+                Activator.getLogger().log(Level.WARNING, "Cannot close " + file, ex);
+            }
+        }
+
+        void delete()
+        {
+            close();
+            if (! file.delete())
+                Activator.getLogger().log(Level.WARNING, "Cannot delete {0}", file);
+        }
+    }
+
+    /** Segment file header: Magic, end of written data, committed read position */
+    final private static int MAGIC = 0x53504F4C, WRITE_END_OFFSET = 4, READ_POS_OFFSET = 8, HEADER_SIZE = 12;
+
+    /** Record types */
+    final private static byte NAME = 0, DISPLAY = 1, DOUBLE = 2, LONG = 3, STRING = 4, ENUM = 5, ARRAY = 6;
+
+    /** Cached values of alarm severities, indexed by ordinal */
+    final private static AlarmSeverity[] SEVERITIES = AlarmSeverity.values();
+
+    /** Directory of segment files */
+    final private File directory;
+
+    /** Default size of a segment file */
+    final private int segment_size;
+
+    /** Segments, oldest first. First is read, last is written. */
+    final private LinkedList<Segment> segments = new LinkedList<>();
+
+    /** Segment to which samples are appended, or <code>null</code> */
+    private Segment write_segment = null;
+
+    /** IDs of channels in the write segment */
+    final private Map<String, Integer> write_ids = new HashMap<>();
+
+    /** Display meta data written to the write segment, by channel ID */
+    final private Map<Integer, Display> write_displays = new HashMap<>();
+
+    /** Channel names in the read segment, by channel ID */
+    final private Map<Integer, String> read_names = new HashMap<>();
+
+    /** Display meta data in the read segment, by channel ID */
+    final private Map<Integer, Display> read_displays = new HashMap<>();
+
+    /** Buffer for encoding records */
+    private ByteBuffer record = ByteBuffer.allocate(64*1024);
+
+    /** Number of the next segment file */
+    private int next_segment = 0;
+
+    /** Number of bytes that still need to be read and committed */
+    private volatile long pending = 0;
+
+    /** Open spool, picking up existing segment files
+     *  @param directory Directory for segment files
+     *  @param segment_size Size of each segment file
+     *  @throws Exception on error
+     */
+    public SampleSpool(final File directory, final int segment_size) throws Exception
+    {
+        this.directory = directory;
+        this.segment_size = segment_size;
+        if (! directory.isDirectory()  &&  ! directory.mkdirs())
+            throw new Exception("Cannot create spool directory " + directory);
+
+        final File[] files = directory.listFiles((dir, name) -> name.matches("spool_[0-9]+\\.dat"));
+        Arrays.sort(files);
+        for (File file : files)
+        {
+            next_segment = Math.max(next_segment, getSegmentNumber(file) + 1);
+            final Segment segment;
+            try
+            {
+                segment = new Segment(file, (int) file.length(), false);
+            }
+            catch (IOException ex)
+            {
+                Activator.getLogger().log(Level.WARNING, "Ignoring spool file " + file, ex);
+                continue;
+            }
+            if (segment.committed >= segment.write_end)
+                segment.delete();
+            else
+            {
+                segments.add(segment);
+                pending += segment.write_end - segment.committed;
+            }
+        }
+        if (! segments.isEmpty())
+        {
+            Activator.getLogger().log(Level.INFO, "Spool {0} holds {1} bytes from previous run",
+                                      new Object[] { directory, getPendingBytes() });
+            // Definitions of channel names etc. in read segment
+            // may precede the read position
+            scanDefinitions(segments.getFirst());
+        }
+    }
+
+    /** @param file Segment file
+     *  @return Number of segment
+     */
+    private static int getSegmentNumber(final File file)
+    {
+        final String name = file.getName();
+        return Integer.parseInt(name.substring(6, name.length() - 4));
+    }
+
+    /** Move the segment files of another spool directory behind those in this directory
+     *
+     *  <p>Used for the spool of a write thread that no longer exists,
+     *  so its samples are replayed by another one.
+     *  Must be called before a {@link SampleSpool} is opened for either directory.
+     *
+     *  @param from Directory of segment files to move
+     *  @param to Directory to which segment files are moved
+     *  @throws Exception on error
+     */
+    public static void moveSegments(final File from, final File to) throws Exception
+    {
+        final File[] files = from.listFiles((dir, name) -> name.matches("spool_[0-9]+\\.dat"));
+        if (files == null)
+            return;
+        if (! to.isDirectory()  &&  ! to.mkdirs())
+            throw new Exception("Cannot create spool directory " + to);
+        int next = 0;
+        final File[] existing = to.listFiles((dir, name) -> name.matches("spool_[0-9]+\\.dat"));
+        for (File file : existing)
+            next = Math.max(next, getSegmentNumber(file) + 1);
+        Arrays.sort(files);
+        for (File file : files)
+        {
+            final File target = new File(to, String.format("spool_%08d.dat", next++));
+            if (! file.renameTo(target))
+                throw new Exception("Cannot move spool file " + file + " to " + target);
+            Activator.getLogger().log(Level.INFO, "Moved spool file {0} to {1}", new Object[] { file, target });
+        }
+        if (! from.delete())
+            Activator.getLogger().log(Level.WARNING, "Cannot delete spool directory {0}", from);
+    }
+
+    /** @return Directory of segment files */
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+    /** @return <code>true</code> if there are no spooled samples */
+    public boolean isEmpty()
+    {
+        return getPendingBytes() <= 0;
+    }
+
+    /** @return Number of bytes in spool that still need to be read and committed */
+    public long getPendingBytes()
+    {
+        return pending;
+    }
+
+    /** @return Number of segment files */
+    public int getSegmentCount()
+    {
+        return segments.size();
+    }
+
+    /** Append sample to spool
+     *  @param channel_name Name of channel
+     *  @param value Sample
+     *  @throws Exception on error
+     */
+    public void append(final String channel_name, final VType value) throws Exception
+    {
+        if (write_segment == null)
+            startSegment(segment_size);
+        encode(channel_name, value);
+        if (record.remaining() > write_segment.getSize() - write_segment.write_end)
+        {   // Encode again for a new segment, which defines channels anew
+            startSegment(Math.max(segment_size, HEADER_SIZE + record.remaining()));
+            encode(channel_name, value);
+        }
+        pending += record.remaining();
+        write_segment.append(record);
+    }
+
+    /** Force appended samples to disk */
+    public void force()
+    {
+        if (write_segment != null)
+            write_segment.buffer.force();
+    }
+
+    /** Start a new segment to which samples are appended
+     *  @param size Size of the segment
+     *  @throws Exception on error
+     */
+    private void startSegment(final int size) throws Exception
+    {
+        if (write_segment != null)
+            write_segment.buffer.force();
+        final File file = new File(directory, String.format("spool_%08d.dat", next_segment++));
+        write_segment = new Segment(file, size, true);
+        segments.add(write_segment);
+        write_ids.clear();
+        write_displays.clear();
+    }
+
+    /** Encode sample into <code>record</code>,
+     *  preceded by definitions of channel name and meta data as needed
+     *  @param channel_name Name of channel
+     *  @param value Sample
+     */
+    private void encode(final String channel_name, final VType value)
+    {
+        record.clear();
+        Integer id = write_ids.get(channel_name);
+        if (id == null)
+        {
+            id = write_ids.size();
+            write_ids.put(channel_name, id);
+            ensure(5);
+            record.put(NAME);
+            record.putInt(id);
+            putString(channel_name);
+        }
+        if (value instanceof Display  &&  ! MetaDataHelper.equals((Display) value, write_displays.get(id)))
+        {
+            encodeDisplay(id, (Display) value);
+            write_displays.put(id, (Display) value);
+        }
+
+        final byte type;
+        if (value instanceof VNumber)
+            type = ((VNumber) value).getValue() instanceof Double  ||  ((VNumber) value).getValue() instanceof Float
+                 ? DOUBLE : LONG;
+        else if (value instanceof VNumberArray)
+            type = ARRAY;
+        else if (value instanceof VEnum)
+            type = ENUM;
+        else
+            type = STRING;
+
+        final Instant time = VTypeHelper.getTimestamp(value);
+        ensure(18);
+        record.put(type);
+        record.putInt(id);
+        record.putLong(time.getEpochSecond());
+        record.putInt(time.getNano());
+        record.put((byte) VTypeHelper.getSeverity(value).ordinal());
+        putString(VTypeHelper.getMessage(value));
+        switch (type)
+        {
+        case DOUBLE:
+            ensure(8);
+            record.putDouble(((VNumber) value).getValue().doubleValue());
+            break;
+        case LONG:
+            ensure(8);
+            record.putLong(((VNumber) value).getValue().longValue());
+            break;
+        case ARRAY:
+        {
+            final ListNumber data = ((VNumberArray) value).getData();
+            final int N = data.size();
+            ensure(4 + 8*N);
+            record.putInt(N);
+            for (int i=0; i<N; ++i)
+                record.putDouble(data.getDouble(i));
+            break;
+        }
+        case ENUM:
+        {
+            final VEnum labelled = (VEnum) value;
+            final List<String> labels = labelled.getLabels();
+            ensure(8);
+            record.putInt(labelled.getIndex());
+            record.putInt(labels.size());
+            for (String label : labels)
+                putString(label);
+            break;
+        }
+        default:
+            putString(value instanceof VString ? ((VString) value).getValue() : value.toString());
+        }
+        record.flip();
+    }
+
+    /** @param id Channel ID
+     *  @param display Display meta data to encode
+     */
+    private void encodeDisplay(final int id, final Display display)
+    {
+        ensure(5 + 8*8 + 4);
+        record.put(DISPLAY);
+        record.putInt(id);
+        putDouble(display.getLowerDisplayLimit());
+        putDouble(display.getUpperDisplayLimit());
+        putDouble(display.getLowerWarningLimit());
+        putDouble(display.getUpperWarningLimit());
+        putDouble(display.getLowerAlarmLimit());
+        putDouble(display.getUpperAlarmLimit());
+        putDouble(display.getLowerCtrlLimit());
+        putDouble(display.getUpperCtrlLimit());
+        final NumberFormat format = display.getFormat();
+        record.putInt(format == null ? -1 : format.getMinimumFractionDigits());
+        putString(display.getUnits());
+    }
+
+    /** @param needed Number of bytes that must fit into <code>record</code> */
+    private void ensure(final int needed)
+    {
+        if (record.remaining() >= needed)
+            return;
+        final ByteBuffer bigger = ByteBuffer.allocate(Math.max(2*record.capacity(), record.position() + needed));
+        record.flip();
+        bigger.put(record);
+        record = bigger;
+    }
+
+    private void putDouble(final Double value)
+    {
+        record.putDouble(value == null ? Double.NaN : value.doubleValue());
+    }
+
+    private void putString(final String text)
+    {
+        final byte[] bytes = (text == null ? "" : text).getBytes(StandardCharsets.UTF_8);
+        ensure(4 + bytes.length);
+        record.putInt(bytes.length);
+        record.put(bytes);
+    }
+
+    private static String getString(final ByteBuffer buffer)
+    {
+        final byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Read definitions of channel names and meta data
+     *  from start of segment up to its committed read position
+     *  @param segment Segment
+     */
+    private void scanDefinitions(final Segment segment)
+    {
+        final ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(HEADER_SIZE);
+        while (buffer.position() < segment.committed)
+            decode(buffer);
+    }
+
+    /** Read next spooled sample.
+     *  <p>
+     *  Read position only advances when {@link #commit()} is called.
+     *  Returns <code>null</code> at the end of a segment
+     *  until reads have been committed.
+     *
+     *  @return Next {@link Sample} or <code>null</code>
+     */
+    public Sample next()
+    {
+        while (! segments.isEmpty())
+        {
+            final Segment segment = segments.getFirst();
+            if (segment.reader.position() < segment.write_end)
+            {
+                final Sample sample = decode(segment.reader);
+                if (sample != null)
+                    return sample;
+                continue;
+            }
+            // Reached end of segment.
+            // Cannot move on while uncommitted or still appending to it
+            if (segment.committed < segment.write_end  ||  segment == write_segment)
+                return null;
+            segments.removeFirst();
+            segment.delete();
+            read_names.clear();
+            read_displays.clear();
+        }
+        return null;
+    }
+
+    /** Decode record
+     *  @param buffer Buffer positioned on record
+     *  @return {@link Sample} or <code>null</code> for channel definitions
+     */
+    private Sample decode(final ByteBuffer buffer)
+    {
+        final byte type = buffer.get();
+        final int id = buffer.getInt();
+        if (type == NAME)
+        {
+            read_names.put(id, getString(buffer));
+            return null;
+        }
+        if (type == DISPLAY)
+        {
+            final double[] limits = new double[8];
+            for (int i=0; i<limits.length; ++i)
+                limits[i] = buffer.getDouble();
+            final int precision = buffer.getInt();
+            final NumberFormat format = precision < 0
+                                      ? NumberFormats.toStringFormat()
+                                      : NumberFormats.format(precision);
+            final String units = getString(buffer);
+            read_displays.put(id,
+                ValueFactory.newDisplay(limits[0], limits[4], limits[2], units, format,
+                                        limits[3], limits[5], limits[1], limits[6], limits[7]));
+            return null;
+        }
+
+        final Instant time = Instant.ofEpochSecond(buffer.getLong(), buffer.getInt());
+        final AlarmSeverity severity = SEVERITIES[buffer.get()];
+        final String status = getString(buffer);
+        Display display = read_displays.get(id);
+        if (display == null)
+            display = ValueFactory.displayNone();
+        final VType value;
+        switch (type)
+        {
+        case DOUBLE:
+            value = new ArchiveVNumber(time, severity, status, display, buffer.getDouble());
+            break;
+        case LONG:
+            value = new ArchiveVNumber(time, severity, status, display, buffer.getLong());
+            break;
+        case ARRAY:
+        {
+            final double[] data = new double[buffer.getInt()];
+            for (int i=0; i<data.length; ++i)
+                data[i] = buffer.getDouble();
+            value = new ArchiveVNumberArray(time, severity, status, display, data);
+            break;
+        }
+        case ENUM:
+        {
+            final int index = buffer.getInt();
+            final int N = buffer.getInt();
+            final List<String> labels = new ArrayList<>(N);
+            for (int i=0; i<N; ++i)
+                labels.add(getString(buffer));
+            value = new ArchiveVEnum(time, severity, status, labels, index);
+            break;
+        }
+        default:
+            value = new ArchiveVString(time, severity, status, getString(buffer));
+        }
+        return new Sample(read_names.get(id), value);
+    }
+
+    /** Commit the samples read so far,
+     *  i.e. they have been written to the archive.
+     *  Once all samples have been committed, the segment files are deleted.
+     */
+    public void commit()
+    {
+        if (segments.isEmpty())
+            return;
+        final Segment segment = segments.getFirst();
+        final int previous = segment.committed;
+        segment.commit();
+        pending -= segment.committed - previous;
+        if (isEmpty())
+        {   // Start over with next outage
+            for (Segment done : segments)
+                done.delete();
+            segments.clear();
+            pending = 0;
+            write_segment = null;
+            write_ids.clear();
+            write_displays.clear();
+            read_names.clear();
+            read_displays.clear();
+        }
+    }
+
+    /** Return to the last committed read position,
+     *  i.e. samples read since then will be read again.
+     */
+    public void rollback()
+    {
+        if (! segments.isEmpty())
+        {
+            final Segment segment = segments.getFirst();
+            segment.reader.position(segment.committed);
+        }
+    }
+
+    /** Close the spool, keeping spooled samples for the next run */
+    public void close()
+    {
+        for (Segment segment : segments)
+            segment.close();
+        segments.clear();
+        write_segment = null;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Sample spool " + directory + ": " + getPendingBytes() + " bytes in " + getSegmentCount() + " segments";
+    }
+}
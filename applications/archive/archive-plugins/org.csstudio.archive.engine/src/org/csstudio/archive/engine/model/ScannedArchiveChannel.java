@@ -115,7 +115,7 @@ public class ScannedArchiveChannel extends ArchiveChannel implements Runnable
             repeats = 0;
         }
         // unlocked, should have 'value'
-        addValueToBuffer(value);
+        addSampleToBuffer(value);
     }
 
     /** Check if values match in status, severity, and value. Time is ignored.
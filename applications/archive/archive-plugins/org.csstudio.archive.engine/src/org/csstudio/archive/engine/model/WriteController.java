@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.engine.model;
+
+/** Adaptive write schedule for a {@link WriteThread}
+ *  <p>
+ *  After each write run, the controller looks at how full
+ *  the sample buffers were and how much of the write run
+ *  was spent waiting for the database to complete a batch.
+ *  <ul>
+ *  <li>When the buffers fill up, the write period is shortened.
+ *      It returns to the configured period as the buffers empty.
+ *  <li>When round trips to the database dominate the write run,
+ *      the batch size grows, otherwise it returns to the configured size.
+ *  <li>When the database falls behind, channels are asked
+ *      to decimate their samples instead of overrunning
+ *      their buffers.
+ *  </ul>
+ *  @author Kay Kasemir
+ */
+public class WriteController
+{
+    /** Minimum write period [seconds] */
+    final private static double MIN_PERIOD = 1.0;
+
+    /** Buffer fill ratio above which the write period is shortened */
+    final private static double HIGH_FILL = 0.5;
+
+    /** Buffer fill ratio below which the write period grows and backpressure ends */
+    final private static double LOW_FILL = 0.2;
+
+    /** Buffer fill ratio above which backpressure starts */
+    final private static double BACKPRESSURE_FILL = 0.8;
+
+    /** Share of write time spent in flush() above which batch size grows */
+    final private static double HIGH_FLUSH_SHARE = 0.5;
+
+    /** Share of write time spent in flush() below which batch size shrinks */
+    final private static double LOW_FLUSH_SHARE = 0.2;
+
+    /** Maximum batch size relative to configured batch size */
+    final private static int MAX_BATCH_FACTOR = 16;
+
+    /** Configured write period in seconds */
+    final private double configured_period;
+
+    /** Configured batch size */
+    final private int configured_batch_size;
+
+    /** Current write period in seconds */
+    private volatile double period;
+
+    /** Current batch size */
+    private volatile int batch_size;
+
+    /** Maximum buffer fill ratio 0..1 seen in last write run */
+    private volatile double max_fill = 0.0;
+
+    /** Average buffer fill ratio 0..1 seen in last write run */
+    private volatile double avg_fill = 0.0;
+
+    /** Share of last write run spent in flush() */
+    private volatile double flush_share = 0.0;
+
+    /** Are channels asked to decimate? */
+    private volatile boolean backpressure = false;
+
+    /** Initialize
+     *  @param period Configured write period in seconds
+     *  @param batch_size Configured batch size
+     */
+    WriteController(final double period, final int batch_size)
+    {
+        this.configured_period = period;
+        this.configured_batch_size = batch_size;
+        this.period = period;
+        this.batch_size = batch_size;
+    }
+
+    /** Update schedule based on the last write run
+     *  @param max_fill Maximum buffer fill ratio 0..1 before the write run
+     *  @param avg_fill Average buffer fill ratio 0..1 before the write run
+     *  @param write_secs Duration of the write run
+     *  @param flush_secs Part of <code>write_secs</code> spent waiting for batches to complete
+     *  @param error Did the write run fail?
+     */
+    synchronized void update(final double max_fill, final double avg_fill,
+                             final double write_secs, final double flush_secs,
+                             final boolean error)
+    {
+        this.max_fill = max_fill;
+        this.avg_fill = avg_fill;
+
+        // Write more often while buffers fill, relax back to configured period
+        if (max_fill > HIGH_FILL)
+            period = Math.max(MIN_PERIOD, period / 2);
+        else if (max_fill < LOW_FILL)
+            period = Math.min(configured_period, period * 1.5);
+
+        // Larger batches when round trips dominate
+        flush_share = write_secs > 0 ? flush_secs / write_secs : 0.0;
+        if (flush_share > HIGH_FLUSH_SHARE)
+            batch_size = Math.min(configured_batch_size * MAX_BATCH_FACTOR, batch_size * 2);
+        else if (flush_share < LOW_FLUSH_SHARE)
+            batch_size = Math.max(configured_batch_size, batch_size / 2);
+
+        // Database falling behind?
+        if (error  ||  write_secs > period  ||  max_fill > BACKPRESSURE_FILL)
+            backpressure = true;
+        else if (max_fill < LOW_FILL)
+            backpressure = false;
+    }
+
+    /** @return Configured write period in seconds */
+    public double getConfiguredPeriod()
+    {
+        return configured_period;
+    }
+
+    /** @return Current target write period in seconds */
+    public double getPeriod()
+    {
+        return period;
+    }
+
+    /** @return Current effective batch size */
+    public int getBatchSize()
+    {
+        return batch_size;
+    }
+
+    /** @return Maximum buffer fill ratio 0..1 seen in last write run */
+    public double getMaxFill()
+    {
+        return max_fill;
+    }
+
+    /** @return Average buffer fill ratio 0..1 seen in last write run */
+    public double getAverageFill()
+    {
+        return avg_fill;
+    }
+
+    /** @return Share 0..1 of last write run spent waiting for the database */
+    public double getFlushShare()
+    {
+        return flush_share;
+    }
+
+    /** @return <code>true</code> if channels are asked to decimate */
+    public boolean isBackpressure()
+    {
+        return backpressure;
+    }
+
+    /** @param capacity Capacity of a sample buffer
+     *  @return Minimum spacing of samples for that buffer in nanoseconds,
+     *          0 if there is no backpressure
+     */
+    long getDecimationNanos(final int capacity)
+    {
+        if (! backpressure)
+            return 0;
+        // Allow at most half the buffer per configured write period
+        return (long) (configured_period * 1e9 / Math.max(1, capacity / 2));
+    }
+}
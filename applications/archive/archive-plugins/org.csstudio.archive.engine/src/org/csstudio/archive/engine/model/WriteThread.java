@@ -29,6 +29,12 @@ import org.diirt.vtype.VType;
  *  be lost.
  *  The channels that add samples to the sample buffer supposedly notice
  *  the error condition and add a special indicator once we recover.
+ *  <p>
+ *  With a {@link SampleSpool}, samples are moved from the sample buffers
+ *  into the spool while the database is unavailable.
+ *  Once it recovers, the spool is replayed at a limited rate.
+ *  Until the spool is empty, new samples are also appended to the spool,
+ *  so samples are written in the order in which they were received.
  *
  *  @author Kay Kasemir
  */
@@ -37,6 +43,9 @@ public class WriteThread implements Runnable
     /** Minimum write period [seconds] */
     private static final double MIN_WRITE_PERIOD = 5.0;
 
+    /** Name of this write thread */
+    final private String name;
+
     /** Server to which this thread writes. */
     private ArchiveWriter writer;
 
@@ -44,6 +53,10 @@ public class WriteThread implements Runnable
     final private ArrayList<SampleBuffer> buffers =
         new ArrayList<SampleBuffer>();
 
+    /** Channels of the sample buffers, which may hold back decimated values */
+    final private ArrayList<ArchiveChannel> channels =
+        new ArrayList<ArchiveChannel>();
+
     /** Flag that tells the write thread to run or quit. */
     private boolean do_run;
 
@@ -67,12 +80,58 @@ public class WriteThread implements Runnable
     /** Average duration of write run */
     private Average write_time = new Average();
 
+    /** Adaptive write schedule, or <code>null</code> for fixed period and batch size */
+    private WriteController controller = null;
+
+    /** Maximum buffer fill ratio 0..1 at start of last write run */
+    private double max_fill;
+
+    /** Average buffer fill ratio 0..1 at start of last write run */
+    private double avg_fill;
+
+    /** Seconds spent in flush() during last write run */
+    private double flush_secs;
+
+    /** Spool for samples while the database is unavailable, or <code>null</code> */
+    private SampleSpool spool = null;
+
+    /** Maximum number of samples per second to replay from the spool */
+    private double replay_rate;
+
+    /** Samples passed to the writer by write() since the last successful flush.
+     *  Only tracked when there is a spool, so they can be spooled when the flush fails.
+     */
+    final private ArrayList<SampleSpool.Sample> in_flight = new ArrayList<>();
+
     /** Thread the executes this.run() */
     private Thread thread;
 
+    /** Create write thread */
+    @SuppressWarnings("nls")
+    public WriteThread()
+    {
+        this("WriteThread");
+    }
+
+    /** Create write thread
+     *  @param name Name of the thread, used when several write threads
+     *              each handle a partition of the channels
+     */
+    public WriteThread(final String name)
+    {
+        this.name = name;
+    }
+
+    /** @return Name of this write thread */
+    public String getName()
+    {
+        return name;
+    }
+
     /** Add a channel's buffer that this thread reads */
     public void addChannel(final ArchiveChannel channel)
     {
+        channels.add(channel);
         addSampleBuffer(channel.getSampleBuffer());
     }
 
@@ -82,12 +141,47 @@ public class WriteThread implements Runnable
         buffers.add(buffer);
     }
 
+    /** @return Number of sample buffers that this thread reads */
+    public int getChannelCount()
+    {
+        return buffers.size();
+    }
+
+    /** Use a spool for samples while the database is unavailable.
+     *  Must be called before <code>start</code>.
+     *  @param spool {@link SampleSpool}
+     *  @param replay_rate Maximum number of samples per second to replay from the spool
+     */
+    public void setSpool(final SampleSpool spool, final double replay_rate)
+    {
+        this.spool = spool;
+        this.replay_rate = replay_rate;
+    }
+
+    /** @return {@link SampleSpool} or <code>null</code> */
+    public SampleSpool getSpool()
+    {
+        return spool;
+    }
+
+    /** Start the write thread.
+     *  @param write_period Period between writes in seconds
+     *  @param batch_size Number of values to batch
+     */
+    public void start(final double write_period, final int batch_size)
+    {
+        start(write_period, batch_size, false);
+    }
+
     /** Start the write thread.
      *  @param write_period Period between writes in seconds
      *  @param batch_size Number of values to batch
+     *  @param adaptive Adapt period and batch size to buffer fill and database load?
+     *                  Will then also ask channels to decimate when the database falls behind.
+     *  @see WriteController
      */
     @SuppressWarnings("nls")
-    public void start(double write_period, int batch_size)
+    public void start(double write_period, int batch_size, final boolean adaptive)
     {
         if (write_period < MIN_WRITE_PERIOD)
         {
@@ -97,7 +191,9 @@ public class WriteThread implements Runnable
         }
         millisec_delay = (int)(1000.0 * write_period);
         this.batch_size = batch_size;
-        thread = new Thread(this, "WriteThread");
+        if (adaptive)
+            controller = new WriteController(write_period, batch_size);
+        thread = new Thread(this, name);
         thread.start();
     }
 
@@ -136,6 +232,12 @@ public class WriteThread implements Runnable
         return write_time.get();
     }
 
+    /** @return Adaptive write schedule, or <code>null</code> when using fixed period and batch size */
+    public WriteController getController()
+    {
+        return controller;
+    }
+
     /** 'Main loop' of the write thread.
      *  <p>
      *  Writes all values out, then waits.
@@ -153,9 +255,11 @@ public class WriteThread implements Runnable
     @SuppressWarnings("nls")
     public void run()
     {
-        Activator.getLogger().info("WriteThread starts");
+        Activator.getLogger().info(name + " starts");
         final BenchmarkTimer timer = new BenchmarkTimer();
         boolean write_error = false;
+        // Did this thread report an error state to the sample buffers?
+        boolean reported_error = false;
         do_run = true;
         while (do_run)
         {
@@ -176,25 +280,45 @@ public class WriteThread implements Runnable
                 }
                 if (writer == null)
                     writer = ArchiveWriterFactory.getArchiveWriter();
+                // Values held back by decimation are due once the period has passed
+                for (ArchiveChannel channel : channels)
+                    channel.releaseDecimatedValue();
                 timer.start();
                 // In case of a network problem, we can hang in here
                 // for a long time...
-                final long written = write();
+                final long written;
+                if (spool != null  &&  ! spool.isEmpty())
+                {   // Keep order: New samples go behind those already spooled
+                    spoolBuffers();
+                    written = replay();
+                }
+                else
+                    written = write();
                 timer.stop();
                 last_write_stamp = Instant.now();
                 write_count.update(written);
                 write_time.update(timer.getSeconds());
+                if (controller != null)
+                    adapt(timer.getSeconds(), false);
                 // How much of the scheduled delay is left after write()?
                 delay = millisec_delay - timer.getMilliseconds();
             }
             catch (Exception ex)
             {   // Error in write() or the preceding reconnect()...
                 Activator.getLogger().log(Level.WARNING, "Error, will try to reconnect", ex);
+                write_error = true;
+                if (spool != null)
+                    spoolAfterError();
+                if (controller != null)
+                    adapt(0.0, true);
                 // Use max. delay
                 delay = millisec_delay;
-                write_error = true;
             }
-            SampleBuffer.setErrorState(write_error);
+            if (write_error != reported_error)
+            {
+                SampleBuffer.setErrorState(write_error);
+                reported_error = write_error;
+            }
             // See if there's any time left to wait,
             // or if we already used all that time in the last 'write'
             if (delay > 0)
@@ -212,7 +336,22 @@ public class WriteThread implements Runnable
                 }
             }
         }
-        Activator.getLogger().info("WriteThread exists");
+        if (reported_error)
+            SampleBuffer.setErrorState(false);
+        Activator.getLogger().info(name + " exits");
+    }
+
+    /** Update the adaptive write schedule after a write run
+     *  @param write_secs Duration of the write run
+     *  @param error Did the write run fail?
+     */
+    private void adapt(final double write_secs, final boolean error)
+    {
+        controller.update(max_fill, avg_fill, write_secs, flush_secs, error);
+        millisec_delay = (long) (1000.0 * controller.getPeriod());
+        batch_size = controller.getBatchSize();
+        for (SampleBuffer buffer : buffers)
+            buffer.setDecimationNanos(controller.getDecimationNanos(buffer.getCapacity()));
     }
 
     /** Stop the write thread, performing a final write. */
@@ -223,10 +362,26 @@ public class WriteThread implements Runnable
         // Wait for it to end
         thread.join();
         // Then write once more.
-        // Errors in this last write are passed up.
+        // Errors in this last write are passed up,
+        // unless the samples can be kept in the spool for the next run.
         try
         {
-            write();
+            if (spool == null)
+                write();
+            else if (writer == null  ||  ! spool.isEmpty())
+                spoolBuffers();
+            else
+            {
+                try
+                {
+                    write();
+                }
+                catch (Exception ex)
+                {
+                    Activator.getLogger().log(Level.WARNING, name + " cannot write, spooling samples", ex);
+                    spoolBuffers();
+                }
+            }
         }
         finally
         {
@@ -235,7 +390,97 @@ public class WriteThread implements Runnable
                 writer.close();
                 writer = null;
             }
+            if (spool != null)
+                spool.close();
+        }
+    }
+
+    /** After a write error, move the samples in the buffers into the spool */
+    @SuppressWarnings("nls")
+    private void spoolAfterError()
+    {
+        // Samples read since the last commit will be replayed again
+        spool.rollback();
+        try
+        {
+            spoolBuffers();
+        }
+        catch (Exception ex)
+        {
+            Activator.getLogger().log(Level.SEVERE, "Cannot spool samples to " + spool.getDirectory(), ex);
+        }
+    }
+
+    /** Update buffer statistics and fill ratios before the buffers are emptied */
+    private void updateFill()
+    {
+        double max_fill = 0.0, total_fill = 0.0;
+        for (SampleBuffer buffer : buffers)
+        {
+            buffer.updateStats();
+            final double fill = buffer.getQueueSize() / (double) buffer.getCapacity();
+            max_fill = Math.max(max_fill, fill);
+            total_fill += fill;
+        }
+        this.max_fill = max_fill;
+        avg_fill = buffers.isEmpty() ? 0.0 : total_fill / buffers.size();
+    }
+
+    /** Move all samples from the sample buffers into the spool,
+     *  preceded by those of a failed write
+     */
+    private void spoolBuffers() throws Exception
+    {
+        updateFill();
+        // Samples of the failed batch are older than those still in the buffers
+        for (SampleSpool.Sample sample : in_flight)
+            spool.append(sample.getChannelName(), sample.getValue());
+        in_flight.clear();
+        for (SampleBuffer buffer : buffers)
+        {
+            final String name = buffer.getChannelName();
+            VType sample = buffer.remove();
+            while (sample != null)
+            {
+                spool.append(name, sample);
+                sample = buffer.remove();
+            }
         }
+        spool.force();
+    }
+
+    /** Write samples from the spool, limited by the replay rate.
+     *  Spool read position is committed after each successful flush.
+     *  @return number of samples written
+     */
+    private long replay() throws Exception
+    {
+        final long max_count = Math.max(1, (long) (replay_rate * millisec_delay / 1000.0));
+        long total_count = 0;
+        int count = 0;
+        long flush_nanos = 0;
+        SampleSpool.Sample sample;
+        while (total_count + count < max_count  &&  (sample = spool.next()) != null)
+        {
+            writer.addSample(writer.getChannel(sample.getChannelName()), sample.getValue());
+            ++count;
+            if (count > batch_size)
+            {
+                total_count += count;
+                count = 0;
+                final long start = System.nanoTime();
+                writer.flush();
+                flush_nanos += System.nanoTime() - start;
+                spool.commit();
+            }
+        }
+        final long start = System.nanoTime();
+        writer.flush();
+        flush_nanos += System.nanoTime() - start;
+        spool.commit();
+        total_count += count;
+        flush_secs = flush_nanos / 1e9;
+        return total_count;
     }
 
     /** Write right now until all sample buffers are empty
@@ -245,16 +490,20 @@ public class WriteThread implements Runnable
     {
         int total_count = 0;
         int count = 0;
+        long flush_nanos = 0;
+        // Update max buffer length etc. before we start to remove samples
+        updateFill();
+        in_flight.clear();
         for (SampleBuffer buffer : buffers)
         {
-            // Update max buffer length etc. before we start to remove samples
-            buffer.updateStats();
             // Write samples for one channel
             final String name = buffer.getChannelName();
             final WriteChannel channel = writer.getChannel(name);
             VType sample = buffer.remove();
             while (sample != null)
             {   // Write one value
+                if (spool != null)
+                    in_flight.add(new SampleSpool.Sample(name, sample));
                 writer.addSample(channel, sample);
                 // Note: count across different sample buffers!
                 ++count;
@@ -262,15 +511,23 @@ public class WriteThread implements Runnable
                 {
                     total_count += count;
                     count = 0;
+                    final long start = System.nanoTime();
                     writer.flush();
+                    flush_nanos += System.nanoTime() - start;
+                    in_flight.clear();
                 }
                 // next
                 sample = buffer.remove();
             }
         }
         // Flush remaining samples (less than batch_size)
+        final long start = System.nanoTime();
         writer.flush();
+        flush_nanos += System.nanoTime() - start;
+        in_flight.clear();
         total_count += count;
+        // Remember for adaptive schedule
+        flush_secs = flush_nanos / 1e9;
         return total_count;
     }
 }
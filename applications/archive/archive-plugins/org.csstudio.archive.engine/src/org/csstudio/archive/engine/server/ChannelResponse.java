@@ -112,6 +112,11 @@ class ChannelResponse extends AbstractResponse
         html.tableLine(new String[]
         { Messages.HTTP_QueueOverruns, overruns });
 
+        final long decimated = stats.getDecimated();
+        if (decimated > 0  ||  buffer.getDecimationNanos() > 0)
+            html.tableLine(new String[]
+            { Messages.HTTP_Decimated, HTMLWriter.makeRedText(Long.toString(decimated)) });
+
         html.closeTable();
 
         // Table of all the groups to which this channel belongs
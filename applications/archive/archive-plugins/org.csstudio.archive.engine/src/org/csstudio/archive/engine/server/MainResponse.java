@@ -19,6 +19,8 @@ import org.csstudio.archive.engine.Messages;
 import org.csstudio.archive.engine.model.ArchiveGroup;
 import org.csstudio.archive.engine.model.EngineModel;
 import org.csstudio.archive.engine.model.SampleBuffer;
+import org.csstudio.archive.engine.model.WriteController;
+import org.csstudio.archive.engine.model.WriteThread;
 import org.csstudio.archive.vtype.TimestampHelper;
 import org.diirt.util.time.TimeDuration;
 import org.eclipse.core.runtime.Platform;
@@ -130,6 +132,16 @@ class MainResponse extends AbstractResponse
             Messages.HTTP_WritePeriod,
             model.getWritePeriod() + " sec"
         });
+        html.tableLine(new String[]
+        {
+            Messages.HTTP_WriteThreads,
+            Integer.toString(model.getWriteThreadCount())
+        });
+        html.tableLine(new String[]
+        {
+            Messages.HTTP_AdaptiveWrite,
+            model.isAdaptiveWrite() ? "on" : "off"
+        });
 
         // Currently in 'Write Error' state?
         html.tableLine(new String[]
@@ -140,6 +152,16 @@ class MainResponse extends AbstractResponse
              : "OK")
         });
 
+        final long spooled = model.getSpoolBytes();
+        if (spooled >= 0)
+            html.tableLine(new String[]
+            {
+                Messages.HTTP_Spool,
+                spooled == 0
+                ? Messages.HTTP_SpoolEmpty
+                : HTMLWriter.makeRedText(String.format("%.1f MB to replay", spooled / MB))
+            });
+
         final Instant last_write_time = model.getLastWriteTime();
         html.tableLine(new String[]
         {
@@ -178,6 +200,70 @@ class MainResponse extends AbstractResponse
 
         html.closeTable();
 
+        // Per-partition statistics when using several write threads
+        final int writer_count = model.getWriteThreadCount();
+        if (writer_count > 1)
+        {
+            html.openTable(1, new String[]
+            {
+                Messages.HTTP_WriteThread,
+                Messages.HTTP_ChannelCount,
+                Messages.HTTP_LastWriteTime,
+                Messages.HTTP_WriteCount,
+                Messages.HTTP_WriteDuration
+            });
+            for (int i=0; i<writer_count; ++i)
+            {
+                final WriteThread writer = model.getWriteThread(i);
+                final Instant last = writer.getLastWriteTime();
+                html.tableLine(new String[]
+                {
+                    writer.getName(),
+                    Integer.toString(writer.getChannelCount()),
+                    last == null ? Messages.HTTP_Never : TimestampHelper.format(last),
+                    (int)writer.getWriteCount() + " samples",
+                    String.format("%.1f sec", writer.getWriteDuration())
+                });
+            }
+            html.closeTable();
+        }
+
+        // State of adaptive write schedule
+        if (model.isAdaptiveWrite())
+        {
+            html.openTable(1, new String[]
+            {
+                Messages.HTTP_WriteThread,
+                Messages.HTTP_WritePeriod,
+                Messages.HTTP_BatchSize,
+                Messages.HTTP_FillMax,
+                Messages.HTTP_FillAvg,
+                Messages.HTTP_FlushShare,
+                Messages.HTTP_Backpressure
+            });
+            for (int i=0; i<writer_count; ++i)
+            {
+                final WriteThread writer = model.getWriteThread(i);
+                final WriteController controller = writer.getController();
+                if (controller == null)
+                    continue;
+                html.tableLine(new String[]
+                {
+                    writer.getName(),
+                    String.format("%.1f sec (configured: %.1f sec)",
+                                  controller.getPeriod(), controller.getConfiguredPeriod()),
+                    controller.getBatchSize() + " samples",
+                    String.format("%.1f %%", controller.getMaxFill() * 100.0),
+                    String.format("%.1f %%", controller.getAverageFill() * 100.0),
+                    String.format("%.1f %%", controller.getFlushShare() * 100.0),
+                    controller.isBackpressure()
+                    ? HTMLWriter.makeRedText("decimating")
+                    : "no"
+                });
+            }
+            html.closeTable();
+        }
+
         html.close();
     }
 }
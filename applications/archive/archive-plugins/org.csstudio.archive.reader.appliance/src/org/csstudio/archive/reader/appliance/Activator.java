@@ -18,6 +18,7 @@ public class Activator extends Plugin {
 
     private Boolean useStatistics;
     private Boolean useNewOptimizedOperator;
+    private Integer parallelFetches;
 
     /**
      * The constructor
@@ -86,4 +87,20 @@ public class Activator extends Plugin {
         }
         return useNewOptimizedOperator;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return maximum number of channels that are fetched concurrently when data for several channels is requested
+     */
+    public int getParallelFetches() {
+        if (parallelFetches == null) {
+            final IPreferencesService prefs = Platform.getPreferencesService();
+            if (prefs == null) {
+                parallelFetches = ApplianceArchiveReaderConstants.PARALLEL_FETCHES;
+            } else {
+                parallelFetches = prefs.getInt(Activator.PLUGIN_ID, "parallelFetches",
+                        ApplianceArchiveReaderConstants.PARALLEL_FETCHES, null);
+            }
+        }
+        return parallelFetches;
+    }
+}
@@ -10,12 +10,15 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
 
 import org.csstudio.apputil.text.RegExHelper;
 import org.csstudio.archive.reader.ArchiveInfo;
 import org.csstudio.archive.reader.ArchiveReader;
+import org.csstudio.archive.reader.ArchiveValuesListener;
+import org.csstudio.archive.reader.ParallelFetch;
 import org.csstudio.archive.reader.UnknownChannelException;
 import org.csstudio.archive.reader.ValueIterator;
 import org.csstudio.archive.vtype.TimestampHelper;
@@ -210,6 +213,21 @@ public class ApplianceArchiveReader implements ArchiveReader, IteratorListener {
         return it;
     }
 
+    /**
+     * Fetches the channels concurrently, each request using its own HTTP connection.
+     *
+     * @see org.csstudio.archive.reader.ArchiveReader#getValues(int, java.util.List, java.time.Instant,
+     *          java.time.Instant, int, org.csstudio.archive.reader.ArchiveValuesListener)
+     */
+    @Override
+    public void getValues(int key, List<String> names, Instant start, Instant end, int count,
+            ArchiveValuesListener listener) throws Exception {
+        final Activator activator = Activator.getDefault();
+        final int workers = activator == null ? ApplianceArchiveReaderConstants.PARALLEL_FETCHES
+                : activator.getParallelFetches();
+        ParallelFetch.fetch(names, workers, ParallelFetch.forReader(this, key, start, end, count), listener);
+    }
+
     /* (non-Javadoc)
      * @see org.csstudio.archive.reader.ArchiveReader#cancel()
      */
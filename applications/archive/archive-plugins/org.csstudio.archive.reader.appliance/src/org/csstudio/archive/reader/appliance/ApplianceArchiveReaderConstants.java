@@ -17,6 +17,8 @@ public class ApplianceArchiveReaderConstants {
     public static final String RETRIEVAL_PATH = "/data/getData.raw";
     /** The path to retrieve the list of archived PVs from */
     public static final String SEARCH_PATH = "/bpl/searchForPVsRegex?regex=";
+    /** Default number of channels that are fetched concurrently */
+    public static final int PARALLEL_FETCHES = 8;
     /** Lower operating limit field */
     public static final String LOPR = "LOPR";
     /** Minor alarm lower limit field */
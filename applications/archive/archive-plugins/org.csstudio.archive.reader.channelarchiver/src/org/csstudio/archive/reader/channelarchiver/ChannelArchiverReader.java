@@ -9,11 +9,13 @@ package org.csstudio.archive.reader.channelarchiver;
 
 import java.net.UnknownHostException;
 import java.time.Instant;
+import java.util.List;
 
 import org.apache.xmlrpc.XmlRpcClient;
 import org.csstudio.apputil.text.RegExHelper;
 import org.csstudio.archive.reader.ArchiveInfo;
 import org.csstudio.archive.reader.ArchiveReader;
+import org.csstudio.archive.reader.ArchiveValuesListener;
 import org.csstudio.archive.reader.ValueIterator;
 import org.diirt.vtype.VType;
 
@@ -202,6 +204,65 @@ public class ChannelArchiverReader implements ArchiveReader
         return new ValueRequestIterator(this, key, name, start, end, true, count);
     }
 
+    /** {@inheritDoc}
+     *
+     *  <p>Optimized samples for all channels are read in one
+     *  "archiver.values" request.
+     *  Raw samples are fetched in batches per channel,
+     *  one channel after the other.
+     */
+    @Override
+    public void getValues(final int key, final List<String> names,
+            final Instant start, final Instant end, final int count,
+            final ArchiveValuesListener listener) throws Exception
+    {
+        if (count <= 0)
+        {
+            ArchiveReader.super.getValues(key, names, start, end, count, listener);
+            return;
+        }
+        final ValueRequest request;
+        synchronized (this)
+        {
+            current_request = new ValueRequest(this, key,
+                    names.toArray(new String[names.size()]), start, end, true, count);
+            request = current_request;
+        }
+        try
+        {
+            request.read(xmlrpc);
+        }
+        catch (Exception ex)
+        {
+            for (String name : names)
+                listener.channelFailed(name, ex);
+            return;
+        }
+        finally
+        {
+            synchronized (this)
+            {
+                current_request = null;
+            }
+        }
+        for (int i=0; i<names.size(); ++i)
+        {
+            final ValueIterator values = new ValueRequestIterator(request.getSamples(i));
+            try
+            {
+                listener.channelValues(names.get(i), values);
+            }
+            catch (Exception ex)
+            {
+                listener.channelFailed(names.get(i), ex);
+            }
+            finally
+            {
+                values.close();
+            }
+        }
+    }
+
     /** {@inheritDoc}*/
     @Override
     public void cancel()
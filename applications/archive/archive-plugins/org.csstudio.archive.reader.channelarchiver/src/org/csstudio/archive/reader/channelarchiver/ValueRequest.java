@@ -84,8 +84,8 @@ public class ValueRequest implements AsyncCallback
 
     final private Result result = new Result();
 
-    /** The result of the query */
-    private VType samples[];
+    /** The result of the query, per channel */
+    private VType samples[][];
 
     /** Constructor for new value request.
      *  @param reader ChannelArchiverReader
@@ -100,10 +100,27 @@ public class ValueRequest implements AsyncCallback
             final int key, final String channel,
             final Instant start, final Instant end, final boolean optimized, final int count)
             throws Exception
+    {
+        this(reader, key, new String[] { channel }, start, end, optimized, count);
+    }
+
+    /** Constructor for new value request.
+     *  @param reader ChannelArchiverReader
+     *  @param key Archive key
+     *  @param channels Channel names
+     *  @param start Start time for retrieval
+     *  @param end  End time for retrieval
+     *  @param optimized Get optimized or raw data?
+     *  @param count Number of values
+     */
+    public ValueRequest(final ChannelArchiverReader reader,
+            final int key, final String channels[],
+            final Instant start, final Instant end, final boolean optimized, final int count)
+            throws Exception
     {
         this.reader = reader;
         this.key = key;
-        this.channels = new String[] { channel };
+        this.channels = channels;
         this.start = start;
         this.end = end;
 
@@ -133,7 +150,7 @@ public class ValueRequest implements AsyncCallback
     }
 
     /** @see org.csstudio.archive.channelarchiver.ClientRequest#read() */
-    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @SuppressWarnings("unchecked")
     public void read(XmlRpcClient xmlrpc) throws Exception
     {
         final Vector<Object> params = new Vector<Object>(8);
@@ -160,7 +177,7 @@ public class ValueRequest implements AsyncCallback
             // Cancelled?
             if (result.xml_rpc_result == null)
             {
-                samples = new VType[0];
+                samples = new VType[channels.length][0];
                 return;
             }
             xml_rpc_result = result.xml_rpc_result;
@@ -169,11 +186,23 @@ public class ValueRequest implements AsyncCallback
         // result := { string name,  meta, int32 type,
         //              int32 count,  values }[]
         final int num_returned_channels = xml_rpc_result.size();
-        if (num_returned_channels != 1)
-            throw new Exception("archiver.values returned data for " + num_returned_channels + " channels?");
+        if (num_returned_channels != channels.length)
+            throw new Exception("archiver.values returned data for " + num_returned_channels +
+                                " instead of " + channels.length + " channels");
 
-        final Hashtable<String, Object> channel_data =
-            (Hashtable<String, Object>) xml_rpc_result.get(0);
+        samples = new VType[channels.length][];
+        // Server returns channels in the order requested
+        for (int i=0; i<channels.length; ++i)
+            samples[i] = decodeChannel((Hashtable<String, Object>) xml_rpc_result.get(i));
+    }
+
+    /** @param channel_data Data for one channel from the XML-RPC response
+     *  @return Samples
+     *  @throws Exception on error
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private VType[] decodeChannel(final Hashtable<String, Object> channel_data) throws Exception
+    {
         final String name = (String)channel_data.get("name");
         final int type = (Integer)channel_data.get("type");
         final int count = (Integer)channel_data.get("count");
@@ -197,7 +226,7 @@ public class ValueRequest implements AsyncCallback
                 display = null;
                 labels = null;
             }
-            samples = decodeValues(type, count, display, labels,
+            return decodeValues(type, count, display, labels,
                     (Vector)channel_data.get("values"));
         }
         catch (Exception e)
@@ -411,9 +440,17 @@ public class ValueRequest implements AsyncCallback
         return samples;
     }
 
-    /** @return Samples */
+    /** @return Samples of the first (only) channel */
     public VType[] getSamples()
     {
-        return samples;
+        return samples[0];
+    }
+
+    /** @param index Index of channel in request
+     *  @return Samples of that channel
+     */
+    public VType[] getSamples(final int index)
+    {
+        return samples[index];
     }
 }
@@ -56,6 +56,21 @@ public class ValueRequestIterator implements ValueIterator
         fetch(start);
     }
 
+    /** Constructor for samples that have already been fetched.
+     *  @param samples Optimized samples
+     */
+    ValueRequestIterator(final VType samples[])
+    {
+        reader = null;
+        key = 0;
+        name = null;
+        end = null;
+        optimized = true;
+        count = samples.length;
+        index = 0;
+        this.samples = samples.length > 0 ? samples : null;
+    }
+
     /** Fetch another batch of samples
      *
      *  @param fetch_start Start time for this batch
@@ -303,7 +303,7 @@ abstract public class AbstractRDBValueIterator  implements ValueIterator
      *  @return Array with given element and maybe more.
      *  @throws Exception on error, including 'cancel'
      */
-    private double[] readBlobArrayElements(final double dbl0, final ResultSet result) throws Exception
+    protected double[] readBlobArrayElements(final double dbl0, final ResultSet result) throws Exception
     {
         final String datatype;
         if (reader.isOracle())
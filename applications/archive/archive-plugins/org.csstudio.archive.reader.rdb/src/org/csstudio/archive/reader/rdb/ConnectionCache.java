@@ -9,9 +9,13 @@ package org.csstudio.archive.reader.rdb;
 
 import java.sql.Connection;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -22,18 +26,37 @@ import org.csstudio.platform.utility.rdb.RDBUtil.Dialect;
  *
  *  <p>RDBArchiveReaders tend to be created in bursts as data for all channels
  *  in a plot is updated.
- *  This helper caches the connection so that only the first reader will
- *  actually connect. Other 'concurrent' readers re-use the same connection,
- *  and finally the connection is closed as all readers release it.
+ *  This helper keeps a bounded pool of connections per URL and user.
+ *  Each reader leases a connection that it uses by itself,
+ *  so readers can query the database concurrently.
+ *  Only when the pool has reached its maximum size
+ *  do readers share the least used connection.
+ *
+ *  <p>Released connections remain in the pool for a while.
+ *  Connections that have been idle are validated before they are
+ *  handed out again.
  *
  *  <p>Connections are marked read-only which helps at least MySQL.
  *
  *  @author Kay Kasemir
  */
+@SuppressWarnings("nls")
 public class ConnectionCache
 {
     private static final Logger logger = Logger.getLogger(ConnectionCache.class.getName());
 
+    /** Connections idle for this long are validated before re-use [ms] */
+    private static final long VALIDATE_IDLE_MS = 5000;
+
+    /** Connections idle for this long are closed [ms] */
+    private static final long CLOSE_IDLE_MS = 60000;
+
+    /** Period of checking for idle connections [ms] */
+    private static final long CHECK_IDLE_MS = CLOSE_IDLE_MS / 4;
+
+    /** Timeout for validating a connection [seconds] */
+    private static final int VALIDATE_TIMEOUT_SECS = 5;
+
     /** Connection identifier */
     private static class ID
     {
@@ -63,17 +86,51 @@ public class ConnectionCache
         }
     }
 
-    /** Cached RDB connection with reference count */
+    /** RDB connection in a pool
+     *  <p>SYNC on 'pools'
+     */
+    private static class PooledConnection
+    {
+        private final RDBUtil rdb;
+        /** Number of readers that use this connection */
+        private int leases = 1;
+        /** Time when connection became idle, i.e. leases dropped to zero */
+        private long idle_since = 0;
+
+        PooledConnection(final RDBUtil rdb)
+        {
+            this.rdb = rdb;
+        }
+    }
+
+    /** Pool of connections for one ID
+     *  <p>SYNC on 'pools'
+     */
+    private static class Pool
+    {
+        private final ID id;
+        private final int max_size;
+        private final List<PooledConnection> connections = new ArrayList<>();
+        /** Number of connections that are being created */
+        private int connecting = 0;
+
+        Pool(final ID id)
+        {
+            this.id = id;
+            max_size = Math.max(1, Preferences.getMaxConnections(getDialect(id.url)));
+        }
+    }
+
+    /** Leased RDB connection */
     public static class Entry
     {
         private final ID id;
-        private final AtomicInteger references = new AtomicInteger(1);
-        private final RDBUtil rdb;
+        private final PooledConnection connection;
 
-        Entry(final ID id, final RDBUtil rdb)
+        Entry(final ID id, final PooledConnection connection)
         {
             this.id = id;
-            this.rdb = rdb;
+            this.connection = connection;
         }
 
         /** @return JDBC connection, MUST NOT BE CLOSED
@@ -81,33 +138,34 @@ public class ConnectionCache
          */
         public Connection getConnection() throws Exception
         {
-            return rdb.getConnection();
+            return connection.rdb.getConnection();
         }
 
         /** @return RDB Dialect */
         public Dialect getDialect()
         {
-            return rdb.getDialect();
+            return connection.rdb.getDialect();
         }
     }
 
-    /** Cache */
-    // Expecting only very few entries, so list & linear search good enough
-    private final static List<Entry> cache = new ArrayList<>();
+    /** Pools by ID */
+    private final static Map<ID, Pool> pools = new HashMap<>();
+
+    /** Timer for closing idle connections, running while there are pools.
+     *  <p>SYNC on 'pools'
+     */
+    private static Timer timer = null;
 
-    /** Find entry
-     *  @param id ID
-     *  @return Existing entry with added reference or <code>null</code>
+    /** @param url Database URL
+     *  @return {@link Dialect} for that URL
      */
-    private static Entry find(final ID id)
+    private static Dialect getDialect(final String url)
     {
-        for (Entry entry : cache)
-            if (entry.id.equals(id))
-            {
-                entry.references.incrementAndGet();
-                return entry;
-            }
-        return null;
+        if (url.startsWith("jdbc:oracle"))
+            return Dialect.Oracle;
+        if (url.startsWith("jdbc:postgresql"))
+            return Dialect.PostgreSQL;
+        return Dialect.MySQL;
     }
 
     /** Get a cached RDB connection
@@ -120,19 +178,127 @@ public class ConnectionCache
      */
     public static Entry get(final String url, final String user, final String password) throws Exception
     {
-        final ID id = new ID(url, user, password);
-        synchronized (cache)
+        return get(new ID(url, user, password));
+    }
+
+    /** Get another connection for the same database and user
+     *
+     *  <p>Allows a reader to issue concurrent queries,
+     *  each on its own connection as long as the pool has room.
+     *
+     *  @param entry Entry obtained via <code>get(url, user, password)</code>
+     *  @return {@link Entry}
+     *  @throws Exception on error
+     *  @see #release(Entry)
+     */
+    public static Entry get(final Entry entry) throws Exception
+    {
+        return get(entry.id);
+    }
+
+    /** @param id Connection identifier
+     *  @return {@link Entry}
+     *  @throws Exception on error
+     */
+    private static Entry get(final ID id) throws Exception
+    {
+        while (true)
         {
-            Entry entry = find(id);
-            if (entry == null)
+            final Pool pool;
+            PooledConnection connection = null;
+            boolean validate = false;
+            synchronized (pools)
+            {
+                pool = pools.computeIfAbsent(id, Pool::new);
+                // Prefer an idle connection, most recently used first
+                for (PooledConnection c : pool.connections)
+                    if (c.leases == 0  &&  (connection == null  ||  c.idle_since > connection.idle_since))
+                        connection = c;
+                if (connection != null)
+                {
+                    connection.leases = 1;
+                    validate = System.currentTimeMillis() - connection.idle_since > VALIDATE_IDLE_MS;
+                }
+                else if (pool.connections.size() + pool.connecting < pool.max_size)
+                    ++pool.connecting;
+                else if (! pool.connections.isEmpty())
+                {   // Pool is full: Share least used connection
+                    connection = pool.connections.get(0);
+                    for (PooledConnection c : pool.connections)
+                        if (c.leases < connection.leases)
+                            connection = c;
+                    ++connection.leases;
+                    return new Entry(id, connection);
+                }
+                else
+                {   // All connections are still being created; wait for one
+                    pools.wait(1000);
+                    continue;
+                }
+            }
+
+            if (connection == null)
+                return new Entry(id, connect(pool));
+            if (! validate  ||  isValid(connection))
+                return new Entry(id, connection);
+            // Drop invalid connection, try again
+            logger.log(Level.FINE, "Dropping invalid connection to {0}", id.url);
+            synchronized (pools)
             {
-                logger.log(Level.FINE, "Connecting to {0}", url);
-                entry = new Entry(id, RDBUtil.connect(url, user, password, false));
-                // Read-only allows MySQL to use load balancing
-                entry.getConnection().setReadOnly(true);
-                cache.add(entry);
+                pool.connections.remove(connection);
             }
-            return entry;
+            connection.rdb.close();
+        }
+    }
+
+    /** Create new connection for pool, outside of lock
+     *  @param pool Pool that has reserved a 'connecting' slot
+     *  @return {@link PooledConnection}, added to the pool
+     *  @throws Exception on error
+     */
+    private static PooledConnection connect(final Pool pool) throws Exception
+    {
+        PooledConnection connection = null;
+        try
+        {
+            logger.log(Level.FINE, "Connecting to {0}", pool.id.url);
+            final RDBUtil rdb = RDBUtil.connect(pool.id.url, pool.id.user, pool.id.password, false);
+            connection = new PooledConnection(rdb);
+            // Read-only allows MySQL to use load balancing
+            rdb.getConnection().setReadOnly(true);
+            return connection;
+        }
+        catch (Exception ex)
+        {
+            if (connection != null)
+                connection.rdb.close();
+            connection = null;
+            throw ex;
+        }
+        finally
+        {
+            synchronized (pools)
+            {
+                --pool.connecting;
+                if (connection != null)
+                    pool.connections.add(connection);
+                pools.notifyAll();
+            }
+        }
+    }
+
+    /** @param connection Connection that has been idle
+     *  @return <code>true</code> if connection is still usable
+     */
+    private static boolean isValid(final PooledConnection connection)
+    {
+        try
+        {
+            return connection.rdb.getConnection().isValid(VALIDATE_TIMEOUT_SECS);
+        }
+        catch (Exception ex)
+        {
+            return false;
         }
     }
 
@@ -141,24 +307,88 @@ public class ConnectionCache
      */
     public static void release(final Entry entry)
     {
-        synchronized (cache)
+        synchronized (pools)
         {
-            if (entry.references.decrementAndGet() > 0)
+            if (--entry.connection.leases > 0)
                 return; // Still in use
-            cache.remove(entry);
+            entry.connection.idle_since = System.currentTimeMillis();
+            final Pool pool = pools.get(entry.id);
+            if (pool != null  &&  pool.connections.contains(entry.connection))
+            {   // Timer closes it unless re-used within CLOSE_IDLE_MS
+                if (timer == null)
+                {
+                    timer = new Timer("ConnectionCache", true);
+                    timer.schedule(new TimerTask()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            closeIdleConnections();
+                        }
+                    }, CHECK_IDLE_MS, CHECK_IDLE_MS);
+                }
+                return;
+            }
+        }
+        // Connection was removed from the pool while in use, see clean()
+        closeConnections(Collections.singletonList(entry.connection));
+    }
+
+    /** Close connections that have been idle for CLOSE_IDLE_MS */
+    private static void closeIdleConnections()
+    {
+        final List<PooledConnection> idle = new ArrayList<>();
+        final long now = System.currentTimeMillis();
+        synchronized (pools)
+        {
+            for (Pool pool : pools.values())
+                for (PooledConnection connection : pool.connections)
+                    if (connection.leases == 0  &&  now - connection.idle_since >= CLOSE_IDLE_MS)
+                        idle.add(connection);
+            removeConnections(idle);
+            // Stop checking until connections are released again
+            if (pools.isEmpty()  &&  timer != null)
+            {
+                timer.cancel();
+                timer = null;
+            }
+        }
+        closeConnections(idle);
+    }
+
+    /** @param connections Connections to remove from pools, SYNC on 'pools' */
+    private static void removeConnections(final List<PooledConnection> connections)
+    {
+        for (Pool pool : pools.values())
+            pool.connections.removeAll(connections);
+        pools.values().removeIf(pool -> pool.connections.isEmpty()  &&  pool.connecting == 0);
+    }
+
+    /** @param connections Connections to close */
+    private static void closeConnections(final List<PooledConnection> connections)
+    {
+        for (PooledConnection connection : connections)
+        {
+            connection.rdb.close();
+            logger.log(Level.FINE, "Closed {0}", connection.rdb);
         }
-        entry.rdb.close();
-        logger.log(Level.FINE, "Closed {0}", entry.id.url);
     }
 
     /**
-     * Clear cache content
+     * Clear cache content, closing idle connections.
+     * Connections that are still in use remain in their pool.
      */
     public static void clean()
     {
-        synchronized (cache)
+        final List<PooledConnection> idle = new ArrayList<>();
+        synchronized (pools)
         {
-            cache.clear();
+            for (Pool pool : pools.values())
+                for (PooledConnection connection : pool.connections)
+                    if (connection.leases == 0)
+                        idle.add(connection);
+            removeConnections(idle);
         }
+        closeConnections(idle);
     }
 }
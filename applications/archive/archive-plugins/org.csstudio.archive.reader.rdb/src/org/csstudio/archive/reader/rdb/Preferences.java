@@ -7,6 +7,7 @@
  ******************************************************************************/
 package org.csstudio.archive.reader.rdb;
 
+import org.csstudio.platform.utility.rdb.RDBUtil.Dialect;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.preferences.IPreferencesService;
 
@@ -34,6 +35,18 @@ public class Preferences
         return prefs.getInt(Activator.ID, FETCH_SIZE, fetch_size, null);
     }
 
+    /** @param dialect RDB dialect
+     *  @return Maximum number of connections per URL and user for that dialect
+     */
+    public static int getMaxConnections(final Dialect dialect)
+    {
+        final int max_connections = dialect == Dialect.Oracle ? 8 : 4;
+        final IPreferencesService prefs = Platform.getPreferencesService();
+        if (prefs == null)
+            return max_connections;
+        return prefs.getInt(Activator.ID, "max_connections_" + dialect.name().toLowerCase(), max_connections, null);
+    }
+
     public static String getStoredProcedure()
     {
         return getString(STORED_PROCEDURE, "");
@@ -15,18 +15,22 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.csstudio.archive.rdb.RDBArchivePreferences;
 import org.csstudio.archive.reader.ArchiveInfo;
 import org.csstudio.archive.reader.ArchiveReader;
+import org.csstudio.archive.reader.ArchiveValuesListener;
+import org.csstudio.archive.reader.ParallelFetch;
 import org.csstudio.archive.reader.UnknownChannelException;
 import org.csstudio.archive.reader.ValueIterator;
 import org.csstudio.archive.vtype.TimestampHelper;
 import org.csstudio.platform.utility.rdb.RDBUtil.Dialect;
 import org.diirt.util.time.TimeDuration;
 import org.diirt.vtype.AlarmSeverity;
+import org.diirt.vtype.VType;
 
 /** ArchiveReader for RDB data
  *  @author Kay Kasemir
@@ -67,6 +71,9 @@ public class RDBArchiveReader implements ArchiveReader
     private ArrayList<Statement> cancellable_statements =
         new ArrayList<Statement>();
 
+    /** Readers used by getValues(), canceled in cancel() */
+    final private List<RDBArchiveReader> children = new ArrayList<>();
+
     private boolean concurrency = false;
 
     /** Initialize
@@ -135,6 +142,31 @@ public class RDBArchiveReader implements ArchiveReader
         severities = getSeverityValues();
     }
 
+    /** Initialize reader that uses its own connection
+     *  to the same database as the parent.
+     *  @param parent Parent reader
+     *  @throws Exception on error
+     */
+    private RDBArchiveReader(final RDBArchiveReader parent) throws Exception
+    {
+        url = parent.url;
+        user = parent.user;
+        password = parent.password;
+        use_array_blob = parent.use_array_blob;
+        timeout = parent.timeout;
+        stored_procedure = parent.stored_procedure;
+        is_oracle = parent.is_oracle;
+        concurrency = parent.concurrency;
+        sql = parent.sql;
+        rdb = ConnectionCache.get(parent.rdb);
+        // Copies, since getSeverity() may add to the map
+        synchronized (parent.severities)
+        {
+            severities = new HashMap<>(parent.severities);
+        }
+        stati = new HashMap<>(parent.stati);
+    }
+
     /** @return <code>true</code> when using Oracle, i.e. no 'nanosec'
      *          because that is included in the 'smpl_time'
      */
@@ -251,11 +283,14 @@ public class RDBArchiveReader implements ArchiveReader
      */
     AlarmSeverity getSeverity(int severity_id)
     {
-        final AlarmSeverity severity = severities.get(severity_id);
-        if (severity != null)
-            return severity;
-        Activator.getLogger().log(Level.WARNING, "Undefined alarm severity ID {0}", severity_id);
-        severities.put(severity_id, AlarmSeverity.UNDEFINED);
+        synchronized (severities)
+        {
+            final AlarmSeverity severity = severities.get(severity_id);
+            if (severity != null)
+                return severity;
+            Activator.getLogger().log(Level.WARNING, "Undefined alarm severity ID {0}", severity_id);
+            severities.put(severity_id, AlarmSeverity.UNDEFINED);
+        }
         return AlarmSeverity.UNDEFINED;
     }
 
@@ -418,6 +453,83 @@ public class RDBArchiveReader implements ArchiveReader
         return new AveragedValueIterator(raw_data, seconds);
     }
 
+    /** {@inheritDoc}
+     *
+     *  <p>Reads up to 'max_connections' channels in parallel,
+     *  each on its own connection from the {@link ConnectionCache}.
+     */
+    @Override
+    public void getValues(final int key, final List<String> names,
+            final Instant start, final Instant end, final int count,
+            final ArchiveValuesListener listener) throws Exception
+    {
+        final int workers = Preferences.getMaxConnections(rdb.getDialect());
+        ParallelFetch.fetch(names, workers,
+                            name -> getValuesOnOwnConnection(key, name, start, end, count),
+                            listener);
+    }
+
+    /** Read samples for one channel via a child reader
+     *  @param key Key of the archive to use for retrieval
+     *  @param name Channel name
+     *  @param start Start time
+     *  @param end End time
+     *  @param count Hint for number of values, or 0 for raw samples
+     *  @return {@link ValueIterator} that closes the child reader when closed
+     *  @throws Exception on error
+     */
+    private ValueIterator getValuesOnOwnConnection(final int key, final String name,
+            final Instant start, final Instant end, final int count) throws Exception
+    {
+        final RDBArchiveReader child = new RDBArchiveReader(this);
+        synchronized (children)
+        {
+            children.add(child);
+        }
+        try
+        {
+            final ValueIterator values = count > 0
+                ? child.getOptimizedValues(key, name, start, end, count)
+                : child.getRawValues(key, name, start, end);
+            return new ValueIterator()
+            {
+                @Override
+                public boolean hasNext()
+                {
+                    return values.hasNext();
+                }
+
+                @Override
+                public VType next() throws Exception
+                {
+                    return values.next();
+                }
+
+                @Override
+                public void close()
+                {
+                    values.close();
+                    closeChild(child);
+                }
+            };
+        }
+        catch (Exception ex)
+        {
+            closeChild(child);
+            throw ex;
+        }
+    }
+
+    /** @param child Child reader to close and forget */
+    private void closeChild(final RDBArchiveReader child)
+    {
+        synchronized (children)
+        {
+            children.remove(child);
+        }
+        child.close();
+    }
+
     /** @param name Channel name
      *  @return Numeric channel ID
      *  @throws UnknownChannelException when channel not known
@@ -493,6 +605,11 @@ public class RDBArchiveReader implements ArchiveReader
     @Override
     public void cancel()
     {
+        synchronized (children)
+        {
+            for (RDBArchiveReader child : children)
+                child.cancel();
+        }
         synchronized (cancellable_statements)
         {
             for (Statement statement : cancellable_statements)
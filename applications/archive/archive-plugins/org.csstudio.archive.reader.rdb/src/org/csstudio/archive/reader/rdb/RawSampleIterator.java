@@ -10,12 +10,23 @@ package org.csstudio.archive.reader.rdb;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.time.Instant;
+import java.util.Arrays;
 
 import org.csstudio.archive.vtype.TimestampHelper;
 import org.csstudio.platform.utility.rdb.RDBUtil.Dialect;
+import org.diirt.vtype.AlarmSeverity;
 import org.diirt.vtype.VType;
 
 /** Value Iterator that reads from the SAMPLE table.
+ *
+ *  <p>Samples are read in blocks of 'fetch size' rows
+ *  into a columnar {@link SampleBlock}.
+ *  Array elements from the ARRAY_VAL table are read for the whole block
+ *  with one query.
+ *  <code>next()</code> creates the {@link VType} for one sample
+ *  of the block, while {@link #nextBlock()} provides the
+ *  remaining samples of the current block.
+ *
  *  @author Kay Kasemir
  *  @author Lana Abadie (PostgreSQL)
  */
@@ -27,12 +38,31 @@ public class RawSampleIterator extends AbstractRDBValueIterator
     /** Result of <code>sel_samples</code> */
     private ResultSet result_set = null;
 
+    /** SELECT ... for the array elements of a block of samples */
+    private PreparedStatement sel_array_block = null;
+
     private boolean concurrency = false;
 
-    /** 'Current' value that <code>next()</code> will return,
+    /** Number of samples to read per block */
+    final private int block_size = Math.max(1, Preferences.getFetchSize());
+
+    /** Block that holds the 'current' value that <code>next()</code> will return,
      *  or <code>null</code>
      */
-    private VType value = null;
+    private SampleBlock block = null;
+
+    /** Index of 'current' value in <code>block</code> */
+    private int index = 0;
+
+    /** Index of first unread sample in block returned by <code>nextBlock()</code> */
+    private int block_start = 0;
+
+    /** Severity and status IDs of last sample, and the resulting severity and status.
+     *  Consecutive samples tend to have the same severity and status.
+     */
+    private int last_severity_id = -1, last_status_id = -1;
+    private AlarmSeverity last_severity = null;
+    private String last_status = null;
     /** Initialize
      *  @param reader RDBArchiveReader
      *  @param channel_id ID of channel
@@ -55,7 +85,7 @@ public class RawSampleIterator extends AbstractRDBValueIterator
             if (! RDBArchiveReader.isCancellation(ex))
                 throw ex;
             // Else: Not a real error; return empty iterator
-            value = null;
+            block = null;
         }
     }
     /** Initialize
@@ -73,7 +103,7 @@ public class RawSampleIterator extends AbstractRDBValueIterator
     }
 
     /** Get the samples: <code>result_set</code> will have the samples,
-     *  <code>value</code> will contain the first sample
+     *  <code>block</code> will contain the first samples
      *  @param start Start time
      *  @param end End time
      *  @throws Exception on error, including cancellation
@@ -150,17 +180,184 @@ public class RawSampleIterator extends AbstractRDBValueIterator
         sel_samples.setTimestamp(2, start_stamp);
         sel_samples.setTimestamp(3, end_stamp);
         result_set = sel_samples.executeQuery();
-        // Get first sample
-        if (result_set.next())
-            value = decodeSampleTableValue(result_set, true);
-        // else leave value null to indicate end of samples
+        // Get first samples
+        readBlock();
+        // else leave block null to indicate end of samples
+    }
+
+    /** Read next block of samples from <code>result_set</code>
+     *  @throws Exception on error, including cancellation
+     */
+    private void readBlock() throws Exception
+    {
+        final SampleBlock next = new SampleBlock(block_size, display, labels);
+        final boolean oracle = reader.isOracle();
+        final boolean use_blob = reader.useArrayBlob();
+        while (next.size() < block_size  &&  result_set.next())
+        {
+            // Get time stamp
+            final java.sql.Timestamp stamp = result_set.getTimestamp(1);
+            // Oracle has nanoseconds in TIMESTAMP, other RDBs in separate column
+            if (! oracle)
+                stamp.setNanos(result_set.getInt(7));
+            final Instant time = TimestampHelper.fromSQLTimestamp(stamp);
+
+            // Get severity/status, re-using the previous one when unchanged
+            final int severity_id = result_set.getInt(2);
+            final int status_id = result_set.getInt(3);
+            if (severity_id != last_severity_id  ||  status_id != last_status_id  ||  last_status == null)
+            {
+                last_status = reader.getStatus(status_id);
+                last_severity = filterSeverity(reader.getSeverity(severity_id), last_status);
+                last_severity_id = severity_id;
+                last_status_id = status_id;
+            }
+
+            // Try double
+            final double dbl0 = result_set.getDouble(5);
+            if (! result_set.wasNull())
+            {
+                if (use_blob  &&  labels == null)
+                {
+                    final double[] data = readBlobArrayElements(dbl0, result_set);
+                    next.addDouble(time, last_severity, last_status, data[0]);
+                    if (data.length != 1)
+                        next.setArray(next.size()-1, data);
+                }
+                else
+                    next.addDouble(time, last_severity, last_status, dbl0);
+                continue;
+            }
+            // Try integer
+            final int num = result_set.getInt(4);
+            if (! result_set.wasNull())
+                next.addInteger(time, last_severity, last_status, num);
+            else // Default to string
+                next.addString(time, last_severity, last_status, result_set.getString(6));
+        }
+        if (next.size() <= 0)
+        {
+            block = null;
+            return;
+        }
+        if (! use_blob  &&  is_an_array  &&  labels == null)
+            readArrayElements(next);
+        block = next;
+        index = 0;
+    }
+
+    /** Read array elements for all double samples in the block
+     *  @param block {@link SampleBlock}
+     *  @throws Exception on error, including cancellation
+     */
+    private void readArrayElements(final SampleBlock block) throws Exception
+    {
+        if (sel_array_block == null)
+            sel_array_block = reader.getConnection().prepareStatement(
+                    reader.getSQL().sample_sel_array_vals_by_range);
+        final boolean oracle = reader.isOracle();
+        final int N = block.size();
+        // Use full seconds because non-Oracle smpl_time lacks nanoseconds,
+        // and end at the next second, exclusive, to include all elements of the last sample
+        // no matter how the RDB rounds the sub-second part of the time stamps
+        sel_array_block.setInt(1, channel_id);
+        sel_array_block.setTimestamp(2, TimestampHelper.toSQLTimestamp(Instant.ofEpochSecond(block.getEpochSeconds(0))));
+        sel_array_block.setTimestamp(3, TimestampHelper.toSQLTimestamp(Instant.ofEpochSecond(block.getEpochSeconds(N-1) + 1)));
+
+        // Elements of the array sample at 'row'
+        int row = -1;
+        double[] elements = new double[16];
+        int count = 0;
+        reader.addForCancellation(sel_array_block);
+        try
+        {
+            final ResultSet res = sel_array_block.executeQuery();
+            int i = 0;
+            while (res.next())
+            {
+                final java.sql.Timestamp stamp = res.getTimestamp(1);
+                if (! oracle)
+                    stamp.setNanos(res.getInt(2));
+                final Instant time = TimestampHelper.fromSQLTimestamp(stamp);
+                final long secs = time.getEpochSecond();
+                final int nano = time.getNano();
+                // Locate sample for these elements.
+                // Both block and elements are ordered by time.
+                while (i < N  &&  (block.getEpochSeconds(i) < secs  ||
+                                   (block.getEpochSeconds(i) == secs  &&  block.getNanos(i) < nano)))
+                    ++i;
+                if (i >= N)
+                    break;
+                if (block.getEpochSeconds(i) != secs  ||  block.getNanos(i) != nano  ||  ! block.isDouble(i))
+                    continue;
+                if (i != row)
+                {   // Elements for a new sample. Complete the previous one
+                    if (row >= 0)
+                        block.setArray(row, Arrays.copyOf(elements, count));
+                    row = i;
+                    // First element is in the sample table
+                    elements[0] = block.getDouble(i);
+                    count = 1;
+                }
+                if (count >= elements.length)
+                    elements = Arrays.copyOf(elements, 2*elements.length);
+                elements[count++] = res.getDouble(oracle ? 2 : 3);
+            }
+            res.close();
+        }
+        finally
+        {
+            reader.removeFromCancellation(sel_array_block);
+        }
+        if (row >= 0)
+            block.setArray(row, Arrays.copyOf(elements, count));
+        // Unlike the per-sample lookup, keep checking for array elements in each block:
+        // One query per block is cheap, and a channel may change from scalar to array
     }
 
     /** {@inheritDoc} */
     @Override
     public boolean hasNext()
     {
-        return value != null;
+        return block != null;
+    }
+
+    /** Get the remaining samples of the current block.
+     *
+     *  <p>Alternative to <code>next()</code> for callers that
+     *  handle the columns of a {@link SampleBlock}.
+     *  Block and <code>next()</code> calls may be mixed.
+     *
+     *  @return Block with samples from index {@link #getBlockStart()} on,
+     *          or <code>null</code> at end
+     *  @throws Exception on error
+     */
+    public SampleBlock nextBlock() throws Exception
+    {
+        final SampleBlock result = block;
+        if (result == null)
+            return null;
+        block_start = index;
+        try
+        {
+            readBlock();
+            if (block == null)
+                close();
+        }
+        catch (Exception ex)
+        {
+            close();
+            if (! RDBArchiveReader.isCancellation(ex))
+                throw ex;
+            // Else: Not a real error; return empty iterator
+        }
+        return result;
+    }
+
+    /** @return Index of first unread sample in block returned by last {@link #nextBlock()} */
+    public int getBlockStart()
+    {
+        return block_start;
     }
 
     /** {@inheritDoc} */
@@ -173,14 +370,16 @@ public class RawSampleIterator extends AbstractRDBValueIterator
             throw new Exception("RawSampleIterator.next(" + channel_id + ") called after end");
 
         // Remember value to return...
-        final VType result = value;
+        final VType result = block.getValue(index);
         // ... and prepare next value
         try
         {
-            if (result_set.next())
-                value = decodeSampleTableValue(result_set, true);
-            else
-                close();
+            if (++index >= block.size())
+            {
+                readBlock();
+                if (block == null)
+                    close();
+            }
         }
         catch (Exception ex)
         {
@@ -199,7 +398,19 @@ public class RawSampleIterator extends AbstractRDBValueIterator
     public void close()
     {
         super.close();
-        value = null;
+        block = null;
+        if (sel_array_block != null)
+        {
+            try
+            {
+                sel_array_block.close();
+            }
+            catch (Exception ex)
+            {
+                // Ignore
+            }
+            sel_array_block = null;
+        }
         if (result_set != null)
         {
             try
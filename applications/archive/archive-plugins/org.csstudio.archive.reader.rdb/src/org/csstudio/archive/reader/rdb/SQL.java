@@ -37,6 +37,7 @@ public class SQL
     final public String sample_sel_by_id_start_end;
     final public String sample_sel_by_id_start_end_with_blob;
     final public String sample_sel_array_vals;
+    final public String sample_sel_array_vals_by_range;
     final public String sample_count_by_id_start_end;
 
     /** Initialize SQL statements
@@ -104,6 +105,8 @@ public class SQL
                     "   ORDER BY smpl_time";
             sample_sel_array_vals = "SELECT float_val FROM " + prefix + "array_val" +
                 " WHERE channel_id=? AND smpl_time=? ORDER BY seq_nbr";
+            sample_sel_array_vals_by_range = "SELECT smpl_time, float_val FROM " + prefix + "array_val" +
+                " WHERE channel_id=? AND smpl_time>=? AND smpl_time<? ORDER BY smpl_time, seq_nbr";
         }
         else
         {    // MySQL, Postgres
@@ -124,6 +127,8 @@ public class SQL
                 "   ORDER BY smpl_time, nanosecs";
             sample_sel_array_vals = "SELECT float_val FROM " + prefix + "array_val" +
                 " WHERE channel_id=? AND smpl_time=? AND nanosecs=? ORDER BY seq_nbr";
+            sample_sel_array_vals_by_range = "SELECT smpl_time, nanosecs, float_val FROM " + prefix + "array_val" +
+                " WHERE channel_id=? AND smpl_time>=? AND smpl_time<? ORDER BY smpl_time, nanosecs, seq_nbr";
         }
         // Rough count, ignoring nanosecs for the non-Oracle dialects
         sample_count_by_id_start_end = "SELECT COUNT(*) FROM " + prefix + "sample" +
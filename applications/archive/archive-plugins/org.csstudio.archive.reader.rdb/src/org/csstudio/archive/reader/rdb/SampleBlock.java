@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.reader.rdb;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import org.csstudio.archive.vtype.ArchiveVEnum;
+import org.csstudio.archive.vtype.ArchiveVNumber;
+import org.csstudio.archive.vtype.ArchiveVNumberArray;
+import org.csstudio.archive.vtype.ArchiveVString;
+import org.diirt.vtype.AlarmSeverity;
+import org.diirt.vtype.Display;
+import org.diirt.vtype.VType;
+
+/** Block of samples read from the SAMPLE table, kept in columns.
+ *
+ *  <p>Time stamps and values are held in primitive arrays,
+ *  severity and status refer to shared instances.
+ *  {@link VType}s are only created when requested
+ *  via {@link #getValue(int)}.
+ *
+ *  @author Kay Kasemir
+ */
+public class SampleBlock
+{
+    /** Value types */
+    final private static byte DOUBLE = 0, INTEGER = 1, STRING = 2;
+
+    final private Display display;
+    final private List<String> labels;
+
+    private int size = 0;
+    private long[] seconds;
+    private int[] nanos;
+    private AlarmSeverity[] severities;
+    private String[] stati;
+    private byte[] types;
+    private double[] doubles;
+    private int[] numbers;
+    private String[] strings = null;
+    private double[][] arrays = null;
+
+    /** @param capacity Initial capacity
+     *  @param display Display meta data for numeric samples
+     *  @param labels Enum labels or <code>null</code>
+     */
+    SampleBlock(final int capacity, final Display display, final List<String> labels)
+    {
+        this.display = display;
+        this.labels = labels;
+        final int N = Math.max(1, capacity);
+        seconds = new long[N];
+        nanos = new int[N];
+        severities = new AlarmSeverity[N];
+        stati = new String[N];
+        types = new byte[N];
+        doubles = new double[N];
+        numbers = new int[N];
+    }
+
+    /** @return Number of samples in block */
+    public int size()
+    {
+        return size;
+    }
+
+    /** Add sample, growing the block as needed
+     *  @return Index of the new sample
+     */
+    private int add(final Instant time, final AlarmSeverity severity, final String status, final byte type)
+    {
+        if (size >= seconds.length)
+        {
+            final int N = 2 * seconds.length;
+            seconds = Arrays.copyOf(seconds, N);
+            nanos = Arrays.copyOf(nanos, N);
+            severities = Arrays.copyOf(severities, N);
+            stati = Arrays.copyOf(stati, N);
+            types = Arrays.copyOf(types, N);
+            doubles = Arrays.copyOf(doubles, N);
+            numbers = Arrays.copyOf(numbers, N);
+            if (strings != null)
+                strings = Arrays.copyOf(strings, N);
+            if (arrays != null)
+                arrays = Arrays.copyOf(arrays, N);
+        }
+        final int i = size++;
+        seconds[i] = time.getEpochSecond();
+        nanos[i] = time.getNano();
+        severities[i] = severity;
+        stati[i] = status;
+        types[i] = type;
+        return i;
+    }
+
+    void addDouble(final Instant time, final AlarmSeverity severity, final String status, final double value)
+    {
+        doubles[add(time, severity, status, DOUBLE)] = value;
+    }
+
+    void addInteger(final Instant time, final AlarmSeverity severity, final String status, final int value)
+    {
+        numbers[add(time, severity, status, INTEGER)] = value;
+    }
+
+    void addString(final Instant time, final AlarmSeverity severity, final String status, final String value)
+    {
+        final int i = add(time, severity, status, STRING);
+        if (strings == null)
+            strings = new String[seconds.length];
+        strings[i] = value;
+    }
+
+    /** @param i Index of sample
+     *  @param array Array elements of the sample, <code>null</code> for scalar
+     */
+    void setArray(final int i, final double[] array)
+    {
+        if (arrays == null)
+        {
+            if (array == null)
+                return;
+            arrays = new double[seconds.length][];
+        }
+        arrays[i] = array;
+    }
+
+    /** @param i Index of sample
+     *  @return Time stamp of sample
+     */
+    public Instant getTime(final int i)
+    {
+        return Instant.ofEpochSecond(seconds[i], nanos[i]);
+    }
+
+    /** @param i Index of sample
+     *  @return Epoch seconds of the sample's time stamp
+     */
+    public long getEpochSeconds(final int i)
+    {
+        return seconds[i];
+    }
+
+    /** @param i Index of sample
+     *  @return Nanoseconds of the sample's time stamp
+     */
+    public int getNanos(final int i)
+    {
+        return nanos[i];
+    }
+
+    /** @param i Index of sample
+     *  @return Severity of sample
+     */
+    public AlarmSeverity getSeverity(final int i)
+    {
+        return severities[i];
+    }
+
+    /** @param i Index of sample
+     *  @return Status of sample
+     */
+    public String getStatus(final int i)
+    {
+        return stati[i];
+    }
+
+    /** @param i Index of sample
+     *  @return <code>true</code> for numeric sample (including enum), <code>false</code> for text
+     */
+    public boolean isNumeric(final int i)
+    {
+        return types[i] != STRING;
+    }
+
+    /** @param i Index of sample
+     *  @return <code>true</code> for sample with floating point value
+     */
+    boolean isDouble(final int i)
+    {
+        return types[i] == DOUBLE;
+    }
+
+    /** @param i Index of sample
+     *  @return Numeric value (first element of array),
+     *          <code>NaN</code> for text samples
+     */
+    public double getDouble(final int i)
+    {
+        switch (types[i])
+        {
+        case DOUBLE:
+            return doubles[i];
+        case INTEGER:
+            return numbers[i];
+        default:
+            return Double.NaN;
+        }
+    }
+
+    /** @param i Index of sample
+     *  @return Array elements or <code>null</code> for scalar sample
+     */
+    public double[] getArray(final int i)
+    {
+        return arrays == null ? null : arrays[i];
+    }
+
+    /** @param i Index of sample
+     *  @return Text of sample, <code>null</code> for numeric sample
+     */
+    public String getText(final int i)
+    {
+        return types[i] == STRING ? strings[i] : null;
+    }
+
+    /** @param i Index of sample
+     *  @return {@link VType} for the sample
+     */
+    public VType getValue(final int i)
+    {
+        final Instant time = getTime(i);
+        switch (types[i])
+        {
+        case DOUBLE:
+        {
+            if (labels != null)
+                return new ArchiveVEnum(time, severities[i], stati[i], labels, (int) doubles[i]);
+            final double[] array = getArray(i);
+            if (array != null)
+                return new ArchiveVNumberArray(time, severities[i], stati[i], display, array);
+            return new ArchiveVNumber(time, severities[i], stati[i], display, doubles[i]);
+        }
+        case INTEGER:
+            if (labels != null)
+                return new ArchiveVEnum(time, severities[i], stati[i], labels, numbers[i]);
+            return new ArchiveVNumber(time, severities[i], stati[i], display, numbers[i]);
+        default:
+            return new ArchiveVString(time, severities[i], stati[i], strings[i]);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.cstudio.archive.reader;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.csstudio.archive.reader.ArchiveInfo;
+import org.csstudio.archive.reader.ArchiveReader;
+import org.csstudio.archive.reader.ArchiveValuesListener;
+import org.csstudio.archive.reader.ParallelFetch;
+import org.csstudio.archive.reader.UnknownChannelException;
+import org.csstudio.archive.reader.ValueIterator;
+import org.junit.Test;
+
+/** JUnit test of the {@link ParallelFetch}
+ *  and {@link ArchiveReader#getValues(int, List, Instant, Instant, int, ArchiveValuesListener)}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class ParallelFetchUnitTest
+{
+    @Test
+    public void testParallelFetch() throws Exception
+    {
+        final List<String> names = new ArrayList<>();
+        for (int i=0; i<20; ++i)
+            names.add("Channel" + i);
+        names.add("Unknown");
+
+        final List<DemoDataIterator> iterators = new ArrayList<>();
+        final AtomicInteger active = new AtomicInteger(), max_active = new AtomicInteger();
+        final ParallelFetch.Fetcher fetcher = name ->
+        {
+            if (name.equals("Unknown"))
+                throw new UnknownChannelException(name);
+            final int now_active = active.incrementAndGet();
+            max_active.accumulateAndGet(now_active, Math::max);
+            Thread.sleep(50);
+            active.decrementAndGet();
+            final DemoDataIterator iter = DemoDataIterator.forStrings(name);
+            synchronized (iterators)
+            {
+                iterators.add(iter);
+            }
+            return iter;
+        };
+
+        final Map<String, Integer> counts = new ConcurrentHashMap<>();
+        final Map<String, Exception> errors = new ConcurrentHashMap<>();
+        final ArchiveValuesListener listener = new ArchiveValuesListener()
+        {
+            @Override
+            public void channelValues(final String name, final ValueIterator values) throws Exception
+            {
+                int count = 0;
+                while (values.hasNext())
+                {
+                    values.next();
+                    ++count;
+                }
+                counts.put(name, count);
+            }
+
+            @Override
+            public void channelFailed(final String name, final Exception error)
+            {
+                errors.put(name, error);
+            }
+        };
+
+        ParallelFetch.fetch(names, 4, fetcher, listener);
+
+        // All channels were read, concurrently but within limit
+        assertThat(counts.size(), equalTo(20));
+        for (Integer count : counts.values())
+            assertThat(count, equalTo(10));
+        System.out.println("Max. concurrent fetches: " + max_active.get());
+        assertTrue(max_active.get() > 1);
+        assertTrue(max_active.get() <= 4);
+
+        // Error was reported for the unknown channel
+        assertThat(errors.size(), equalTo(1));
+        assertTrue(errors.get("Unknown") instanceof UnknownChannelException);
+
+        // All iterators were closed
+        for (DemoDataIterator iter : iterators)
+            assertTrue(! iter.isOpen());
+    }
+
+    /** Reader that serves demo data, remembering the requests */
+    private static class DemoReader implements ArchiveReader
+    {
+        final List<String> raw = new ArrayList<>(), optimized = new ArrayList<>();
+        final List<DemoDataIterator> iterators = new ArrayList<>();
+
+        @Override
+        public String getServerName()
+        {
+            return "Demo";
+        }
+
+        @Override
+        public String getURL()
+        {
+            return "demo:";
+        }
+
+        @Override
+        public String getDescription()
+        {
+            return "Demo";
+        }
+
+        @Override
+        public int getVersion()
+        {
+            return 1;
+        }
+
+        @Override
+        public ArchiveInfo[] getArchiveInfos()
+        {
+            return new ArchiveInfo[] { new ArchiveInfo("Demo", "Demo", 1) };
+        }
+
+        @Override
+        public String[] getNamesByPattern(final int key, final String glob_pattern) throws Exception
+        {
+            return new String[0];
+        }
+
+        @Override
+        public String[] getNamesByRegExp(final int key, final String reg_exp) throws Exception
+        {
+            return new String[0];
+        }
+
+        @Override
+        public ValueIterator getRawValues(final int key, final String name,
+                final Instant start, final Instant end) throws UnknownChannelException, Exception
+        {
+            if (name.equals("Unknown"))
+                throw new UnknownChannelException(name);
+            raw.add(name);
+            final DemoDataIterator iter = DemoDataIterator.forStrings(name);
+            iterators.add(iter);
+            return iter;
+        }
+
+        @Override
+        public ValueIterator getOptimizedValues(final int key, final String name,
+                final Instant start, final Instant end, final int count) throws UnknownChannelException, Exception
+        {
+            optimized.add(name);
+            final DemoDataIterator iter = DemoDataIterator.forStrings(name);
+            iterators.add(iter);
+            return iter;
+        }
+
+        @Override
+        public void cancel()
+        {
+            // NOP
+        }
+
+        @Override
+        public void close()
+        {
+            // NOP
+        }
+    }
+
+    @Test
+    public void testReaderGetValues() throws Exception
+    {
+        final DemoReader reader = new DemoReader();
+        final List<String> names = Arrays.asList("A", "Unknown", "B");
+        final List<String> received = new ArrayList<>();
+        final List<String> failed = new ArrayList<>();
+        final ArchiveValuesListener listener = new ArchiveValuesListener()
+        {
+            @Override
+            public void channelValues(final String name, final ValueIterator values) throws Exception
+            {
+                while (values.hasNext())
+                    received.add(name + " " + values.next());
+            }
+
+            @Override
+            public void channelFailed(final String name, final Exception error)
+            {
+                failed.add(name);
+            }
+        };
+
+        // Default implementation reads raw data one channel after the other
+        final Instant end = Instant.now(), start = end.minusSeconds(3600);
+        reader.getValues(1, names, start, end, 0, listener);
+        assertThat(reader.raw, equalTo(Arrays.asList("A", "B")));
+        assertThat(reader.optimized.size(), equalTo(0));
+        assertThat(received.size(), equalTo(20));
+        assertTrue(received.get(0).startsWith("A "));
+        assertTrue(received.get(19).startsWith("B "));
+        assertThat(failed, equalTo(Arrays.asList("Unknown")));
+
+        // Count > 0 requests optimized data
+        received.clear();
+        reader.getValues(1, Arrays.asList("A"), start, end, 100, listener);
+        assertThat(reader.optimized, equalTo(Arrays.asList("A")));
+        assertThat(received.size(), equalTo(10));
+
+        for (DemoDataIterator iter : reader.iterators)
+            assertTrue(! iter.isOpen());
+    }
+}
@@ -9,6 +9,7 @@ package org.csstudio.archive.reader;
 
 import java.io.Closeable;
 import java.time.Instant;
+import java.util.List;
 
 /** Interface to archive data retrieval.
  *  <p>
@@ -165,6 +166,32 @@ public interface ArchiveReader extends Closeable
     public ValueIterator getOptimizedValues(int key, String name,
 		Instant start, Instant end, int count) throws UnknownChannelException, Exception;
 
+    /** Read samples for several channels.
+     *  <p>
+     *  Samples are passed to the listener per channel as they arrive,
+     *  possibly from several threads at once.
+     *  Returns once all channels have been handled.
+     *  <p>
+     *  The default implementation reads one channel after the other.
+     *  Implementations that support concurrent requests
+     *  read several channels in parallel.
+     *
+     *  @param key Key of the archive to use for retrieval.
+     *  @param names Channel names
+     *  @param start Start time
+     *  @param end End time
+     *  @param count Hint for number of values per channel as in <code>getOptimizedValues</code>,
+     *               or 0 for raw samples
+     *  @param listener {@link ArchiveValuesListener} that receives the samples of each channel
+     *  @throws Exception on error
+     */
+    default void getValues(final int key, final List<String> names,
+            final Instant start, final Instant end, final int count,
+            final ArchiveValuesListener listener) throws Exception
+    {
+        ParallelFetch.fetch(names, 1, ParallelFetch.forReader(this, key, start, end, count), listener);
+    }
+
     /** Cancel an ongoing archive query.
      *  It's up to the implementation to support this for all queries,
      *  or only 'getSamples', or not at all.
@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.reader;
+
+/** Listener to samples of several channels
+ *
+ *  <p>Methods may be invoked concurrently from several threads,
+ *  once per requested channel.
+ *
+ *  @see ArchiveReader#getValues(int, java.util.List, java.time.Instant, java.time.Instant, int, ArchiveValuesListener)
+ *  @author Kay Kasemir
+ */
+public interface ArchiveValuesListener
+{
+    /** Invoked with the samples of one channel.
+     *
+     *  <p>The iterator is closed once this method returns,
+     *  so samples need to be read within this call.
+     *
+     *  @param name Channel name
+     *  @param values {@link ValueIterator} for the samples of the channel
+     *  @throws Exception on error, will be passed to <code>channelFailed</code>
+     */
+    public void channelValues(String name, ValueIterator values) throws Exception;
+
+    /** Invoked when samples of a channel cannot be read
+     *  @param name Channel name
+     *  @param error Error, for example {@link UnknownChannelException}
+     */
+    public void channelFailed(String name, Exception error);
+}
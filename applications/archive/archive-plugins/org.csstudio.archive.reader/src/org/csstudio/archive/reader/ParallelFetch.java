@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.reader;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Fetch samples for several channels with a bounded number of threads
+ *
+ *  <p>Helper for implementations of
+ *  {@link ArchiveReader#getValues(int, List, Instant, Instant, int, ArchiveValuesListener)}
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class ParallelFetch
+{
+    /** Obtains the samples of one channel */
+    @FunctionalInterface
+    public interface Fetcher
+    {
+        /** @param name Channel name
+         *  @return {@link ValueIterator} for the samples of the channel
+         *  @throws Exception on error
+         */
+        public ValueIterator fetch(String name) throws Exception;
+    }
+
+    final private static AtomicInteger instance = new AtomicInteger();
+
+    final private static ThreadFactory threads = runnable ->
+    {
+        final Thread thread = new Thread(runnable, "ArchiveFetch" + instance.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    };
+
+    /** @param reader {@link ArchiveReader}
+     *  @param key Key of the archive to use for retrieval
+     *  @param start Start time
+     *  @param end End time
+     *  @param count Hint for number of values, or 0 for raw samples
+     *  @return {@link Fetcher} that calls <code>getRawValues</code> resp. <code>getOptimizedValues</code>
+     */
+    public static Fetcher forReader(final ArchiveReader reader, final int key,
+                                    final Instant start, final Instant end, final int count)
+    {
+        if (count > 0)
+            return name -> reader.getOptimizedValues(key, name, start, end, count);
+        return name -> reader.getRawValues(key, name, start, end);
+    }
+
+    /** Fetch samples for several channels.
+     *
+     *  <p>Returns once all channels have been handled.
+     *
+     *  @param names Channel names
+     *  @param workers Maximum number of channels to fetch concurrently
+     *  @param fetcher Obtains samples for one channel
+     *  @param listener Receives the samples
+     *  @throws InterruptedException when interrupted while waiting for the workers
+     */
+    public static void fetch(final List<String> names, final int workers,
+                             final Fetcher fetcher, final ArchiveValuesListener listener) throws InterruptedException
+    {
+        final int N = Math.min(Math.max(1, workers), names.size());
+        if (N <= 1)
+        {
+            for (String name : names)
+            {
+                if (Thread.currentThread().isInterrupted())
+                    throw new InterruptedException();
+                fetchChannel(fetcher, name, listener);
+            }
+            return;
+        }
+
+        final ExecutorService pool = Executors.newFixedThreadPool(N, threads);
+        try
+        {
+            final List<Future<?>> results = new ArrayList<>(names.size());
+            for (String name : names)
+                results.add(pool.submit(() -> fetchChannel(fetcher, name, listener)));
+            for (Future<?> result : results)
+                result.get();
+        }
+        catch (InterruptedException ex)
+        {
+            throw ex;
+        }
+        catch (Exception ex)
+        {   // fetchChannel() handles errors, so this should not happen
+            throw new IllegalStateException("Archive fetch failed", ex);
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Fetch samples of one channel, passing them to listener
+     *  @param fetcher Obtains samples for one channel
+     *  @param name Channel name
+     *  @param listener Receives the samples
+     */
+    private static void fetchChannel(final Fetcher fetcher, final String name, final ArchiveValuesListener listener)
+    {
+        ValueIterator values = null;
+        try
+        {
+            values = fetcher.fetch(name);
+            listener.channelValues(name, values);
+        }
+        catch (Exception ex)
+        {
+            listener.channelFailed(name, ex);
+        }
+        finally
+        {
+            if (values != null)
+                values.close();
+        }
+    }
+}
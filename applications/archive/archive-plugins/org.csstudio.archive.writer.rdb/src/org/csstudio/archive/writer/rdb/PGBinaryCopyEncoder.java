@@ -0,0 +1,398 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.writer.rdb;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/** Encoder for the PostgreSQL PGCOPY binary format
+ *
+ *  <p>Parameters of a row are set by index, starting at 1 like JDBC.
+ *  {@link #addRow()} encodes them, {@link #getCopyData()} then returns
+ *  header, all rows and trailer as sent to 'COPY .. FROM STDIN WITH (FORMAT binary)'.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class PGBinaryCopyEncoder
+{
+    /** Signature, flags and header extension length of the PGCOPY format */
+    final private static byte[] HEADER =
+    {
+        'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0,
+        0, 0, 0, 0,
+        0, 0, 0, 0
+    };
+
+    /** File trailer, a field count of -1 */
+    final private static byte[] TRAILER = { (byte) 0xFF, (byte) 0xFF };
+
+    /** Microseconds from 1970-01-01 to 2000-01-01, the PostgreSQL epoch */
+    final public static long PG_EPOCH_MICROS = 946684800000000L;
+
+    /** Binary encodings of PostgreSQL column types */
+    private enum ColumnType
+    {
+        INT2, INT4, INT8, FLOAT4, FLOAT8, BOOL, TIMESTAMP, TIMESTAMPTZ, TEXT, BYTEA
+    }
+
+    /** Kind of parameter value */
+    private enum ValueKind
+    {
+        NULL, LONG, DOUBLE, TIMESTAMP, TEXT, BYTES
+    }
+
+    /** Time zone for 'timestamp without time zone' columns */
+    final private TimeZone timezone;
+
+    /** Types of the columns, indexed by parameter - 1 */
+    final private ColumnType[] types;
+
+    /** Kind of each parameter value */
+    final private ValueKind[] kinds;
+
+    /** Parameters of kind LONG, DOUBLE as raw bits, TIMESTAMP as micros since 1970 UTC */
+    final private long[] numbers;
+
+    /** Parameters of kind TEXT and BYTES */
+    final private Object[] objects;
+
+    /** Encoded rows */
+    private byte[] buffer;
+
+    /** Number of bytes used in <code>buffer</code> */
+    private int length = 0;
+
+    /** Number of rows in <code>buffer</code> */
+    private int rows = 0;
+
+    /** Initialize
+     *  @param type_names PostgreSQL type names of the columns, for example "int4", "float8"
+     *  @param timezone Time zone for 'timestamp without time zone' columns
+     *  @param capacity Initial buffer size
+     *  @throws SQLException if a column type is not supported
+     */
+    public PGBinaryCopyEncoder(final String[] type_names, final TimeZone timezone, final int capacity)
+            throws SQLException
+    {
+        this.timezone = timezone;
+        types = new ColumnType[type_names.length];
+        for (int i=0; i<types.length; ++i)
+            types[i] = getColumnType(type_names[i]);
+        kinds = new ValueKind[types.length];
+        numbers = new long[types.length];
+        objects = new Object[types.length];
+        Arrays.fill(kinds, ValueKind.NULL);
+        buffer = new byte[Math.max(64, capacity)];
+    }
+
+    /** @param name PostgreSQL type name
+     *  @return {@link ColumnType}
+     *  @throws SQLException if type is not supported
+     */
+    private static ColumnType getColumnType(final String name) throws SQLException
+    {
+        switch (name.toLowerCase())
+        {
+        case "int2":
+            return ColumnType.INT2;
+        case "int4":
+        case "serial":
+            return ColumnType.INT4;
+        case "int8":
+        case "bigserial":
+            return ColumnType.INT8;
+        case "float4":
+            return ColumnType.FLOAT4;
+        case "float8":
+            return ColumnType.FLOAT8;
+        case "bool":
+            return ColumnType.BOOL;
+        case "timestamp":
+            return ColumnType.TIMESTAMP;
+        case "timestamptz":
+            return ColumnType.TIMESTAMPTZ;
+        case "varchar":
+        case "bpchar":
+        case "text":
+            return ColumnType.TEXT;
+        case "bytea":
+            return ColumnType.BYTEA;
+        default:
+            throw new SQLException("Column type " + name + " not supported by binary COPY");
+        }
+    }
+
+    // Parameters
+
+    private void setNumber(final int parameterIndex, final ValueKind kind, final long value)
+    {
+        kinds[parameterIndex-1] = kind;
+        numbers[parameterIndex-1] = value;
+    }
+
+    private void setValue(final int parameterIndex, final ValueKind kind, final Object value)
+    {
+        if (value == null)
+            kinds[parameterIndex-1] = ValueKind.NULL;
+        else
+            kinds[parameterIndex-1] = kind;
+        objects[parameterIndex-1] = value;
+    }
+
+    /** @param parameterIndex Parameter index, 1 .. columns
+     *  @param value Integer value
+     */
+    public void setLong(final int parameterIndex, final long value)
+    {
+        setNumber(parameterIndex, ValueKind.LONG, value);
+    }
+
+    /** @param parameterIndex Parameter index, 1 .. columns
+     *  @param value Floating point value
+     */
+    public void setDouble(final int parameterIndex, final double value)
+    {
+        setNumber(parameterIndex, ValueKind.DOUBLE, Double.doubleToRawLongBits(value));
+    }
+
+    /** @param parameterIndex Parameter index, 1 .. columns
+     *  @param value Time stamp, may be <code>null</code>
+     */
+    public void setTimestamp(final int parameterIndex, final Timestamp value)
+    {
+        if (value == null)
+            setNull(parameterIndex);
+        else
+        {   // getTime() includes the milliseconds, getNanos() all of the fractional second
+            final long seconds = Math.floorDiv(value.getTime(), 1000L);
+            setNumber(parameterIndex, ValueKind.TIMESTAMP, seconds * 1000000L + value.getNanos() / 1000);
+        }
+    }
+
+    /** @param parameterIndex Parameter index, 1 .. columns
+     *  @param value Text, may be <code>null</code>
+     */
+    public void setString(final int parameterIndex, final String value)
+    {
+        setValue(parameterIndex, ValueKind.TEXT, value);
+    }
+
+    /** @param parameterIndex Parameter index, 1 .. columns
+     *  @param value Bytes, may be <code>null</code>
+     */
+    public void setBytes(final int parameterIndex, final byte[] value)
+    {
+        setValue(parameterIndex, ValueKind.BYTES, value);
+    }
+
+    /** @param parameterIndex Parameter index, 1 .. columns */
+    public void setNull(final int parameterIndex)
+    {
+        setValue(parameterIndex, ValueKind.NULL, null);
+    }
+
+    /** Reset all parameters to <code>null</code> */
+    public void clearParameters()
+    {
+        Arrays.fill(kinds, ValueKind.NULL);
+        Arrays.fill(objects, null);
+    }
+
+    // Encoding
+
+    /** @param needed Number of bytes that need to fit into buffer */
+    private void ensureCapacity(final int needed)
+    {
+        if (length + needed > buffer.length)
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + needed));
+    }
+
+    private void putShort(final int value)
+    {
+        buffer[length++] = (byte) (value >>> 8);
+        buffer[length++] = (byte) value;
+    }
+
+    private void putInt(final int value)
+    {
+        buffer[length++] = (byte) (value >>> 24);
+        buffer[length++] = (byte) (value >>> 16);
+        buffer[length++] = (byte) (value >>> 8);
+        buffer[length++] = (byte) value;
+    }
+
+    private void putLong(final long value)
+    {
+        putInt((int) (value >>> 32));
+        putInt((int) value);
+    }
+
+    private void putBytes(final byte[] bytes)
+    {
+        ensureCapacity(4 + bytes.length);
+        putInt(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    /** @param i Parameter index - 1
+     *  @return Numeric parameter as long
+     */
+    private long getLong(final int i)
+    {
+        if (kinds[i] == ValueKind.DOUBLE)
+            return (long) Double.longBitsToDouble(numbers[i]);
+        return numbers[i];
+    }
+
+    /** @param i Parameter index - 1
+     *  @return Numeric parameter as double
+     */
+    private double getDouble(final int i)
+    {
+        if (kinds[i] == ValueKind.DOUBLE)
+            return Double.longBitsToDouble(numbers[i]);
+        return numbers[i];
+    }
+
+    /** Encode one field
+     *  @param i Parameter index - 1
+     *  @throws SQLException if value doesn't fit the column type
+     */
+    private void encodeField(final int i) throws SQLException
+    {
+        final ValueKind kind = kinds[i];
+        if (kind == ValueKind.NULL)
+        {
+            ensureCapacity(4);
+            putInt(-1);
+            return;
+        }
+        final ColumnType type = types[i];
+        switch (type)
+        {
+        case INT2:
+            ensureCapacity(6);
+            putInt(2);
+            putShort((int) getLong(i));
+            return;
+        case INT4:
+            ensureCapacity(8);
+            putInt(4);
+            putInt((int) getLong(i));
+            return;
+        case INT8:
+            ensureCapacity(12);
+            putInt(8);
+            putLong(getLong(i));
+            return;
+        case FLOAT4:
+            ensureCapacity(8);
+            putInt(4);
+            putInt(Float.floatToRawIntBits((float) getDouble(i)));
+            return;
+        case FLOAT8:
+            ensureCapacity(12);
+            putInt(8);
+            putLong(Double.doubleToRawLongBits(getDouble(i)));
+            return;
+        case BOOL:
+            ensureCapacity(5);
+            putInt(1);
+            buffer[length++] = (byte) (getLong(i) != 0 ? 1 : 0);
+            return;
+        case TIMESTAMP:
+        case TIMESTAMPTZ:
+            if (kind != ValueKind.TIMESTAMP)
+                break;
+            long micros = numbers[i];
+            // 'timestamp without time zone' holds the local wall clock time,
+            // same as Timestamp.toString() used by the text format
+            if (type == ColumnType.TIMESTAMP)
+                micros += timezone.getOffset(Math.floorDiv(micros, 1000L)) * 1000L;
+            ensureCapacity(12);
+            putInt(8);
+            putLong(micros - PG_EPOCH_MICROS);
+            return;
+        case TEXT:
+            if (kind == ValueKind.TEXT)
+                putBytes(((String) objects[i]).getBytes(StandardCharsets.UTF_8));
+            else if (kind == ValueKind.DOUBLE)
+                putBytes(Double.toString(getDouble(i)).getBytes(StandardCharsets.UTF_8));
+            else if (kind == ValueKind.LONG)
+                putBytes(Long.toString(numbers[i]).getBytes(StandardCharsets.UTF_8));
+            else
+                break;
+            return;
+        case BYTEA:
+            if (kind != ValueKind.BYTES)
+                break;
+            putBytes((byte[]) objects[i]);
+            return;
+        }
+        throw new SQLException("Cannot write " + kind + " to " + type + " column " + (i+1));
+    }
+
+    /** Encode current parameters as a row, then clear the parameters
+     *  @throws SQLException if a value doesn't fit the column type
+     */
+    public void addRow() throws SQLException
+    {
+        final int start = length;
+        try
+        {
+            ensureCapacity(2);
+            putShort(types.length);
+            for (int i=0; i<types.length; ++i)
+                encodeField(i);
+        }
+        catch (SQLException ex)
+        {   // Drop the partial row
+            length = start;
+            throw ex;
+        }
+        finally
+        {
+            clearParameters();
+        }
+        ++rows;
+    }
+
+    /** @return Number of encoded rows */
+    public int getRows()
+    {
+        return rows;
+    }
+
+    /** @return Number of bytes used by the encoded rows */
+    public int getLength()
+    {
+        return length;
+    }
+
+    /** @return Header, encoded rows and trailer */
+    public byte[] getCopyData()
+    {
+        final byte[] data = new byte[HEADER.length + length + TRAILER.length];
+        System.arraycopy(HEADER, 0, data, 0, HEADER.length);
+        System.arraycopy(buffer, 0, data, HEADER.length, length);
+        System.arraycopy(TRAILER, 0, data, HEADER.length + length, TRAILER.length);
+        return data;
+    }
+
+    /** Remove all encoded rows */
+    public void clear()
+    {
+        length = 0;
+        rows = 0;
+    }
+}
@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.writer.rdb;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+
+/** PreparedStatement emulation on top of PostgreSQL binary COPY
+ *
+ *  <p>Like the {@link PGCopyPreparedStatement}, but rows are encoded
+ *  in the PGCOPY binary format by a {@link PGBinaryCopyEncoder}.
+ *  Numbers and time stamps are written as binary values,
+ *  without formatting them as text.
+ *
+ *  <p>Rows are encoded into a buffer as they are added to the batch.
+ *  Whenever the buffer fills up, it is sent to the server as one COPY.
+ *  Since a connection can only perform one COPY at a time, and the
+ *  {@link RDBArchiveWriter} uses the same connection for several
+ *  statements, the COPY is completed for each buffer.
+ *  All rows remain part of the current transaction.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class PGBinaryCopyPreparedStatement extends PGCopyPreparedStatement
+{
+    /** Size of encoded rows that triggers sending them to the server */
+    final private static int FLUSH_BYTES = 1024*1024;
+
+    /** COPY command */
+    final private String copy_sql;
+
+    /** Encoder for rows */
+    final private PGBinaryCopyEncoder encoder;
+
+    /** Number of rows sent to the server since the last executeBatch() */
+    private long sent = 0;
+
+    /** Initialize
+     *  @param connection PostgreSQL connection
+     *  @param insertSqlQuery "INSERT INTO table (column, column, ...) VALUES (?, ?, ...)"
+     *  @throws SQLException on error
+     */
+    public PGBinaryCopyPreparedStatement(final Connection connection, final String insertSqlQuery)
+            throws SQLException
+    {
+        super(connection);
+
+        final Matcher m = Pattern.compile("^INSERT[ ]+INTO[ ]+([^ ]+)[ ]+\\(([^)]+)\\)",
+                                          Pattern.CASE_INSENSITIVE).matcher(insertSqlQuery.trim());
+        if (! m.find())
+            throw new SQLException("Cannot parse " + insertSqlQuery);
+        final String table = m.group(1);
+        final String[] columns = m.group(2).split(",");
+        for (int i=0; i<columns.length; ++i)
+            columns[i] = columns[i].trim();
+
+        // Get column types
+        final Map<String, String> type_names = new HashMap<String, String>();
+        final int sep = table.indexOf('.');
+        final String schema_name = sep > 0 ? table.substring(0, sep) : null;
+        final String table_name = sep > 0 ? table.substring(sep+1) : table;
+        final ResultSet result = connection.getMetaData().getColumns(
+                connection.getCatalog(), schema_name, table_name, null);
+        try
+        {
+            while (result.next())
+                type_names.put(result.getString("COLUMN_NAME"), result.getString("TYPE_NAME"));
+        }
+        finally
+        {
+            result.close();
+        }
+
+        final String[] types = new String[columns.length];
+        for (int i=0; i<columns.length; ++i)
+        {
+            types[i] = type_names.get(columns[i]);
+            if (types[i] == null)
+                throw new SQLException("Unable to find column " + columns[i] + " in table " + table);
+        }
+        encoder = new PGBinaryCopyEncoder(types, TimeZone.getDefault(), FLUSH_BYTES + 4096);
+
+        copy_sql = "COPY " + table + " (" + String.join(",", columns) + ") FROM STDIN WITH (FORMAT binary)";
+    }
+
+    // Parameters
+
+    @Override
+    public void setBoolean(final int parameterIndex, final boolean x) throws SQLException
+    {
+        encoder.setLong(parameterIndex, x ? 1 : 0);
+    }
+
+    @Override
+    public void setShort(final int parameterIndex, final short x) throws SQLException
+    {
+        encoder.setLong(parameterIndex, x);
+    }
+
+    @Override
+    public void setInt(final int parameterIndex, final int x) throws SQLException
+    {
+        encoder.setLong(parameterIndex, x);
+    }
+
+    @Override
+    public void setLong(final int parameterIndex, final long x) throws SQLException
+    {
+        encoder.setLong(parameterIndex, x);
+    }
+
+    @Override
+    public void setFloat(final int parameterIndex, final float x) throws SQLException
+    {
+        encoder.setDouble(parameterIndex, x);
+    }
+
+    @Override
+    public void setDouble(final int parameterIndex, final double x) throws SQLException
+    {
+        encoder.setDouble(parameterIndex, x);
+    }
+
+    @Override
+    public void setBigDecimal(final int parameterIndex, final BigDecimal x) throws SQLException
+    {
+        if (x == null)
+            encoder.setNull(parameterIndex);
+        else
+            encoder.setDouble(parameterIndex, x.doubleValue());
+    }
+
+    @Override
+    public void setTimestamp(final int parameterIndex, final Timestamp x) throws SQLException
+    {
+        encoder.setTimestamp(parameterIndex, x);
+    }
+
+    @Override
+    public void setString(final int parameterIndex, final String x) throws SQLException
+    {
+        encoder.setString(parameterIndex, x);
+    }
+
+    @Override
+    public void setNString(final int parameterIndex, final String value) throws SQLException
+    {
+        encoder.setString(parameterIndex, value);
+    }
+
+    @Override
+    public void setBytes(final int parameterIndex, final byte[] x) throws SQLException
+    {
+        encoder.setBytes(parameterIndex, x);
+    }
+
+    @Override
+    public void setNull(final int parameterIndex, final int sqlType) throws SQLException
+    {
+        encoder.setNull(parameterIndex);
+    }
+
+    @Override
+    public void setNull(final int parameterIndex, final int sqlType, final String typeName)
+            throws SQLException
+    {
+        encoder.setNull(parameterIndex);
+    }
+
+    @Override
+    public void clearParameters() throws SQLException
+    {
+        encoder.clearParameters();
+    }
+
+    @Override
+    public void addBatch() throws SQLException
+    {
+        encoder.addRow();
+        if (encoder.getLength() >= FLUSH_BYTES)
+            sendRows();
+    }
+
+    /** Send buffered rows to the server as one COPY
+     *  @throws SQLException on error
+     */
+    private void sendRows() throws SQLException
+    {
+        if (encoder.getRows() <= 0)
+            return;
+        final CopyManager copy_manager = ((PGConnection) getConnection()).getCopyAPI();
+        final CopyIn copy = copy_manager.copyIn(copy_sql);
+        try
+        {
+            final byte[] data = encoder.getCopyData();
+            copy.writeToCopy(data, 0, data.length);
+            sent += copy.endCopy();
+        }
+        finally
+        {
+            if (copy.isActive())
+                copy.cancelCopy();
+            encoder.clear();
+        }
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException
+    {
+        try
+        {
+            sendRows();
+            return new int[] { (int) sent };
+        }
+        finally
+        {
+            sent = 0;
+        }
+    }
+
+    @Override
+    public void clearBatch() throws SQLException
+    {
+        encoder.clear();
+        sent = 0;
+    }
+}
@@ -46,6 +46,15 @@ public class PGCopyPreparedStatement implements PreparedStatement {
     
     private String tableName;
 
+    /**
+     * Constructor for derived classes that handle the row format themselves.
+     *
+     * @param connection
+     */
+    protected PGCopyPreparedStatement(Connection connection) {
+        this.connection = connection;
+    }
+
     public PGCopyPreparedStatement(Connection connection, String insertSqlQuery)
             throws SQLException {
         this.connection = connection;
@@ -22,6 +22,8 @@ public class Preferences
 
     public static final String USE_POSTGRES_COPY = "use_postgres_copy";
 
+    public static final String USE_POSTGRES_BINARY_COPY = "use_postgres_binary_copy";
+
     /** @return # Name of sample table for writing */
     public static String getWriteSampleTable()
     {
@@ -49,4 +51,13 @@ public class Preferences
             return false;
         return prefs.getBoolean(Activator.ID, USE_POSTGRES_COPY, false, null);
     }
+
+    /** @return true to use the binary format for postgres copy */
+    public static boolean isUsePostgresBinaryCopy()
+    {
+        final IPreferencesService prefs = Platform.getPreferencesService();
+        if (prefs == null)
+            return false;
+        return prefs.getBoolean(Activator.ID, USE_POSTGRES_BINARY_COPY, false, null);
+    }
 }
@@ -222,7 +222,8 @@ public class RDBArchiveWriter implements ArchiveWriter
     /**
      * Create a new prepared statement. For PostgreSQL connections, this method
      * create a PGCopyPreparedStatement to improve insert speed using COPY
-     * insetad of INSERT.
+     * insetad of INSERT, or a PGBinaryCopyPreparedStatement
+     * to use the binary COPY format.
      *
      * @param sqlQuery
      * @return
@@ -235,8 +236,12 @@ public class RDBArchiveWriter implements ArchiveWriter
         PreparedStatement statement = null;
         if (rdb.getDialect() == Dialect.PostgreSQL
                 && Preferences.isUsePostgresCopy()) {
-            statement = new PGCopyPreparedStatement(rdb.getConnection(),
-                    sqlQuery);
+            if (Preferences.isUsePostgresBinaryCopy())
+                statement = new PGBinaryCopyPreparedStatement(rdb.getConnection(),
+                        sqlQuery);
+            else
+                statement = new PGCopyPreparedStatement(rdb.getConnection(),
+                        sqlQuery);
         } else {
             statement = rdb.getConnection().prepareStatement(sqlQuery);
         }
@@ -396,8 +401,7 @@ public class RDBArchiveWriter implements ArchiveWriter
         {
             if (insert_array_sample == null)
                 insert_array_sample =
-                    rdb.getConnection().prepareStatement(
-                        sql.sample_insert_double_array_element);
+                    createInsertPrepareStatement(sql.sample_insert_double_array_element);
             final int N = additional.size();
             for (int i = 1; i < N; i++)
             {
@@ -0,0 +1,244 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.archive.writer.rdb;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+/** JUnit test of the {@link PGBinaryCopyEncoder}
+ *
+ *  <p>Decodes the PGCOPY data and compares with what was encoded.
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class PGBinaryCopyEncoderUnitTest
+{
+    /** Columns of the 'sample' table */
+    final private static String[] SAMPLE_TYPES =
+    {
+        "int4", "timestamp", "int4", "int4", "float8", "int4", "bpchar", "bytea"
+    };
+
+    /** Columns of the 'array_val' table */
+    final private static String[] ARRAY_TYPES =
+    {
+        "int4", "timestamp", "int4", "float8", "int4"
+    };
+
+    final private static TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    /** Decode PGCOPY data
+     *  @param data Data with header, rows, trailer
+     *  @return Rows, each a list of field bytes, <code>null</code> for NULL fields
+     */
+    private static List<List<byte[]>> decode(final byte[] data)
+    {
+        final ByteBuffer buf = ByteBuffer.wrap(data);
+        final byte[] signature = new byte[11];
+        buf.get(signature);
+        assertArrayEquals("PGCOPY\n\377\r\n\0".getBytes(StandardCharsets.ISO_8859_1), signature);
+        assertThat(buf.getInt(), equalTo(0)); // Flags
+        assertThat(buf.getInt(), equalTo(0)); // Header extension
+        final List<List<byte[]>> rows = new ArrayList<>();
+        while (true)
+        {
+            final short fields = buf.getShort();
+            if (fields == -1)
+                break;
+            final List<byte[]> row = new ArrayList<>();
+            for (int i=0; i<fields; ++i)
+            {
+                final int length = buf.getInt();
+                if (length < 0)
+                    row.add(null);
+                else
+                {
+                    final byte[] field = new byte[length];
+                    buf.get(field);
+                    row.add(field);
+                }
+            }
+            rows.add(row);
+        }
+        assertThat(buf.remaining(), equalTo(0));
+        return rows;
+    }
+
+    private static int getInt(final byte[] field)
+    {
+        assertThat(field.length, equalTo(4));
+        return ByteBuffer.wrap(field).getInt();
+    }
+
+    private static long getLong(final byte[] field)
+    {
+        assertThat(field.length, equalTo(8));
+        return ByteBuffer.wrap(field).getLong();
+    }
+
+    private static double getDouble(final byte[] field)
+    {
+        assertThat(field.length, equalTo(8));
+        return ByteBuffer.wrap(field).getDouble();
+    }
+
+    @Test
+    public void testScalar() throws Exception
+    {
+        final PGBinaryCopyEncoder encoder = new PGBinaryCopyEncoder(SAMPLE_TYPES, UTC, 10);
+        final Timestamp stamp = Timestamp.from(Instant.parse("2016-03-01T12:30:45.123456789Z"));
+        encoder.setLong(1, 42);
+        encoder.setTimestamp(2, stamp);
+        encoder.setLong(3, 3);
+        encoder.setLong(4, 7);
+        encoder.setDouble(5, 3.14);
+        encoder.setLong(6, stamp.getNanos());
+        encoder.setString(7, "d");
+        encoder.setBytes(8, new byte[] { 1, 2, 3 });
+        encoder.addRow();
+        assertThat(encoder.getRows(), equalTo(1));
+
+        final List<List<byte[]>> rows = decode(encoder.getCopyData());
+        assertThat(rows.size(), equalTo(1));
+        final List<byte[]> row = rows.get(0);
+        assertThat(row.size(), equalTo(SAMPLE_TYPES.length));
+        assertThat(getInt(row.get(0)), equalTo(42));
+        // Micros since 2000-01-01, nanoseconds truncated
+        final long micros = Instant.parse("2016-03-01T12:30:45.123456Z").toEpochMilli() * 1000L + 456
+                          - PGBinaryCopyEncoder.PG_EPOCH_MICROS;
+        assertThat(getLong(row.get(1)), equalTo(micros));
+        assertThat(getInt(row.get(2)), equalTo(3));
+        assertThat(getInt(row.get(3)), equalTo(7));
+        assertThat(getDouble(row.get(4)), equalTo(3.14));
+        assertThat(getInt(row.get(5)), equalTo(123456789));
+        assertThat(new String(row.get(6), StandardCharsets.UTF_8), equalTo("d"));
+        assertArrayEquals(new byte[] { 1, 2, 3 }, row.get(7));
+    }
+
+    @Test
+    public void testNullAndEmpty() throws Exception
+    {
+        final PGBinaryCopyEncoder encoder = new PGBinaryCopyEncoder(SAMPLE_TYPES, UTC, 10);
+        encoder.setLong(1, 42);
+        encoder.setTimestamp(2, new Timestamp(0));
+        encoder.setLong(3, 3);
+        encoder.setNull(4);
+        encoder.setDouble(5, 0.0);
+        encoder.setTimestamp(6, null);
+        encoder.setString(7, "");
+        // Parameter 8 never set
+        encoder.addRow();
+
+        // Parameters are cleared after each row
+        encoder.addRow();
+
+        final List<List<byte[]>> rows = decode(encoder.getCopyData());
+        assertThat(rows.size(), equalTo(2));
+        List<byte[]> row = rows.get(0);
+        assertThat(getLong(row.get(1)), equalTo(-PGBinaryCopyEncoder.PG_EPOCH_MICROS));
+        assertThat(row.get(3), nullValue());
+        assertThat(row.get(5), nullValue());
+        assertThat(row.get(6).length, equalTo(0));
+        assertThat(row.get(7), nullValue());
+        row = rows.get(1);
+        for (byte[] field : row)
+            assertThat(field, nullValue());
+    }
+
+    @Test
+    public void testArray() throws Exception
+    {
+        final PGBinaryCopyEncoder encoder = new PGBinaryCopyEncoder(ARRAY_TYPES, UTC, 10);
+        final Timestamp stamp = Timestamp.from(Instant.parse("2016-03-01T12:30:45Z"));
+        final double[] values = { 1.0, -2.5, Double.NaN, Double.POSITIVE_INFINITY };
+        for (int i=0; i<values.length; ++i)
+        {
+            encoder.setLong(1, 42);
+            encoder.setTimestamp(2, stamp);
+            encoder.setLong(3, i);
+            encoder.setDouble(4, values[i]);
+            encoder.setLong(5, stamp.getNanos());
+            encoder.addRow();
+        }
+
+        final List<List<byte[]>> rows = decode(encoder.getCopyData());
+        assertThat(rows.size(), equalTo(values.length));
+        for (int i=0; i<values.length; ++i)
+        {
+            final List<byte[]> row = rows.get(i);
+            assertThat(getInt(row.get(0)), equalTo(42));
+            assertThat(getInt(row.get(2)), equalTo(i));
+            assertThat(Double.compare(getDouble(row.get(3)), values[i]), equalTo(0));
+        }
+
+        // Clear, then encode again
+        encoder.clear();
+        assertThat(encoder.getRows(), equalTo(0));
+        assertThat(decode(encoder.getCopyData()).size(), equalTo(0));
+    }
+
+    @Test
+    public void testLocalTime() throws Exception
+    {
+        // 'timestamp without time zone' receives the local wall clock time
+        final PGBinaryCopyEncoder encoder =
+            new PGBinaryCopyEncoder(new String[] { "timestamp", "timestamptz" },
+                                    TimeZone.getTimeZone("GMT+02:00"), 10);
+        final Timestamp stamp = Timestamp.from(Instant.parse("2000-01-01T00:00:00Z"));
+        encoder.setTimestamp(1, stamp);
+        encoder.setTimestamp(2, stamp);
+        encoder.addRow();
+        final List<byte[]> row = decode(encoder.getCopyData()).get(0);
+        assertThat(getLong(row.get(0)), equalTo(2*3600*1000000L));
+        assertThat(getLong(row.get(1)), equalTo(0L));
+    }
+
+    @Test
+    public void testTypeMismatch() throws Exception
+    {
+        final PGBinaryCopyEncoder encoder = new PGBinaryCopyEncoder(ARRAY_TYPES, UTC, 10);
+        encoder.setLong(1, 42);
+        encoder.setString(2, "not a time");
+        try
+        {
+            encoder.addRow();
+            fail("Accepted text for time stamp");
+        }
+        catch (SQLException ex)
+        {
+            // Expected
+        }
+        // Partial row was dropped
+        assertThat(encoder.getRows(), equalTo(0));
+        assertThat(decode(encoder.getCopyData()).size(), equalTo(0));
+
+        try
+        {
+            new PGBinaryCopyEncoder(new String[] { "int4", "json" }, UTC, 10);
+            fail("Accepted unsupported type");
+        }
+        catch (SQLException ex)
+        {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser2.archive;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.csstudio.archive.reader.ArchiveInfo;
+import org.csstudio.archive.reader.ArchiveReader;
+import org.csstudio.archive.reader.ValueIterator;
+import org.csstudio.archive.vtype.ArchiveVNumber;
+import org.csstudio.archive.vtype.VTypeHelper;
+import org.csstudio.trends.databrowser2.model.RequestType;
+import org.diirt.vtype.AlarmSeverity;
+import org.diirt.vtype.VType;
+import org.diirt.vtype.ValueFactory;
+import org.junit.Test;
+
+/** JUnit test for {@link FetchCache}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class FetchCacheUnitTest
+{
+    /** Time of the only sample of channel "sparse" */
+    final static long SPARSE_TIME = 990000;
+
+    /** Reader with one sample per minute, none for channel "empty",
+     *  only one at {@link #SPARSE_TIME} for channel "sparse", counting requests
+     */
+    static class DemoReader implements ArchiveReader
+    {
+        final AtomicInteger requests = new AtomicInteger();
+
+        @Override
+        public String getServerName()   { return "Demo"; }
+
+        @Override
+        public String getURL()          { return "demo://"; }
+
+        @Override
+        public String getDescription()  { return "Demo"; }
+
+        @Override
+        public int getVersion()         { return 1; }
+
+        @Override
+        public ArchiveInfo[] getArchiveInfos()  { return new ArchiveInfo[0]; }
+
+        @Override
+        public String[] getNamesByPattern(int key, String glob_pattern) { return new String[0]; }
+
+        @Override
+        public String[] getNamesByRegExp(int key, String reg_exp)       { return new String[0]; }
+
+        @Override
+        public ValueIterator getRawValues(int key, String name, Instant start, Instant end) throws Exception
+        {
+            requests.incrementAndGet();
+            final List<VType> values = new ArrayList<>();
+            if (name.equals("sparse"))
+            {
+                if (! Instant.ofEpochSecond(SPARSE_TIME).isAfter(end))
+                    values.add(new ArchiveVNumber(Instant.ofEpochSecond(SPARSE_TIME), AlarmSeverity.NONE, "OK",
+                                                  ValueFactory.displayNone(), 1.0));
+            }
+            else if (! name.equals("empty"))
+                // Include last sample before start
+                for (long secs = Math.floorDiv(start.getEpochSecond(), 60)*60; secs <= end.getEpochSecond(); secs += 60)
+                    values.add(new ArchiveVNumber(Instant.ofEpochSecond(secs), AlarmSeverity.NONE, "OK",
+                                                  ValueFactory.displayNone(), (double) secs));
+            final Iterator<VType> iter = values.iterator();
+            return new ValueIterator()
+            {
+                @Override
+                public boolean hasNext()    { return iter.hasNext(); }
+
+                @Override
+                public VType next()         { return iter.next(); }
+
+                @Override
+                public void close()         { }
+            };
+        }
+
+        @Override
+        public ValueIterator getOptimizedValues(int key, String name, Instant start, Instant end, int count)
+                throws Exception
+        {
+            return getRawValues(key, name, start, end);
+        }
+
+        @Override
+        public void cancel()    { }
+
+        @Override
+        public void close()     { }
+    }
+
+    private List<Instant> getTimes(final List<VType> values)
+    {
+        final List<Instant> times = new ArrayList<>();
+        for (VType value : values)
+            times.add(VTypeHelper.getTimestamp(value));
+        return times;
+    }
+
+    @Test
+    public void testCache() throws Exception
+    {
+        final File dir = Files.createTempDirectory("fetch_cache").toFile();
+        final FetchCache cache = new FetchCache(dir, 10*1024*1024);
+        final DemoReader reader = new DemoReader();
+
+        final Instant start = Instant.ofEpochSecond(1000000 + 10);
+        final Instant end = start.plusSeconds(3 * FetchCache.RAW_CHUNK_SECS);
+        final List<VType> expected = new ArrayList<>();
+        final ValueIterator direct = reader.getRawValues(1, "x", start, end);
+        while (direct.hasNext())
+            expected.add(direct.next());
+
+        // First request fetches data, second request is served from cache
+        reader.requests.set(0);
+        List<VType> values = cache.getValues(reader, "demo://", 1, "x", RequestType.RAW, start, end, 100, () -> false);
+        assertThat(getTimes(values), equalTo(getTimes(expected)));
+        assertThat(reader.requests.get(), equalTo(1));
+
+        values = cache.getValues(reader, "demo://", 1, "x", RequestType.RAW, start, end, 100, () -> false);
+        assertThat(getTimes(values), equalTo(getTimes(expected)));
+        assertThat(VTypeHelper.toDouble(values.get(1)), equalTo(VTypeHelper.toDouble(expected.get(1))));
+        assertThat(reader.requests.get(), equalTo(1));
+
+        // Extending the range only fetches the missing chunk
+        final Instant later = end.plusSeconds(FetchCache.RAW_CHUNK_SECS);
+        values = cache.getValues(reader, "demo://", 1, "x", RequestType.RAW, start, later, 100, () -> false);
+        assertThat(reader.requests.get(), equalTo(2));
+        assertThat(VTypeHelper.getTimestamp(values.get(values.size()-1)), equalTo(Instant.ofEpochSecond(later.getEpochSecond() / 60 * 60)));
+
+        // Cache is persistent
+        final FetchCache reopened = new FetchCache(dir, 10*1024*1024);
+        assertThat(reopened.getSize(), equalTo(cache.getSize()));
+        reopened.getValues(reader, "demo://", 1, "x", RequestType.RAW, start, end, 100, () -> false);
+        assertThat(reader.requests.get(), equalTo(2));
+
+        // Size limit removes files
+        final FetchCache small = new FetchCache(dir, cache.getSize() / 2);
+        assertTrue(small.getSize() <= cache.getSize() / 2);
+
+        for (File file : dir.listFiles())
+            file.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void testEmptyChunks() throws Exception
+    {
+        final File dir = Files.createTempDirectory("fetch_cache").toFile();
+        final FetchCache cache = new FetchCache(dir, 10*1024*1024);
+        final DemoReader reader = new DemoReader();
+
+        // Chunks without data are cached, second request does not ask the archive
+        final Instant start = Instant.ofEpochSecond(1000000);
+        final Instant end = start.plusSeconds(2 * FetchCache.RAW_CHUNK_SECS);
+        List<VType> values = cache.getValues(reader, "demo://", 1, "empty", RequestType.RAW, start, end, 100, () -> false);
+        assertThat(values.size(), equalTo(0));
+        assertThat(reader.requests.get(), equalTo(1));
+        cache.getValues(reader, "demo://", 1, "empty", RequestType.RAW, start, end, 100, () -> false);
+        assertThat(reader.requests.get(), equalTo(1));
+
+        // Chunks without data still provide the last sample before the gap
+        values = cache.getValues(reader, "demo://", 1, "sparse", RequestType.RAW, start, end, 100, () -> false);
+        assertThat(getTimes(values), equalTo(Arrays.asList(Instant.ofEpochSecond(SPARSE_TIME))));
+        assertThat(reader.requests.get(), equalTo(2));
+        values = cache.getValues(reader, "demo://", 1, "sparse", RequestType.RAW, start, end, 100, () -> false);
+        assertThat(getTimes(values), equalTo(Arrays.asList(Instant.ofEpochSecond(SPARSE_TIME))));
+        assertThat(reader.requests.get(), equalTo(2));
+
+        for (File file : dir.listFiles())
+            file.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void testWrite() throws Exception
+    {
+        final File dir = Files.createTempDirectory("fetch_cache").toFile();
+        final FetchCache cache = new FetchCache(dir, 10*1024*1024);
+
+        // Sample without alarm message
+        final FetchCache.Chunk chunk = new FetchCache.Chunk();
+        chunk.samples.add(new ArchiveVNumber(Instant.ofEpochSecond(1000), AlarmSeverity.NONE, null,
+                                             ValueFactory.displayNone(), 3.14));
+        cache.write("x", 1000, chunk);
+        final FetchCache.Chunk copy = cache.read("x", 1000);
+        assertThat(copy.samples.size(), equalTo(1));
+        assertThat(VTypeHelper.getMessage(copy.samples.get(0)), equalTo(""));
+        assertThat(VTypeHelper.toDouble(copy.samples.get(0)), equalTo(3.14));
+
+        // Writing the same chunk again replaces the file, size is only counted once
+        final long size = cache.getSize();
+        assertTrue(size > 0);
+        cache.write("x", 1000, chunk);
+        assertThat(cache.getSize(), equalTo(size));
+        // No temporary files remain
+        assertThat(dir.listFiles().length, equalTo(1));
+
+        for (File file : dir.listFiles())
+            file.delete();
+        dir.delete();
+    }
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser2.export;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.csstudio.archive.reader.ValueIterator;
+import org.csstudio.archive.vtype.ArchiveVNumber;
+import org.csstudio.archive.vtype.VTypeHelper;
+import org.diirt.vtype.AlarmSeverity;
+import org.diirt.vtype.VType;
+import org.diirt.vtype.ValueFactory;
+import org.junit.Test;
+
+/** JUnit test for {@link PrefetchValueIterator}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class PrefetchValueIteratorUnitTest
+{
+    /** Iterator for 0, 1, 2, ..., count-1, optionally failing at the end */
+    static class DemoIterator implements ValueIterator
+    {
+        final int count;
+        final boolean fail;
+        final AtomicInteger read = new AtomicInteger();
+        final AtomicBoolean closed = new AtomicBoolean();
+
+        DemoIterator(final int count, final boolean fail)
+        {
+            this.count = count;
+            this.fail = fail;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return read.get() < count  ||  fail;
+        }
+
+        @Override
+        public VType next() throws Exception
+        {
+            final int i = read.getAndIncrement();
+            if (i >= count)
+                throw new Exception("Failed");
+            return new ArchiveVNumber(Instant.ofEpochSecond(i), AlarmSeverity.NONE, "OK",
+                                      ValueFactory.displayNone(), i);
+        }
+
+        @Override
+        public void close()
+        {
+            closed.set(true);
+        }
+    }
+
+    @Test
+    public void testPrefetch() throws Exception
+    {
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        final DemoIterator demo = new DemoIterator(10000, false);
+        final ValueIterator iter = new PrefetchValueIterator(demo, executor, 3, 100);
+        int i = 0;
+        while (iter.hasNext())
+        {
+            // Reader thread can only be a few chunks ahead
+            assertTrue(demo.read.get() <= i + 5*100);
+            assertThat(VTypeHelper.toDouble(iter.next()), equalTo((double) i));
+            ++i;
+        }
+        assertThat(i, equalTo(10000));
+        iter.close();
+        assertTrue(demo.closed.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testError() throws Exception
+    {
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        final ValueIterator iter = new PrefetchValueIterator(new DemoIterator(250, true), executor, 3, 100);
+        int i = 0;
+        try
+        {
+            while (iter.hasNext())
+            {
+                iter.next();
+                ++i;
+            }
+            fail("Error was not reported");
+        }
+        catch (Exception ex)
+        {
+            assertThat(ex.getMessage(), equalTo("Failed"));
+        }
+        assertThat(i, equalTo(250));
+        iter.close();
+        executor.shutdown();
+    }
+
+    @Test(timeout=10000)
+    public void testClose() throws Exception
+    {
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        final DemoIterator demo = new DemoIterator(Integer.MAX_VALUE, false);
+        final ValueIterator iter = new PrefetchValueIterator(demo, executor, 3, 100);
+        iter.next();
+        // Close stops the reader that's waiting for space in the queue
+        iter.close();
+        assertTrue(demo.closed.get());
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser2.model;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.csstudio.archive.vtype.ArchiveVNumber;
+import org.csstudio.archive.vtype.ArchiveVStatistics;
+import org.csstudio.archive.vtype.VTypeHelper;
+import org.diirt.vtype.AlarmSeverity;
+import org.diirt.vtype.VNumber;
+import org.diirt.vtype.ValueFactory;
+import org.junit.Test;
+
+/** JUnit test for {@link CompactPlotSamples}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class CompactPlotSamplesUnitTest
+{
+    @Test
+    public void testRingBuffer() throws Exception
+    {
+        final CompactPlotSamples samples = new CompactPlotSamples(new AtomicInteger(0), 10);
+        for (int i=0; i<25; ++i)
+            assertTrue(samples.add(new PlotSample("Test", TestHelper.makeValue(i))));
+        assertThat(samples.size(), equalTo(10));
+        // Oldest samples were overwritten
+        for (int i=0; i<samples.size(); ++i)
+        {
+            final PlotSample sample = samples.get(i);
+            assertThat(sample.getPosition(), equalTo(Instant.ofEpochSecond(15 + i)));
+            assertThat(sample.getValue(), equalTo(15.0 + i));
+            assertThat(sample.getSource(), equalTo("Test"));
+        }
+
+        // Keep newest samples when shrinking
+        samples.setCapacity(5);
+        assertThat(samples.size(), equalTo(5));
+        assertThat(samples.get(0).getValue(), equalTo(20.0));
+        assertThat(samples.get(4).getValue(), equalTo(24.0));
+
+        samples.clear();
+        assertThat(samples.size(), equalTo(0));
+    }
+
+    @Test
+    public void testSampleTypes() throws Exception
+    {
+        final CompactPlotSamples samples = new CompactPlotSamples(new AtomicInteger(0), 10);
+        final Instant time = Instant.ofEpochSecond(1000, 42);
+        assertTrue(samples.add(new PlotSample("Stats",
+                new ArchiveVStatistics(time, AlarmSeverity.MINOR, "LOW", ValueFactory.displayNone(),
+                                       2.0, 1.0, 3.0, 0.5, 7))));
+        assertTrue(samples.add(new PlotSample("Error", TestHelper.makeError(1001, "Disconnected"))));
+
+        PlotSample sample = samples.get(0);
+        assertThat(sample.getPosition(), equalTo(time));
+        assertThat(sample.getValue(), equalTo(2.0));
+        assertThat(sample.getMin(), equalTo(1.0));
+        assertThat(sample.getMax(), equalTo(3.0));
+        assertThat(VTypeHelper.getSeverity(sample.getVType()), equalTo(AlarmSeverity.MINOR));
+        assertThat(VTypeHelper.getMessage(sample.getVType()), equalTo("LOW"));
+
+        sample = samples.get(1);
+        assertThat(sample.getSource(), equalTo("Error"));
+        assertTrue(Double.isNaN(sample.getValue()));
+        assertThat(VTypeHelper.getSeverity(sample.getVType()), equalTo(AlarmSeverity.UNDEFINED));
+        assertThat(VTypeHelper.getMessage(sample.getVType()), equalTo("Disconnected"));
+
+        // Text is not kept in compact form
+        assertThat(samples.add(new PlotSample("Text",
+                ValueFactory.newVString("Hello", ValueFactory.alarmNone(), ValueFactory.timeNow()))),
+                equalTo(false));
+        assertThat(samples.size(), equalTo(2));
+    }
+
+    @Test
+    public void testPrimitiveAccess() throws Exception
+    {
+        final AtomicInteger waveform_index = new AtomicInteger(0);
+        final CompactPlotSamples samples = new CompactPlotSamples(waveform_index, 3);
+        for (int i=0; i<4; ++i)
+            assertTrue(samples.add(new PlotSample(waveform_index, "Test", TestHelper.makeValue(i))));
+        final Instant time = Instant.ofEpochSecond(1000, 42);
+        assertTrue(samples.add(new PlotSample(waveform_index, "Stats",
+                new ArchiveVStatistics(time, AlarmSeverity.MINOR, "LOW", ValueFactory.displayNone(),
+                                       2.0, 1.0, 3.0, 0.5, 7))));
+        assertTrue(samples.add(new PlotSample(waveform_index, "Error", TestHelper.makeError(1001, "Disconnected"))));
+
+        // Accessors match the samples, after ring buffer wrapped around
+        for (int i=0; i<samples.size(); ++i)
+        {
+            final PlotSample sample = samples.get(i);
+            assertThat(samples.getPosition(i), equalTo(sample.getPosition()));
+            assertThat(samples.getValue(i), equalTo(sample.getValue()));
+            assertThat(samples.getMin(i), equalTo(sample.getMin()));
+            assertThat(samples.getMax(i), equalTo(sample.getMax()));
+            assertThat(samples.getStdDev(i), equalTo(sample.getStdDev()));
+            assertThat(samples.getSeverity(i), equalTo(VTypeHelper.getSeverity(sample.getVType())));
+        }
+        assertThat(samples.getPosition(1), equalTo(time));
+        assertThat(samples.getMin(1), equalTo(1.0));
+        assertTrue(Double.isNaN(samples.getMin(0)));
+        assertTrue(Double.isNaN(samples.getValue(2)));
+
+        // Scalars have no value for other waveform elements
+        waveform_index.set(1);
+        for (int i=0; i<samples.size(); ++i)
+        {
+            assertThat(samples.getValue(i), equalTo(samples.get(i).getValue()));
+            assertThat(samples.getMin(i), equalTo(samples.get(i).getMin()));
+        }
+        assertTrue(Double.isNaN(samples.getValue(0)));
+    }
+
+    @Test
+    public void testCompactCopy() throws Exception
+    {
+        final AtomicInteger waveform_index = new AtomicInteger(0);
+        final PlotSample[] orig = new PlotSample[5];
+        for (int i=0; i<orig.length; ++i)
+            orig[i] = new PlotSample(waveform_index, "Test", TestHelper.makeValue(i));
+        final CompactPlotSamples samples = CompactPlotSamples.of(waveform_index, orig);
+        assertThat(samples.getCapacity(), equalTo(orig.length));
+        assertThat(samples.size(), equalTo(orig.length));
+        for (int i=0; i<orig.length; ++i)
+        {
+            assertThat(samples.getPosition(i), equalTo(orig[i].getPosition()));
+            assertThat(samples.getValue(i), equalTo(orig[i].getValue()));
+        }
+
+        // Text cannot be held in compact form
+        orig[2] = new PlotSample(waveform_index, "Text",
+                ValueFactory.newVString("Hello", ValueFactory.alarmNone(), ValueFactory.timeNow()));
+        assertThat(CompactPlotSamples.of(waveform_index, orig), equalTo(null));
+    }
+
+    @Test
+    public void testNumberTypes() throws Exception
+    {
+        final Number[] numbers = { 3.14, 2.5f, 42, (short) -7, (byte) 3, 1234567890123L };
+        final CompactPlotSamples samples = new CompactPlotSamples(new AtomicInteger(0), 10);
+        for (int i=0; i<numbers.length; ++i)
+            assertTrue(samples.add(new PlotSample("Test",
+                    new ArchiveVNumber(Instant.ofEpochSecond(i), AlarmSeverity.NONE, "", ValueFactory.displayNone(), numbers[i]))));
+        // Original number type is preserved
+        for (int i=0; i<numbers.length; ++i)
+        {
+            final Number number = ((VNumber) samples.get(i).getVType()).getValue();
+            assertThat(number, instanceOf(numbers[i].getClass()));
+            assertThat(number, equalTo(numbers[i]));
+        }
+    }
+
+    @Test
+    public void testTableCompaction() throws Exception
+    {
+        // Each sample has a different status.
+        // Lookup table fills up, but only the statuses of the samples in the buffer are needed
+        final CompactPlotSamples samples = new CompactPlotSamples(new AtomicInteger(0), 100);
+        final int N = 3 * Short.MAX_VALUE;
+        for (int i=0; i<N; ++i)
+            assertTrue(samples.add(new PlotSample("Test",
+                    new ArchiveVNumber(Instant.ofEpochSecond(i), AlarmSeverity.MINOR, "Status " + i, ValueFactory.displayNone(), i))));
+        assertThat(samples.size(), equalTo(100));
+        for (int i=0; i<samples.size(); ++i)
+        {
+            final PlotSample sample = samples.get(i);
+            final int orig = N - 100 + i;
+            assertThat(sample.getValue(), equalTo((double) orig));
+            assertThat(sample.getSource(), equalTo("Test"));
+            assertThat(VTypeHelper.getMessage(sample.getVType()), equalTo("Status " + orig));
+        }
+    }
+}
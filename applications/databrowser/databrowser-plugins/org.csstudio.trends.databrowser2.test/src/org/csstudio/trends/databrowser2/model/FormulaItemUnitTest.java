@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser2.model;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.Test;
+
+/** JUnit test of the incremental evaluation in {@link FormulaItem}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class FormulaItemUnitTest
+{
+    /** Samples that remember which ones were read */
+    private static class TestSamples extends PlotSamples
+    {
+        final List<PlotSample> samples = new ArrayList<>();
+        final BitSet reads = new BitSet();
+
+        void add(final int start, final int end)
+        {
+            lockForWriting();
+            try
+            {
+                for (PlotSample sample : TestHelper.makePlotSamples(start, end))
+                    samples.add(sample);
+            }
+            finally
+            {
+                unlockForWriting();
+            }
+        }
+
+        void removeFirst()
+        {
+            lockForWriting();
+            try
+            {
+                samples.remove(0);
+            }
+            finally
+            {
+                unlockForWriting();
+            }
+        }
+
+        @Override
+        public int size()
+        {
+            return samples.size();
+        }
+
+        @Override
+        public PlotSample get(final int index)
+        {
+            reads.set(index);
+            return samples.get(index);
+        }
+    }
+
+    /** Model item with test samples */
+    private static class TestItem extends ModelItem
+    {
+        final TestSamples samples = new TestSamples();
+
+        TestItem(final String name)
+        {
+            super(name);
+        }
+
+        @Override
+        public PlotSamples getSamples()
+        {
+            return samples;
+        }
+
+        @Override
+        public void write(final PrintWriter writer)
+        {
+            // Not persisted
+        }
+    }
+
+    /** Compare samples of incrementally updated formula with full evaluation */
+    private void checkFullRecompute(final FormulaItem formula) throws Exception
+    {
+        checkFullRecompute(formula, 0);
+    }
+
+    /** Compare samples of incrementally updated formula with full evaluation
+     *  @param skip Number of lines of full evaluation that are not in the formula
+     */
+    private void checkFullRecompute(final FormulaItem formula, final int skip) throws Exception
+    {
+        final FormulaItem full = new FormulaItem("full", formula.getExpression(), formula.getInputs());
+        final PlotSamples expected = full.getSamples(), actual = formula.getSamples();
+        assertThat(actual.size(), equalTo(expected.size() - skip));
+        for (int i=0; i<actual.size(); ++i)
+        {
+            assertThat(actual.get(i).getPosition(), equalTo(expected.get(i + skip).getPosition()));
+            assertThat(Double.compare(actual.get(i).getValue(), expected.get(i + skip).getValue()), equalTo(0));
+        }
+    }
+
+    @Test
+    public void testIncrementalEvaluation() throws Exception
+    {
+        final TestItem x = new TestItem("x"), y = new TestItem("y");
+        x.samples.add(0, 5);
+        y.samples.add(0, 10);
+        final FormulaItem formula = new FormulaItem("f", "x + 2*y",
+                new FormulaInput[] { new FormulaInput(x, "x"), new FormulaInput(y, "y") });
+
+        // One line per time stamp. Lines from t=5 on lack 'x' and are not yet valid
+        PlotSamples samples = formula.getSamples();
+        assertThat(samples.size(), equalTo(10));
+        assertThat(samples.get(4).getValue(), equalTo(12.0));
+        assertTrue(Double.isNaN(samples.get(5).getValue()));
+        assertThat(formula.getValidLines(), equalTo(5));
+
+        // Append samples to 'x'
+        x.samples.reads.clear();
+        y.samples.reads.clear();
+        x.samples.add(5, 10);
+        assertTrue(formula.reevaluate());
+        assertThat(samples.size(), equalTo(10));
+        for (int i=0; i<samples.size(); ++i)
+        {
+            assertThat(samples.get(i).getPosition(), equalTo(Instant.ofEpochSecond(i)));
+            assertThat(samples.get(i).getValue(), equalTo(3.0 * i));
+        }
+        assertThat(formula.getValidLines(), equalTo(10));
+
+        // Only the first and last used sample were checked,
+        // the lines before the checkpoint were not computed again
+        for (TestItem item : new TestItem[] { x, y })
+        {
+            assertThat(item.samples.reads.get(0), equalTo(true));
+            assertThat(item.samples.reads.get(1, 4).isEmpty(), equalTo(true));
+            assertThat(item.samples.reads.get(4, 10).cardinality(), equalTo(6));
+        }
+        checkFullRecompute(formula);
+
+        // Append to both, with 'y' ending before 'x'
+        x.samples.add(10, 20);
+        y.samples.add(10, 15);
+        assertTrue(formula.reevaluate());
+        samples = formula.getSamples();
+        assertThat(samples.size(), equalTo(20));
+        assertThat(formula.getValidLines(), equalTo(15));
+        checkFullRecompute(formula);
+
+        // Removing samples that were already used, as in a ring buffer,
+        // removes the corresponding lines without re-computing the others
+        x.samples.reads.clear();
+        y.samples.reads.clear();
+        x.samples.removeFirst();
+        y.samples.removeFirst();
+        x.samples.add(20, 21);
+        y.samples.add(15, 21);
+        assertTrue(formula.reevaluate());
+        assertThat(samples.size(), equalTo(20));
+        assertThat(samples.get(0).getPosition(), equalTo(Instant.ofEpochSecond(1)));
+        assertThat(formula.getValidLines(), equalTo(20));
+        assertThat(x.samples.reads.get(1, 13).cardinality() <= 5, equalTo(true));
+        checkFullRecompute(formula);
+
+        // When only 'y' drops samples, lines before its first sample are removed.
+        // A full evaluation would have them with 'y' missing
+        y.samples.removeFirst();
+        y.samples.removeFirst();
+        assertTrue(formula.reevaluate());
+        assertThat(samples.size(), equalTo(18));
+        assertThat(samples.get(0).getPosition(), equalTo(Instant.ofEpochSecond(3)));
+        assertThat(samples.get(0).getValue(), equalTo(9.0));
+        assertThat(formula.getValidLines(), equalTo(18));
+        checkFullRecompute(formula, 2);
+    }
+}
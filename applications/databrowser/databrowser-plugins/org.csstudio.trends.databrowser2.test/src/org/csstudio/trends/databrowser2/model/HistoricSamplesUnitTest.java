@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser2.model;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.diirt.vtype.VType;
+import org.junit.Test;
+
+/** JUnit test for {@link HistoricSamples}
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class HistoricSamplesUnitTest
+{
+    /** @return Values for time stamps start ... end-1 */
+    private List<VType> makeValues(final int start, final int end)
+    {
+        final List<VType> values = new ArrayList<>();
+        for (int i=start; i<end; ++i)
+            values.add(TestHelper.makeValue(i));
+        return values;
+    }
+
+    @Test
+    public void testChunkedMerge()
+    {
+        final HistoricSamples samples = new HistoricSamples(new AtomicInteger(0));
+        samples.mergeArchivedData("Test", makeValues(0, 10000));
+        assertThat(samples.size(), equalTo(10000));
+
+        // Replace section in the middle, add to end
+        samples.mergeArchivedData("Middle", makeValues(5000, 5100));
+        samples.mergeArchivedData("End", makeValues(9990, 12000));
+        assertThat(samples.size(), equalTo(12000));
+
+        // Same result as flat merge
+        for (int i=0; i<samples.size(); ++i)
+        {
+            final PlotSample sample = samples.get(i);
+            assertThat(sample.getPosition(), equalTo(Instant.ofEpochSecond(i)));
+            final String source = i >= 9990 ? "End" : (i >= 5000 && i < 5100 ? "Middle" : "Test");
+            assertThat(sample.getSource(), equalTo(source));
+        }
+
+        // Border time applies across chunks
+        samples.setBorderTime(Optional.of(Instant.ofEpochSecond(7000)));
+        assertThat(samples.size(), equalTo(7000));
+        assertThat(samples.getPosition(6999), equalTo(Instant.ofEpochSecond(6999)));
+        assertThat(samples.getValue(6999), equalTo(6999.0));
+        assertThat(samples.getRawSize(), equalTo(12000));
+    }
+
+    @Test
+    public void testLevels()
+    {
+        final HistoricSamples samples = new HistoricSamples(new AtomicInteger(0));
+        samples.mergeArchivedData("Test", makeValues(0, 100000));
+
+        // One pixel per second: Use raw samples
+        samples.testAndClearNewSamplesFlag();
+        samples.setResolution(Optional.of(Duration.ofSeconds(1)));
+        assertThat(samples.getLevel(), equalTo(0));
+        assertThat(samples.getPlotSize(), equalTo(100000));
+        assertThat(samples.testAndClearNewSamplesFlag(), equalTo(false));
+
+        // 100 seconds per pixel: Use aggregated samples for the plot
+        samples.setResolution(Optional.of(Duration.ofSeconds(100)));
+        assertThat(samples.getLevel(), equalTo(1));
+        assertThat(samples.testAndClearNewSamplesFlag(), equalTo(true));
+        assertTrue(samples.getPlotSize() < 100000 / 10);
+        // Aggregated samples cover the full value range
+        final PlotSample first = samples.getPlotSample(0);
+        assertThat(first.getMin(), equalTo(0.0));
+        assertThat(first.getMax(), equalTo(SampleChunk.FACTOR - 1.0));
+        final PlotSample last = samples.getPlotSample(samples.getPlotSize()-1);
+        assertThat(last.getMax(), equalTo(99999.0));
+        // Plot reads the aggregated levels without creating samples
+        final PlotSamples plot = samples.getPlotSamples();
+        assertThat(plot.size(), equalTo(samples.getPlotSize()));
+        for (int i=0; i<plot.size(); i+=101)
+        {
+            final PlotSample sample = plot.get(i);
+            assertThat(plot.getPosition(i), equalTo(sample.getPosition()));
+            assertThat(plot.getValue(i), equalTo(sample.getValue()));
+            assertThat(plot.getMin(i), equalTo(sample.getMin()));
+            assertThat(plot.getMax(i), equalTo(sample.getMax()));
+            assertThat(plot.getStdDev(i), equalTo(sample.getStdDev()));
+        }
+        assertThat(samples.getRawSize(), equalTo(100000));
+        // Other users of the samples still get the raw samples
+        assertThat(samples.size(), equalTo(100000));
+        assertThat(samples.get(1).getPosition(), equalTo(Instant.ofEpochSecond(1)));
+        assertTrue(Double.isNaN(samples.get(1).getMin()));
+
+        // Back to raw samples
+        samples.setResolution(Optional.empty());
+        assertThat(samples.getPlotSize(), equalTo(100000));
+        assertThat(samples.testAndClearNewSamplesFlag(), equalTo(true));
+    }
+}
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser2.model;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+import org.diirt.vtype.VType;
+import org.junit.Test;
+
+/** Throughput benchmark of the Data Browser sample handling
+ *
+ *  <p>Uses synthetic samples, no PVs, archives or display.
+ *  Measures merging of archived data,
+ *  access to {@link PVSamples} under their lock as done by the plot,
+ *  and the search for samples by time.
+ *
+ *  <p>Not a unit test (name doesn't end in 'Test'),
+ *  run manually and compare the printed numbers.
+ *  <code>-Dbenchmark.max_size=10000000</code> includes 10^7 samples,
+ *  which requires a few GB of memory,
+ *  <code>-Dbenchmark.seconds=..</code> sets the run time per case.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class ModelBenchmark
+{
+    /** Largest number of samples */
+    final private static int MAX_SIZE = Integer.getInteger("benchmark.max_size", 1000000);
+
+    /** Seconds to run each case, and to warm up before that */
+    final private static double SECONDS = Double.parseDouble(System.getProperty("benchmark.seconds", "2"));
+
+    /** Results are accumulated here so that the JIT can't remove the code */
+    private static volatile long sink;
+
+    /** Run a benchmark case
+     *  @param title Title of the case
+     *  @param size Number of samples
+     *  @param operation Operation to benchmark, returns some result
+     */
+    private static void measure(final String title, final int size, final IntSupplier operation)
+    {
+        // Warm up
+        long result = 0;
+        long end = System.nanoTime() + (long) (SECONDS * 1e9);
+        while (System.nanoTime() < end)
+            result += operation.getAsInt();
+
+        // Measure
+        long runs = 0;
+        final long start = System.nanoTime();
+        end = start + (long) (SECONDS * 1e9);
+        long now;
+        do
+        {
+            result += operation.getAsInt();
+            ++runs;
+            now = System.nanoTime();
+        }
+        while (now < end);
+        sink += result;
+
+        final double ns = (now - start) / (double) runs;
+        System.out.format("%-30s %10d samples: %14.1f ops/sec, %8.2f ns/sample\n",
+                          title, size, 1e9 / ns, ns / size);
+    }
+
+    /** Merge archived data that overlaps half of the existing samples */
+    @Test
+    public void benchmarkMerge()
+    {
+        for (int size=1000; size<=MAX_SIZE; size *= 10)
+        {
+            final PlotSample old[] = TestHelper.makePlotSamples(0, size);
+            final PlotSample add[] = TestHelper.makePlotSamples(size/2, size + size/2);
+            measure("Merge", size, () -> PlotSampleMerger.merge(old, add).length);
+        }
+    }
+
+    /** Read all samples under the lock, as done when painting a trace */
+    @Test
+    public void benchmarkPVSamples()
+    {
+        for (int size=1000; size<=MAX_SIZE; size *= 10)
+        {
+            final PVSamples samples = new PVSamples(new AtomicInteger(0));
+            final List<VType> history = new ArrayList<>(size);
+            for (int i=0; i<size; ++i)
+                history.add(TestHelper.makeValue(i));
+            samples.mergeArchivedData("Test", history);
+            history.clear();
+
+            measure("PVSamples access", size, () ->
+            {
+                double sum = 0;
+                samples.getLock().lock();
+                try
+                {
+                    final int N = samples.size();
+                    for (int i=0; i<N; ++i)
+                        sum += samples.get(i).getValue();
+                }
+                finally
+                {
+                    samples.getLock().unlock();
+                }
+                return (int) sum;
+            });
+        }
+    }
+
+    /** Search for the first and last sample of a time range */
+    @Test
+    public void benchmarkSearch()
+    {
+        for (int size=1000; size<=MAX_SIZE; size *= 10)
+        {
+            final PlotSample samples[] = TestHelper.makePlotSamples(0, size);
+            final Random random = new Random(42);
+            final int N = size;
+            measure("Search", size, () ->
+            {
+                final long start = random.nextInt(N);
+                return PlotSampleSearch.findSampleLessOrEqual(samples, Instant.ofEpochSecond(start)) +
+                       PlotSampleSearch.findSampleGreaterOrEqual(samples, Instant.ofEpochSecond(start + N/10));
+            });
+        }
+    }
+}
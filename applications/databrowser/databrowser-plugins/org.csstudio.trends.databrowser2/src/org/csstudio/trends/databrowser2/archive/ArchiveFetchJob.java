@@ -9,8 +9,13 @@ package org.csstudio.trends.databrowser2.archive;
 
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 
 import org.csstudio.apputil.time.BenchmarkTimer;
@@ -42,7 +47,10 @@ import org.diirt.vtype.VType;
 public class ArchiveFetchJob extends Job
 {
     /** Poll period in millisecs */
-    private static final int POLL_PERIOD_MS = 1000;
+    private static final int POLL_PERIOD_MS = 100;
+
+    /** Period in millisecs for passing partial results to the item */
+    private static final int BLOCK_PERIOD_MS = 500;
 
     /**to manage concurrency on postgresql*/
     private final boolean concurrency;
@@ -63,16 +71,28 @@ public class ArchiveFetchJob extends Job
      *  can then poll the progress monitor for cancellation and if
      *  necessary interrupt the WorkerThread which might be 'stuck'
      *  in a long running operation.
+     *
+     *  All archive data sources are queried in parallel.
+     *  Samples are merged into the item in blocks as they arrive,
+     *  so the plot fills in while slower archives are still being read.
      */
     class WorkerThread implements Runnable
     {
         private String message = ""; //$NON-NLS-1$
         private volatile boolean cancelled = false;
 
-        /** Archive reader that's currently queried.
+        /** Archive readers that are currently queried.
+         *  Synchronize 'this' on access.
+         */
+        final private List<ArchiveReader> readers = new ArrayList<>();
+
+        /** Archive data sources that are still queried.
          *  Synchronize 'this' on access.
          */
-        private ArchiveReader reader = null;
+        final private List<ArchiveDataSource> pending = new ArrayList<>();
+
+        /** Total number of archive data sources */
+        private int total = 0;
 
         /** @return Message that somehow indicates progress */
         public synchronized String getMessage()
@@ -84,11 +104,8 @@ public class ArchiveFetchJob extends Job
         public synchronized void cancel()
         {
             cancelled = true;
-            synchronized (this)
-            {
-                if (reader != null)
-                    reader.cancel();
-            }
+            for (ArchiveReader reader : readers)
+                reader.cancel();
         }
 
         /** {@inheritDoc} */
@@ -97,76 +114,55 @@ public class ArchiveFetchJob extends Job
         {
             Activator.getLogger().log(Level.FINE, "Starting {0}", ArchiveFetchJob.this); //$NON-NLS-1$
             final BenchmarkTimer timer = new BenchmarkTimer();
-            long samples = 0;
             final int bins = Preferences.getPlotBins();
             final ArchiveDataSource archives[] = item.getArchiveDataSources();
-            List<ArchiveDataSource> sourcesWhereChannelDoesntExist = new ArrayList<>();
+            final boolean not_found[] = new boolean[archives.length];
+            @SuppressWarnings({ "unchecked", "rawtypes" })
+            final List<VType> results[] = new List[archives.length];
+            final String servers[] = new String[archives.length];
+            final AtomicLong samples = new AtomicLong();
+
+            synchronized (this)
+            {
+                total = archives.length;
+                pending.addAll(Arrays.asList(archives));
+                updateMessage();
+            }
+            final List<Future<?>> fetches = new ArrayList<>(archives.length);
             for (int i=0; i<archives.length && !cancelled; ++i)
             {
-                final ArchiveDataSource archive = archives[i];
-                final String url = archive.getUrl();
-                // Display "N/total", using '1' for the first sub-archive.
-                synchronized  (this)
-                {
-                    message = NLS.bind(Messages.ArchiveFetchDetailFmt,
-                            new Object[]
-                            {
-                                archive.getName(),
-                                (i+1),
-                                archives.length
-                            });
-                }
+                final int index = i;
+                fetches.add(Activator.getThreadPool().submit(() ->
+                    fetch(archives[index], bins, not_found, results, servers, index, samples)));
+            }
+            for (Future<?> fetch : fetches)
+            {
                 try
                 {
-                    final ArchiveReader the_reader;
-                    synchronized (this)
-                    {
-                        the_reader = reader = ArchiveRepository.getInstance().getArchiveReader(url);
-                    }
-                    the_reader.enableConcurrency(concurrency);
-                    final ValueIterator value_iter;
-                    try
-                    {
-                        if (item.getRequestType() == RequestType.RAW)
-                            value_iter = the_reader.getRawValues(archive.getKey(), item.getResolvedName(),
-                                                                 start, end);
-                        else
-                            value_iter = the_reader.getOptimizedValues(archive.getKey(), item.getResolvedName(),
-                                                                       start, end, bins);
-                    }
-                    catch (UnknownChannelException e)
-                    {
-                        // Do not immediately notify about unknown channels. First search for the data in all archive
-                        // sources and only report this kind of errors at the end
-                        sourcesWhereChannelDoesntExist.add(archives[i]);
-                        continue;
-                    }
-                    // Get samples into array
-                    final List<VType> result = new ArrayList<VType>();
-                    while (value_iter.hasNext())
-                        result.add(value_iter.next());
-                    samples += result.size();
-                    item.mergeArchivedSamples(the_reader.getServerName(), result);
-                    if (cancelled)
-                        break;
-                    value_iter.close();
+                    fetch.get();
                 }
                 catch (Exception ex)
-                {   // Tell listener unless it's the result of a 'cancel'?
-                    if (! cancelled)
-                        listener.archiveFetchFailed(ArchiveFetchJob.this, archive, ex);
-                    // Continue with the next data source
-                }
-                finally
                 {
-                    synchronized (this)
-                    {
-                        if (reader != null)
-                            reader.close();
-                        reader = null;
-                    }
+                    Activator.getLogger().log(Level.WARNING, "Archive fetch failed", ex); //$NON-NLS-1$
                 }
             }
+
+            // Blocks from several archives arrived in random order.
+            // Merge again in the order of the archive data sources,
+            // so later sources replace overlapping data as before.
+            int with_data = 0;
+            for (List<VType> result : results)
+                if (result != null  &&  !result.isEmpty())
+                    ++with_data;
+            if (with_data > 1  &&  !cancelled)
+                for (int i=0; i<archives.length; ++i)
+                    if (results[i] != null  &&  !results[i].isEmpty())
+                        item.mergeArchivedSamples(servers[i], results[i]);
+
+            final List<ArchiveDataSource> sourcesWhereChannelDoesntExist = new ArrayList<>();
+            for (int i=0; i<archives.length; ++i)
+                if (not_found[i])
+                    sourcesWhereChannelDoesntExist.add(archives[i]);
             if (!sourcesWhereChannelDoesntExist.isEmpty() && !cancelled)
             {
                 listener.channelNotFound(ArchiveFetchJob.this, sourcesWhereChannelDoesntExist.size() < archives.length,
@@ -178,7 +174,157 @@ public class ArchiveFetchJob extends Job
                 listener.fetchCompleted(ArchiveFetchJob.this);
             Activator.getLogger().log(Level.FINE,
                     "Ended {0} with {1} samples in {2}",        //$NON-NLS-1$
-                    new Object[] { ArchiveFetchJob.this, samples, timer });
+                    new Object[] { ArchiveFetchJob.this, samples.get(), timer });
+        }
+
+        /** Fetch samples from one archive data source
+         *  @param archive Archive data source
+         *  @param bins Number of bins for optimized request
+         *  @param not_found Will be set to indicate that channel was not found in archive
+         *  @param results Will be set to the samples from the archive if there are several archives
+         *  @param servers Will be set to the server names
+         *  @param index Index of archive data source
+         *  @param samples Total sample count, will be updated
+         */
+        private void fetch(final ArchiveDataSource archive, final int bins,
+                           final boolean not_found[], final List<VType> results[], final String servers[],
+                           final int index, final AtomicLong samples)
+        {
+            ArchiveReader the_reader = null;
+            try
+            {
+                the_reader = ArchiveRepository.getInstance().getArchiveReader(archive.getUrl());
+                synchronized (this)
+                {
+                    if (cancelled)
+                        return;
+                    readers.add(the_reader);
+                }
+                the_reader.enableConcurrency(concurrency);
+                final String server = the_reader.getServerName();
+                servers[index] = server;
+                final List<VType> result = new ArrayList<VType>();
+                final AtomicReference<VType> last = new AtomicReference<>();
+                try
+                {
+                    getValues(the_reader, archive, bins, block ->
+                    {
+                        if (results.length > 1)
+                            result.addAll(block);
+                        samples.addAndGet(block.size());
+                        // Merge replaces existing samples within the time range of the block.
+                        // Start at the last sample of the previous block
+                        // to also replace samples in the gap between blocks.
+                        final VType previous = last.getAndSet(block.get(block.size()-1));
+                        if (previous == null)
+                            item.mergeArchivedSamples(server, block);
+                        else
+                        {
+                            final List<VType> joined = new ArrayList<VType>(block.size() + 1);
+                            joined.add(previous);
+                            joined.addAll(block);
+                            item.mergeArchivedSamples(server, joined);
+                        }
+                    });
+                }
+                catch (UnknownChannelException e)
+                {
+                    // Do not immediately notify about unknown channels. First search for the data in all archive
+                    // sources and only report this kind of errors at the end
+                    not_found[index] = true;
+                    return;
+                }
+                results[index] = result;
+            }
+            catch (Exception ex)
+            {   // Tell listener unless it's the result of a 'cancel'?
+                if (! cancelled)
+                    listener.archiveFetchFailed(ArchiveFetchJob.this, archive, ex);
+            }
+            finally
+            {
+                synchronized (this)
+                {
+                    if (the_reader != null)
+                    {
+                        readers.remove(the_reader);
+                        the_reader.close();
+                    }
+                    pending.remove(archive);
+                    updateMessage();
+                }
+            }
+        }
+
+        /** Update message with archives that are still queried.
+         *  Caller must synchronize on 'this'.
+         */
+        private void updateMessage()
+        {
+            final StringBuilder names = new StringBuilder();
+            for (ArchiveDataSource archive : pending)
+            {
+                if (names.length() > 0)
+                    names.append(", "); //$NON-NLS-1$
+                names.append(archive.getName());
+            }
+            // Display "N/total", using '1' for the first sub-archive.
+            message = NLS.bind(Messages.ArchiveFetchDetailFmt,
+                    new Object[]
+                    {
+                        names.toString(),
+                        Math.min(total - pending.size() + 1, total),
+                        total
+                    });
+        }
+
+        /** Get samples, using the fetch cache if enabled
+         *  @param reader Archive reader
+         *  @param archive Archive data source
+         *  @param bins Number of bins for optimized request
+         *  @param consumer Receives blocks of samples
+         *  @throws Exception on error
+         */
+        private void getValues(final ArchiveReader reader, final ArchiveDataSource archive,
+                               final int bins, final Consumer<List<VType>> consumer) throws Exception
+        {
+            final FetchCache cache = FetchCache.getInstance();
+            if (cache != null)
+            {
+                cache.getValues(reader, archive.getUrl(), archive.getKey(), item.getResolvedName(),
+                                item.getRequestType(), start, end, bins, () -> cancelled, consumer);
+                return;
+            }
+
+            final ValueIterator value_iter;
+            if (item.getRequestType() == RequestType.RAW)
+                value_iter = reader.getRawValues(archive.getKey(), item.getResolvedName(),
+                                                 start, end);
+            else
+                value_iter = reader.getOptimizedValues(archive.getKey(), item.getResolvedName(),
+                                                       start, end, bins);
+            // Pass samples on in blocks
+            List<VType> block = new ArrayList<VType>();
+            long last_block = System.currentTimeMillis();
+            try
+            {
+                while (value_iter.hasNext()  &&  !cancelled)
+                {
+                    block.add(value_iter.next());
+                    if (System.currentTimeMillis() - last_block >= BLOCK_PERIOD_MS)
+                    {
+                        consumer.accept(block);
+                        block = new ArrayList<VType>();
+                        last_block = System.currentTimeMillis();
+                    }
+                }
+            }
+            finally
+            {
+                value_iter.close();
+            }
+            if (!block.isEmpty()  &&  !cancelled)
+                consumer.accept(block);
         }
 
         @SuppressWarnings("nls")
@@ -242,19 +388,20 @@ public class ArchiveFetchJob extends Job
         final WorkerThread worker = new WorkerThread();
         Future<?> done = Activator.getThreadPool().submit(worker);
         // Poll worker and progress monitor
-        long seconds = 0;
+        final long start_ms = System.currentTimeMillis();
         while (!done.isDone())
         {
             try
             {
-                Thread.sleep(POLL_PERIOD_MS);
+                done.get(POLL_PERIOD_MS, TimeUnit.MILLISECONDS);
             }
-            catch (InterruptedException ex)
+            catch (Exception ex)
             {
-                // Ignore
+                // Ignore, check again
             }
+            final long seconds = (System.currentTimeMillis() - start_ms) / 1000;
             final String info = NLS.bind(Messages.ArchiveFetchProgressFmt,
-                    worker.getMessage(), ++seconds);
+                    worker.getMessage(), seconds);
             monitor.subTask(info);
             // Try to cancel the worker in response to user's cancel request.
             // Continues to cancel the worker until isDone()
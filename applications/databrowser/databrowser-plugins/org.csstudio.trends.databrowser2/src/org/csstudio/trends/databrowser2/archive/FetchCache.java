@@ -0,0 +1,504 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser2.archive;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+import org.csstudio.archive.reader.ArchiveReader;
+import org.csstudio.archive.reader.ValueIterator;
+import org.csstudio.archive.vtype.VTypeHelper;
+import org.csstudio.trends.databrowser2.Activator;
+import org.csstudio.trends.databrowser2.model.RequestType;
+import org.csstudio.trends.databrowser2.preferences.Preferences;
+import org.diirt.vtype.VType;
+
+/** On-disk cache for archived samples
+ *
+ *  <p>Samples are kept in files that each hold a time chunk
+ *  for one combination of archive URL, key, channel and request type.
+ *  Raw data uses chunks of fixed duration.
+ *  Optimized data is requested with a bin size rounded up to a power of two seconds,
+ *  and each chunk holds {@link #OPTIMIZED_CHUNK_BINS} bins,
+ *  so a plot needs only a few chunks regardless of its time range.
+ *
+ *  <p>Only chunks that lie sufficiently in the past are cached.
+ *  Missing chunks are fetched from the archive, recent data is always fetched.
+ *  Chunks without samples are cached as well, holding only the last sample
+ *  before the chunk, so gaps in the data are not fetched again.
+ *
+ *  <p>The least recently used files are deleted
+ *  when the total size exceeds the limit.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class FetchCache
+{
+    /** File format version */
+    final private static int MAGIC = 0x44424331;
+
+    final private static String SUFFIX = ".chunk";
+
+    final private static String TMP_SUFFIX = ".tmp";
+
+    /** Duration of a raw data chunk in seconds */
+    final static long RAW_CHUNK_SECS = Duration.ofHours(1).getSeconds();
+
+    /** Number of bins per chunk of optimized data */
+    final static int OPTIMIZED_CHUNK_BINS = 256;
+
+    /** Chunks that end less than this before 'now' may still receive data */
+    final private static Duration SETTLE_TIME = Duration.ofMinutes(10);
+
+    /** Cache configured via preferences, <code>null</code> when disabled */
+    private static FetchCache instance = null;
+    private static boolean initialized = false;
+
+    /** Directory that holds the cache files */
+    final private File directory;
+
+    /** Maximum size of all cache files */
+    final private long max_bytes;
+
+    /** File names and sizes, least recently used first. SYNC on access */
+    final private Map<String, Long> files = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Total size of files. SYNC on 'files' */
+    private long total_bytes = 0;
+
+    /** Samples of one chunk */
+    static class Chunk
+    {
+        /** Last sample before the chunk, may be <code>null</code> */
+        VType lead;
+
+        /** Samples within the chunk */
+        final List<VType> samples = new ArrayList<>();
+    }
+
+    /** @return Cache configured in preferences or <code>null</code> when disabled */
+    public static synchronized FetchCache getInstance()
+    {
+        if (! initialized)
+        {
+            initialized = true;
+            final long max_bytes = Preferences.getFetchCacheSize() * 1024L * 1024L;
+            if (max_bytes > 0)
+            {
+                String path = Preferences.getFetchCacheDirectory();
+                if (path.isEmpty()  &&  Activator.getDefault() != null)
+                    path = Activator.getDefault().getStateLocation().append("fetch_cache").toOSString();
+                if (! path.isEmpty())
+                {
+                    try
+                    {
+                        instance = new FetchCache(new File(path), max_bytes);
+                    }
+                    catch (Exception ex)
+                    {
+                        Activator.getLogger().log(Level.WARNING, "Cannot use archive fetch cache " + path, ex);
+                    }
+                }
+            }
+        }
+        return instance;
+    }
+
+    /** @param directory Directory that holds the cache files
+     *  @param max_bytes Maximum size of all cache files
+     *  @throws Exception if directory cannot be used
+     */
+    public FetchCache(final File directory, final long max_bytes) throws Exception
+    {
+        this.directory = directory;
+        this.max_bytes = max_bytes;
+        if (! directory.isDirectory()  &&  ! directory.mkdirs())
+            throw new Exception("Cannot create " + directory);
+
+        // Remove incomplete files left by earlier writers
+        final File[] incomplete = directory.listFiles((dir, name) -> name.endsWith(TMP_SUFFIX));
+        if (incomplete != null)
+            for (File file : incomplete)
+                file.delete();
+
+        // Order existing files by last access
+        final File[] existing = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (existing != null)
+        {
+            Arrays.sort(existing, Comparator.comparingLong(File::lastModified));
+            synchronized (files)
+            {
+                for (File file : existing)
+                {
+                    files.put(file.getName(), file.length());
+                    total_bytes += file.length();
+                }
+                evict();
+            }
+        }
+    }
+
+    /** @return Total size of cache files */
+    long getSize()
+    {
+        synchronized (files)
+        {
+            return total_bytes;
+        }
+    }
+
+    /** Get samples, using cached chunks where possible
+     *
+     *  @param reader Reader to use for samples that are not in the cache
+     *  @param url Archive URL
+     *  @param key Archive key
+     *  @param name Channel name
+     *  @param type Request type
+     *  @param start Start time
+     *  @param end End time
+     *  @param bins Number of bins for optimized request
+     *  @param cancelled Indicates if the request has been cancelled
+     *  @return Samples
+     *  @throws Exception on error
+     */
+    public List<VType> getValues(final ArchiveReader reader, final String url, final int key, final String name,
+                                 final RequestType type, final Instant start, final Instant end, final int bins,
+                                 final BooleanSupplier cancelled) throws Exception
+    {
+        final List<VType> result = new ArrayList<>();
+        getValues(reader, url, key, name, type, start, end, bins, cancelled, result::addAll);
+        return result;
+    }
+
+    /** Get samples, using cached chunks where possible
+     *
+     *  <p>Samples are passed to the consumer in blocks, in time order,
+     *  as soon as a run of chunks has been read from the cache or fetched
+     *  from the archive.
+     *
+     *  @param reader Reader to use for samples that are not in the cache
+     *  @param url Archive URL
+     *  @param key Archive key
+     *  @param name Channel name
+     *  @param type Request type
+     *  @param start Start time
+     *  @param end End time
+     *  @param bins Number of bins for optimized request
+     *  @param cancelled Indicates if the request has been cancelled
+     *  @param consumer Receives blocks of samples
+     *  @throws Exception on error
+     */
+    public void getValues(final ArchiveReader reader, final String url, final int key, final String name,
+                          final RequestType type, final Instant start, final Instant end, final int bins,
+                          final BooleanSupplier cancelled, final Consumer<List<VType>> consumer) throws Exception
+    {
+        final long chunk_secs;
+        final String id;
+        if (type == RequestType.RAW)
+        {
+            chunk_secs = RAW_CHUNK_SECS;
+            id = url + "|" + key + "|" + name + "|raw";
+        }
+        else
+        {
+            final long range = Math.max(1, Duration.between(start, end).getSeconds());
+            long bin_secs = 1;
+            while (bin_secs * bins < range)
+                bin_secs *= 2;
+            chunk_secs = bin_secs * OPTIMIZED_CHUNK_BINS;
+            id = url + "|" + key + "|" + name + "|optimized" + bin_secs;
+        }
+
+        // Chunks that end before this are cached
+        final long limit = Instant.now().minus(SETTLE_TIME).getEpochSecond();
+
+        long chunk = Math.floorDiv(start.getEpochSecond(), chunk_secs) * chunk_secs;
+        boolean first = true, have_cached = false;
+        while (chunk < end.getEpochSecond()  &&  chunk + chunk_secs <= limit)
+        {
+            if (cancelled.getAsBoolean())
+                return;
+            // Find run of missing chunks
+            final long run_start = chunk;
+            final List<Chunk> chunks = new ArrayList<>();
+            Chunk cached = null;
+            while (chunk < end.getEpochSecond()  &&  chunk + chunk_secs <= limit  &&
+                   (cached = read(id, chunk)) == null)
+            {
+                chunks.add(null);
+                chunk += chunk_secs;
+            }
+            if (! chunks.isEmpty())
+            {
+                fetch(reader, type, name, key, id, run_start, chunk_secs, chunks, cancelled);
+                if (cancelled.getAsBoolean())
+                    return;
+            }
+            if (cached != null)
+            {
+                chunks.add(cached);
+                chunk += chunk_secs;
+            }
+
+            final List<VType> block = new ArrayList<>();
+            for (Chunk c : chunks)
+            {
+                if (first  &&  c.lead != null)
+                    block.add(c.lead);
+                first = false;
+                block.addAll(c.samples);
+            }
+
+            // Trim to the requested range, keeping the last sample at or before 'start'
+            if (! have_cached)
+            {
+                int keep = 0;
+                while (keep+1 < block.size()  &&  ! VTypeHelper.getTimestamp(block.get(keep+1)).isAfter(start))
+                    ++keep;
+                if (keep > 0)
+                    block.subList(0, keep).clear();
+            }
+            int last = block.size();
+            while (last > 0  &&  VTypeHelper.getTimestamp(block.get(last-1)).isAfter(end))
+                --last;
+            block.subList(last, block.size()).clear();
+            if (! block.isEmpty())
+            {
+                consumer.accept(block);
+                have_cached = true;
+            }
+        }
+
+        // Recent data is not cached
+        if (chunk < end.getEpochSecond())
+        {
+            final Instant recent = chunk > start.getEpochSecond() ? Instant.ofEpochSecond(chunk) : start;
+            final List<VType> block = new ArrayList<>();
+            final ValueIterator values = open(reader, type, name, key, recent, end, bins);
+            try
+            {
+                while (values.hasNext()  &&  ! cancelled.getAsBoolean())
+                {
+                    final VType value = values.next();
+                    // Skip samples already provided by the cached chunks
+                    if (have_cached  &&  VTypeHelper.getTimestamp(value).isBefore(recent))
+                        continue;
+                    block.add(value);
+                }
+            }
+            finally
+            {
+                values.close();
+            }
+            if (! block.isEmpty()  &&  ! cancelled.getAsBoolean())
+                consumer.accept(block);
+        }
+    }
+
+    /** Fetch run of chunks from archive and store them in cache
+     *  @param chunks Chunks, will be populated
+     */
+    private void fetch(final ArchiveReader reader, final RequestType type, final String name,
+                       final int key, final String id,
+                       final long run_start, final long chunk_secs,
+                       final List<Chunk> chunks, final BooleanSupplier cancelled) throws Exception
+    {
+        final int N = chunks.size();
+        for (int i=0; i<N; ++i)
+            chunks.set(i, new Chunk());
+        final long run_end = run_start + N * chunk_secs;
+        VType lead = null;
+        final ValueIterator values = open(reader, type, name, key,
+                Instant.ofEpochSecond(run_start), Instant.ofEpochSecond(run_end), N * OPTIMIZED_CHUNK_BINS);
+        try
+        {
+            while (values.hasNext())
+            {
+                final VType value = values.next();
+                final Instant time = VTypeHelper.getTimestamp(value);
+                final long i = Math.floorDiv(time.getEpochSecond() - run_start, chunk_secs);
+                if (i < 0)
+                    lead = value;
+                else if (i < N)
+                    chunks.get((int) i).samples.add(value);
+            }
+        }
+        finally
+        {
+            values.close();
+        }
+        if (cancelled.getAsBoolean())
+            return;
+
+        for (int i=0; i<N; ++i)
+        {
+            final Chunk chunk = chunks.get(i);
+            chunk.lead = lead;
+            if (! chunk.samples.isEmpty())
+                lead = chunk.samples.get(chunk.samples.size()-1);
+            write(id, run_start + i * chunk_secs, chunk);
+        }
+    }
+
+    private ValueIterator open(final ArchiveReader reader, final RequestType type, final String name, final int key,
+                               final Instant start, final Instant end, final int bins) throws Exception
+    {
+        if (type == RequestType.RAW)
+            return reader.getRawValues(key, name, start, end);
+        return reader.getOptimizedValues(key, name, start, end, bins);
+    }
+
+    /** @return File name for chunk */
+    private String getFileName(final String id, final long chunk)
+    {
+        return String.format("%08x_%d%s", id.hashCode(), chunk, SUFFIX);
+    }
+
+    /** @param id Channel ID
+     *  @param chunk Start of chunk
+     *  @return Chunk read from cache or <code>null</code>
+     */
+    Chunk read(final String id, final long chunk)
+    {
+        final String name = getFileName(id, chunk);
+        synchronized (files)
+        {
+            if (files.get(name) == null)
+                return null;
+        }
+        final File file = new File(directory, name);
+        try
+        (
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        )
+        {
+            if (in.readInt() != MAGIC  ||  ! in.readUTF().equals(id)  ||  in.readLong() != chunk)
+                return null; // Different channel with same hash
+            final FetchCacheCodec.Reader decoder = new FetchCacheCodec.Reader(in);
+            final Chunk result = new Chunk();
+            if (in.readBoolean())
+                result.lead = decoder.read();
+            final int count = in.readInt();
+            for (int i=0; i<count; ++i)
+                result.samples.add(decoder.read());
+            file.setLastModified(System.currentTimeMillis());
+            return result;
+        }
+        catch (IOException ex)
+        {
+            Activator.getLogger().log(Level.FINE, "Cannot read " + file, ex);
+            remove(name);
+            return null;
+        }
+    }
+
+    /** @param id Channel ID
+     *  @param chunk Start of chunk
+     *  @param data Chunk to write
+     */
+    void write(final String id, final long chunk, final Chunk data)
+    {
+        if (data.lead != null  &&  ! FetchCacheCodec.Writer.canEncode(data.lead))
+            return;
+        for (VType value : data.samples)
+            if (! FetchCacheCodec.Writer.canEncode(value))
+                return;
+
+        final String name = getFileName(id, chunk);
+        final File file = new File(directory, name);
+        File tmp = null;
+        try
+        {
+            // Each writer uses its own temporary file
+            tmp = File.createTempFile(name, TMP_SUFFIX, directory);
+            try
+            (
+                final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            )
+            {
+                out.writeInt(MAGIC);
+                out.writeUTF(id);
+                out.writeLong(chunk);
+                final FetchCacheCodec.Writer encoder = new FetchCacheCodec.Writer(out);
+                out.writeBoolean(data.lead != null);
+                if (data.lead != null)
+                    encoder.write(data.lead);
+                out.writeInt(data.samples.size());
+                for (VType value : data.samples)
+                    encoder.write(value);
+            }
+            // Replace a file written by a concurrent request for the same chunk,
+            // accounting for its size only if the new file actually replaced it
+            synchronized (files)
+            {
+                final Long previous = files.remove(name);
+                if (previous != null)
+                    total_bytes -= previous;
+                file.delete();
+                if (! tmp.renameTo(file))
+                    throw new IOException("Cannot rename " + tmp);
+                final long size = file.length();
+                files.put(name, size);
+                total_bytes += size;
+                evict();
+            }
+        }
+        catch (IOException ex)
+        {
+            Activator.getLogger().log(Level.FINE, "Cannot write " + file, ex);
+            if (tmp != null)
+                tmp.delete();
+        }
+    }
+
+    /** @param name Name of file to remove from cache */
+    private void remove(final String name)
+    {
+        synchronized (files)
+        {
+            final Long size = files.remove(name);
+            if (size != null)
+                total_bytes -= size;
+        }
+        new File(directory, name).delete();
+    }
+
+    /** Delete least recently used files until below size limit.
+     *  Caller must synchronize on 'files'
+     */
+    private void evict()
+    {
+        final Iterator<Map.Entry<String, Long>> entries = files.entrySet().iterator();
+        while (total_bytes > max_bytes  &&  entries.hasNext())
+        {
+            final Map.Entry<String, Long> entry = entries.next();
+            total_bytes -= entry.getValue();
+            entries.remove();
+            new File(directory, entry.getKey()).delete();
+        }
+    }
+}
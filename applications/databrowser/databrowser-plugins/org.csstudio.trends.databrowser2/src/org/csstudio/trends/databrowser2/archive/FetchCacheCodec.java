@@ -0,0 +1,273 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser2.archive;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.csstudio.archive.vtype.ArchiveVEnum;
+import org.csstudio.archive.vtype.ArchiveVNumber;
+import org.csstudio.archive.vtype.ArchiveVNumberArray;
+import org.csstudio.archive.vtype.ArchiveVStatistics;
+import org.csstudio.archive.vtype.ArchiveVString;
+import org.csstudio.archive.vtype.MetaDataHelper;
+import org.csstudio.archive.vtype.VTypeHelper;
+import org.diirt.util.array.ListNumber;
+import org.diirt.util.text.NumberFormats;
+import org.diirt.vtype.AlarmSeverity;
+import org.diirt.vtype.Display;
+import org.diirt.vtype.VEnum;
+import org.diirt.vtype.VNumber;
+import org.diirt.vtype.VNumberArray;
+import org.diirt.vtype.VStatistics;
+import org.diirt.vtype.VString;
+import org.diirt.vtype.VType;
+import org.diirt.vtype.ValueFactory;
+
+/** Binary encoding of archived samples for the {@link FetchCache}
+ *
+ *  <p>Handles the sample types returned by archive readers:
+ *  Numbers, statistics, strings, enums and numeric arrays.
+ *  Meta data is only written when it changes.
+ *
+ *  @author Kay Kasemir
+ */
+class FetchCacheCodec
+{
+    /** Sample types */
+    final private static byte DOUBLE = 0, LONG = 1, STATISTICS = 2, STRING = 3, ENUM = 4, ARRAY = 5;
+
+    /** Meta data markers */
+    final private static byte SAME = 0, NONE = 1, NEW = 2;
+
+    final private static AlarmSeverity[] SEVERITIES = AlarmSeverity.values();
+
+    /** Encoder, keeps the previous meta data */
+    static class Writer
+    {
+        final private DataOutput out;
+        private Display display = null;
+        private List<String> labels = null;
+
+        Writer(final DataOutput out)
+        {
+            this.out = out;
+        }
+
+        /** @param value Sample to check
+         *  @return <code>true</code> if sample can be encoded
+         */
+        static boolean canEncode(final VType value)
+        {
+            return value instanceof VNumber  ||  value instanceof VStatistics  ||
+                   value instanceof VString  ||  value instanceof VEnum  ||
+                   value instanceof VNumberArray;
+        }
+
+        /** @param value Sample to write, must be supported by {@link #canEncode(VType)}
+         *  @throws IOException on error
+         */
+        void write(final VType value) throws IOException
+        {
+            final byte type;
+            if (value instanceof VNumber)
+            {
+                final Number number = ((VNumber) value).getValue();
+                type = (number instanceof Double  ||  number instanceof Float) ? DOUBLE : LONG;
+            }
+            else if (value instanceof VStatistics)
+                type = STATISTICS;
+            else if (value instanceof VString)
+                type = STRING;
+            else if (value instanceof VEnum)
+                type = ENUM;
+            else if (value instanceof VNumberArray)
+                type = ARRAY;
+            else
+                throw new IOException("Cannot encode " + value.getClass().getName()); //$NON-NLS-1$
+            out.writeByte(type);
+            final Instant time = VTypeHelper.getTimestamp(value);
+            out.writeLong(time.getEpochSecond());
+            out.writeInt(time.getNano());
+            out.writeByte(VTypeHelper.getSeverity(value).ordinal());
+            final String message = VTypeHelper.getMessage(value);
+            out.writeUTF(message == null ? "" : message); //$NON-NLS-1$
+            switch (type)
+            {
+            case DOUBLE:
+                writeDisplay((Display) value);
+                out.writeDouble(((VNumber) value).getValue().doubleValue());
+                break;
+            case LONG:
+                writeDisplay((Display) value);
+                out.writeLong(((VNumber) value).getValue().longValue());
+                break;
+            case STATISTICS:
+            {
+                final VStatistics stats = (VStatistics) value;
+                writeDisplay(stats);
+                out.writeDouble(stats.getAverage());
+                out.writeDouble(stats.getMin());
+                out.writeDouble(stats.getMax());
+                out.writeDouble(stats.getStdDev());
+                out.writeInt(stats.getNSamples());
+                break;
+            }
+            case STRING:
+                out.writeUTF(((VString) value).getValue());
+                break;
+            case ENUM:
+            {
+                final VEnum venum = (VEnum) value;
+                if (MetaDataHelper.equals(venum.getLabels(), labels))
+                    out.writeByte(SAME);
+                else
+                {
+                    labels = venum.getLabels();
+                    out.writeByte(NEW);
+                    out.writeInt(labels.size());
+                    for (String label : labels)
+                        out.writeUTF(label);
+                }
+                out.writeInt(venum.getIndex());
+                break;
+            }
+            default:
+            {
+                final VNumberArray array = (VNumberArray) value;
+                writeDisplay(array);
+                final ListNumber data = array.getData();
+                out.writeInt(data.size());
+                for (int i=0; i<data.size(); ++i)
+                    out.writeDouble(data.getDouble(i));
+            }
+            }
+        }
+
+        private void writeDisplay(final Display new_display) throws IOException
+        {
+            if (new_display == null)
+            {
+                out.writeByte(NONE);
+                display = null;
+                return;
+            }
+            if (display != null  &&  MetaDataHelper.equals(display, new_display))
+            {
+                out.writeByte(SAME);
+                return;
+            }
+            display = new_display;
+            out.writeByte(NEW);
+            writeDouble(display.getLowerDisplayLimit());
+            writeDouble(display.getLowerAlarmLimit());
+            writeDouble(display.getLowerWarningLimit());
+            writeDouble(display.getUpperWarningLimit());
+            writeDouble(display.getUpperAlarmLimit());
+            writeDouble(display.getUpperDisplayLimit());
+            writeDouble(display.getLowerCtrlLimit());
+            writeDouble(display.getUpperCtrlLimit());
+            final String units = display.getUnits();
+            out.writeUTF(units == null ? "" : units); //$NON-NLS-1$
+            final NumberFormat format = display.getFormat();
+            out.writeInt(format instanceof DecimalFormat ? format.getMaximumFractionDigits() : -1);
+        }
+
+        private void writeDouble(final Double number) throws IOException
+        {
+            out.writeDouble(number == null ? Double.NaN : number);
+        }
+    }
+
+    /** Decoder, keeps the previous meta data */
+    static class Reader
+    {
+        final private DataInput in;
+        private Display display = null;
+        private List<String> labels = null;
+
+        Reader(final DataInput in)
+        {
+            this.in = in;
+        }
+
+        /** @return Sample
+         *  @throws IOException on error
+         */
+        VType read() throws IOException
+        {
+            final byte type = in.readByte();
+            final Instant time = Instant.ofEpochSecond(in.readLong(), in.readInt());
+            final byte severity = in.readByte();
+            if (severity < 0  ||  severity >= SEVERITIES.length)
+                throw new IOException("Invalid severity " + severity); //$NON-NLS-1$
+            final String status = in.readUTF();
+            switch (type)
+            {
+            case DOUBLE:
+                return new ArchiveVNumber(time, SEVERITIES[severity], status, readDisplay(), in.readDouble());
+            case LONG:
+                return new ArchiveVNumber(time, SEVERITIES[severity], status, readDisplay(), in.readLong());
+            case STATISTICS:
+                return new ArchiveVStatistics(time, SEVERITIES[severity], status, readDisplay(),
+                        in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble(), in.readInt());
+            case STRING:
+                return new ArchiveVString(time, SEVERITIES[severity], status, in.readUTF());
+            case ENUM:
+            {
+                if (in.readByte() == NEW)
+                {
+                    final int count = in.readInt();
+                    labels = new ArrayList<>(count);
+                    for (int i=0; i<count; ++i)
+                        labels.add(in.readUTF());
+                }
+                if (labels == null)
+                    throw new IOException("Missing enum labels"); //$NON-NLS-1$
+                return new ArchiveVEnum(time, SEVERITIES[severity], status, labels, in.readInt());
+            }
+            case ARRAY:
+            {
+                final Display array_display = readDisplay();
+                final double[] data = new double[in.readInt()];
+                for (int i=0; i<data.length; ++i)
+                    data[i] = in.readDouble();
+                return new ArchiveVNumberArray(time, SEVERITIES[severity], status, array_display, data);
+            }
+            default:
+                throw new IOException("Invalid sample type " + type); //$NON-NLS-1$
+            }
+        }
+
+        private Display readDisplay() throws IOException
+        {
+            final byte marker = in.readByte();
+            if (marker == NONE)
+                display = null;
+            else if (marker == NEW)
+            {
+                final double lower_disp = in.readDouble(), lower_alarm = in.readDouble(),
+                             lower_warn = in.readDouble(), upper_warn = in.readDouble(),
+                             upper_alarm = in.readDouble(), upper_disp = in.readDouble(),
+                             lower_ctrl = in.readDouble(), upper_ctrl = in.readDouble();
+                final String units = in.readUTF();
+                final int precision = in.readInt();
+                display = ValueFactory.newDisplay(lower_disp, lower_alarm, lower_warn, units,
+                        precision < 0 ? NumberFormats.toStringFormat() : NumberFormats.format(precision),
+                        upper_warn, upper_alarm, upper_disp, lower_ctrl, upper_ctrl);
+            }
+            return display;
+        }
+    }
+}
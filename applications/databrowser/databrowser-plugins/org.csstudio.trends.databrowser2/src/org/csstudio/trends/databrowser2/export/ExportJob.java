@@ -7,7 +7,13 @@
  ******************************************************************************/
 package org.csstudio.trends.databrowser2.export;
 
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
@@ -15,6 +21,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
 
 import org.csstudio.apputil.time.SecondsParser;
 import org.csstudio.archive.reader.ArchiveReader;
@@ -41,6 +48,13 @@ import org.eclipse.core.runtime.jobs.Job;
 abstract public class ExportJob extends Job
 {
     final protected static int PROGRESS_UPDATE_LINES = 1000;
+
+    /** Size of chunks written to the file */
+    final private static int WRITE_CHUNK_SIZE = 64 * 1024;
+
+    /** Number of chunks and samples per chunk that each channel reads ahead */
+    final private static int PREFETCH_CHUNKS = 4, PREFETCH_CHUNK_SIZE = 1000;
+
     final protected String comment;
     final protected Model model;
     final protected Instant start, end;
@@ -50,6 +64,8 @@ abstract public class ExportJob extends Job
     final protected ExportErrorHandler error_handler;
     /** Active readers, used to cancel and close them */
     final private CopyOnWriteArrayList<ArchiveReader> archive_readers = new CopyOnWriteArrayList<ArchiveReader>();
+    /** Iterators that read ahead, closed when done to stop their threads */
+    final private List<PrefetchValueIterator> prefetches = new CopyOnWriteArrayList<>();
 
     /** Thread that polls a progress monitor and cancels active archive readers
      *  if the user requests the export job to end via the progress monitor
@@ -121,25 +137,35 @@ abstract public class ExportJob extends Job
     final protected IStatus run(final IProgressMonitor monitor)
     {
         monitor.beginTask("Data Export", IProgressMonitor.UNKNOWN);
+        PrintStream out = null;
         try
         {
-            final PrintStream out;
             if (filename != null)
             {
-                out = new PrintStream(filename);
+                out = new PrintStream(openOutput(filename));
                 printExportInfo(out);
             }
-            else
-                out = null;
             // Start thread that checks monitor to cancels readers when
             // user tries to abort the export job
             final CancellationPoll cancel_poll = new CancellationPoll(monitor);
             final Future<?> done = Activator.getThreadPool().submit(cancel_poll);
-            performExport(monitor, out);
-            // ask thread to exit
-            cancel_poll.exit = true;
+            try
+            {
+                performExport(monitor, out);
+            }
+            finally
+            {
+                // ask thread to exit
+                cancel_poll.exit = true;
+            }
             if (out != null)
+            {
                 out.close();
+                // PrintStream doesn't throw, need to check for write errors
+                if (out.checkError())
+                    throw new Exception("Error writing " + filename);
+                out = null;
+            }
             // Wait for poller to quit
             done.get();
         }
@@ -147,12 +173,36 @@ abstract public class ExportJob extends Job
         {
             error_handler.handleExportError(ex);
         }
+        if (out != null)
+            out.close();
+        for (PrefetchValueIterator iter : prefetches)
+            iter.close();
         for (ArchiveReader reader : archive_readers)
             reader.close();
         monitor.done();
         return Status.OK_STATUS;
     }
 
+    /** Open file for output
+     *
+     *  <p>Data is written to the file channel in chunks,
+     *  so memory use does not depend on the amount of exported data.
+     *  A file name ending in ".gz" results in compressed output.
+     *
+     *  @param filename Name of file to create
+     *  @return {@link OutputStream}
+     *  @throws Exception on error
+     */
+    protected static OutputStream openOutput(final String filename) throws Exception
+    {
+        final FileChannel channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        final OutputStream file = Channels.newOutputStream(channel);
+        if (filename.toLowerCase().endsWith(".gz"))
+            return new GZIPOutputStream(file, WRITE_CHUNK_SIZE);
+        return new BufferedOutputStream(file, WRITE_CHUNK_SIZE);
+    }
+
     /** Print file header, gets invoked before <code>performExport</code> */
     protected void printExportInfo(final PrintStream out)
     {
@@ -199,7 +249,11 @@ abstract public class ExportJob extends Job
         out.println(comment);
     }
 
-    /** @param item ModelItem
+    /** Samples from archive data sources are read ahead in a background thread,
+     *  so iterators for several items fetch their data in parallel.
+     *  Caller should close the iterator when done.
+     *
+     *  @param item ModelItem
      *  @return ValueIterator for samples in the item
      *  @throws Exception on error
      */
@@ -243,7 +297,11 @@ abstract public class ExportJob extends Job
         // If none of the iterators work out, report the first error that we found
         if (iters.isEmpty()  &&  error != null)
             throw error;
-        // Return a merging iterator
-        return new MergingValueIterator(iters.toArray(new ValueIterator[iters.size()]));
+        // Return a merging iterator, reading ahead
+        final PrefetchValueIterator prefetch = new PrefetchValueIterator(
+                new MergingValueIterator(iters.toArray(new ValueIterator[iters.size()])),
+                Activator.getThreadPool(), PREFETCH_CHUNKS, PREFETCH_CHUNK_SIZE);
+        prefetches.add(prefetch);
+        return prefetch;
     }
 }
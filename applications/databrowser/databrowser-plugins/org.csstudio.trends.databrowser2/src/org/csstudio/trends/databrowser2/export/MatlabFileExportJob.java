@@ -9,8 +9,7 @@ package org.csstudio.trends.databrowser2.export;
 
 import java.io.PrintStream;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 import org.csstudio.archive.reader.ValueIterator;
 import org.csstudio.archive.vtype.TimestampHelper;
@@ -36,6 +35,37 @@ public class MatlabFileExportJob extends ExportJob
 {
     final private String filename;
 
+    /** Samples of one channel, kept in primitive arrays
+     *  because the Matlab structure for a channel
+     *  needs all of its samples
+     */
+    private static class ChannelData
+    {
+        long[] seconds = new long[1024];
+        int[] nanos = new int[1024];
+        double[] values = new double[1024];
+        byte[] severities = new byte[1024];
+        int size = 0;
+
+        void add(final VType value)
+        {
+            if (size >= values.length)
+            {
+                final int capacity = values.length * 2;
+                seconds = Arrays.copyOf(seconds, capacity);
+                nanos = Arrays.copyOf(nanos, capacity);
+                values = Arrays.copyOf(values, capacity);
+                severities = Arrays.copyOf(severities, capacity);
+            }
+            final Instant time = VTypeHelper.getTimestamp(value);
+            seconds[size] = time.getEpochSecond();
+            nanos[size] = time.getNano();
+            values[size] = VTypeHelper.toDouble(value);
+            severities[size] = (byte) VTypeHelper.getSeverity(value).ordinal();
+            ++size;
+        }
+    }
+
     public MatlabFileExportJob(final Model model, final Instant start,
             final Instant end, final Source source,
             final int optimize_parameter, final String filename,
@@ -60,20 +90,22 @@ public class MatlabFileExportJob extends ExportJob
         {   // Get data
             monitor.subTask(NLS.bind("Fetching data for {0}", item.getName()));
             final ValueIterator iter = createValueIterator(item);
-            final List<Instant> times = new ArrayList<Instant>();
-            final List<Double> values = new ArrayList<Double>();
-            final List<AlarmSeverity> severities = new ArrayList<AlarmSeverity>();
-            while (iter.hasNext()  &&  !monitor.isCanceled())
+            final ChannelData data = new ChannelData();
+            try
+            {
+                while (iter.hasNext()  &&  !monitor.isCanceled())
+                {
+                    data.add(iter.next());
+                    if (data.size % PROGRESS_UPDATE_LINES == 0)
+                        monitor.subTask(NLS.bind("{0}: Obtained {1} samples", item.getName(), data.size));
+                }
+            }
+            finally
             {
-                final VType value = iter.next();
-                times.add(VTypeHelper.getTimestamp(value));
-                values.add(VTypeHelper.toDouble(value));
-                severities.add(VTypeHelper.getSeverity(value));
-                if (values.size() % PROGRESS_UPDATE_LINES == 0)
-                    monitor.subTask(NLS.bind("{0}: Obtained {1} samples", item.getName(), values.size()));
+                iter.close();
             }
             // Add to Matlab file
-            final MLStructure struct = createMLStruct(i++, item.getName(), times, values, severities);
+            final MLStructure struct = createMLStruct(i++, item.getName(), data);
             writer.write(struct);
         }
 
@@ -93,27 +125,23 @@ public class MatlabFileExportJob extends ExportJob
     /** Create ML Structure with data for a channel
      *  @param index Index of channel in model
      *  @param name Channel name
-     *  @param times Time stamps
-     *  @param values Values
-     *  @param severities Severities
+     *  @param data Time stamps, values, severities
      *  @return {@link MLStructure}
      */
-    private MLStructure createMLStruct(final int index, final String name,
-            final List<Instant> times,
-            final List<Double> values,
-            final List<AlarmSeverity> severities)
+    private MLStructure createMLStruct(final int index, final String name, final ChannelData data)
     {
         final MLStructure struct = new MLStructure("channel" + index, new int[] { 1, 1 });
-        final int N = values.size();
+        final int N = data.size;
         final int[] dims = new int[] { N, 1 };
         final MLCell time = new MLCell(null, dims);
         final MLDouble value = new MLDouble(null, dims);
         final MLCell severity = new MLCell(null, dims);
+        final AlarmSeverity[] severities = AlarmSeverity.values();
         for (int i=0; i<N; ++i)
         {
-            setCellText(time, i, TimestampHelper.format(times.get(i)));
-            value.set(values.get(i), i);
-            setCellText(severity, i, severities.get(i).toString());
+            setCellText(time, i, TimestampHelper.format(Instant.ofEpochSecond(data.seconds[i], data.nanos[i])));
+            value.set(data.values[i], i);
+            setCellText(severity, i, severities[data.severities[i]].toString());
         }
         struct.setField("name", new MLChar(null, name));
         struct.setField("time", time);
@@ -90,6 +90,7 @@ public class MatlabScriptExportJob extends ExportJob
                 if (line_count % PROGRESS_UPDATE_LINES == 0)
                     monitor.subTask(NLS.bind("{0}: Wrote {1} samples", item.getName(), line_count));
             }
+            values.close();
 
             out.println(comment + "Convert time stamps into 'date numbers'");
             out.println("tn=datenum(t, 'yyyy/mm/dd HH:MM:SS.FFF');");
@@ -9,6 +9,8 @@ package org.csstudio.trends.databrowser2.export;
 
 import java.io.PrintStream;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.csstudio.archive.reader.ValueIterator;
 import org.csstudio.archive.vtype.TimestampHelper;
@@ -54,29 +56,45 @@ public class PlainExportJob extends ExportJob
     protected void performExport(final IProgressMonitor monitor,
                                  final PrintStream out) throws Exception
     {
-        int count = 0;
+        final List<ModelItem> items = new ArrayList<>();
         for (ModelItem item : model.getItems())
+            items.add(item);
+        // Fetch data for the next item while writing the current one
+        ValueIterator next = null;
+        for (int count = 0; count < items.size(); ++count)
         {   // Item header
+            final ModelItem item = items.get(count);
             if (count > 0)
                 out.println();
             printItemInfo(out, item);
             // Get data
             monitor.subTask(NLS.bind("Fetching data for {0}", item.getName()));
-            final ValueIterator values = createValueIterator(item);
-            // Dump all values
-            out.println(comment + Messages.TimeColumn + Messages.Export_Delimiter + formatter.getHeader());
-            long line_count = 0;
-            while (values.hasNext()  &&  !monitor.isCanceled())
+            final ValueIterator values = next != null ? next : createValueIterator(item);
+            next = count+1 < items.size() ? createValueIterator(items.get(count+1)) : null;
+            try
             {
-                final VType value = values.next();
+                // Dump all values
+                out.println(comment + Messages.TimeColumn + Messages.Export_Delimiter + formatter.getHeader());
+                long line_count = 0;
+                while (values.hasNext()  &&  !monitor.isCanceled())
+                {
+                    final VType value = values.next();
 
-                final String time = TimestampHelper.format(VTypeHelper.getTimestamp(value));
-                out.println(time + Messages.Export_Delimiter + formatter.format(value));
-                ++line_count;
-                if (++line_count % PROGRESS_UPDATE_LINES == 0)
-                    monitor.subTask(NLS.bind("{0}: Wrote {1} samples", item.getName(), line_count));
+                    final String time = TimestampHelper.format(VTypeHelper.getTimestamp(value));
+                    out.println(time + Messages.Export_Delimiter + formatter.format(value));
+                    ++line_count;
+                    if (++line_count % PROGRESS_UPDATE_LINES == 0)
+                        monitor.subTask(NLS.bind("{0}: Wrote {1} samples", item.getName(), line_count));
+                }
             }
-            ++count;
+            finally
+            {
+                values.close();
+            }
+            if (monitor.isCanceled())
+                break;
         }
+        if (next != null)
+            next.close();
     }
 }
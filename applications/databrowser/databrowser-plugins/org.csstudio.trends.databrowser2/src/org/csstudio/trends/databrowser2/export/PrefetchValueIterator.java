@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser2.export;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.csstudio.archive.reader.ValueIterator;
+import org.diirt.vtype.VType;
+
+/** {@link ValueIterator} that reads ahead in a background thread
+ *
+ *  <p>Samples of the underlying iterator are read in chunks
+ *  into a bounded queue.
+ *  Several of these iterators fetch data for their channels
+ *  in parallel, while memory use is limited to
+ *  <code>chunks * chunk_size</code> samples per iterator
+ *  no matter how much data the underlying iterator returns.
+ *
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class PrefetchValueIterator implements ValueIterator
+{
+    /** Marker for end of data */
+    final private static List<VType> END = Collections.emptyList();
+
+    final private ValueIterator iter;
+    final private int chunk_size;
+    final private BlockingQueue<List<VType>> queue;
+    final private Future<?> reader;
+
+    /** Set by reader thread when the underlying iterator failed */
+    private volatile Exception error = null;
+
+    /** Set to stop the reader thread */
+    private volatile boolean closed = false;
+
+    /** Current chunk and index of next value in it */
+    private List<VType> chunk = null;
+    private int index = 0;
+
+    /** @param iter Underlying iterator. Will be closed by this iterator
+     *  @param executor Executor for reading in background
+     *  @param chunks Number of chunks to read ahead
+     *  @param chunk_size Samples per chunk
+     */
+    public PrefetchValueIterator(final ValueIterator iter, final ExecutorService executor,
+                                 final int chunks, final int chunk_size)
+    {
+        this.iter = iter;
+        this.chunk_size = chunk_size;
+        queue = new ArrayBlockingQueue<>(chunks);
+        reader = executor.submit(this::read);
+    }
+
+    /** Read samples into queue, runs in background */
+    private void read()
+    {
+        List<VType> values = new ArrayList<>(chunk_size);
+        try
+        {
+            while (! closed  &&  iter.hasNext())
+            {
+                values.add(iter.next());
+                if (values.size() >= chunk_size)
+                {
+                    if (! put(values))
+                        return;
+                    values = new ArrayList<>(chunk_size);
+                }
+            }
+        }
+        catch (Exception ex)
+        {
+            error = ex;
+        }
+        // Pass remaining values, then END marker, unless closed
+        if (! values.isEmpty()  &&  ! put(values))
+            return;
+        put(END);
+    }
+
+    /** @param values Values to add to queue
+     *  @return <code>false</code> if iterator was closed
+     */
+    private boolean put(final List<VType> values)
+    {
+        try
+        {
+            while (! closed)
+                if (queue.offer(values, 1, TimeUnit.SECONDS))
+                    return true;
+        }
+        catch (InterruptedException ex)
+        {
+            // Treat like close
+        }
+        return false;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean hasNext()
+    {
+        while (chunk == null  ||  index >= chunk.size())
+        {
+            if (chunk == END)   // next() will report error
+                return error != null;
+            try
+            {
+                chunk = queue.take();
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                chunk = END;
+            }
+            index = 0;
+        }
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public VType next() throws Exception
+    {
+        if (! hasNext())
+            throw new Exception("End of samples");
+        if (chunk == END)
+        {   // Report error once
+            final Exception ex = error;
+            error = null;
+            throw ex;
+        }
+        return chunk.get(index++);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close()
+    {
+        if (closed)
+            return;
+        closed = true;
+        queue.clear();
+        try
+        {
+            reader.get();
+        }
+        catch (Exception ex)
+        {
+            // Ignore, reader reports errors via 'error'
+        }
+        iter.close();
+    }
+}
@@ -62,21 +62,27 @@ public class SpreadsheetExportJob extends PlainExportJob
         final SpreadsheetIterator sheet = new SpreadsheetIterator(iters.toArray(new ValueIterator[iters.size()]));
         // Dump the spreadsheet lines
         long line_count = 0;
-
-        while (sheet.hasNext()  &&  !monitor.isCanceled())
+        try
         {
-            final Instant time = sheet.getTime();
-            final VType line[] = sheet.next();
-            out.print(TimestampHelper.format(time));
+            while (sheet.hasNext()  &&  !monitor.isCanceled())
+            {
+                final Instant time = sheet.getTime();
+                final VType line[] = sheet.next();
+                out.print(TimestampHelper.format(time));
 
-            for (int i=0; i<line.length; ++i)
-                out.print(Messages.Export_Delimiter + formatter.format(line[i]));
-            out.println();
-            ++line_count;
-            if ((line_count % PROGRESS_UPDATE_LINES) == 0)
-                monitor.subTask(NLS.bind("Wrote {0} samples", line_count));
-            if (monitor.isCanceled())
-                break;
+                for (int i=0; i<line.length; ++i)
+                    out.print(Messages.Export_Delimiter + formatter.format(line[i]));
+                out.println();
+                ++line_count;
+                if ((line_count % PROGRESS_UPDATE_LINES) == 0)
+                    monitor.subTask(NLS.bind("Wrote {0} samples", line_count));
+                if (monitor.isCanceled())
+                    break;
+            }
+        }
+        finally
+        {
+            sheet.close();
         }
     }
 }
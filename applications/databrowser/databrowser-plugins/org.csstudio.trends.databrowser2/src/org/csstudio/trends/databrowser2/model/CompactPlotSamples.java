@@ -0,0 +1,476 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser2.model;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.csstudio.archive.vtype.ArchiveVNumber;
+import org.csstudio.archive.vtype.ArchiveVStatistics;
+import org.csstudio.archive.vtype.MetaDataHelper;
+import org.csstudio.archive.vtype.VTypeHelper;
+import org.diirt.vtype.AlarmSeverity;
+import org.diirt.vtype.Display;
+import org.diirt.vtype.VNumber;
+import org.diirt.vtype.VStatistics;
+import org.diirt.vtype.VString;
+import org.diirt.vtype.VType;
+import org.diirt.vtype.ValueFactory;
+
+/** Ring buffer for scalar numeric samples, kept in primitive arrays.
+ *  <p>
+ *  Holds time stamp, value and severity of each sample
+ *  in arrays of primitives.
+ *  Source, status and meta data are shared via lookup tables,
+ *  which drop entries that are no longer used when they fill up.
+ *  {@link PlotSample}s are created when accessed,
+ *  using the same number type as the original sample.
+ *  <p>
+ *  Accepts numeric scalars, statistics, and the 'disconnected'
+ *  info samples that have a text and UNDEFINED severity.
+ *  Other samples are refused by {@link #add(PlotSample)}.
+ *  <p>
+ *  The plot reads time stamp, value and statistics
+ *  directly from the arrays, without creating {@link PlotSample}s.
+ *
+ *  @author Kay Kasemir
+ */
+public class CompactPlotSamples extends PlotSamples
+{
+    // No locking in here, all access is via PVSamples
+
+    /** Sample types */
+    final private static byte DOUBLE = 0, LONG = 1, STATISTICS = 2, INFO = 3,
+                              FLOAT = 4, INTEGER = 5, SHORT = 6, BYTE = 7;
+
+    /** Maximum number of entries in lookup tables */
+    final private static int MAX_TABLE_SIZE = Short.MAX_VALUE;
+
+    final private static AlarmSeverity[] SEVERITIES = AlarmSeverity.values();
+
+    /** Waveform index */
+    final private AtomicInteger waveform_index;
+
+    // Ring buffer indices as in RingBuffer:
+    // [start], [start+1], ..., [start+size-1]
+    // with wrap-around at [capacity-1].
+    private int start = 0, size = 0, capacity;
+
+    /** Time stamp, nanoseconds since epoch */
+    private long[] nanos;
+    private double[] values;
+    private byte[] types;
+    private byte[] severities;
+    /** Indices into 'strings' for source and status resp. info text */
+    private short[] sources, stati;
+    /** Index into 'displays' */
+    private short[] display_ids;
+
+    /** Statistics, allocated when first needed */
+    private double[] mins = null, maxs = null, stddevs = null;
+    private int[] counts = null;
+
+    /** Lookup table for sources and stati */
+    final private List<String> strings = new ArrayList<>();
+    final private Map<String, Short> string_ids = new HashMap<>();
+
+    /** Lookup table for meta data */
+    final private List<Display> displays = new ArrayList<>();
+
+    /** @param waveform_index Waveform index
+     *  @param capacity Number of samples to keep
+     */
+    CompactPlotSamples(final AtomicInteger waveform_index, final int capacity)
+    {
+        this.waveform_index = waveform_index;
+        allocate(capacity);
+    }
+
+    /** @param waveform_index Waveform index
+     *  @param samples Samples
+     *  @return Compact copy of the samples,
+     *          or <code>null</code> if they cannot all be held in compact form
+     */
+    static CompactPlotSamples of(final AtomicInteger waveform_index, final PlotSample[] samples)
+    {
+        final CompactPlotSamples compact = new CompactPlotSamples(waveform_index, samples.length);
+        for (PlotSample sample : samples)
+            if (! compact.add(sample))
+                return null;
+        return compact;
+    }
+
+    /** @param capacity Capacity of arrays */
+    private void allocate(final int capacity)
+    {
+        this.capacity = capacity;
+        nanos = new long[capacity];
+        values = new double[capacity];
+        types = new byte[capacity];
+        severities = new byte[capacity];
+        sources = new short[capacity];
+        stati = new short[capacity];
+        display_ids = new short[capacity];
+        mins = maxs = stddevs = null;
+        counts = null;
+    }
+
+    /** @return Maximum number of samples in ring buffer */
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    /** Set new capacity.
+     *  <p>
+     *  Tries to preserve the newest samples.
+     *  @param new_capacity New sample count capacity
+     *  @throws Exception on out-of-memory error
+     */
+    public void setCapacity(final int new_capacity) throws Exception
+    {
+        final List<PlotSample> keep = new ArrayList<>(Math.min(size, new_capacity));
+        for (int i=Math.max(0, size - new_capacity); i<size; ++i)
+            keep.add(get(i));
+        try
+        {
+            allocate(new_capacity);
+        }
+        catch (OutOfMemoryError err)
+        {
+            throw new Exception("Out of memory: " + err.getMessage()); //$NON-NLS-1$
+        }
+        start = size = 0;
+        for (PlotSample sample : keep)
+            add(sample);
+    }
+
+    /** @param text Text
+     *  @return Index of text in table or -1 if table is full
+     */
+    private int getStringID(final String text)
+    {
+        final Short id = string_ids.get(text);
+        if (id != null)
+            return id;
+        if (strings.size() >= MAX_TABLE_SIZE)
+            return -1;
+        final short new_id = (short) strings.size();
+        strings.add(text);
+        string_ids.put(text, new_id);
+        return new_id;
+    }
+
+    /** @param display Meta data
+     *  @return Index of display in table or -1 if table is full
+     */
+    private int getDisplayID(final Display display)
+    {
+        // Most samples use the same meta data as the previous one
+        for (int i=displays.size()-1; i>=0; --i)
+            if (MetaDataHelper.equals(displays.get(i), display))
+                return i;
+        if (displays.size() >= MAX_TABLE_SIZE)
+            return -1;
+        displays.add(ValueFactory.newDisplay(display.getLowerDisplayLimit(), display.getLowerAlarmLimit(),
+                display.getLowerWarningLimit(), display.getUnits(), display.getFormat(),
+                display.getUpperWarningLimit(), display.getUpperAlarmLimit(), display.getUpperDisplayLimit(),
+                display.getLowerCtrlLimit(), display.getUpperCtrlLimit()));
+        return displays.size()-1;
+    }
+
+    /** @param sample Sample to add to ring buffer
+     *  @return <code>true</code> if sample was added,
+     *          <code>false</code> if it cannot be held in compact form
+     */
+    boolean add(final PlotSample sample)
+    {
+        final VType value = sample.getVType();
+        final byte type;
+        final String status;
+        final Display display;
+        if (value instanceof VNumber)
+        {
+            final Number number = ((VNumber) value).getValue();
+            if (number instanceof Double)
+                type = DOUBLE;
+            else if (number instanceof Float)
+                type = FLOAT;
+            else if (number instanceof Integer)
+                type = INTEGER;
+            else if (number instanceof Short)
+                type = SHORT;
+            else if (number instanceof Byte)
+                type = BYTE;
+            else if (number instanceof Long  &&  (long) number.doubleValue() == number.longValue())
+                type = LONG;
+            else // Long beyond precision of double, or other Number
+                return false;
+            status = ((VNumber) value).getAlarmName();
+            display = (Display) value;
+        }
+        else if (value instanceof VStatistics)
+        {
+            type = STATISTICS;
+            status = ((VStatistics) value).getAlarmName();
+            display = (Display) value;
+        }
+        else if (value instanceof VString  &&  VTypeHelper.getSeverity(value) == AlarmSeverity.UNDEFINED)
+        {
+            type = INFO;
+            status = ((VString) value).getValue();
+            display = null;
+        }
+        else
+            return false;
+
+        int source_id = getStringID(sample.getSource());
+        int status_id = getStringID(status);
+        int display_id = display == null ? 0 : getDisplayID(display);
+        if (source_id < 0  ||  status_id < 0  ||  display_id < 0)
+        {   // Lookup table is full: Remove unused entries, try again
+            if (! compactTables())
+                return false;
+            source_id = getStringID(sample.getSource());
+            status_id = getStringID(status);
+            display_id = display == null ? 0 : getDisplayID(display);
+            if (source_id < 0  ||  status_id < 0  ||  display_id < 0)
+                return false;
+        }
+
+        // Obtain index of next element
+        if (size >= capacity)
+        {
+            ++start; // Overwrite oldest element
+            if (start >= capacity)
+                start = 0;
+        }
+        else
+            ++size; // Add to end of buffer
+        final int i = (start + size - 1) % capacity;
+
+        final Instant time = sample.getPosition();
+        nanos[i] = time.getEpochSecond() * 1000000000L + time.getNano();
+        types[i] = type;
+        severities[i] = (byte) VTypeHelper.getSeverity(value).ordinal();
+        sources[i] = (short) source_id;
+        stati[i] = (short) status_id;
+        display_ids[i] = (short) display_id;
+        if (type == STATISTICS)
+        {
+            final VStatistics stats = (VStatistics) value;
+            if (mins == null)
+            {
+                mins = new double[capacity];
+                maxs = new double[capacity];
+                stddevs = new double[capacity];
+                counts = new int[capacity];
+            }
+            values[i] = stats.getAverage();
+            mins[i] = stats.getMin();
+            maxs[i] = stats.getMax();
+            stddevs[i] = stats.getStdDev();
+            counts[i] = stats.getNSamples();
+        }
+        else if (type == INFO)
+            values[i] = Double.NaN;
+        else
+            values[i] = ((VNumber) value).getValue().doubleValue();
+        have_new_samples.set(true);
+        return true;
+    }
+
+    /** Rebuild lookup tables with only those entries used by samples in the buffer
+     *  @return <code>true</code> if the tables now have room for new entries
+     */
+    private boolean compactTables()
+    {
+        // Map old table indices to new ones, -1 for unused entries
+        final short[] string_map = new short[strings.size()];
+        final short[] display_map = new short[displays.size()];
+        Arrays.fill(string_map, (short) -1);
+        Arrays.fill(display_map, (short) -1);
+        final List<String> new_strings = new ArrayList<>();
+        final List<Display> new_displays = new ArrayList<>();
+        for (int n=0; n<size; ++n)
+        {
+            final int i = (start + n) % capacity;
+            if (string_map[sources[i]] < 0)
+            {
+                string_map[sources[i]] = (short) new_strings.size();
+                new_strings.add(strings.get(sources[i]));
+            }
+            if (string_map[stati[i]] < 0)
+            {
+                string_map[stati[i]] = (short) new_strings.size();
+                new_strings.add(strings.get(stati[i]));
+            }
+            if (types[i] != INFO  &&  display_map[display_ids[i]] < 0)
+            {
+                display_map[display_ids[i]] = (short) new_displays.size();
+                new_displays.add(displays.get(display_ids[i]));
+            }
+        }
+        if (new_strings.size() >= MAX_TABLE_SIZE  ||  new_displays.size() >= MAX_TABLE_SIZE)
+            return false; // All entries are in use
+
+        for (int n=0; n<size; ++n)
+        {
+            final int i = (start + n) % capacity;
+            sources[i] = string_map[sources[i]];
+            stati[i] = string_map[stati[i]];
+            if (types[i] != INFO)
+                display_ids[i] = display_map[display_ids[i]];
+        }
+        strings.clear();
+        strings.addAll(new_strings);
+        string_ids.clear();
+        for (int id=0; id<strings.size(); ++id)
+            string_ids.put(strings.get(id), (short) id);
+        displays.clear();
+        displays.addAll(new_displays);
+        return true;
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    /** @param i Sample index
+     *  @return Index into arrays
+     */
+    private int index(final int i)
+    {
+        if (i<0 || i >= size)
+            throw new ArrayIndexOutOfBoundsException(i);
+        return (start + i) % capacity;
+    }
+
+    /** @param i Index into arrays
+     *  @return Time stamp of that sample
+     */
+    private Instant getTime(final int i)
+    {
+        return Instant.ofEpochSecond(Math.floorDiv(nanos[i], 1000000000L),
+                                     Math.floorMod(nanos[i], 1000000000L));
+    }
+
+    @Override
+    public PlotSample get(int i)
+    {
+        i = index(i);
+        final Instant time = getTime(i);
+        final AlarmSeverity severity = SEVERITIES[severities[i]];
+        final String source = strings.get(sources[i]);
+        final String status = strings.get(stati[i]);
+        final VType value;
+        switch (types[i])
+        {
+        case INFO:
+            value = ValueFactory.newVString(status, ValueFactory.newAlarm(severity, status), ValueFactory.newTime(time));
+            return new PlotSample(waveform_index, source, value, status);
+        case STATISTICS:
+            value = new ArchiveVStatistics(time, severity, status, displays.get(display_ids[i]),
+                                           values[i], mins[i], maxs[i], stddevs[i], counts[i]);
+            break;
+        default:
+            value = new ArchiveVNumber(time, severity, status, displays.get(display_ids[i]), getNumber(i));
+        }
+        return new PlotSample(waveform_index, source, value);
+    }
+
+    @Override
+    public Instant getPosition(final int i)
+    {
+        return getTime(index(i));
+    }
+
+    @Override
+    public double getValue(final int i)
+    {
+        final int index = index(i);
+        // Scalars have no value for other waveform elements
+        if (waveform_index.get() != 0)
+            return Double.NaN;
+        return values[index];
+    }
+
+    @Override
+    public double getStdDev(final int i)
+    {
+        final int index = index(i);
+        return isStatistics(index) ? stddevs[index] : Double.NaN;
+    }
+
+    @Override
+    public double getMin(final int i)
+    {
+        final int index = index(i);
+        return isStatistics(index) ? mins[index] : Double.NaN;
+    }
+
+    @Override
+    public double getMax(final int i)
+    {
+        final int index = index(i);
+        return isStatistics(index) ? maxs[index] : Double.NaN;
+    }
+
+    @Override
+    AlarmSeverity getSeverity(final int i)
+    {
+        return SEVERITIES[severities[index(i)]];
+    }
+
+    /** @param i Index into arrays
+     *  @return <code>true</code> if statistics apply to that sample
+     */
+    private boolean isStatistics(final int i)
+    {   // As in PlotSample, statistics are only used for the first waveform element
+        return types[i] == STATISTICS  &&  waveform_index.get() == 0;
+    }
+
+    /** @param i Index into arrays of a {@link VNumber} sample
+     *  @return Value with original number type
+     */
+    private Number getNumber(final int i)
+    {
+        switch (types[i])
+        {
+        case LONG:
+            return Long.valueOf((long) values[i]);
+        case INTEGER:
+            return Integer.valueOf((int) values[i]);
+        case SHORT:
+            return Short.valueOf((short) values[i]);
+        case BYTE:
+            return Byte.valueOf((byte) values[i]);
+        case FLOAT:
+            return Float.valueOf((float) values[i]);
+        default:
+            return Double.valueOf(values[i]);
+        }
+    }
+
+    /** Delete all samples */
+    public void clear()
+    {
+        start = size = 0;
+        strings.clear();
+        string_ids.clear();
+        displays.clear();
+        have_new_samples.set(true);
+    }
+}
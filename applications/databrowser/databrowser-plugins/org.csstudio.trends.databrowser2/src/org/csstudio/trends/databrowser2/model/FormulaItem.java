@@ -10,23 +10,18 @@ package org.csstudio.trends.databrowser2.model;
 import java.io.PrintWriter;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.csstudio.apputil.formula.Formula;
 import org.csstudio.apputil.formula.VariableNode;
 import org.csstudio.apputil.xml.DOMHelper;
 import org.csstudio.apputil.xml.XMLWriter;
-import org.csstudio.archive.vtype.ArchiveVNumber;
-import org.csstudio.archive.vtype.ArchiveVStatistics;
-import org.csstudio.archive.vtype.ArchiveVType;
 import org.csstudio.archive.vtype.VTypeHelper;
-import org.csstudio.trends.databrowser2.Messages;
+import org.csstudio.swt.rtplot.data.PlotDataSearch;
 import org.csstudio.trends.databrowser2.persistence.XMLPersistence;
-import org.diirt.vtype.AlarmSeverity;
-import org.diirt.vtype.Display;
 import org.diirt.vtype.VStatistics;
 import org.diirt.vtype.VType;
-import org.diirt.vtype.ValueFactory;
 import org.w3c.dom.Element;
 
 /** A {@link Model} item that implements a formula.
@@ -64,8 +59,105 @@ public class FormulaItem extends ModelItem
     private VariableNode variables[];
 
     /** Samples of the formula, computed from inputs.
-     *  Access must synchronize on samples (done inside PlotSampleArray) */
-    private PlotSampleArray samples = new PlotSampleArray();
+     *  Access must lock samples */
+    final private FormulaSamples samples = new FormulaSamples();
+
+    /** Number of computed samples that remain valid
+     *  when inputs receive additional samples.
+     *  @see #formula for synchronization
+     */
+    private int valid_lines;
+
+    /** For each input, state at the start of line <code>valid_lines</code>:
+     *  Index of next sample, current min/val/max.
+     *  @see #formula for synchronization
+     */
+    private int next[];
+    private double cur_min[], cur_val[], cur_max[];
+
+    /** For each input, time stamp of first sample and time stamp, value
+     *  of sample <code>next-1</code>, used to detect changes in samples
+     *  that have already been used.
+     *  @see #formula for synchronization
+     */
+    private Instant first_time[], check_time[];
+    private double check_value[];
+
+    /** Search for the last used sample of an input */
+    final private PlotDataSearch<Instant> search = new PlotDataSearch<>();
+
+    /** Number of lines for which the formula is evaluated at once */
+    final private static int BLOCK_SIZE = 4096;
+
+    /** Results of the formula */
+    private static class Results
+    {
+        final List<Instant> times = new ArrayList<>();
+        double vals[] = new double[0], mins[] = new double[0], maxs[] = new double[0];
+        boolean stats[] = new boolean[0];
+
+        /** @param count Number of lines to add
+         *  @return Offset of the added lines
+         */
+        int grow(final int count)
+        {
+            final int offset = times.size() - count;
+            if (times.size() > vals.length)
+            {
+                final int capacity = Math.max(times.size(), vals.length * 2);
+                vals = Arrays.copyOf(vals, capacity);
+                mins = Arrays.copyOf(mins, capacity);
+                maxs = Arrays.copyOf(maxs, capacity);
+                stats = Arrays.copyOf(stats, capacity);
+            }
+            return offset;
+        }
+    }
+
+    /** Samples read from an input */
+    private static class InputData
+    {
+        /** Index of first sample that was read */
+        final int start;
+        /** Number of used samples that were removed from the start */
+        final int dropped;
+        /** Time stamp of first sample */
+        final Instant first;
+        /** Number of samples that were read */
+        final int count;
+        final Instant times[];
+        final double mins[], vals[], maxs[];
+        /** Does sample have min/max? */
+        final boolean stats[];
+
+        InputData(final PlotSamples samples, final int start, final int dropped)
+        {
+            this.start = start;
+            this.dropped = dropped;
+            first = samples.size() > 0 ? VTypeHelper.getTimestamp(samples.get(0).getVType()) : null;
+            count = Math.max(0, samples.size() - start);
+            times = new Instant[count];
+            mins = new double[count];
+            vals = new double[count];
+            maxs = new double[count];
+            stats = new boolean[count];
+            for (int i=0; i<count; ++i)
+            {
+                final VType value = samples.get(start + i).getVType();
+                times[i] = VTypeHelper.getTimestamp(value);
+                vals[i] = getValue(value);
+                if (value instanceof VStatistics)
+                {
+                    final VStatistics mmv = (VStatistics)value;
+                    mins[i] = mmv.getMin();
+                    maxs[i] = mmv.getMax();
+                    stats[i] = true;
+                }
+                else
+                    mins[i] = maxs[i] = Double.NaN;
+            }
+        }
+    }
 
     /** Initialize formula
      *  @param name Name of the Formula item
@@ -122,139 +214,338 @@ public class FormulaItem extends ModelItem
             for (int i=0; i<variables.length; ++i)
                 variables[i] = new VariableNode(inputs[i].getVariableName());
             this.formula = new Formula(expression, variables);
+            reset();
         }
         fireItemLookChanged();
     }
 
+    /** @return Number of computed samples that remain valid
+     *          when inputs receive additional samples
+     */
+    synchronized int getValidLines()
+    {
+        return valid_lines;
+    }
+
+    /** Reset to re-compute from the first sample of each input */
+    private void reset()
+    {
+        valid_lines = 0;
+        final int N = inputs.length;
+        next = new int[N];
+        cur_min = new double[N];
+        cur_val = new double[N];
+        cur_max = new double[N];
+        // Initially, none have any data
+        Arrays.fill(cur_min, Double.NaN);
+        Arrays.fill(cur_val, Double.NaN);
+        Arrays.fill(cur_max, Double.NaN);
+        first_time = new Instant[N];
+        check_time = new Instant[N];
+        check_value = new double[N];
+    }
+
+    /** @param value Sample of an input
+     *  @return Numeric value, using the average for statistics, NaN for any non-number
+     */
+    private static double getValue(final VType value)
+    {
+        if (value instanceof VStatistics)
+            return ((VStatistics)value).getAverage();
+        final double number = VTypeHelper.toDouble(value);
+        if (Double.isInfinite(number))
+            return Double.NaN;
+        return number;
+    }
+
+    /** Read samples of inputs that have not been used
+     *  @return Samples of each input, or <code>null</code> if
+     *          samples that were already used have changed
+     */
+    private InputData[] readInputs()
+    {
+        final InputData data[] = new InputData[inputs.length];
+        for (int i=0; i<inputs.length; ++i)
+        {
+            final PlotSamples samples = inputs[i].getItem().getSamples();
+            samples.getLock().lock();
+            try
+            {
+                final int used = next[i];
+                int dropped = 0;
+                if (used > 0)
+                {   // Same first sample, same last used sample?
+                    if (samples.size() < used  ||
+                        ! VTypeHelper.getTimestamp(samples.get(0).getVType()).equals(first_time[i])  ||
+                        ! isLastUsed(samples, used-1, i))
+                    {   // Locate last used sample,
+                        // which moved down if samples were removed from the start
+                        final int last = search.findSampleLessOrEqual(samples, check_time[i]);
+                        if (last < 0  ||  ! isLastUsed(samples, last, i))
+                            return null;
+                        // Ambiguous if more samples have the same time stamp
+                        if (last+1 < samples.size()  &&  samples.getPosition(last+1).equals(check_time[i]))
+                            return null;
+                        dropped = used-1 - last;
+                        if (dropped <= 0)
+                            return null;
+                    }
+                }
+                data[i] = new InputData(samples, used - dropped, dropped);
+            }
+            finally
+            {
+                samples.getLock().unlock();
+            }
+        }
+        return data;
+    }
+
+    /** @param samples Samples of an input
+     *  @param index Index of a sample
+     *  @param input Index of the input
+     *  @return <code>true</code> if sample is the last one that was used for the input
+     */
+    private boolean isLastUsed(final PlotSamples samples, final int index, final int input)
+    {
+        final VType last = samples.get(index).getVType();
+        return VTypeHelper.getTimestamp(last).equals(check_time[input])  &&
+               Double.compare(getValue(last), check_value[input]) == 0;
+    }
+
+    /** Remove lines for samples that were removed from the start of inputs
+     *
+     *  <p>Lines before the first remaining sample of such an input
+     *  are removed, because they lack a value for that input.
+     *  Following lines remain valid.
+     *
+     *  @param data Samples read from each input
+     */
+    private void removeDropped(final InputData data[])
+    {
+        Instant start = null;
+        for (int i=0; i<data.length; ++i)
+        {
+            if (data[i].dropped <= 0)
+                continue;
+            next[i] -= data[i].dropped;
+            first_time[i] = data[i].first;
+            if (start == null  ||  data[i].first.compareTo(start) > 0)
+                start = data[i].first;
+        }
+        if (start == null)
+            return;
+        samples.lockForWriting();
+        try
+        {
+            valid_lines -= samples.removeBefore(start);
+        }
+        finally
+        {
+            samples.unlockForWriting();
+        }
+    }
+
+    /** Evaluate formula for a block of lines
+     *  @param count Number of lines in block
+     *  @param line_min Minimum of each input for each line
+     *  @param line_val Value of each input for each line
+     *  @param line_max Maximum of each input for each line
+     *  @param line_stats Use min/max for line?
+     *  @param results Results to which block is added
+     */
+    private void evaluate(final int count, final double line_min[][], final double line_val[][],
+                          final double line_max[][], final boolean line_stats[], final Results results)
+    {
+        final int N = variables.length;
+        final int offset = results.grow(count);
+        final double result[] = new double[count];
+        try
+        {
+            for (int i = 0; i < N; i++)
+                variables[i].setValues(line_val[i]);
+            formula.eval(0, count, result);
+            System.arraycopy(result, 0, results.vals, offset, count);
+            System.arraycopy(line_stats, 0, results.stats, offset, count);
+
+            boolean any_min_max = false;
+            for (int l = 0; l < count  &&  !any_min_max; l++)
+                any_min_max = line_stats[l];
+            if (any_min_max)
+            {
+                for (int i = 0; i < N; i++)
+                    variables[i].setValues(line_min[i]);
+                formula.eval(0, count, result);
+                System.arraycopy(result, 0, results.mins, offset, count);
+                for (int i = 0; i < N; i++)
+                    variables[i].setValues(line_max[i]);
+                formula.eval(0, count, result);
+                System.arraycopy(result, 0, results.maxs, offset, count);
+            }
+        }
+        finally
+        {
+            for (int i = 0; i < N; i++)
+                variables[i].setValues(null);
+        }
+    }
+
     /** Evaluate formula for each input sample
      *  <p>
      *  Iterates over the input samples in a manner of spreadsheet or
      *  staircase-interpolation: An input with a time stamp is valid
      *  until there's a sample with a greater time stamp.
+     *  <p>
+     *  The inputs are aligned into arrays with one element
+     *  per 'line in the spreadsheet', and the formula is evaluated
+     *  for a block of lines at once.
+     *  <p>
+     *  Lines up to the first one where an input ran out of samples
+     *  remain valid when the inputs receive additional samples,
+     *  so the next call only computes the lines after that.
+     *  When samples that were already used are removed
+     *  from the start of a ring buffer, the corresponding lines
+     *  are removed.
+     *  When samples that were already used change in other ways,
+     *  everything is re-computed.
      */
     private void compute()
     {
-        final List<PlotSample> result = new ArrayList<PlotSample>();
-        final Display display = ValueFactory.displayNone();
         // Prevent changes to formula & inputs
         synchronized (this)
         {
-            // 'Current' value for each input or null when no more
-            // In computation loop, values is actually moved to the _next_
-            // value
-            final VType values[] = new VType[inputs.length];
-
-            // 'Current' numeric min/val/max of values
-            final double min[] = new double[inputs.length];
-            final double val[] = new double[inputs.length];
-            final double max[] = new double[inputs.length];
-
-            // Determine first sample for each input
-            boolean more_input = false;
-            for (int i = 0; i < values.length; i++)
+            InputData data[] = readInputs();
+            if (data == null)
             {
-                // Initially, none have any data
-                min[i] = val[i] = max[i] = Double.NaN;
-                // Is there an initial value for any input?
-                values[i] = inputs[i].first();
-                if (values[i] != null)
-                    more_input = true;
+                reset();
+                data = readInputs();
             }
+            else
+                removeDropped(data);
+
+            final int N = inputs.length;
+            // Inputs for a block of lines
+            final double line_min[][] = new double[N][BLOCK_SIZE];
+            final double line_val[][] = new double[N][BLOCK_SIZE];
+            final double line_max[][] = new double[N][BLOCK_SIZE];
+            final boolean line_stats[] = new boolean[BLOCK_SIZE];
+            // Results for all lines
+            final Results results = new Results();
+
+            // 'Current' numeric min/val/max of each input, and position in its data
+            final double min[] = cur_min.clone();
+            final double val[] = cur_val.clone();
+            final double max[] = cur_max.clone();
+            final int pos[] = new int[N];
 
-            // Compute result for each 'line in the spreadsheet'
-            Instant time;
-            while (more_input)
+            // State at the first line where an input has no more data
+            int checkpoint = -1;
+            final int cp_next[] = new int[N];
+            double cp_min[] = min, cp_val[] = val, cp_max[] = max;
+
+            int lines = 0, block = 0;
+            while (true)
             {   // Find oldest time stamp of all the inputs
-                time = null;
-                for (int i = 0; i < values.length; i++)
+                Instant time = null;
+                boolean any_done = false;
+                for (int i = 0; i < N; i++)
                 {
-                    if (values[i] == null)
+                    if (pos[i] >= data[i].count)
+                    {
+                        any_done = true;
                         continue;
-                    final Instant sample_time = VTypeHelper.getTimestamp(values[i]);
+                    }
+                    final Instant sample_time = data[i].times[pos[i]];
                     if (time == null  ||  sample_time.compareTo(time) < 0)
                         time = sample_time;
                 }
-                if (time == null)
-                {   // No input left with any data
-                    more_input = false;
-                    break;
+                if (any_done  &&  checkpoint < 0)
+                {   // Later samples for that input could change this and following lines
+                    checkpoint = lines;
+                    for (int i = 0; i < N; i++)
+                        cp_next[i] = data[i].start + pos[i];
+                    cp_min = min.clone();
+                    cp_val = val.clone();
+                    cp_max = max.clone();
                 }
+                if (time == null) // No input left with any data
+                    break;
 
                 // 'time' now defines the current spreadsheet line.
                 // Set min/max/val to sample from each input for that time.
-                // This might move values[i] resp. the inputs' iterators
-                // to the 'next' sample
                 boolean have_min_max = true;
-                for (int i = 0; i < values.length; i++)
+                for (int i = 0; i < N; i++)
                 {
-                    if (values[i] == null) // No more data
+                    if (pos[i] >= data[i].count) // No more data
                     {
                         min[i] = val[i] = max[i] = Double.NaN;
                         have_min_max = false;
                     }
-                    else if (VTypeHelper.getTimestamp(values[i]).compareTo(time) <= 0)
+                    else if (data[i].times[pos[i]].compareTo(time) <= 0)
                     {   // Input is valid before-and-up-to 'time'
-                        if (values[i] instanceof VStatistics)
-                        {
-                            final VStatistics mmv = (VStatistics)values[i];
-                            min[i] = mmv.getMin();
-                            val[i] = mmv.getAverage();
-                            max[i] = mmv.getMax();
-                        }
-                        else
-                        {
-                            min[i] = max[i] = Double.NaN;
-                            val[i] = VTypeHelper.toDouble(values[i]);
-                            // Use NaN for any non-number
-                            if (Double.isInfinite(val[i]))
-                                val[i] = Double.NaN;
+                        min[i] = data[i].mins[pos[i]];
+                        val[i] = data[i].vals[pos[i]];
+                        max[i] = data[i].maxs[pos[i]];
+                        if (! data[i].stats[pos[i]])
                             have_min_max = false;
-                        }
                         // Move to next input sample
-                        values[i] = inputs[i].next();
+                        ++pos[i];
                     }
                     else
-                    {   // values[i].getTime() > time, so leave min/max/val[i]
-                        // as is until 'time' catches up with the next input sample.
+                    {   // Leave min/max/val[i] as is until 'time' catches up
+                        // with the next input sample.
                         // Just update the have_min_max flag
                         if (Double.isNaN(min[i])  ||  Double.isNaN(max[i]))
                             have_min_max = false;
                     }
+                    line_min[i][block] = min[i];
+                    line_val[i][block] = val[i];
+                    line_max[i][block] = max[i];
                 }
-
-                // Set variables[] from val to get res_val
-                for (int i = 0; i < values.length; i++)
-                    variables[i].setValue(val[i]);
-                // Evaluate formula for these inputs
-                final double res_val = formula.eval();
-                final VType value;
-
-                if (have_min_max)
-                {   // Set variables[] from min
-                    for (int i = 0; i < values.length; i++)
-                        variables[i].setValue(min[i]);
-                    final double res_min = formula.eval();
-                    // Set variables[] from max
-                    for (int i = 0; i < values.length; i++)
-                        variables[i].setValue(max[i]);
-                    final double res_max = formula.eval();
-                    value = new ArchiveVStatistics(time, AlarmSeverity.NONE, Messages.Formula,
-                            display, res_val, res_min, res_max, 0.0, 1);
+                results.times.add(time);
+                line_stats[block] = have_min_max;
+                ++lines;
+                if (++block >= BLOCK_SIZE)
+                {
+                    evaluate(block, line_min, line_val, line_max, line_stats, results);
+                    block = 0;
                 }
-                else
-                {   // No min/max.
-                    if (Double.isNaN(res_val))
-                        value = new ArchiveVNumber(time, AlarmSeverity.INVALID, Messages.Formula,
-                                    display, res_val);
-                    else
-                        value = new ArchiveVNumber(time, AlarmSeverity.NONE, ArchiveVType.STATUS_OK,
-                                    display, res_val);
+            }
+            if (block > 0)
+                evaluate(block, line_min, line_val, line_max, line_stats, results);
+            if (checkpoint < 0)
+                checkpoint = lines;
+
+            // Update PlotSamples
+            samples.lockForWriting();
+            try
+            {
+                samples.update(valid_lines, lines, results.times.toArray(new Instant[lines]),
+                               results.vals, results.mins, results.maxs, results.stats);
+            }
+            finally
+            {
+                samples.unlockForWriting();
+            }
+
+            // Remember state at checkpoint
+            valid_lines += checkpoint;
+            for (int i = 0; i < N; i++)
+            {
+                if (data[i].start == 0  &&  data[i].count > 0)
+                    first_time[i] = data[i].times[0];
+                if (cp_next[i] > next[i])
+                {
+                    final int last = cp_next[i] - 1 - data[i].start;
+                    check_time[i] = data[i].times[last];
+                    check_value[i] = data[i].vals[last];
                 }
-                result.add(new PlotSample(Messages.Formula, value));
+                next[i] = cp_next[i];
             }
+            cur_min = cp_min;
+            cur_val = cp_val;
+            cur_max = cp_max;
         }
-        // Update PlotSamples
-        samples.set(result);
     }
 
     /** Re-evaluate the formula in case some of the input samples changed.
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser2.model;
+
+import java.time.Instant;
+import java.util.Arrays;
+
+import org.csstudio.archive.vtype.ArchiveVNumber;
+import org.csstudio.archive.vtype.ArchiveVStatistics;
+import org.csstudio.archive.vtype.ArchiveVType;
+import org.csstudio.trends.databrowser2.Messages;
+import org.diirt.vtype.AlarmSeverity;
+import org.diirt.vtype.Display;
+import org.diirt.vtype.VType;
+import org.diirt.vtype.ValueFactory;
+
+/** Samples of a {@link FormulaItem}
+ *  <p>
+ *  Results of the formula are kept in arrays of primitives.
+ *  {@link PlotSample}s are created when accessed.
+ *
+ *  @author Kay Kasemir
+ */
+public class FormulaSamples extends PlotSamples
+{
+    final private static Display display = ValueFactory.displayNone();
+
+    private Instant[] times = new Instant[0];
+    private double[] values = new double[0], mins = new double[0], maxs = new double[0];
+    /** Does sample have min/max? */
+    private boolean[] stats = new boolean[0];
+    private int size = 0;
+
+    /** Replace samples
+     *
+     *  <p>Caller must hold write lock.
+     *
+     *  @param keep Number of existing samples to keep
+     *  @param count Number of samples to add
+     *  @param new_times Time stamps of added samples
+     *  @param new_values Values of added samples
+     *  @param new_mins Minimum of added samples
+     *  @param new_maxs Maximum of added samples
+     *  @param new_stats Does added sample have min/max?
+     */
+    void update(final int keep, final int count, final Instant[] new_times,
+                final double[] new_values, final double[] new_mins, final double[] new_maxs,
+                final boolean[] new_stats)
+    {
+        final int needed = keep + count;
+        if (needed > values.length)
+        {
+            final int capacity = Math.max(needed, values.length * 2);
+            times = Arrays.copyOf(times, capacity);
+            values = Arrays.copyOf(values, capacity);
+            mins = Arrays.copyOf(mins, capacity);
+            maxs = Arrays.copyOf(maxs, capacity);
+            stats = Arrays.copyOf(stats, capacity);
+        }
+        System.arraycopy(new_times, 0, times, keep, count);
+        System.arraycopy(new_values, 0, values, keep, count);
+        System.arraycopy(new_mins, 0, mins, keep, count);
+        System.arraycopy(new_maxs, 0, maxs, keep, count);
+        System.arraycopy(new_stats, 0, stats, keep, count);
+        // Release time stamps beyond the end
+        if (needed < size)
+            Arrays.fill(times, needed, size, null);
+        size = needed;
+    }
+
+    /** Remove samples before a time
+     *
+     *  <p>Caller must hold write lock.
+     *
+     *  @param time Time stamp of first sample to keep
+     *  @return Number of removed samples
+     */
+    int removeBefore(final Instant time)
+    {
+        int count = 0;
+        while (count < size  &&  times[count].compareTo(time) < 0)
+            ++count;
+        if (count <= 0)
+            return 0;
+        final int remaining = size - count;
+        System.arraycopy(times, count, times, 0, remaining);
+        System.arraycopy(values, count, values, 0, remaining);
+        System.arraycopy(mins, count, mins, 0, remaining);
+        System.arraycopy(maxs, count, maxs, 0, remaining);
+        System.arraycopy(stats, count, stats, 0, remaining);
+        Arrays.fill(times, remaining, size, null);
+        size = remaining;
+        return count;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public PlotSample get(final int index)
+    {
+        if (index < 0  ||  index >= size)
+            throw new ArrayIndexOutOfBoundsException(index);
+        final VType value;
+        if (stats[index])
+            value = new ArchiveVStatistics(times[index], AlarmSeverity.NONE, Messages.Formula,
+                    display, values[index], mins[index], maxs[index], 0.0, 1);
+        else if (Double.isNaN(values[index]))
+            value = new ArchiveVNumber(times[index], AlarmSeverity.INVALID, Messages.Formula,
+                    display, values[index]);
+        else
+            value = new ArchiveVNumber(times[index], AlarmSeverity.NONE, ArchiveVType.STATUS_OK,
+                    display, values[index]);
+        return new PlotSample(Messages.Formula, value);
+    }
+}
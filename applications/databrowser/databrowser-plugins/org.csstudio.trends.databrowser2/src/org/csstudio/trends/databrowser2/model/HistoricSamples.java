@@ -7,11 +7,15 @@
  ******************************************************************************/
 package org.csstudio.trends.databrowser2.model;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.diirt.vtype.AlarmSeverity;
 import org.diirt.vtype.VType;
 
 /** Holder for 'historic' samples.
@@ -27,6 +31,15 @@ import org.diirt.vtype.VType;
  *  the live data ring buffer rolls around, the 'border' time adjustments
  *  might then uncover historic samples that were previously
  *  hidden below the 'live' time range.
+ *  <p>
+ *  Samples are kept in time-ordered {@link SampleChunk}s,
+ *  using primitive arrays for numeric samples.
+ *  Newly received archive data is only merged with the chunks
+ *  that it overlaps.
+ *  Each chunk also holds aggregated min/max/average levels.
+ *  <code>size()</code> and <code>get()</code> always provide the raw samples.
+ *  Based on the plot resolution, {@link #getPlotSamples()}
+ *  provides either the raw samples or an aggregated level for the plot.
  *
  *  @author Kay Kasemir
  *  @author Takashi Nakamoto changed HistoricSamples to handle waveform index.
@@ -35,20 +48,108 @@ public class HistoricSamples extends PlotSamples
 {
     // No locking in here, all access is via PVSamples
 
-    /** "All" historic samples */
-    private PlotSample samples[] = new PlotSample[0];
+    /** Number of raw samples per chunk */
+    final static int CHUNK_SIZE = 4096;
+
+    /** Chunks smaller than this are combined with merged neighbors */
+    final private static int MIN_CHUNK_SIZE = CHUNK_SIZE / 4;
+
+    /** Desired number of samples per pixel when selecting a level */
+    final private static int SAMPLES_PER_PIXEL = 2;
+
+    /** "All" historic samples, in chunks ordered by time */
+    final private List<SampleChunk> chunks = new ArrayList<>();
+
+    /** Samples of each chunk at the current plot level */
+    private PlotSamples[] view = new PlotSamples[0];
+
+    /** Index of first sample of each chunk in view, plus total count at end */
+    private int[] view_offsets = new int[] { 0 };
+
+    /** Index of first raw sample of each chunk, plus total count at end */
+    private int[] raw_offsets = new int[] { 0 };
+
+    /** Current level, 0 for raw samples */
+    private int level = 0;
+
+    /** Plot resolution, time span of one pixel */
+    private Optional<Duration> resolution = Optional.empty();
 
     /** If set, samples beyond this time are hidden from access */
     private Optional<Instant> border_time = Optional.empty();
 
-    /** Subset of samples.length that's below border_time
+    /** Subset of raw samples that's below border_time
      *  @see #computeVisibleSize()
      */
     private int visible_size = 0;
 
+    /** Subset of samples in view that's below border_time
+     *  @see #computeVisibleSize()
+     */
+    private int visible_plot_size = 0;
+
     /** Waveform index */
     final private AtomicInteger waveform_index;
 
+    /** Samples of the view, below border time */
+    final private PlotSamples plot_samples = new PlotSamples()
+    {
+        @Override
+        public int size()
+        {
+            return visible_plot_size;
+        }
+
+        @Override
+        public PlotSample get(final int i)
+        {
+            final int chunk = findPlotChunk(i);
+            return view[chunk].get(i - view_offsets[chunk]);
+        }
+
+        @Override
+        public Instant getPosition(final int i)
+        {
+            final int chunk = findPlotChunk(i);
+            return view[chunk].getPosition(i - view_offsets[chunk]);
+        }
+
+        @Override
+        public double getValue(final int i)
+        {
+            final int chunk = findPlotChunk(i);
+            return view[chunk].getValue(i - view_offsets[chunk]);
+        }
+
+        @Override
+        public double getStdDev(final int i)
+        {
+            final int chunk = findPlotChunk(i);
+            return view[chunk].getStdDev(i - view_offsets[chunk]);
+        }
+
+        @Override
+        public double getMin(final int i)
+        {
+            final int chunk = findPlotChunk(i);
+            return view[chunk].getMin(i - view_offsets[chunk]);
+        }
+
+        @Override
+        public double getMax(final int i)
+        {
+            final int chunk = findPlotChunk(i);
+            return view[chunk].getMax(i - view_offsets[chunk]);
+        }
+
+        @Override
+        AlarmSeverity getSeverity(final int i)
+        {
+            final int chunk = findPlotChunk(i);
+            return view[chunk].getSeverity(i - view_offsets[chunk]);
+        }
+    };
+
     HistoricSamples(final AtomicInteger waveform_index)
     {
         this.waveform_index = waveform_index;
@@ -67,27 +168,188 @@ public class HistoricSamples extends PlotSamples
         computeVisibleSize();
     }
 
-    /** Update visible size */
+    /** Set the plot resolution, selecting the level of samples
+     *  @param resolution Time span of one pixel, or <code>empty</code> for raw samples
+     */
+    public void setResolution(final Optional<Duration> resolution)
+    {
+        if (this.resolution.equals(resolution))
+            return;
+        this.resolution = resolution;
+        final int old_level = level;
+        updateView();
+        if (level != old_level)
+            have_new_samples.set(true);
+    }
+
+    /** @return Current level, 0 for raw samples */
+    int getLevel()
+    {
+        return level;
+    }
+
+    /** @return Level with {@link #SAMPLES_PER_PIXEL} at the current resolution */
+    private int selectLevel()
+    {
+        final int N = getRawSize();
+        if (! resolution.isPresent()  ||  N <= 1)
+            return 0;
+        final Instant start = chunks.get(0).getStart();
+        final Instant end = chunks.get(chunks.size()-1).getEnd();
+        // Average time between raw samples
+        final double period = Duration.between(start, end).toNanos() / (double) N;
+        final double pixel = resolution.get().toNanos();
+        int level = 0;
+        double span = period * SampleChunk.FACTOR;
+        while (level < SampleChunk.MAX_LEVELS  &&  span * SAMPLES_PER_PIXEL <= pixel)
+        {
+            ++level;
+            span *= SampleChunk.FACTOR;
+        }
+        return level;
+    }
+
+    /** Update view and raw offsets after chunks or resolution changed */
+    private void updateView()
+    {
+        level = selectLevel();
+        final int N = chunks.size();
+        view = new PlotSamples[N];
+        view_offsets = new int[N+1];
+        raw_offsets = new int[N+1];
+        for (int i=0; i<N; ++i)
+        {
+            final SampleChunk chunk = chunks.get(i);
+            view[i] = chunk.getSamples(level);
+            view_offsets[i+1] = view_offsets[i] + view[i].size();
+            raw_offsets[i+1] = raw_offsets[i] + chunk.size();
+        }
+        computeVisibleSize();
+    }
+
+    /** Update visible size of raw samples and view */
     private void computeVisibleSize()
     {
         if (border_time.isPresent())
         {
-            final int last_index = PlotSampleSearch.findSampleLessThan(
-                    samples, border_time.get());
-            visible_size = (last_index < 0)   ?   0   :   last_index + 1;
+            final Instant border = border_time.get();
+            // Find last chunk that starts before border
+            int low = 0, high = chunks.size()-1, chunk = -1;
+            while (low <= high)
+            {
+                final int mid = (low + high) / 2;
+                if (chunks.get(mid).getStart().compareTo(border) < 0)
+                {
+                    chunk = mid;
+                    low = mid + 1;
+                }
+                else
+                    high = mid - 1;
+            }
+            if (chunk < 0)
+                visible_size = visible_plot_size = 0;
+            else
+            {
+                visible_size = raw_offsets[chunk] +
+                    PlotSampleSearch.findSampleLessThan(chunks.get(chunk).getSamples(0), border) + 1;
+                visible_plot_size = view_offsets[chunk] + PlotSampleSearch.findSampleLessThan(view[chunk], border) + 1;
+            }
         }
         else
-            visible_size = samples.length;
+        {
+            visible_size = raw_offsets[chunks.size()];
+            visible_plot_size = view_offsets[chunks.size()];
+        }
     }
 
-    /** {@inheritDoc} */
+    /** @param offsets Index of first sample for each chunk
+     *  @param i Sample index
+     *  @return Index of chunk that contains the sample
+     */
+    private static int findChunk(final int[] offsets, final int i)
+    {
+        final int pos = Arrays.binarySearch(offsets, 0, offsets.length-1, i);
+        // Exact match: Sample is the first one in that chunk.
+        // Otherwise sample is in the chunk before the insertion point
+        return pos >= 0 ? pos : -pos - 2;
+    }
+
+    /** @param i Raw sample index, 0 .. <code>size()</code>-1
+     *  @return Index of chunk that contains the sample
+     */
     @SuppressWarnings("nls")
-    @Override
-    public PlotSample get(final int i)
+    private int findRawChunk(final int i)
     {
         if (i >= visible_size)
             throw new IndexOutOfBoundsException("Index " + i + " exceeds visible size " + visible_size);
-        return samples[i];
+        return findChunk(raw_offsets, i);
+    }
+
+    /** @param i Plot sample index, 0 .. {@link #getPlotSize()}-1
+     *  @return Index of chunk in view that contains the sample
+     */
+    @SuppressWarnings("nls")
+    private int findPlotChunk(final int i)
+    {
+        if (i >= visible_plot_size)
+            throw new IndexOutOfBoundsException("Index " + i + " exceeds visible size " + visible_plot_size);
+        return findChunk(view_offsets, i);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public PlotSample get(final int i)
+    {
+        final int chunk = findRawChunk(i);
+        return chunks.get(chunk).getSamples(0).get(i - raw_offsets[chunk]);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Instant getPosition(final int i)
+    {
+        final int chunk = findRawChunk(i);
+        return chunks.get(chunk).getSamples(0).getPosition(i - raw_offsets[chunk]);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getValue(final int i)
+    {
+        final int chunk = findRawChunk(i);
+        return chunks.get(chunk).getSamples(0).getValue(i - raw_offsets[chunk]);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getStdDev(final int i)
+    {
+        final int chunk = findRawChunk(i);
+        return chunks.get(chunk).getSamples(0).getStdDev(i - raw_offsets[chunk]);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getMin(final int i)
+    {
+        final int chunk = findRawChunk(i);
+        return chunks.get(chunk).getSamples(0).getMin(i - raw_offsets[chunk]);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getMax(final int i)
+    {
+        final int chunk = findRawChunk(i);
+        return chunks.get(chunk).getSamples(0).getMax(i - raw_offsets[chunk]);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    AlarmSeverity getSeverity(final int i)
+    {
+        final int chunk = findRawChunk(i);
+        return chunks.get(chunk).getSamples(0).getSeverity(i - raw_offsets[chunk]);
     }
 
     /** {@inheritDoc} */
@@ -97,11 +359,39 @@ public class HistoricSamples extends PlotSamples
         return visible_size;
     }
 
+    /** @return Samples for the plot, below border time.
+     *          Depending on the plot resolution, these may be
+     *          aggregated min/max/average samples of several raw samples.
+     */
+    public PlotSamples getPlotSamples()
+    {
+        return plot_samples;
+    }
+
+    /** @return Number of samples for the plot, below border time */
+    public int getPlotSize()
+    {
+        return visible_plot_size;
+    }
+
+    /** Get sample for the plot
+     *
+     *  <p>Depending on the plot resolution, this may be
+     *  an aggregated min/max/average sample of several raw samples.
+     *
+     *  @param i Sample index, 0 .. {@link #getPlotSize()}-1
+     *  @return Raw or aggregated sample
+     */
+    public PlotSample getPlotSample(final int i)
+    {
+        return plot_samples.get(i);
+    }
+
     /**
      * @return the number of samples, ignoring the border time
      */
     public int getRawSize() {
-        return samples.length;
+        return raw_offsets[raw_offsets.length-1];
     }
 
     /**
@@ -111,7 +401,8 @@ public class HistoricSamples extends PlotSamples
      * @return the plot sample
      */
     public PlotSample getRawSample(int i) {
-        return samples[i];
+        final int chunk = findChunk(raw_offsets, i);
+        return chunks.get(chunk).getSamples(0).get(i - raw_offsets[chunk]);
     }
 
     /** Merge newly received archive data into historic samples
@@ -127,18 +418,49 @@ public class HistoricSamples extends PlotSamples
         final PlotSample new_samples[] = new PlotSample[result.size()];
         for (int i=0; i<new_samples.length; ++i)
             new_samples[i] = new PlotSample(waveform_index, source, result.get(i));
-        // Merge with existing samples
-        final PlotSample merged[] = PlotSampleMerger.merge(samples, new_samples);
-        if (merged == samples)
-            return;
-        samples = merged;
-        computeVisibleSize();
+        final Instant start = new_samples[0].getPosition();
+        final Instant end = new_samples[new_samples.length-1].getPosition();
+
+        // Determine chunks [first, last> that overlap the new samples
+        int first = 0;
+        while (first < chunks.size()  &&  chunks.get(first).getEnd().compareTo(start) < 0)
+            ++first;
+        int last = first;
+        while (last < chunks.size()  &&  chunks.get(last).getStart().compareTo(end) <= 0)
+            ++last;
+        // Include small neighbors to avoid fragmentation
+        if (first > 0  &&  chunks.get(first-1).size() < MIN_CHUNK_SIZE)
+            --first;
+        if (last < chunks.size()  &&  chunks.get(last).size() < MIN_CHUNK_SIZE)
+            ++last;
+
+        // Merge with existing samples of those chunks
+        int count = 0;
+        for (int i=first; i<last; ++i)
+            count += chunks.get(i).size();
+        final PlotSample old[] = new PlotSample[count];
+        count = 0;
+        for (int i=first; i<last; ++i)
+        {
+            final PlotSamples samples = chunks.get(i).getSamples(0);
+            for (int j=0; j<samples.size(); ++j)
+                old[count++] = samples.get(j);
+        }
+        final PlotSample merged[] = PlotSampleMerger.merge(old, new_samples);
+
+        // Replace affected chunks
+        final List<SampleChunk> affected = chunks.subList(first, last);
+        affected.clear();
+        for (int i=0; i<merged.length; i+=CHUNK_SIZE)
+            affected.add(new SampleChunk(waveform_index,
+                         Arrays.copyOfRange(merged, i, Math.min(i+CHUNK_SIZE, merged.length))));
+        updateView();
     }
 
     /** Delete all samples */
     public void clear()
     {
-        visible_size = 0;
-        samples = new PlotSample[0];
+        chunks.clear();
+        updateView();
     }
 }
@@ -7,14 +7,20 @@
  ******************************************************************************/
 package org.csstudio.trends.databrowser2.model;
 
+import java.time.Instant;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.csstudio.apputil.ringbuffer.RingBuffer;
 import org.csstudio.trends.databrowser2.preferences.Preferences;
+import org.diirt.vtype.AlarmSeverity;
 
 /** Ring buffer for 'live' samples.
  *  <p>
  *  New samples are always added to the end of a ring buffer.
+ *  <p>
+ *  Numeric scalar samples are kept in a {@link CompactPlotSamples}
+ *  buffer. Once a sample arrives that cannot be kept in there,
+ *  all samples move to a ring buffer of {@link PlotSample}s.
  *
  *  @author Kay Kasemir
  *  @author Takashi Nakamoto changed LiveSamples to handle waveform index.
@@ -23,8 +29,11 @@ public class LiveSamples extends PlotSamples
 {
     // No locking in here, all access is via PVSamples
 
-    private RingBuffer<PlotSample> samples =
-        new RingBuffer<PlotSample>(Preferences.getLiveSampleBufferSize());
+    /** Compact buffer, <code>null</code> when using 'samples' */
+    private CompactPlotSamples compact = null;
+
+    /** Buffer of samples, <code>null</code> when using 'compact' */
+    private RingBuffer<PlotSample> samples = null;
 
     /** Waveform index */
     final private AtomicInteger waveform_index;
@@ -32,11 +41,35 @@ public class LiveSamples extends PlotSamples
     LiveSamples(final AtomicInteger waveform_index)
     {
         this.waveform_index = waveform_index;
+        createBuffer(Preferences.getLiveSampleBufferSize());
+    }
+
+    /** @param capacity Capacity of new, empty buffer */
+    private void createBuffer(final int capacity)
+    {
+        if (Preferences.isCompactLiveSamples())
+        {
+            compact = new CompactPlotSamples(waveform_index, capacity);
+            samples = null;
+        }
+        else
+        {
+            compact = null;
+            samples = new RingBuffer<PlotSample>(capacity);
+        }
+    }
+
+    /** @return <code>true</code> if samples are kept in compact form */
+    boolean isCompact()
+    {
+        return compact != null;
     }
 
     /** @return Maximum number of samples in ring buffer */
     public int getCapacity()
     {
+        if (compact != null)
+            return compact.getCapacity();
         return samples.getCapacity();
     }
 
@@ -50,13 +83,29 @@ public class LiveSamples extends PlotSamples
     {
         if (new_capacity < 10)
             new_capacity = 10;
-        samples.setCapacity(new_capacity);
+        if (compact != null)
+            compact.setCapacity(new_capacity);
+        else
+            samples.setCapacity(new_capacity);
     }
 
     /** @param sample Sample to add to ring buffer */
     void add(final PlotSample sample)
     {
         sample.setWaveformIndex(waveform_index);
+        if (compact != null)
+        {
+            if (compact.add(sample))
+            {
+                have_new_samples.set(true);
+                return;
+            }
+            // Move existing samples out of compact buffer
+            samples = new RingBuffer<PlotSample>(compact.getCapacity());
+            for (int i=0; i<compact.size(); ++i)
+                samples.add(compact.get(i));
+            compact = null;
+        }
         samples.add(sample);
         have_new_samples.set(true);
     }
@@ -64,19 +113,71 @@ public class LiveSamples extends PlotSamples
     @Override
     public int size()
     {
+        if (compact != null)
+            return compact.size();
         return samples.size();
     }
 
     @Override
     public PlotSample get(final int i)
     {
+        if (compact != null)
+            return compact.get(i);
         return samples.get(i);
     }
 
+    @Override
+    public Instant getPosition(final int i)
+    {
+        if (compact != null)
+            return compact.getPosition(i);
+        return samples.get(i).getPosition();
+    }
+
+    @Override
+    public double getValue(final int i)
+    {
+        if (compact != null)
+            return compact.getValue(i);
+        return samples.get(i).getValue();
+    }
+
+    @Override
+    public double getStdDev(final int i)
+    {
+        if (compact != null)
+            return compact.getStdDev(i);
+        return samples.get(i).getStdDev();
+    }
+
+    @Override
+    public double getMin(final int i)
+    {
+        if (compact != null)
+            return compact.getMin(i);
+        return samples.get(i).getMin();
+    }
+
+    @Override
+    public double getMax(final int i)
+    {
+        if (compact != null)
+            return compact.getMax(i);
+        return samples.get(i).getMax();
+    }
+
+    @Override
+    AlarmSeverity getSeverity(final int i)
+    {
+        if (compact != null)
+            return compact.getSeverity(i);
+        return super.getSeverity(i);
+    }
+
     /** Delete all samples */
     public void clear()
     {
-        samples.clear();
+        createBuffer(getCapacity());
         have_new_samples.set(true);
     }
 }
@@ -328,6 +328,15 @@ abstract public class ModelItem
     /** @return Samples held by this item */
     abstract public PlotSamples getSamples();
 
+    /** @return Samples to plot, which may aggregate samples
+     *          to match the plot resolution.
+     *          Default: Same as {@link #getSamples()}
+     */
+    public PlotSamples getPlotSamples()
+    {
+        return getSamples();
+    }
+
     /** @param selected_sample Sample that is currently selected, for example via cursor */
     public void setSelectedSample(final Optional<PlotDataItem<Instant>> selected_sample)
     {
@@ -341,6 +341,13 @@ public class PVItem extends ModelItem implements PVReaderListener<List<VType>>
         return samples;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public PlotSamples getPlotSamples()
+    {
+        return samples.getPlotSamples();
+    }
+
     /** {@inheritDoc} */
     @Override
     public void pvChanged(final PVReaderEvent<List<VType>> event)
@@ -7,10 +7,12 @@
  ******************************************************************************/
 package org.csstudio.trends.databrowser2.model;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
 
 import org.csstudio.archive.vtype.VTypeHelper;
 import org.csstudio.trends.databrowser2.Messages;
@@ -28,6 +30,14 @@ import org.diirt.vtype.ValueUtil;
  *  extended to 'now' assuming no new data means
  *  that the last value is still valid.
  *
+ *  <p>Time stamps and values of the actual samples are read
+ *  from the historic and live sections without creating {@link PlotSample}s.
+ *
+ *  <p>The samples are the raw samples.
+ *  {@link #getPlotSamples()} provides the samples for the plot,
+ *  using aggregated historic samples when the plot resolution
+ *  shows many of them per pixel.
+ *
  *  @author Kay Kasemir
  *  @author Takashi Nakamoto changed PVSamples to handle waveform index.
  */
@@ -50,6 +60,70 @@ public class PVSamples extends PlotSamples
     /** Live samples. Should start after end of historic samples */
     final private LiveSamples live;
 
+    /** Samples for the plot, sharing lock and 'new samples' state */
+    final private PlotSamples plot_samples = new PlotSamples()
+    {
+        @Override
+        public Lock getLock()
+        {
+            return PVSamples.this.getLock();
+        }
+
+        @Override
+        public int size()
+        {
+            return PVSamples.this.size(true);
+        }
+
+        @Override
+        public PlotSample get(final int index)
+        {
+            return PVSamples.this.get(true, index);
+        }
+
+        @Override
+        public Instant getPosition(final int index)
+        {
+            return PVSamples.this.getPosition(true, index);
+        }
+
+        @Override
+        public double getValue(final int index)
+        {
+            return PVSamples.this.getValue(true, index);
+        }
+
+        @Override
+        public double getStdDev(final int index)
+        {
+            return PVSamples.this.getStdDev(true, index);
+        }
+
+        @Override
+        public double getMin(final int index)
+        {
+            return PVSamples.this.getMin(true, index);
+        }
+
+        @Override
+        public double getMax(final int index)
+        {
+            return PVSamples.this.getMax(true, index);
+        }
+
+        @Override
+        public boolean hasNewSamples()
+        {
+            return PVSamples.this.hasNewSamples();
+        }
+
+        @Override
+        public boolean testAndClearNewSamplesFlag()
+        {
+            return PVSamples.this.testAndClearNewSamplesFlag();
+        }
+    };
+
     private boolean emptyHistoryOnAdd = false;
     private int samplesAddedSinceLastRefresh = 0;
 
@@ -75,26 +149,126 @@ public class PVSamples extends PlotSamples
         live.setCapacity(new_capacity);
     }
 
+    /** @return Samples for the plot, using aggregated historic samples
+     *          based on the plot resolution
+     *  @see #setResolution(Optional)
+     */
+    public PlotSamples getPlotSamples()
+    {
+        return plot_samples;
+    }
+
     /** @return Combined count of historic and live samples */
     @Override
     public int size()
     {
-        final int raw = getRawSize();
+        return size(false);
+    }
+
+    /** @param plot Use historic samples for plot?
+     *  @return Combined count of historic and live samples
+     */
+    private int size(final boolean plot)
+    {
+        final int raw = getRawSize(plot);
         if (raw <= 0)
             return raw;
-        final PlotSample last = get(raw-1);
-        if (VTypeHelper.getSeverity(last.getVType()) == AlarmSeverity.UNDEFINED)
+        if (getSection(plot, raw-1).getSeverity(getSectionIndex(plot, raw-1)) == AlarmSeverity.UNDEFINED)
             return raw;
         // Last sample is valid, so it should still apply 'now'
         return raw+1;
     }
 
-    /** @return Size of the actual historic and live samples
+    /** @param plot Use historic samples for plot?
+     *  @return Size of the actual historic and live samples
      *          without the continuation to 'now'
      */
-    private int getRawSize()
+    private int getRawSize(final boolean plot)
+    {
+        return getHistory(plot).size() + live.size();
+    }
+
+    /** @param plot Use historic samples for plot?
+     *  @return Raw or plot samples of history
+     */
+    private PlotSamples getHistory(final boolean plot)
+    {
+        return plot ? history.getPlotSamples() : history;
+    }
+
+    /** @param plot Use historic samples for plot?
+     *  @param index 0... getRawSize()-1
+     *  @return Historic or live samples that hold the sample
+     */
+    private PlotSamples getSection(final boolean plot, final int index)
     {
-        return history.size() + live.size();
+        final PlotSamples old = getHistory(plot);
+        return index < old.size() ? old : live;
+    }
+
+    /** @param plot Use historic samples for plot?
+     *  @param index 0... getRawSize()-1
+     *  @return Index of the sample within its historic or live section
+     */
+    private int getSectionIndex(final boolean plot, final int index)
+    {
+        final int num_old = getHistory(plot).size();
+        return index < num_old ? index : index - num_old;
+    }
+
+    /** @param plot Use historic samples for plot?
+     *  @param index 0... getSize()-1
+     *  @return Time stamp of sample, 'now' for the continuation
+     */
+    private Instant getPosition(final boolean plot, final int index)
+    {
+        if (index >= getRawSize(plot))
+            return get(plot, index).getPosition();
+        return getSection(plot, index).getPosition(getSectionIndex(plot, index));
+    }
+
+    /** @param plot Use historic samples for plot?
+     *  @param index 0... getSize()-1
+     *  @return Value of sample
+     */
+    private double getValue(final boolean plot, final int index)
+    {
+        if (index >= getRawSize(plot))
+            return get(plot, index).getValue();
+        return getSection(plot, index).getValue(getSectionIndex(plot, index));
+    }
+
+    /** @param plot Use historic samples for plot?
+     *  @param index 0... getSize()-1
+     *  @return Standard deviation of sample
+     */
+    private double getStdDev(final boolean plot, final int index)
+    {
+        if (index >= getRawSize(plot))
+            return get(plot, index).getStdDev();
+        return getSection(plot, index).getStdDev(getSectionIndex(plot, index));
+    }
+
+    /** @param plot Use historic samples for plot?
+     *  @param index 0... getSize()-1
+     *  @return Minimum of sample
+     */
+    private double getMin(final boolean plot, final int index)
+    {
+        if (index >= getRawSize(plot))
+            return get(plot, index).getMin();
+        return getSection(plot, index).getMin(getSectionIndex(plot, index));
+    }
+
+    /** @param plot Use historic samples for plot?
+     *  @param index 0... getSize()-1
+     *  @return Maximum of sample
+     */
+    private double getMax(final boolean plot, final int index)
+    {
+        if (index >= getRawSize(plot))
+            return get(plot, index).getMax();
+        return getSection(plot, index).getMax(getSectionIndex(plot, index));
     }
 
     /** @param index 0... getSize()-1
@@ -103,11 +277,20 @@ public class PVSamples extends PlotSamples
     @Override
     public PlotSample get(final int index)
     {
-        final int raw_count = getRawSize();
+        return get(false, index);
+    }
+
+    /** @param plot Use historic samples for plot?
+     *  @param index 0... getSize()-1
+     *  @return Sample from historic or live sample subsection
+     */
+    private PlotSample get(final boolean plot, final int index)
+    {
+        final int raw_count = getRawSize(plot);
         if (index < raw_count)
-            return getRawSample(index);
+            return getRawSample(plot, index);
         // Last sample is valid, so it should still apply 'now'
-        final PlotSample sample = getRawSample(raw_count-1);
+        final PlotSample sample = getRawSample(plot, raw_count-1);
         if (Instant.now().compareTo(sample.getPosition()) < 0)
             return sample;
         else
@@ -115,15 +298,48 @@ public class PVSamples extends PlotSamples
     }
 
     /** Get 'raw' sample, no continuation until 'now'
+     *  @param plot Use historic samples for plot?
      *  @param index 0... getRawSize()-1
      *  @return Sample from historic or live sample subsection
      */
-    private PlotSample getRawSample(final int index)
+    private PlotSample getRawSample(final boolean plot, final int index)
+    {
+        return getSection(plot, index).get(getSectionIndex(plot, index));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Instant getPosition(final int index)
+    {
+        return getPosition(false, index);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getValue(final int index)
+    {
+        return getValue(false, index);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getStdDev(final int index)
+    {
+        return getStdDev(false, index);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getMin(final int index)
+    {
+        return getMin(false, index);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getMax(final int index)
     {
-        final int num_old = history.size();
-        if (index < num_old)
-            return history.get(index);
-        return live.get(index - num_old);
+        return getMax(false, index);
     }
 
     /** Test if samples changed since the last time
@@ -173,6 +389,26 @@ public class PVSamples extends PlotSamples
         }
     }
 
+    /** Set the plot resolution.
+     *  <p>
+     *  When there are many historic samples per pixel,
+     *  the {@link #getPlotSamples()} provide aggregated
+     *  min/max/average samples instead of the raw samples.
+     *  @param resolution Time span of one pixel, or <code>empty</code> for raw samples
+     */
+    public void setResolution(final Optional<Duration> resolution)
+    {
+        lockForWriting();
+        try
+        {
+            history.setResolution(resolution);
+        }
+        finally
+        {
+            unlockForWriting();
+        }
+    }
+
     /** Add another 'live' sample
      *  @param value 'Live' sample
      */
@@ -199,7 +435,7 @@ public class PVSamples extends PlotSamples
             // History ends before the start of 'live' samples.
             // Adding a live sample might have moved the ring buffer,
             // so need to update whenever live data is extended.
-            history.setBorderTime(Optional.of(live.get(0).getPosition()));
+            history.setBorderTime(Optional.of(live.getPosition(0)));
         }
         finally
         {
@@ -294,7 +530,7 @@ public class PVSamples extends PlotSamples
         try
         {
             final int count = size();
-            if (count != getRawSize())
+            if (count != getRawSize(false))
             {
                 buf.append("\nContinuation to 'now':\n");
                 buf.append("     " + get(count-1));
@@ -118,6 +118,26 @@ public class PlotSampleSearch // TODO Replace with org.csstudio.swt.rtplot.data.
         return -1;
     }
 
+    /** Find the last sample that's smaller than the given value
+     *  @param samples Samples, ordered by time
+     *  @param goal The time to look for.
+     *  @return Returns index of sample smaller than given goal, or -1.
+     */
+    static public int findSampleLessThan(final PlotSamples samples, final Instant goal)
+    {
+        // Locate first sample that's equal-or-greater than goal
+        int low = 0, high = samples.size();
+        while (low < high)
+        {
+            final int mid = (low + high) >>> 1;
+            if (samples.getPosition(mid).compareTo(goal) < 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low - 1;
+    }
+
     /** Find the last sample that's greater than the given value,
      *  i.e. the 'previous' sample would be equal-or-less than goal.
      *  @param goal The time to look for.
@@ -13,7 +13,9 @@ import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.csstudio.archive.vtype.VTypeHelper;
 import org.csstudio.swt.rtplot.data.PlotDataProvider;
+import org.diirt.vtype.AlarmSeverity;
 
 /** Base for classes that hold plot samples
  *  in a way accessible as {@link PlotDataProvider}
@@ -57,6 +59,14 @@ abstract public class PlotSamples implements PlotDataProvider<Instant>
     @Override
     abstract public PlotSample get(int index);
 
+    /** @param index Sample index
+     *  @return Severity of that sample
+     */
+    AlarmSeverity getSeverity(final int index)
+    {
+        return VTypeHelper.getSeverity(get(index).getVType());
+    }
+
     /** Test if samples changed since the last time
      *  <code>testAndClearNewSamplesFlag</code> was called.
      *  @return <code>true</code> if there were new samples
@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.trends.databrowser2.model;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.csstudio.archive.vtype.ArchiveVStatistics;
+import org.csstudio.archive.vtype.VTypeHelper;
+import org.diirt.vtype.AlarmSeverity;
+import org.diirt.vtype.Display;
+import org.diirt.vtype.VNumber;
+import org.diirt.vtype.VStatistics;
+import org.diirt.vtype.VType;
+
+/** Chunk of historic samples with pre-aggregated levels
+ *
+ *  <p>Level 0 holds the raw samples.
+ *  Each following level combines up to {@link #FACTOR} samples
+ *  of the level below into one min/max/average sample.
+ *  Only numeric scalar samples are combined.
+ *  Bins that contain other samples, for example
+ *  disconnected markers or text, are copied as is.
+ *
+ *  <p>Each level is kept in a {@link CompactPlotSamples}
+ *  when all its samples can be held in compact form.
+ *
+ *  <p>Chunks are immutable.
+ *
+ *  @author Kay Kasemir
+ */
+class SampleChunk
+{
+    /** Number of samples combined into one sample of the next level */
+    final static int FACTOR = 16;
+
+    /** Maximum number of aggregated levels */
+    final static int MAX_LEVELS = 3;
+
+    /** Samples per level, [0] being the raw samples */
+    final private PlotSamples[] levels;
+
+    /** @param waveform_index Waveform index for aggregated samples
+     *  @param samples Raw samples, must not be empty
+     */
+    SampleChunk(final AtomicInteger waveform_index, final PlotSample[] samples)
+    {
+        final List<PlotSamples> levels = new ArrayList<>(MAX_LEVELS + 1);
+        levels.add(store(waveform_index, samples));
+        PlotSample[] level = samples;
+        while (levels.size() <= MAX_LEVELS  &&  level.length > 1)
+        {
+            final PlotSample[] next = aggregate(waveform_index, level);
+            if (next.length >= level.length)
+                break;
+            levels.add(store(waveform_index, next));
+            level = next;
+        }
+        this.levels = levels.toArray(new PlotSamples[levels.size()]);
+    }
+
+    /** @param waveform_index Waveform index
+     *  @param samples Samples of one level
+     *  @return Samples in compact form if possible, otherwise as array
+     */
+    private static PlotSamples store(final AtomicInteger waveform_index, final PlotSample[] samples)
+    {
+        final PlotSamples compact = CompactPlotSamples.of(waveform_index, samples);
+        if (compact != null)
+            return compact;
+        final PlotSampleArray array = new PlotSampleArray();
+        array.set(Arrays.asList(samples));
+        return array;
+    }
+
+    /** @return Number of raw samples */
+    int size()
+    {
+        return levels[0].size();
+    }
+
+    /** @return Time of first sample */
+    Instant getStart()
+    {
+        return levels[0].getPosition(0);
+    }
+
+    /** @return Time of last sample */
+    Instant getEnd()
+    {
+        return levels[0].getPosition(levels[0].size()-1);
+    }
+
+    /** @param level Desired level, 0 for raw samples
+     *  @return Samples of that level, or the highest level that the chunk has
+     */
+    PlotSamples getSamples(final int level)
+    {
+        return levels[Math.min(level, levels.length-1)];
+    }
+
+    /** @param sample Sample
+     *  @return <code>true</code> if sample can be combined with others
+     */
+    private static boolean canAggregate(final PlotSample sample)
+    {
+        final VType value = sample.getVType();
+        if (! (value instanceof VNumber  ||  value instanceof VStatistics))
+            return false;
+        if (VTypeHelper.getSeverity(value) == AlarmSeverity.UNDEFINED)
+            return false;
+        return ! Double.isNaN(VTypeHelper.toDouble(value));
+    }
+
+    /** @param waveform_index Waveform index for aggregated samples
+     *  @param samples Samples of one level
+     *  @return Samples of next level
+     */
+    private static PlotSample[] aggregate(final AtomicInteger waveform_index, final PlotSample[] samples)
+    {
+        final List<PlotSample> result = new ArrayList<>(samples.length / FACTOR + 1);
+        for (int start=0; start<samples.length; start+=FACTOR)
+        {
+            final int end = Math.min(start + FACTOR, samples.length);
+            boolean numeric = true;
+            for (int i=start; numeric && i<end; ++i)
+                numeric = canAggregate(samples[i]);
+            if (! numeric  ||  end - start == 1)
+            {   // Copy bin as is
+                for (int i=start; i<end; ++i)
+                    result.add(samples[i]);
+                continue;
+            }
+
+            long count = 0;
+            double sum = 0, sum_sq = 0;
+            double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+            VType worst = samples[start].getVType();
+            for (int i=start; i<end; ++i)
+            {
+                final VType value = samples[i].getVType();
+                final double avg, std;
+                final int n;
+                if (value instanceof VStatistics)
+                {
+                    final VStatistics stats = (VStatistics) value;
+                    avg = stats.getAverage();
+                    std = stats.getStdDev();
+                    n = Math.max(1, stats.getNSamples());
+                    min = Math.min(min, stats.getMin());
+                    max = Math.max(max, stats.getMax());
+                }
+                else
+                {
+                    avg = VTypeHelper.toDouble(value);
+                    std = 0.0;
+                    n = 1;
+                    min = Math.min(min, avg);
+                    max = Math.max(max, avg);
+                }
+                count += n;
+                sum += n * avg;
+                sum_sq += n * (std*std + avg*avg);
+                if (VTypeHelper.getSeverity(value).ordinal() > VTypeHelper.getSeverity(worst).ordinal())
+                    worst = value;
+            }
+            final double average = sum / count;
+            final double stddev = Math.sqrt(Math.max(0.0, sum_sq / count - average*average));
+            final PlotSample first = samples[start];
+            final VType value = new ArchiveVStatistics(first.getPosition(),
+                    VTypeHelper.getSeverity(worst), VTypeHelper.getMessage(worst),
+                    (Display) first.getVType(),
+                    average, min, max, stddev, (int) Math.min(count, Integer.MAX_VALUE));
+            result.add(new PlotSample(waveform_index, first.getSource(), value));
+        }
+        return result.toArray(new PlotSample[result.size()]);
+    }
+}
@@ -50,6 +50,9 @@ public class Preferences
      */
     final public static String TIME_SPAN = "time_span",
             SCAN_PERIOD = "scan_period", BUFFER_SIZE = "live_buffer_size",
+            COMPACT_LIVE_SAMPLES = "compact_live_samples",
+            FETCH_CACHE_SIZE = "fetch_cache_size",
+            FETCH_CACHE_DIRECTORY = "fetch_cache_directory",
             UPDATE_PERIOD = "update_period", LINE_WIDTH = "line_width",
             OPACITY = "opacity",
             TRACE_TYPE = "trace_type",
@@ -110,6 +113,32 @@ public class Preferences
         return prefs.getInt(Activator.PLUGIN_ID, BUFFER_SIZE, 5000, null);
     }
 
+    public static boolean isCompactLiveSamples()
+    {
+        final IPreferencesService prefs = Platform.getPreferencesService();
+        if (prefs == null) // Allow some JUnit tests without prefs
+            return true;
+        return prefs.getBoolean(Activator.PLUGIN_ID, COMPACT_LIVE_SAMPLES, true, null);
+    }
+
+    /** @return Size of archive fetch cache in MB, 0 to disable */
+    public static int getFetchCacheSize()
+    {
+        final IPreferencesService prefs = Platform.getPreferencesService();
+        if (prefs == null) // Allow some JUnit tests without prefs
+            return 0;
+        return prefs.getInt(Activator.PLUGIN_ID, FETCH_CACHE_SIZE, 0, null);
+    }
+
+    /** @return Directory for archive fetch cache, empty for default */
+    public static String getFetchCacheDirectory()
+    {
+        final IPreferencesService prefs = Platform.getPreferencesService();
+        if (prefs == null) // Allow some JUnit tests without prefs
+            return "";
+        return prefs.getString(Activator.PLUGIN_ID, FETCH_CACHE_DIRECTORY, "", null).trim();
+    }
+
     public static double getUpdatePeriod()
     {
         final IPreferencesService prefs = Platform.getPreferencesService();
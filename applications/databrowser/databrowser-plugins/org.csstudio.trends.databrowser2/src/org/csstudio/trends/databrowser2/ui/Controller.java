@@ -54,6 +54,8 @@ import org.csstudio.ui.util.dialogs.ExceptionDetailsErrorDialog;
 import org.diirt.util.time.TimeDuration;
 import org.eclipse.jface.window.Window;
 import org.eclipse.osgi.util.NLS;
+import org.eclipse.swt.events.ControlAdapter;
+import org.eclipse.swt.events.ControlEvent;
 import org.eclipse.swt.events.ShellAdapter;
 import org.eclipse.swt.events.ShellEvent;
 import org.eclipse.swt.widgets.Display;
@@ -115,6 +117,9 @@ public class Controller
     /** Should we perform redraws, or is the window hidden and we should suppress them? */
     private boolean suppress_redraws = false;
 
+    /** Width of the plot in pixels, updated on the UI thread when resized */
+    private volatile int plot_width = 0;
+
     final private ArchiveFetchJobListener archive_fetch_listener = new ArchiveFetchJobListener()
     {
 
@@ -226,6 +231,18 @@ public class Controller
         }
         createPlotTraces();
 
+        // Adjust resolution of historic samples to plot width
+        plot.getPlot().getPlotControl().addControlListener(new ControlAdapter()
+        {
+            @Override
+            public void controlResized(final ControlEvent e)
+            {
+                plot_width = plot.getPlot().getPlotControl().getSize().x;
+                updateResolution();
+            }
+        });
+        plot_width = plot.getPlot().getPlotControl().getSize().x;
+
         // Listen to user input from Plot UI, update model
         plot.addListener(new PlotListener()
         {
@@ -438,6 +455,9 @@ public class Controller
                 else
                     plot.setTimeRange(model.getStartTime(), model.getEndTime());
 
+                // Use aggregated historic samples where there are many per pixel
+                updateResolution();
+
                 // Get matching archived data
                 scheduleArchiveRetrieval();
             }
@@ -474,6 +494,7 @@ public class Controller
             {
                 // Item may be added in 'middle' of existing traces
                 createPlotTraces();
+                updateResolution();
                 // Get archived data for new item (NOP for non-PVs)
                 getArchivedData(item, model.getStartTime(), model.getEndTime());
             }
@@ -543,6 +564,28 @@ public class Controller
         archive_fetch_delay_task = update_timer.schedule(this::getArchivedData, archive_fetch_delay, TimeUnit.MILLISECONDS);
     }
 
+    /** Update the plot resolution of all PV items
+     *  based on the model's time range and the width of the plot.
+     *
+     *  <p>Called when the time range changes, the plot is resized
+     *  or items are added.
+     *  Uses the width of the plot, not the time axis, because the axes are
+     *  laid out later when the plot is drawn.
+     *  The slightly larger width only results in slightly more detail.
+     */
+    private void updateResolution()
+    {
+        final int pixels = plot_width;
+        final Optional<Duration> resolution;
+        if (pixels < 10) // Plot not laid out, yet
+            resolution = Optional.empty();
+        else
+            resolution = Optional.of(Duration.between(model.getStartTime(), model.getEndTime()).dividedBy(pixels));
+        for (ModelItem item : model.getItems())
+            if (item instanceof PVItem)
+                ((PVItem) item).getSamples().setResolution(resolution);
+    }
+
     /** Start model items and initiate scrolling/updates
      *  @throws Exception on error: Already running, problem starting threads, ...
      *  @see #isRunning()
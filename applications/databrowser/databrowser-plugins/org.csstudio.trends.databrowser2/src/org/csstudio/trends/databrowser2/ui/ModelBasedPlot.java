@@ -300,7 +300,7 @@ public class ModelBasedPlot
     {
         final Trace<Instant> trace = plot.addTrace(item.getResolvedDisplayName(),
                 item.getUnits(),
-                item.getSamples(),
+                item.getPlotSamples(),
                 item.getColor(),
                 item.getTraceType(), item.getLineWidth(),
                 item.getPointType(), item.getPointSize(),
@@ -364,7 +364,7 @@ public class ModelBasedPlot
     private Trace<Instant> findTrace(final ModelItem item)
     {
         for (Trace<Instant> trace : plot.getTraces())
-            if (trace.getData() == item.getSamples())
+            if (trace.getData() == item.getPlotSamples())
                 return trace;
         throw new IllegalArgumentException("Cannot locate trace for " + item);
     }
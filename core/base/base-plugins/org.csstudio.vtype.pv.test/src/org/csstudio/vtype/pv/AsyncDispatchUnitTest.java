@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Oak Ridge National Laboratory.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ ******************************************************************************/
+package org.csstudio.vtype.pv;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.diirt.vtype.VType;
+import org.diirt.vtype.ValueFactory;
+import org.diirt.vtype.ValueUtil;
+import org.junit.Test;
+
+/** JUnit test of asynchronous listener dispatch
+ *  @author Kay Kasemir
+ */
+@SuppressWarnings("nls")
+public class AsyncDispatchUnitTest
+{
+    /** PV that allows test to send updates */
+    private static class TestPV extends PV
+    {
+        TestPV()
+        {
+            super("test");
+        }
+
+        void update(final double value)
+        {
+            notifyListenersOfValue(ValueFactory.newVDouble(value));
+        }
+
+        @Override
+        public void write(final Object new_value) throws Exception
+        {
+            throw new Exception("Read-only");
+        }
+    }
+
+    @Test
+    public void testCoalesce() throws Exception
+    {
+        final TestPV pv = new TestPV();
+        pv.setAsyncDispatch(true);
+
+        final CountDownLatch slow = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicInteger received = new AtomicInteger();
+        final AtomicReference<Thread> thread = new AtomicReference<>();
+        pv.addListener(new PVListenerAdapter()
+        {
+            @Override
+            public void valueChanged(final PV pv, final VType value)
+            {
+                thread.set(Thread.currentThread());
+                received.incrementAndGet();
+                try
+                {
+                    // Block until all updates have been sent
+                    slow.await(10, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException ex)
+                {
+                    // Ignore
+                }
+                if (ValueUtil.numericValueOf(value) == 99.0)
+                    done.countDown();
+            }
+        });
+
+        for (int i=0; i<100; ++i)
+            pv.update(i);
+        // Listener has not seen all updates
+        assertThat(thread.get(), not(equalTo(Thread.currentThread())));
+        slow.countDown();
+
+        // Listener received the last value
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        System.out.println("Received " + received.get() + ", coalesced " + pv.getCoalescedUpdates());
+        assertTrue(pv.getCoalescedUpdates() > 0);
+        assertThat(received.get() + pv.getCoalescedUpdates() + pv.getDroppedUpdates(), equalTo(100L));
+    }
+
+    @Test
+    public void testSwitchToSync() throws Exception
+    {
+        final TestPV pv = new TestPV();
+        pv.setAsyncDispatch(true);
+
+        final CountDownLatch slow = new CountDownLatch(1);
+        final CountDownLatch last = new CountDownLatch(1);
+        final AtomicReference<Thread> thread = new AtomicReference<>();
+        pv.addListener(new PVListenerAdapter()
+        {
+            @Override
+            public void valueChanged(final PV pv, final VType value)
+            {
+                thread.set(Thread.currentThread());
+                try
+                {
+                    slow.await(10, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException ex)
+                {
+                    // Ignore
+                }
+                if (ValueUtil.numericValueOf(value) == 9.0)
+                    last.countDown();
+            }
+        });
+
+        for (int i=0; i<10; ++i)
+            pv.update(i);
+        // Value that is still pending when switching to synchronous dispatch is delivered
+        pv.setAsyncDispatch(false);
+        slow.countDown();
+        assertTrue(last.await(10, TimeUnit.SECONDS));
+        assertThat(thread.get(), not(equalTo(Thread.currentThread())));
+
+        // Following updates are delivered on the calling thread
+        pv.update(10);
+        assertThat(thread.get(), equalTo(Thread.currentThread()));
+    }
+}
@@ -10,6 +10,14 @@ package org.csstudio.vtype.pv;
 import static org.junit.Assert.*;
 import static org.hamcrest.CoreMatchers.*;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.Test;
 
 /** JUnit test of the {@link RefCountMap}
@@ -77,4 +85,51 @@ public class RefCountMapUnitTest
             // Ignore
         }
     }
+
+    @Test
+    public void testConcurrentCreate() throws Exception
+    {
+        final RefCountMap<String, Integer> map = new RefCountMap<>();
+        final AtomicInteger creations = new AtomicInteger();
+        final ExecutorService pool = Executors.newFixedThreadPool(10);
+        final List<Future<Integer>> results = new ArrayList<>();
+        for (int i=0; i<100; ++i)
+            results.add(pool.submit(() -> map.createOrGet("one", () ->
+            {
+                creations.incrementAndGet();
+                // Slow creation, others need to wait for it
+                Thread.sleep(100);
+                return Integer.valueOf(1);
+            })));
+        final Integer one = results.get(0).get();
+        for (Future<Integer> result : results)
+            assertThat(result.get(), sameInstance(one));
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+
+        // Created once, referenced by all callers
+        assertThat(creations.get(), equalTo(1));
+        assertThat(map.getEntries().iterator().next().getReferences(), equalTo(100));
+        for (int i=99; i>=0; --i)
+            assertThat(map.release("one"), equalTo(i));
+        assertThat(map.getEntries().size(), equalTo(0));
+    }
+
+    @Test
+    public void testCreateError() throws Exception
+    {
+        final RefCountMap<String, Integer> map = new RefCountMap<>();
+        try
+        {
+            map.createOrGet("bad", () -> { throw new Exception("Cannot create"); });
+            fail("Created bad item?");
+        }
+        catch (Exception expected)
+        {
+            // Ignore
+        }
+        // Nothing left in map, can try again
+        assertThat(map.getEntries().size(), equalTo(0));
+        assertThat(map.createOrGet("bad", () -> 42), equalTo(42));
+    }
 }
@@ -8,12 +8,25 @@
 package org.csstudio.vtype.pv;
 
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.csstudio.vtype.pv.internal.Preferences;
 import org.diirt.vtype.VType;
 
 /** Process Variable, API for accessing life control system data.
@@ -24,6 +37,14 @@ import org.diirt.vtype.VType;
  *  <p>The name of the PV is the name by which it was created.
  *  The underlying implementation might use a slightly different name.
  *
+ *  <p>By default, listeners are notified in the thread of the
+ *  PV implementation, for example a network thread of the
+ *  control system library.
+ *  With {@link #setAsyncDispatch(boolean)}, notifications are
+ *  instead handed to a shared, bounded pool of dispatch threads,
+ *  so a slow listener cannot stall the network thread.
+ *  When listeners fall behind, they receive only the latest value.
+ *
  *  @author Kay Kasemir
  */
 @SuppressWarnings("nls")
@@ -40,6 +61,60 @@ abstract public class PV
 
     private volatile VType last_value = null;
 
+    /** Shared threads for asynchronous dispatch, created when first used */
+    private static class Dispatcher
+    {
+        final static ThreadPoolExecutor executor;
+
+        /** Used when the queue of the executor is full.
+         *  Each PV schedules at most one dispatch at a time,
+         *  so the queue is bounded by the number of PVs.
+         */
+        final static ExecutorService fallback;
+
+        static
+        {
+            final AtomicInteger instance = new AtomicInteger();
+            final ThreadFactory threads = runnable ->
+            {
+                final Thread thread = new Thread(runnable, "PVDispatch" + instance.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+            final int count = Preferences.dispatchThreads();
+            executor = new ThreadPoolExecutor(count, count, 10, TimeUnit.SECONDS,
+                                              new ArrayBlockingQueue<>(Preferences.dispatchQueueSize()),
+                                              threads);
+            executor.allowCoreThreadTimeOut(true);
+            fallback = Executors.newSingleThreadExecutor(runnable ->
+            {
+                final Thread thread = new Thread(runnable, "PVDispatchFallback");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /** Dispatch notifications asynchronously? */
+    private volatile boolean async_dispatch = false;
+
+    /** Value waiting to be dispatched, only latest value is kept */
+    final private AtomicReference<VType> pending_value = new AtomicReference<>();
+
+    /** Other notifications waiting to be dispatched, in order */
+    final private ConcurrentLinkedQueue<Runnable> pending_events = new ConcurrentLinkedQueue<>();
+
+    /** Is a dispatch of this PV scheduled or running?
+     *  Assures that listeners are called by one dispatch thread at a time.
+     */
+    final private AtomicBoolean dispatching = new AtomicBoolean();
+
+    /** Number of value updates replaced by a newer value before being dispatched */
+    final private AtomicLong coalesced = new AtomicLong();
+
+    /** Number of pending value updates dropped because the PV disconnected */
+    final private AtomicLong dropped = new AtomicLong();
+
     /** Initialize
      *  @param name PV name
      */
@@ -80,6 +155,48 @@ abstract public class PV
         listeners.remove(listener);
     }
 
+    /** Select how listeners are notified.
+     *
+     *  <p>Note that the PV is shared via the {@link PVPool},
+     *  so this affects all listeners of the PV.
+     *
+     *  @param async <code>true</code> to notify listeners on a dispatch thread,
+     *               coalescing value updates when listeners fall behind.
+     *               <code>false</code> to notify in the thread of the PV implementation,
+     *               after delivering notifications that are still pending.
+     */
+    public void setAsyncDispatch(final boolean async)
+    {
+        async_dispatch = async;
+        // Deliver what's still pending. If a dispatch is running, it will pick them up.
+        if (! async  &&
+            (! pending_events.isEmpty()  ||  pending_value.get() != null)  &&
+            dispatching.compareAndSet(false, true))
+            dispatch();
+    }
+
+    /** @return <code>true</code> if listeners are notified on a dispatch thread */
+    public boolean isAsyncDispatch()
+    {
+        return async_dispatch;
+    }
+
+    /** @return Number of value updates that listeners did not receive
+     *          because a newer value arrived before they were notified
+     */
+    public long getCoalescedUpdates()
+    {
+        return coalesced.get();
+    }
+
+    /** @return Number of value updates that listeners did not receive
+     *          because the PV disconnected before they were notified
+     */
+    public long getDroppedUpdates()
+    {
+        return dropped.get();
+    }
+
     /** Read current value
      *
      *  <p>Should return the most recent value
@@ -144,6 +261,19 @@ abstract public class PV
     protected void notifyListenersOfDisconnect()
     {
         last_value = null;
+        if (async_dispatch)
+        {   // Value that's still pending is no longer valid
+            if (pending_value.getAndSet(null) != null)
+                dropped.incrementAndGet();
+            pending_events.add(this::fireDisconnect);
+            scheduleDispatch();
+        }
+        else
+            fireDisconnect();
+    }
+
+    private void fireDisconnect()
+    {
         for (PVListener listener : listeners)
         {
             try
@@ -161,6 +291,17 @@ abstract public class PV
     protected void notifyListenersOfPermissions(final boolean readonly)
     {
         is_readonly = readonly;
+        if (async_dispatch)
+        {
+            pending_events.add(() -> firePermissions(readonly));
+            scheduleDispatch();
+        }
+        else
+            firePermissions(readonly);
+    }
+
+    private void firePermissions(final boolean readonly)
+    {
         for (PVListener listener : listeners)
         {
             try
@@ -178,6 +319,18 @@ abstract public class PV
     protected void notifyListenersOfValue(final VType value)
     {
         last_value = value;
+        if (async_dispatch)
+        {
+            if (pending_value.getAndSet(value) != null)
+                coalesced.incrementAndGet();
+            scheduleDispatch();
+        }
+        else
+            fireValue(value);
+    }
+
+    private void fireValue(final VType value)
+    {
         for (PVListener listener : listeners)
         {
             try
@@ -191,6 +344,41 @@ abstract public class PV
         }
     }
 
+    /** Schedule dispatch of pending notifications unless already scheduled */
+    private void scheduleDispatch()
+    {
+        if (! dispatching.compareAndSet(false, true))
+            return;
+        try
+        {
+            Dispatcher.executor.execute(this::dispatch);
+        }
+        catch (RejectedExecutionException ex)
+        {   // Dispatch threads are busy.
+            // Don't deliver on the calling thread, which is likely
+            // the network thread that must not be stalled by listeners
+            Dispatcher.fallback.execute(this::dispatch);
+        }
+    }
+
+    /** Notify listeners of pending events and value */
+    private void dispatch()
+    {
+        do
+        {
+            Runnable event;
+            while ((event = pending_events.poll()) != null)
+                event.run();
+            final VType value = pending_value.getAndSet(null);
+            if (value != null)
+                fireValue(value);
+            dispatching.set(false);
+        }
+        // Check for notifications that arrived while not dispatching
+        while ((! pending_events.isEmpty()  ||  pending_value.get() != null)  &&
+               dispatching.compareAndSet(false, true));
+    }
+
     /** Close the PV, releasing underlying resources.
      *  <p>
      *  Called by {@link PVPool}.
@@ -8,9 +8,9 @@
 package org.csstudio.vtype.pv;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.csstudio.vtype.pv.RefCountMap.ReferencedEntry;
 
@@ -50,14 +50,16 @@ public class PVPool
     final protected static String SEPARATOR = "://";
 
     /** Map of PV type prefixes to PV factories */
-    final private static Map<String, PVFactory> factories = new HashMap<>();
+    final private static Map<String, PVFactory> factories = new ConcurrentHashMap<>();
 
     /** Default PV name type prefix */
     private static String default_type;
 
     /** PV Pool
-     *  SYNC on 'pool':
-     *  Otherwise, two threads concurrently looking for a new PV would both add it.
+     *  <p>
+     *  No global lock:
+     *  PVs of different names are created in parallel,
+     *  while a PV of a given name is only created once.
      */
     final private static RefCountMap<String, PV> pool = new RefCountMap<>();
 
@@ -121,24 +123,14 @@ public class PVPool
      */
     public static PV getPV(final String name) throws Exception
     {
-        PV pv;
-        synchronized (pool)
-        {
-            pv = pool.get(name);
-            if (pv == null)
-            {
-                pv = createPV(name);
-                pool.put(name, pv);
-            }
-        }
-        return pv;
+        return pool.createOrGet(name, () -> createPV(name));
     }
 
-    /** Create
+    /** Create PV via the factory for its type
      *
-     * @param name
-     * @return
-     * @throws Exception
+     *  @param name PV name, where prefix might be used to determine the type
+     *  @return {@link PV}
+     *  @throws Exception on error
      */
     private static PV createPV(final String name) throws Exception
     {
@@ -173,11 +165,7 @@ public class PVPool
     /** @param pv PV to be released */
     public static void releasePV(final PV pv)
     {
-        final int references;
-        synchronized (pool)
-        {
-            references = pool.release(pv.getName());
-        }
+        final int references = pool.release(pv.getName());
         if (references == 0)
             pv.close();
     }
@@ -185,9 +173,6 @@ public class PVPool
     /** @return PVs currently in the pool with reference count information */
     public static Collection<ReferencedEntry<PV>> getPVReferences()
     {
-        synchronized (pool)
-        {
-            return pool.getEntries();
-        }
+        return pool.getEntries();
     }
 }
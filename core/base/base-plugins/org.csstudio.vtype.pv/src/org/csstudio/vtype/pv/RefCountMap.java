@@ -7,16 +7,27 @@
  ******************************************************************************/
 package org.csstudio.vtype.pv;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /** Map that keeps reference count for its objects
  *
- *  <p>Caller may need to synchronize calls to this map,
- *  because there is no atomic operation to check if an item exists,
- *  and if not, create and add it to the map.
+ *  <p>Thread-safe without a global lock.
+ *  {@link #createOrGet(Object, Callable)} checks if an item exists,
+ *  and if not, creates and adds it to the map.
+ *  The item is created outside of any lock, so different items
+ *  can be created in parallel, while concurrent callers
+ *  for the same key wait for that one item.
+ *
+ *  <p>Once the reference count of an item drops to zero,
+ *  it is removed and can no longer be referenced.
+ *  A later call for the same key will add a new item.
  *
  *  @param <K> Key data type
  *  @param <E> Entry data type
@@ -28,12 +39,28 @@ public class RefCountMap<K, E>
     /** Wrapper for an entry with reference count */
     public static class ReferencedEntry<E>
     {
-        final private E entry;
-        private int references = 1;
+        /** Item, <code>null</code> while being created */
+        private volatile E entry;
+
+        /** Error from creating the item */
+        private volatile Exception error = null;
+
+        /** Released once item has been created (or failed) */
+        final private CountDownLatch created;
+
+        final private AtomicInteger references = new AtomicInteger(1);
 
         ReferencedEntry(E entry)
         {
             this.entry = entry;
+            created = new CountDownLatch(0);
+        }
+
+        /** Create entry for item that is about to be created */
+        ReferencedEntry()
+        {
+            entry = null;
+            created = new CountDownLatch(1);
         }
 
         /** @return Item */
@@ -45,21 +72,59 @@ public class RefCountMap<K, E>
         /** @return Reference count for the item */
         public int getReferences()
         {
-            return references;
+            return references.get();
         }
 
-        void addRef()
+        /** @return <code>true</code> if reference was added,
+         *          <code>false</code> if the entry had already been released
+         */
+        boolean addRef()
         {
-            ++references;
+            int refs = references.get();
+            while (refs > 0)
+            {
+                if (references.compareAndSet(refs, refs + 1))
+                    return true;
+                refs = references.get();
+            }
+            return false;
         }
 
         int decRef()
         {
-            return --references;
+            return references.decrementAndGet();
+        }
+
+        void setEntry(final E entry)
+        {
+            this.entry = entry;
+            created.countDown();
+        }
+
+        void setError(final Exception error)
+        {
+            this.error = error;
+            created.countDown();
+        }
+
+        boolean isCreated()
+        {
+            return created.getCount() == 0  &&  error == null;
+        }
+
+        /** @return Item, waiting for it to be created
+         *  @throws Exception on error in creating the item
+         */
+        E awaitEntry() throws Exception
+        {
+            created.await();
+            if (error != null)
+                throw error;
+            return entry;
         }
     }
 
-    final private Map<K, ReferencedEntry<E>> map = new HashMap<>();
+    final private ConcurrentHashMap<K, ReferencedEntry<E>> map = new ConcurrentHashMap<>();
 
     /** Get an item.
      *  On success, a reference count is added to the item.
@@ -68,11 +133,69 @@ public class RefCountMap<K, E>
      */
     public E get(final K key)
     {
-        final ReferencedEntry<E> entry = map.get(key);
-        if (entry == null)
-            return null;
-        entry.addRef();
-        return entry.getEntry();
+        while (true)
+        {
+            final ReferencedEntry<E> entry = map.get(key);
+            if (entry == null)
+                return null;
+            if (entry.addRef())
+            {
+                try
+                {
+                    return entry.awaitEntry();
+                }
+                catch (Exception ex)
+                {   // Item could not be created
+                    return null;
+                }
+            }
+            // Entry was just released, remove if that hasn't happened, yet
+            map.remove(key, entry);
+        }
+    }
+
+    /** Get an item, creating it if it's not in the map.
+     *
+     *  <p>On success, a reference count is added to the item,
+     *  or a new item is added with initial reference count of 1.
+     *  The <code>creator</code> is called at most once per key
+     *  by concurrent callers, and outside of any lock.
+     *
+     *  @param key Key for item to get
+     *  @param creator Creates the item if it's not in the map
+     *  @return Item
+     *  @throws Exception on error from <code>creator</code>
+     */
+    public E createOrGet(final K key, final Callable<E> creator) throws Exception
+    {
+        while (true)
+        {
+            ReferencedEntry<E> entry = map.get(key);
+            if (entry == null)
+            {
+                final ReferencedEntry<E> new_entry = new ReferencedEntry<>();
+                entry = map.putIfAbsent(key, new_entry);
+                if (entry == null)
+                {   // This thread creates the item, others wait for it
+                    final E item;
+                    try
+                    {
+                        item = creator.call();
+                    }
+                    catch (Exception ex)
+                    {
+                        map.remove(key, new_entry);
+                        new_entry.setError(ex);
+                        throw ex;
+                    }
+                    new_entry.setEntry(item);
+                    return item;
+                }
+            }
+            if (entry.addRef())
+                return entry.awaitEntry();
+            map.remove(key, entry);
+        }
     }
 
     /** Add item to map with initial reference count of 1
@@ -81,9 +204,8 @@ public class RefCountMap<K, E>
      */
     public void put(final K key, final E entry)
     {
-        if (map.containsKey(key))
+        if (map.putIfAbsent(key,  new ReferencedEntry<E>(entry)) != null)
             throw new IllegalStateException("Already referenced " + key);
-        map.put(key,  new ReferencedEntry<E>(entry));
     }
 
     /** Release an item from the map
@@ -97,13 +219,17 @@ public class RefCountMap<K, E>
             throw new IllegalStateException("No reference found for " + key);
         final int remaining = entry.decRef();
         if (remaining <= 0)
-            map.remove(key);
+            map.remove(key, entry);
         return remaining;
     }
 
     /** @return Entries in map */
     public Collection<ReferencedEntry<E>> getEntries()
     {
-        return Collections.unmodifiableCollection(map.values());
+        final List<ReferencedEntry<E>> entries = new ArrayList<>(map.size());
+        for (ReferencedEntry<E> entry : map.values())
+            if (entry.isCreated()  &&  entry.getReferences() > 0)
+                entries.add(entry);
+        return Collections.unmodifiableCollection(entries);
     }
 }
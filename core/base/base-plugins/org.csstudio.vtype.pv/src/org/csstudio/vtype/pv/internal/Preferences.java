@@ -28,6 +28,14 @@ public class Preferences
         return service.getString(plugin, setting, default_value, null);
     }
 
+    private static int getInt(final String plugin, final String setting, final int default_value)
+    {
+        final IPreferencesService service = Platform.getPreferencesService();
+        if (service == null)
+            return default_value;
+        return service.getInt(plugin, setting, default_value, null);
+    }
+
     public static String defaultType()
     {
         return getString(Activator.ID, "default_type", JCA_PVFactory.TYPE);
@@ -47,4 +55,14 @@ public class Preferences
     {
         return Boolean.parseBoolean(getString(EpicsPlugin.ID, PreferenceConstants.DBE_PROPERTY_SUPPORTED, Boolean.TRUE.toString()));
     }
+
+    public static int dispatchThreads()
+    {
+        return Math.max(1, getInt(Activator.ID, "dispatch_threads", 2));
+    }
+
+    public static int dispatchQueueSize()
+    {
+        return Math.max(1, getInt(Activator.ID, "dispatch_queue_size", 10000));
+    }
 }